@@ -0,0 +1,241 @@
+package com.checkout.payment.gateway;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Closed-loop load against the whole gateway with a stub bank that answers after a fixed delay,
+ * in each of its request handling modes:
+ * <ul>
+ *   <li>{@code platform}: Tomcat's thread pool and the blocking bank client, the default</li>
+ *   <li>{@code virtual}: Tomcat on virtual threads, skipped below JDK 21</li>
+ *   <li>{@code async}: Tomcat with the non-blocking bank client</li>
+ *   <li>{@code reactive}: WebFlux on Netty with the non-blocking bank client</li>
+ *   <li>{@code accepted}: Tomcat answering 202 once the payment is stored, the bank called by the
+ *   pipeline; latency is then the store's, and the bank only shows in how many are in flight</li>
+ * </ul>
+ * Every mode runs once per client count. Reports throughput, how many payments the bank saw in
+ * flight at most, the client-side latency percentiles and, for the reactive mode, how busy the
+ * Netty event loops were: near 100% they are saturated and latency grows with every client added.
+ * The circuit breaker and bulkhead are off so that the mode is the only limit. Each client holds
+ * a connection to the gateway and the gateway one to the bank, so 10,000 clients need about
+ * 40,000 file descriptors. Not a JMH benchmark.
+ * <pre>
+ * java -cp build/libs/*-jmh.jar com.checkout.payment.gateway.GatewayLoadTest [clients,...] [bank-latency-ms] [seconds] [modes,...]
+ * </pre>
+ */
+public class GatewayLoadTest {
+
+  private static final String BODY = """
+      {"card_number": "2222405343248877", "expiry_month": 4, "expiry_year": 2030,
+       "currency": "GBP", "amount": 100, "cvv": "123"}""";
+
+  private static final AtomicInteger bankInFlight = new AtomicInteger();
+  private static final AtomicInteger bankMaxInFlight = new AtomicInteger();
+
+  public static void main(String[] args) throws Exception {
+    int[] clientCounts = Arrays.stream((args.length > 0 ? args[0] : "2000").split(","))
+        .mapToInt(Integer::parseInt).toArray();
+    long bankLatencyMillis = args.length > 1 ? Long.parseLong(args[1]) : 100;
+    int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 20;
+    List<String> modes = List.of((args.length > 3 ? args[3] : "platform,virtual,async,reactive").split(","));
+
+    int maxClients = Arrays.stream(clientCounts).max().orElseThrow();
+    ScheduledExecutorService answers = Executors.newScheduledThreadPool(2);
+    HttpServer bank = startBank(bankLatencyMillis, maxClients, answers);
+    try {
+      System.out.printf("bank answers after %d ms, %d s per run, %d CPUs%n", bankLatencyMillis, seconds,
+          Runtime.getRuntime().availableProcessors());
+      for (String mode : modes) {
+        if (mode.equals("virtual") && Runtime.version().feature() < 21) {
+          System.out.printf("virtual    skipped, needs JDK 21 (running on %s)%n", Runtime.version());
+          continue;
+        }
+        for (int clients : clientCounts) {
+          run(mode, bank, clients, seconds);
+        }
+      }
+    } finally {
+      bank.stop(0);
+      ((ExecutorService) bank.getExecutor()).shutdownNow();
+      answers.shutdownNow();
+    }
+  }
+
+  private static void run(String mode, HttpServer bank, int clients, int seconds) throws InterruptedException {
+    String bankUrl = "http://localhost:" + bank.getAddress().getPort();
+    List<String> args = new ArrayList<>(List.of(
+        "--server.port=0",
+        "--server.tomcat.max-connections=" + (clients * 2),
+        "--server.tomcat.accept-count=" + clients,
+        "--payment-gateway.reconciliation.enabled=false",
+        "--acquiring-bank.url=" + bankUrl,
+        "--acquiring-bank.pool.max-connections=" + clients,
+        "--acquiring-bank.pool.http2=false",
+        "--acquiring-bank.acquirers[0].name=stub",
+        "--acquiring-bank.acquirers[0].url=" + bankUrl,
+        "--acquiring-bank.acquirers[0].max-connections=" + clients,
+        "--acquiring-bank.circuit-breaker.enabled=false",
+        "--acquiring-bank.adaptive-timeout.enabled=false",
+        "--springdoc.api-docs.enabled=false",
+        "--logging.level.root=WARN"));
+    switch (mode) {
+      case "platform" -> { }
+      case "virtual" -> args.add("--payment-gateway.virtual-threads.enabled=true");
+      case "async" -> args.add("--payment-gateway.async.enabled=true");
+      case "reactive" -> {
+        args.add("--payment-gateway.async.enabled=true");
+        args.add("--spring.main.web-application-type=reactive");
+      }
+      case "accepted" -> {
+        args.add("--payment-gateway.pipeline.enabled=true");
+        args.add("--payment-gateway.pipeline.capacity=" + (clients * 4));
+        args.add("--payment-gateway.pipeline.dispatch-workers=" + clients);
+      }
+      default -> throw new IllegalArgumentException("Unknown mode " + mode);
+    }
+    // command-line arguments, so they take precedence over application.properties
+    ConfigurableApplicationContext gateway = new SpringApplicationBuilder(PaymentGatewayApplication.class)
+        .run(args.toArray(String[]::new));
+    try {
+      String url = "http://localhost:" + gateway.getEnvironment().getProperty("local.server.port") + "/api/v1/payments";
+      Result warmup = load(url, clients, Math.max(1, seconds / 4));
+      bankMaxInFlight.set(0);
+      EventLoops eventLoops = EventLoops.start();
+      Result result = load(url, clients, seconds);
+      Histogram latency = result.latency();
+      System.out.printf("%-10s %,6d clients %,8.0f payments/s  max in flight %,6d  p50 %,6.1f ms  p99 %,7.1f ms"
+              + "  max %,7.1f ms  event loops %s  errors %,d (warm-up %,d)%n",
+          mode, clients, (double) latency.getTotalCount() / seconds, bankMaxInFlight.get(),
+          latency.getValueAtPercentile(50) / 1e3, latency.getValueAtPercentile(99) / 1e3,
+          latency.getMaxValue() / 1e3, eventLoops.busy(seconds), result.errors(), warmup.errors());
+    } finally {
+      gateway.close();
+    }
+  }
+
+  private record Result(Histogram latency, long errors) {
+  }
+
+  // CPU time of Netty's event loop threads over a run, as a share of the time they were there
+  private record EventLoops(long[] ids, long cpuNanos) {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    static EventLoops start() {
+      long[] ids = Arrays.stream(THREADS.getThreadInfo(THREADS.getAllThreadIds()))
+          .filter(info -> info != null && info.getThreadName().startsWith("reactor-http-"))
+          .mapToLong(ThreadInfo::getThreadId)
+          .toArray();
+      return new EventLoops(ids, cpuNanos(ids));
+    }
+
+    String busy(int seconds) {
+      if (ids.length == 0) {
+        return "-";
+      }
+      double share = (double) (cpuNanos(ids) - cpuNanos) / (TimeUnit.SECONDS.toNanos(seconds) * ids.length);
+      return String.format("%d x %3.0f%%", ids.length, share * 100);
+    }
+
+    private static long cpuNanos(long[] ids) {
+      return Arrays.stream(ids).map(THREADS::getThreadCpuTime).filter(nanos -> nanos > 0).sum();
+    }
+  }
+
+  // every client sends its next payment as soon as the previous one is answered
+  private static Result load(String url, int clients, int seconds) throws InterruptedException {
+    HttpClient client = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(Duration.ofSeconds(10))
+        .build();
+    Recorder recorder = new Recorder(TimeUnit.MINUTES.toMicros(1), 3);
+    AtomicLong errors = new AtomicLong();
+    long stopAt = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+    CountDownLatch done = new CountDownLatch(clients);
+    for (int i = 0; i < clients; i++) {
+      send(client, url, recorder, errors, stopAt, done);
+    }
+    done.await();
+    return new Result(recorder.getIntervalHistogram(), errors.get());
+  }
+
+  private static void send(HttpClient client, String url, Recorder recorder, AtomicLong errors, long stopAt,
+      CountDownLatch done) {
+    long start = System.nanoTime();
+    if (start >= stopAt) {
+      done.countDown();
+      return;
+    }
+    HttpRequest request = HttpRequest.newBuilder(URI.create(url))
+        .header("Content-Type", "application/json")
+        .header("Idempotency-Key", UUID.randomUUID().toString())
+        .timeout(Duration.ofSeconds(30))
+        .POST(HttpRequest.BodyPublishers.ofString(BODY))
+        .build();
+    client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, failure) -> {
+      if (failure != null || (response.statusCode() != 201 && response.statusCode() != 202)) {
+        errors.incrementAndGet();
+      } else {
+        recorder.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start),
+            TimeUnit.MINUTES.toMicros(1)));
+      }
+      send(client, url, recorder, errors, stopAt, done);
+    });
+  }
+
+  // answers from a timer rather than a sleeping thread per call, so the stub is never what
+  // limits concurrency, even with thousands of calls in flight
+  private static HttpServer startBank(long latencyMillis, int clients, ScheduledExecutorService answers)
+      throws IOException {
+    // the JDK server closes kept-alive connections beyond 200, which the gateway's pools then trip over
+    System.setProperty("sun.net.httpserver.maxIdleConnections", String.valueOf(clients));
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), clients);
+    server.setExecutor(Executors.newFixedThreadPool(2));
+    byte[] body = "{\"authorized\": true, \"authorization_code\": \"load-test\"}".getBytes(StandardCharsets.UTF_8);
+    server.createContext("/payments", exchange -> {
+      int inFlight = bankInFlight.incrementAndGet();
+      bankMaxInFlight.accumulateAndGet(inFlight, Math::max);
+      exchange.getRequestBody().readAllBytes();
+      answers.schedule(() -> {
+        try (OutputStream out = exchange.getResponseBody()) {
+          exchange.getResponseHeaders().set("Content-Type", "application/json");
+          exchange.sendResponseHeaders(200, body.length);
+          out.write(body);
+        } catch (IOException e) {
+          // the gateway gave up on the call
+        } finally {
+          bankInFlight.decrementAndGet();
+        }
+      }, latencyMillis, TimeUnit.MILLISECONDS);
+    });
+    server.start();
+    return server;
+  }
+}
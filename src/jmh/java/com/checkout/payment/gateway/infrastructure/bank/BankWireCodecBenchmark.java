@@ -0,0 +1,107 @@
+package com.checkout.payment.gateway.infrastructure.bank;
+
+import com.checkout.payment.gateway.domain.model.BankResult;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentRequest;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Encodes a bank request and decodes a bank response with {@link BankWireCodec}, against the
+ * {@code ObjectMapper} and DTO path it replaced. Run {@link #main} for the allocation profile;
+ * {@code gc.alloc.rate.norm} is the number of bytes allocated per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BankWireCodecBenchmark {
+
+  // the DTOs the bank clients used before the codec
+  @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+  public record BankPaymentRequest(String cardNumber, String expiryDate, String currency, Long amount, String cvv) {
+  }
+
+  @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+  public record BankPaymentResponse(boolean authorized, String authorizationCode) {
+  }
+
+  private static final byte[] RESPONSE =
+      "{\"authorized\":true,\"authorization_code\":\"0bb07405-6d44-4b50-a14f-7ae0beff13ad\"}"
+          .getBytes(StandardCharsets.UTF_8);
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private PaymentRequest request;
+
+  @Setup
+  public void setUp() {
+    request = new PaymentRequest();
+    request.setCardNumber("2222405343248877");
+    request.setExpiryMonth(4);
+    request.setExpiryYear(2030);
+    request.setCurrency("GBP");
+    request.setAmount(100L);
+    request.setCvv("123");
+  }
+
+  @Benchmark
+  public int codecEncode() {
+    byte[] buffer = BankWireCodec.POOL.acquire();
+    int length = buffer.length;
+    try {
+      length = BankWireCodec.encode(request, buffer);
+      return length;
+    } finally {
+      BankWireCodec.POOL.release(buffer, length);
+    }
+  }
+
+  @Benchmark
+  public byte[] jacksonEncode() throws IOException {
+    return objectMapper.writeValueAsBytes(new BankPaymentRequest(
+        request.getCardNumber(),
+        String.format("%02d/%d", request.getExpiryMonth(), request.getExpiryYear()),
+        request.getCurrency(),
+        request.getAmount(),
+        request.getCvv()));
+  }
+
+  @Benchmark
+  public BankResult codecDecode() {
+    return BankWireCodec.decode(RESPONSE, 0, RESPONSE.length);
+  }
+
+  @Benchmark
+  public BankResult jacksonDecode() throws IOException {
+    BankPaymentResponse response = objectMapper.readValue(RESPONSE, BankPaymentResponse.class);
+    return BankResult.builder()
+        .status(response.authorized() ? PaymentStatus.AUTHORIZED : PaymentStatus.DECLINED)
+        .authorizationCode(response.authorizationCode())
+        .build();
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    Options options = new OptionsBuilder()
+        .include(BankWireCodecBenchmark.class.getSimpleName())
+        .addProfiler("gc")
+        .forks(1)
+        .warmupIterations(3)
+        .measurementIterations(5)
+        .build();
+    new Runner(options).run();
+  }
+}
@@ -0,0 +1,124 @@
+package com.checkout.payment.gateway.infrastructure.persistence;
+
+import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentPage;
+import com.checkout.payment.gateway.domain.model.PaymentQuery;
+import com.checkout.payment.gateway.domain.model.PaymentsRepository;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * The original global read/write lock implementation, kept only as the baseline for
+ * {@link PaymentsRepositoryContentionBenchmark}.
+ */
+public class LockingPaymentsRepository implements PaymentsRepository {
+
+  private final Map<UUID, Payment> storage = new ConcurrentHashMap<>();
+  private final Map<String, Payment> idempotencyIndex = new ConcurrentHashMap<>();
+
+  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  @Override
+  public Payment save(Payment payment) {
+    lock.writeLock().lock();
+    try {
+      if(payment.getIdempotencyKey() != null && idempotencyIndex.containsKey(payment.getIdempotencyKey())) {
+        return idempotencyIndex.get(payment.getIdempotencyKey());
+      }
+
+      if (payment.getId() == null) {
+        throw new IllegalArgumentException("Payment ID cannot be null when saving");
+      }
+
+      Payment stored = payment.withUpdatedAt(Instant.now());
+      storage.put(stored.getId(), stored);
+
+      if (stored.getIdempotencyKey() != null) {
+        idempotencyIndex.put(stored.getIdempotencyKey(), stored);
+      }
+      return stored;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public boolean compareAndSet(UUID id, long expectedVersion, Payment newRecord) {
+    lock.writeLock().lock();
+    try {
+      if (!VersionCheck.canReplace(storage.get(id), id, expectedVersion, newRecord)) {
+        return false;
+      }
+      Payment stored = newRecord.withUpdatedAt(Instant.now());
+      storage.put(id, stored);
+      if (stored.getIdempotencyKey() != null) {
+        idempotencyIndex.put(stored.getIdempotencyKey(), stored);
+      }
+      return true;
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public Optional<Payment> claimIdempotencyKey(Payment payment) {
+    lock.writeLock().lock();
+    try {
+      Payment owner = idempotencyIndex.get(payment.getIdempotencyKey());
+      if (owner != null) {
+        return Optional.of(owner);
+      }
+      Payment stored = payment.withUpdatedAt(Instant.now());
+      storage.put(stored.getId(), stored);
+      idempotencyIndex.put(stored.getIdempotencyKey(), stored);
+      return Optional.empty();
+    } finally {
+      lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public Optional<Payment> get(UUID id) {
+    lock.readLock().lock();
+    try {
+      return Optional.ofNullable(storage.get(id));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  @Override
+  public Optional<Payment> getByIdempotencyKey(String key) {
+    lock.readLock().lock();
+    try {
+      return Optional.ofNullable(idempotencyIndex.get(key));
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  // full scan: there was no listing before the index, this only keeps the baseline compiling
+  @Override
+  public PaymentPage find(PaymentQuery query) {
+    lock.readLock().lock();
+    try {
+      List<Payment> payments = storage.values().stream()
+          .filter(p -> query.getStatuses().isEmpty() || query.getStatuses().contains(p.getStatus()))
+          .filter(p -> query.getFrom() == null || !p.getCreatedAt().isBefore(query.getFrom()))
+          .filter(p -> query.getTo() == null || p.getCreatedAt().isBefore(query.getTo()))
+          .sorted(Comparator.comparing(Payment::getCreatedAt).thenComparing(Payment::getId))
+          .limit(query.getLimit())
+          .toList();
+      return new PaymentPage(payments, null);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+}
@@ -0,0 +1,69 @@
+package com.checkout.payment.gateway.infrastructure.persistence;
+
+import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.domain.model.PaymentsRepository;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Memory per record of the heap and off-heap stores. Not a JMH benchmark: footprint is measured
+ * once after filling each store, with a forced GC before each reading.
+ * <pre>
+ * java -cp build/libs/*-jmh.jar com.checkout.payment.gateway.infrastructure.persistence.PaymentStoreFootprint 5000000
+ * </pre>
+ */
+public class PaymentStoreFootprint {
+
+  public static void main(String[] args) {
+    int records = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+    measure("in-memory", records,
+        new InMemoryPaymentsRepository(new PaymentGatewayProperties(), new SimpleMeterRegistry()));
+
+    OffHeapPaymentsRepository offHeap =
+        new OffHeapPaymentsRepository(records, new SimpleMeterRegistry(), Clock.systemUTC());
+    measure("off-heap", records, offHeap);
+    System.out.printf("%-10s %,d bytes of direct memory, %d bytes/record%n",
+        "off-heap", offHeap.offHeapBytes(), offHeap.offHeapBytes() / records);
+  }
+
+  private static void measure(String name, int records, PaymentsRepository repository) {
+    long before = usedHeap();
+    for (int i = 0; i < records; i++) {
+      Payment payment = Payment.builder()
+          .id(UUID.randomUUID())
+          .idempotencyKey(UUID.randomUUID().toString())
+          .status(PaymentStatus.PENDING)
+          .amount(1050L)
+          .currency("GBP")
+          .cardLastFour(String.format("%04d", i % 10_000))
+          .cardExpiryMonth(4)
+          .cardExpiryYear(2030)
+          .maskedCardNumber("************" + String.format("%04d", i % 10_000))
+          .createdAt(Instant.now())
+          .build();
+      repository.claimIdempotencyKey(payment);
+      repository.compareAndSet(payment.getId(), payment.getVersion(),
+          payment.transitionTo(PaymentStatus.AUTHORIZED, UUID.randomUUID().toString()));
+    }
+    long after = usedHeap();
+    System.out.printf("%-10s %,d records, %,d heap bytes, %d bytes/record%n",
+        name, records, after - before, (after - before) / records);
+    // keep the store reachable until it has been measured
+    repository.get(UUID.randomUUID());
+  }
+
+  private static long usedHeap() {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    for (int i = 0; i < 3; i++) {
+      System.gc();
+    }
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+}
@@ -0,0 +1,142 @@
+package com.checkout.payment.gateway.infrastructure.persistence;
+
+import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.domain.model.PaymentsRepository;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares the old global-lock repository with the lock-free and partitioned ones under contention.
+ * Run {@link #main} to sweep 1 to 64 threads; {@code ./gradlew jmh} runs a single thread count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PaymentsRepositoryContentionBenchmark {
+
+  private static final int PRELOADED = 1 << 16;
+  private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+
+  @Param({"locking", "lock-free", "partitioned"})
+  public String implementation;
+
+  private PaymentsRepository repository;
+  private Payment[] payments;
+
+  @Setup(Level.Trial)
+  public void createPayments() {
+    payments = new Payment[PRELOADED];
+    for (int i = 0; i < PRELOADED; i++) {
+      payments[i] = Payment.builder()
+          .id(UUID.randomUUID())
+          .idempotencyKey("key-" + i)
+          .status(PaymentStatus.PENDING)
+          .amount(100L)
+          .currency("GBP")
+          .cardLastFour("4242")
+          .cardExpiryMonth(12)
+          .cardExpiryYear(2030)
+          .maskedCardNumber("************4242")
+          .createdAt(Instant.now())
+          .build();
+    }
+  }
+
+  // a fresh repository every iteration, so the keys claimed by claimIdempotencyKey don't pile up
+  // and slow down later iterations
+  @Setup(Level.Iteration)
+  public void setUp() {
+    repository = switch (implementation) {
+      case "locking" -> new LockingPaymentsRepository();
+      case "partitioned" -> new PartitionedPaymentsRepository(new PaymentGatewayProperties(), new SimpleMeterRegistry());
+      default -> new InMemoryPaymentsRepository(new PaymentGatewayProperties(), new SimpleMeterRegistry());
+    };
+    for (Payment payment : payments) {
+      repository.save(payment);
+    }
+  }
+
+  @TearDown(Level.Iteration)
+  public void tearDown() {
+    if (repository instanceof PartitionedPaymentsRepository partitioned) {
+      partitioned.close();
+    }
+  }
+
+  private Payment randomPayment() {
+    return payments[ThreadLocalRandom.current().nextInt(PRELOADED)];
+  }
+
+  @Benchmark
+  public Payment save() {
+    return repository.save(randomPayment());
+  }
+
+  @Benchmark
+  public Optional<Payment> get() {
+    return repository.get(randomPayment().getId());
+  }
+
+  @Benchmark
+  public Optional<Payment> getByIdempotencyKey() {
+    return repository.getByIdempotencyKey(randomPayment().getIdempotencyKey());
+  }
+
+  // a fresh payment and key on every call, so each claim is a first claim that has to bind its key.
+  // Ids come from a per-thread counter: UUID.randomUUID() would measure the shared SecureRandom.
+  @State(Scope.Thread)
+  public static class NewClaims {
+    private final long seed = ThreadLocalRandom.current().nextLong();
+    private final String prefix = Long.toHexString(seed) + "-";
+    private long next;
+
+    Payment next(Payment template) {
+      long n = next++;
+      return template.toBuilder().id(new UUID(seed, n)).idempotencyKey(prefix + n).build();
+    }
+  }
+
+  @Benchmark
+  public Optional<Payment> claimIdempotencyKey(NewClaims claims) {
+    return repository.claimIdempotencyKey(claims.next(randomPayment()));
+  }
+
+  // every key is already bound: only the lookup of its owner
+  @Benchmark
+  public Optional<Payment> claimOwnedIdempotencyKey() {
+    return repository.claimIdempotencyKey(randomPayment());
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    for (int threads : THREAD_COUNTS) {
+      Options options = new OptionsBuilder()
+          .include(PaymentsRepositoryContentionBenchmark.class.getSimpleName())
+          .threads(threads)
+          .forks(1)
+          .warmupIterations(3)
+          .measurementIterations(5)
+          .build();
+      new Runner(options).run();
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package com.checkout.payment.gateway.infrastructure.persistence.wal;
+
+import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Startup time of the write-ahead-log store for a given number of payments, each written as a
+ * PENDING and an AUTHORIZED record. Recovery is timed once from the log alone and once after a
+ * checkpoint, which is what a restarted gateway normally sees. Not a JMH benchmark.
+ * <pre>
+ * java -cp build/libs/*-jmh.jar com.checkout.payment.gateway.infrastructure.persistence.wal.WalRecoveryTime 1000000
+ * </pre>
+ */
+public class WalRecoveryTime {
+
+  public static void main(String[] args) throws IOException, InterruptedException {
+    int records = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+    Path directory = Files.createTempDirectory("wal-recovery");
+    PaymentGatewayProperties properties = new PaymentGatewayProperties();
+    properties.getRepository().getWal().setDirectory(directory);
+
+    WalPaymentsRepository repository = new WalPaymentsRepository(properties, new SimpleMeterRegistry());
+    fill(repository, records);
+    repository.close();
+
+    System.out.printf("log only     %,d payments recovered in %,d ms%n", records, timeRecovery(properties, false));
+    System.out.printf("checkpoint   %,d payments recovered in %,d ms%n", records, timeRecovery(properties, true));
+  }
+
+  private static void fill(WalPaymentsRepository repository, int records) throws InterruptedException {
+    // many concurrent writers so group commit keeps the fill fast
+    ExecutorService writers = Executors.newFixedThreadPool(64);
+    for (int i = 0; i < records; i++) {
+      int n = i;
+      writers.execute(() -> {
+        Payment payment = Payment.builder()
+            .id(UUID.randomUUID())
+            .idempotencyKey(UUID.randomUUID().toString())
+            .status(PaymentStatus.PENDING)
+            .amount(1050L)
+            .currency("GBP")
+            .cardLastFour(String.format("%04d", n % 10_000))
+            .cardExpiryMonth(4)
+            .cardExpiryYear(2030)
+            .maskedCardNumber("************" + String.format("%04d", n % 10_000))
+            .createdAt(Instant.now())
+            .build();
+        repository.claimIdempotencyKey(payment);
+        repository.compareAndSet(payment.getId(), payment.getVersion(),
+            payment.transitionTo(PaymentStatus.AUTHORIZED, UUID.randomUUID().toString()));
+      });
+    }
+    writers.shutdown();
+    writers.awaitTermination(1, TimeUnit.HOURS);
+  }
+
+  private static long timeRecovery(PaymentGatewayProperties properties, boolean checkpointFirst) {
+    if (checkpointFirst) {
+      WalPaymentsRepository repository = new WalPaymentsRepository(properties, new SimpleMeterRegistry());
+      repository.checkpoint();
+      repository.close();
+    }
+    long start = System.nanoTime();
+    WalPaymentsRepository recovered = new WalPaymentsRepository(properties, new SimpleMeterRegistry());
+    long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    recovered.close();
+    return elapsed;
+  }
+}
@@ -0,0 +1,86 @@
+package com.checkout.payment.gateway.infrastructure.persistence.wal;
+
+import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Durable saves per second. Every save waits for the fsync of the batch it was committed in, so
+ * single-thread throughput is bounded by disk flush latency and grows with concurrency as more
+ * saves share a flush. Run {@link #main} to sweep 1 to 64 threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class WalSaveThroughputBenchmark {
+
+  private static final int[] THREAD_COUNTS = {1, 4, 16, 64};
+
+  private Path directory;
+  private WalPaymentsRepository repository;
+
+  @Setup
+  public void setUp() throws IOException {
+    directory = Files.createTempDirectory("wal-benchmark");
+    PaymentGatewayProperties properties = new PaymentGatewayProperties();
+    properties.getRepository().getWal().setDirectory(directory);
+    repository = new WalPaymentsRepository(properties, new SimpleMeterRegistry());
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    repository.close();
+    try (Stream<Path> files = Files.walk(directory)) {
+      files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+    }
+  }
+
+  @Benchmark
+  public Payment save() {
+    return repository.save(Payment.builder()
+        .id(UUID.randomUUID())
+        .status(PaymentStatus.PENDING)
+        .amount(100L)
+        .currency("GBP")
+        .cardLastFour("4242")
+        .cardExpiryMonth(12)
+        .cardExpiryYear(2030)
+        .maskedCardNumber("************4242")
+        .createdAt(Instant.now())
+        .build());
+  }
+
+  public static void main(String[] args) throws RunnerException {
+    for (int threads : THREAD_COUNTS) {
+      Options options = new OptionsBuilder()
+          .include(WalSaveThroughputBenchmark.class.getSimpleName())
+          .threads(threads)
+          .forks(1)
+          .warmupIterations(3)
+          .measurementIterations(5)
+          .build();
+      new Runner(options).run();
+    }
+  }
+}
@@ -0,0 +1,138 @@
+package com.checkout.payment.gateway.application;
+
+import com.checkout.payment.gateway.domain.model.Deadline;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import com.checkout.payment.gateway.infrastructure.exception.EventProcessingException;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentResponse;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Single-flight registry for requests sharing an Idempotency-Key: the first request runs the
+ * payment, concurrent ones wait (bounded) for its outcome instead of calling the bank again.
+ */
+@Component
+public class InFlightPaymentRegistry {
+
+  private static final Logger LOG = LoggerFactory.getLogger(InFlightPaymentRegistry.class);
+
+  private final ConcurrentMap<String, CompletableFuture<PaymentResponse>> inFlight = new ConcurrentHashMap<>();
+  private final Duration followerWait;
+  private final Clock clock = Clock.systemUTC();
+  private final Counter coalesced;
+  private final Counter followerTimeouts;
+
+  public InFlightPaymentRegistry(MeterRegistry meterRegistry, PaymentGatewayProperties properties) {
+    this.followerWait = properties.getIdempotency().getFollowerWait();
+    this.coalesced = Counter.builder("payments.idempotency.coalesced")
+        .description("Requests that attached to an in-flight request with the same idempotency key")
+        .register(meterRegistry);
+    this.followerTimeouts = Counter.builder("payments.idempotency.follower.timeouts")
+        .description("Coalesced requests that gave up waiting for the in-flight request")
+        .register(meterRegistry);
+    meterRegistry.gauge("payments.idempotency.in.flight", inFlight, ConcurrentMap::size);
+  }
+
+  /**
+   * Runs {@code leader} unless a request with the same key is already running, in which case the
+   * caller waits for that request's outcome, at most until its {@code deadline}.
+   * {@code onFollowerTimeout} supplies the exception thrown when the wait runs out.
+   */
+  public PaymentResponse runOnce(String idempotencyKey, Supplier<PaymentResponse> leader,
+      Supplier<RuntimeException> onFollowerTimeout, Deadline deadline) {
+    CompletableFuture<PaymentResponse> flight = new CompletableFuture<>();
+    CompletableFuture<PaymentResponse> running = inFlight.putIfAbsent(idempotencyKey, flight);
+    if (running != null) {
+      coalesced.increment();
+      LOG.info("Request with idempotency key {} is already in flight, waiting for it", idempotencyKey);
+      return await(running, onFollowerTimeout, deadline.cap(followerWait, clock));
+    }
+
+    try {
+      PaymentResponse response = leader.get();
+      flight.complete(response);
+      return response;
+    } catch (RuntimeException e) {
+      flight.completeExceptionally(e);
+      throw e;
+    } finally {
+      inFlight.remove(idempotencyKey, flight);
+    }
+  }
+
+  /**
+   * Non-blocking {@link #runOnce}: {@code leader} starts the payment and returns its outcome as a
+   * future, and a concurrent request with the same key gets a future of that outcome, failing with
+   * {@code onFollowerTimeout} when the wait runs out. No thread waits in either case.
+   */
+  public CompletableFuture<PaymentResponse> runOnceAsync(String idempotencyKey,
+      Supplier<CompletableFuture<PaymentResponse>> leader, Supplier<RuntimeException> onFollowerTimeout,
+      Deadline deadline) {
+    CompletableFuture<PaymentResponse> flight = new CompletableFuture<>();
+    CompletableFuture<PaymentResponse> running = inFlight.putIfAbsent(idempotencyKey, flight);
+    if (running != null) {
+      coalesced.increment();
+      LOG.info("Request with idempotency key {} is already in flight, waiting for it", idempotencyKey);
+      Duration wait = deadline.cap(followerWait, clock);
+      return running.copy()
+          .orTimeout(wait.toMillis(), TimeUnit.MILLISECONDS)
+          .exceptionally(e -> {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (cause instanceof TimeoutException) {
+              followerTimeouts.increment();
+              throw onFollowerTimeout.get();
+            }
+            // the follower sees exactly what the leader's client saw
+            throw cause instanceof RuntimeException runtime ? runtime
+                : new EventProcessingException("Unknow error processing payment");
+          });
+    }
+
+    CompletableFuture<PaymentResponse> outcome;
+    try {
+      outcome = leader.get();
+    } catch (RuntimeException e) {
+      outcome = CompletableFuture.failedFuture(e);
+    }
+    return outcome.whenComplete((response, e) -> {
+      if (e == null) {
+        flight.complete(response);
+      } else {
+        flight.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+      }
+      inFlight.remove(idempotencyKey, flight);
+    });
+  }
+
+  private PaymentResponse await(CompletableFuture<PaymentResponse> running,
+      Supplier<RuntimeException> onFollowerTimeout, Duration wait) {
+    try {
+      return running.get(wait.toMillis(), TimeUnit.MILLISECONDS);
+    } catch (ExecutionException e) {
+      // the follower sees exactly what the leader's client saw
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw new EventProcessingException("Unknow error processing payment");
+    } catch (TimeoutException e) {
+      followerTimeouts.increment();
+      throw onFollowerTimeout.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw onFollowerTimeout.get();
+    }
+  }
+}
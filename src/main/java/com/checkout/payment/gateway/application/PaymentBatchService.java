@@ -0,0 +1,89 @@
+package com.checkout.payment.gateway.application;
+
+import com.checkout.payment.gateway.domain.model.Deadline;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.BatchPaymentRequest;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentResponse;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.stereotype.Service;
+
+/**
+ * Processes the payments of a batch in parallel, each exactly as
+ * {@link PaymentGatewayService#processPaymentAsync} would with its own idempotency key.
+ * <p>
+ * At most {@code payment-gateway.batch.max-concurrency} payments of a batch are in flight: the
+ * first ones are started at once, and every completion starts the next, so no thread waits for
+ * a slot. Payments run on the application task executor. With {@code payment-gateway.async}
+ * enabled, the task thread is released once the bank request is sent. Otherwise it waits for
+ * the bank, and the executor's pool size bounds the batch too.
+ */
+@Service
+public class PaymentBatchService {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PaymentBatchService.class);
+
+  private final PaymentGatewayService paymentGatewayService;
+  private final Executor executor;
+  private final int maxItems;
+  private final int maxConcurrency;
+
+  public PaymentBatchService(PaymentGatewayService paymentGatewayService, PaymentGatewayProperties properties,
+      @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) Executor executor) {
+    this.paymentGatewayService = paymentGatewayService;
+    this.executor = executor;
+    this.maxItems = properties.getBatch().getMaxItems();
+    this.maxConcurrency = properties.getBatch().getMaxConcurrency();
+  }
+
+  public int maxItems() {
+    return maxItems;
+  }
+
+  /**
+   * Starts the payments and returns their outcomes, in the order of {@code payments}. A payment
+   * that fails completes its own future with the exception the single-payment endpoint would
+   * have thrown, and the others go on.
+   */
+  public List<CompletableFuture<PaymentResponse>> submit(List<BatchPaymentRequest> payments, Deadline deadline) {
+    LOG.debug("Processing a batch of {} payments", payments.size());
+    List<CompletableFuture<PaymentResponse>> outcomes = payments.stream()
+        .map(payment -> new CompletableFuture<PaymentResponse>())
+        .toList();
+    AtomicInteger next = new AtomicInteger();
+    for (int i = 0; i < Math.min(maxConcurrency, payments.size()); i++) {
+      startNext(payments, outcomes, next, deadline);
+    }
+    return outcomes;
+  }
+
+  private void startNext(List<BatchPaymentRequest> payments, List<CompletableFuture<PaymentResponse>> outcomes,
+      AtomicInteger next, Deadline deadline) {
+    int index = next.getAndIncrement();
+    if (index >= payments.size()) {
+      return;
+    }
+    BatchPaymentRequest payment = payments.get(index);
+    CompletableFuture
+        .supplyAsync(() -> paymentGatewayService.processPaymentAsync(payment, payment.getIdempotencyKey(), deadline),
+            executor)
+        .thenCompose(Function.identity())
+        .whenComplete((response, failure) -> {
+          if (failure == null) {
+            outcomes.get(index).complete(response);
+          } else {
+            outcomes.get(index).completeExceptionally(
+                failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+          }
+          startNext(payments, outcomes, next, deadline);
+        });
+  }
+}
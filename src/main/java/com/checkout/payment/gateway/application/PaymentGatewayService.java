@@ -2,33 +2,102 @@ package com.checkout.payment.gateway.application;
 
 import com.checkout.payment.gateway.common.Util;
 import com.checkout.payment.gateway.domain.model.BankResult;
+import com.checkout.payment.gateway.domain.model.Deadline;
 import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentCursor;
+import com.checkout.payment.gateway.domain.model.PaymentPage;
+import com.checkout.payment.gateway.domain.model.PaymentQuery;
 import com.checkout.payment.gateway.domain.model.PaymentStatus;
 import com.checkout.payment.gateway.domain.model.PaymentsRepository;
 import com.checkout.payment.gateway.domain.service.AcquiringBank;
+import com.checkout.payment.gateway.domain.service.AsyncAcquiringBank;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import com.checkout.payment.gateway.infrastructure.exception.BankUnavailableException;
+import com.checkout.payment.gateway.infrastructure.exception.DeadlineExceededException;
 import com.checkout.payment.gateway.infrastructure.exception.EventProcessingException;
+import com.checkout.payment.gateway.infrastructure.exception.InvalidQueryException;
 import com.checkout.payment.gateway.infrastructure.exception.PaymentNotFoundException;
+import com.checkout.payment.gateway.infrastructure.exception.UpstreamTimeoutException;
 import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentCardInfo;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentListResponse;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentLookupResponse;
 import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentRequest;
 import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentResponse;
+import jakarta.annotation.PreDestroy;
+import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
 import org.springframework.stereotype.Service;
 
 @Service
 public class PaymentGatewayService {
 
   private static final Logger LOG = LoggerFactory.getLogger(PaymentGatewayService.class);
+  private static final int MAX_PAGE_SIZE = 500;
+  private static final int MAX_LOOKUP_IDS = 500;
 
   private final PaymentsRepository paymentsRepository;
   private final AcquiringBank acquiringBank;
+  private final AsyncAcquiringBank asyncAcquiringBank;
+  private final InFlightPaymentRegistry inFlightPayments;
+  private final SettledPaymentWaiters settledPayments;
+  private final PaymentReconciler reconciler;
+  private final boolean nonBlocking;
+  private final Executor bankCallbacks;
+  // null unless payment-gateway.pipeline.enabled
+  private final PaymentPipeline pipeline;
+  private final Duration maxWait;
+  private final Clock clock = Clock.systemUTC();
 
-  public PaymentGatewayService(PaymentsRepository paymentsRepository, AcquiringBank acquiringBank) {
+  public PaymentGatewayService(PaymentsRepository paymentsRepository, AcquiringBank acquiringBank,
+      AsyncAcquiringBank asyncAcquiringBank, InFlightPaymentRegistry inFlightPayments,
+      SettledPaymentWaiters settledPayments, PaymentReconciler reconciler, PaymentGatewayProperties properties,
+      @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME) Executor bankCallbacks) {
     this.paymentsRepository = paymentsRepository;
     this.acquiringBank = acquiringBank;
+    this.asyncAcquiringBank = asyncAcquiringBank;
+    this.inFlightPayments = inFlightPayments;
+    this.settledPayments = settledPayments;
+    this.reconciler = reconciler;
+    this.nonBlocking = properties.getAsync().isEnabled();
+    this.bankCallbacks = bankCallbacks;
+    this.pipeline = properties.getPipeline().isEnabled()
+        ? new PaymentPipeline(properties.getPipeline(), this::dispatch, this::settle)
+        : null;
+    if (pipeline != null) {
+      // the pipeline settles its own payments; reconciling one it has not sent would race with it
+      reconciler.skipWhile(pipeline::isInFlight);
+    }
+    this.maxWait = properties.getLongPoll().getMaxWait();
+  }
+
+  @PreDestroy
+  public void close() {
+    if (pipeline != null) {
+      pipeline.close();
+    }
+  }
+
+  // with payment-gateway.pipeline.enabled, payments are created through acceptPayment
+  public boolean acceptsThenProcesses() {
+    return pipeline != null;
   }
 
   public PaymentResponse getPaymentById(UUID id) {
@@ -39,31 +108,269 @@ public class PaymentGatewayService {
         .orElseThrow(() -> new PaymentNotFoundException("Payment not found"));
   }
 
+  /**
+   * The payment as {@link #getPaymentById} returns it, once it has left PENDING and UNKNOWN or
+   * {@code wait}, capped at {@code payment-gateway.long-poll.max-wait}, has run out. No thread
+   * waits: the store's change notification, or a timer, completes the future. A payment already
+   * final, or a wait that cannot be parked, is answered at once.
+   */
+  public CompletableFuture<PaymentResponse> awaitPayment(UUID id, Duration wait) {
+    // parked before the read, so a payment settling in between still wakes it
+    Optional<CompletableFuture<Payment>> settled = wait.isNegative() || wait.isZero()
+        ? Optional.empty()
+        : settledPayments.register(id);
+    Payment current;
+    try {
+      current = paymentsRepository.get(id).orElseThrow(() -> new PaymentNotFoundException("Payment not found"));
+    } catch (RuntimeException e) {
+      settled.ifPresent(waiter -> waiter.cancel(false));
+      throw e;
+    }
+    if (settled.isEmpty() || current.getStatus().isFinal()) {
+      settled.ifPresent(waiter -> waiter.cancel(false));
+      return CompletableFuture.completedFuture(mapToResponse(current, true));
+    }
+    Duration parked = wait.compareTo(maxWait) > 0 ? maxWait : wait;
+    LOG.debug("Parking request for payment {} for up to {}", id, parked);
+    return settled.get()
+        .completeOnTimeout(null, parked.toMillis(), TimeUnit.MILLISECONDS)
+        // answered off the writing and timer threads; on a timeout the payment is read again, as it
+        // may be UNKNOWN by now
+        .thenApplyAsync(payment -> mapToResponse(payment != null ? payment
+            : paymentsRepository.get(id).orElse(current), true), bankCallbacks);
+  }
+
+  /**
+   * One page of payments matching the filters, oldest first. {@code cursor} is the
+   * {@code next_cursor} of the previous page.
+   */
+  public PaymentListResponse listPayments(List<String> statuses, Instant from, Instant to, String cursor,
+      int limit) {
+    PaymentQuery query = PaymentQuery.builder()
+        .statuses(parseStatuses(statuses))
+        .from(from)
+        .to(to)
+        .after(parseCursor(cursor))
+        .limit(Math.min(Math.max(limit, 1), MAX_PAGE_SIZE))
+        .build();
+
+    PaymentPage page = paymentsRepository.find(query);
+    return PaymentListResponse.builder()
+        .payments(page.getPayments().stream().map(payment -> mapToResponse(payment, true)).toList())
+        .nextCursor(page.getNext() == null ? null : page.getNext().encode())
+        .build();
+  }
+
+  /**
+   * The payments with the given ids, as {@link #getPaymentById} returns them, read from the store
+   * in one call. Duplicate ids are answered once.
+   */
+  public PaymentLookupResponse lookupPayments(List<String> ids) {
+    Set<String> distinct = new LinkedHashSet<>(ids);
+    if (distinct.size() > MAX_LOOKUP_IDS) {
+      throw new InvalidQueryException("A lookup holds at most " + MAX_LOOKUP_IDS + " ids");
+    }
+    LOG.debug("Looking up {} payments", distinct.size());
+
+    Map<String, UUID> parsed = new HashMap<>();
+    for (String id : distinct) {
+      try {
+        parsed.put(id, UUID.fromString(id));
+      } catch (IllegalArgumentException e) {
+        // not a payment id, so it is missing like any unknown one
+      }
+    }
+    Map<UUID, Payment> found = paymentsRepository.getAll(parsed.values());
+    List<PaymentResponse> payments = new ArrayList<>();
+    List<String> missing = new ArrayList<>();
+    for (String id : distinct) {
+      Payment payment = parsed.containsKey(id) ? found.get(parsed.get(id)) : null;
+      if (payment != null) {
+        payments.add(mapToResponse(payment, true));
+      } else {
+        missing.add(id);
+      }
+    }
+    return PaymentLookupResponse.builder()
+        .payments(payments)
+        .missing(missing)
+        .build();
+  }
+
   public PaymentResponse processPayment(PaymentRequest paymentRequest, String idempotencyKey) {
-    // idempotency check
-    if(idempotencyKey != null) {
-      Optional<Payment> existingPaymentOption = paymentsRepository.getByIdempotencyKey(idempotencyKey);
-      if(existingPaymentOption.isPresent()) {
-        Payment existingPayment = existingPaymentOption.get();
-        LOG.info("Idempotency hit for key {}. Current status: {}", idempotencyKey, existingPayment.getStatus());
-
-        // if it is already final status (authorized/declined/rejected), directly return
-        if (existingPayment.getStatus() == PaymentStatus.AUTHORIZED ||
-            existingPayment.getStatus() == PaymentStatus.DECLINED ||
-            existingPayment.getStatus() == PaymentStatus.REJECTED) {
-          return mapToResponse(existingPayment, false);
-        }
+    return processPayment(paymentRequest, idempotencyKey, Deadline.none());
+  }
+
+  /**
+   * Processes the payment within {@code deadline}: a request arriving after it is refused before
+   * anything is stored, and the bank call is cut short when it runs out.
+   */
+  public PaymentResponse processPayment(PaymentRequest paymentRequest, String idempotencyKey, Deadline deadline) {
+    requireTimeLeft(deadline, null);
+    if (idempotencyKey == null) {
+      requireBankAvailable();
+      return processNew(newPendingPayment(paymentRequest, null), paymentRequest, deadline);
+    }
+
+    Optional<PaymentResponse> finalOutcome = finalOutcome(idempotencyKey);
+    if (finalOutcome.isPresent()) {
+      return finalOutcome.get();
+    }
+
+    // non-final or absent: a concurrent request with the same key may be talking to the bank right
+    // now, so attach to it rather than returning its PENDING record or calling the bank twice
+    return inFlightPayments.runOnce(
+        idempotencyKey,
+        () -> processIdempotent(paymentRequest, idempotencyKey, deadline),
+        () -> followerTimedOut(idempotencyKey),
+        deadline);
+  }
+
+  /**
+   * {@link #processPayment(PaymentRequest, String, Deadline)} as a future, failing with the same
+   * exceptions. With {@code payment-gateway.async.enabled} the bank is called through the
+   * non-blocking client and no thread waits for its answer; otherwise the payment is processed on
+   * the calling thread and the future is already complete.
+   */
+  public CompletableFuture<PaymentResponse> processPaymentAsync(PaymentRequest paymentRequest, String idempotencyKey,
+      Deadline deadline) {
+    if (!nonBlocking) {
+      return CompletableFuture.completedFuture(processPayment(paymentRequest, idempotencyKey, deadline));
+    }
+    requireTimeLeft(deadline, null);
+    if (idempotencyKey == null) {
+      requireBankAvailable();
+      Payment pending = paymentsRepository.save(newPendingPayment(paymentRequest, null));
+      return callBankAsync(pending, paymentRequest, deadline);
+    }
+
+    Optional<PaymentResponse> finalOutcome = finalOutcome(idempotencyKey);
+    if (finalOutcome.isPresent()) {
+      return CompletableFuture.completedFuture(finalOutcome.get());
+    }
+    return inFlightPayments.runOnceAsync(
+        idempotencyKey,
+        () -> processIdempotentAsync(paymentRequest, idempotencyKey, deadline),
+        () -> followerTimedOut(idempotencyKey),
+        deadline);
+  }
 
-        // TODO: in real production environment, we need to check with bank
-        // - query bank's status check API
-        // - if bank already process the payment, update database and return the status accordingly
-        // - if bank haven't seen the payment, we retry
-        // - if bank generate error again, raise EventProcessingError again
-        // in this assignment we just return directly
-        return mapToResponse(existingPayment, false);
+  /**
+   * Accept-then-process: stores the payment as PENDING and returns it at once, while the pipeline
+   * calls the bank and stores its answer. Past {@code deadline} nothing is stored; the bank call
+   * itself is bounded by the bank's timeouts only, as the client is no longer waiting for it.
+   * A repeated idempotency key returns the payment it names, in whatever state it has reached.
+   *
+   * @throws BankUnavailableException when the bank is known to be down or the pipeline is full
+   */
+  public PaymentResponse acceptPayment(PaymentRequest paymentRequest, String idempotencyKey, Deadline deadline) {
+    requireTimeLeft(deadline, null);
+    if (idempotencyKey != null) {
+      Optional<Payment> existing = paymentsRepository.getByIdempotencyKey(idempotencyKey);
+      if (existing.isPresent()) {
+        LOG.info("Idempotency hit for key {}. Current status: {}", idempotencyKey, existing.get().getStatus());
+        return mapToResponse(existing.get(), false);
       }
     }
+    requireBankAvailable();
+    if (!pipeline.tryReserve()) {
+      throw new BankUnavailableException("Payment pipeline is full", null);
+    }
+    try {
+      Payment payment = newPendingPayment(paymentRequest, idempotencyKey);
+      if (idempotencyKey == null) {
+        payment = paymentsRepository.save(payment);
+      } else {
+        Optional<Payment> owner = paymentsRepository.claimIdempotencyKey(payment);
+        if (owner.isPresent()) {
+          // a concurrent request with the same key won the claim and submitted its payment
+          pipeline.release();
+          return mapToResponse(owner.get(), false);
+        }
+      }
+      pipeline.submit(payment, paymentRequest);
+      return mapToResponse(payment, false);
+    } catch (RuntimeException e) {
+      pipeline.release();
+      throw e;
+    }
+  }
+
+  // dispatch stage of the pipeline; a payment that is no longer the PENDING version queued, e.g.
+  // settled by a replayed request meanwhile, is not sent
+  private BankResult dispatch(Payment payment, PaymentRequest paymentRequest) {
+    Optional<Payment> current = paymentsRepository.get(payment.getId());
+    if (current.isEmpty() || current.get().getStatus() != PaymentStatus.PENDING
+        || current.get().getVersion() != payment.getVersion()) {
+      LOG.warn("Payment {} changed while queued, not sending it to the bank", payment.getId());
+      return null;
+    }
+    return acquiringBank.process(paymentRequest, payment.getId(), Deadline.none());
+  }
 
+  // persistence stage of the pipeline; nobody waits for the exception a failure maps to
+  private void settle(Payment payment, BankResult result, RuntimeException failure) {
+    if (failure == null) {
+      bankAnswered(payment, result);
+    } else {
+      bankCallFailed(payment, failure);
+    }
+  }
+
+  // already final status (authorized/declined/rejected): returned as is
+  private Optional<PaymentResponse> finalOutcome(String idempotencyKey) {
+    return paymentsRepository.getByIdempotencyKey(idempotencyKey)
+        .filter(existingPayment -> existingPayment.getStatus().isFinal())
+        .map(existingPayment -> {
+          LOG.info("Idempotency hit for key {}. Current status: {}", idempotencyKey, existingPayment.getStatus());
+          return mapToResponse(existingPayment, false);
+        });
+  }
+
+  private PaymentResponse processIdempotent(PaymentRequest paymentRequest, String idempotencyKey,
+      Deadline deadline) {
+    requireTimeLeft(deadline, null);
+    requireBankAvailable();
+    Payment payment = newPendingPayment(paymentRequest, idempotencyKey);
+
+    // claim the key and persist PENDING in one step, before calling the bank
+    Optional<Payment> owner = paymentsRepository.claimIdempotencyKey(payment);
+    if (owner.isPresent()) {
+      return replay(owner.get(), idempotencyKey);
+    }
+
+    return callBank(payment, paymentRequest, deadline);
+  }
+
+  private CompletableFuture<PaymentResponse> processIdempotentAsync(PaymentRequest paymentRequest,
+      String idempotencyKey, Deadline deadline) {
+    requireTimeLeft(deadline, null);
+    requireBankAvailable();
+    Payment payment = newPendingPayment(paymentRequest, idempotencyKey);
+
+    Optional<Payment> owner = paymentsRepository.claimIdempotencyKey(payment);
+    if (owner.isPresent()) {
+      // replaying an unsettled payment asks the bank, a blocking call the caller's thread must not make
+      return CompletableFuture.supplyAsync(() -> replay(owner.get(), idempotencyKey), bankCallbacks);
+    }
+
+    return callBankAsync(payment, paymentRequest, deadline);
+  }
+
+  // the key was claimed by an earlier request
+  private PaymentResponse replay(Payment existingPayment, String idempotencyKey) {
+    LOG.info("Idempotency hit for key {}. Current status: {}", idempotencyKey, existingPayment.getStatus());
+
+    if (!existingPayment.getStatus().isFinal()) {
+      // an earlier attempt timed out or failed: the bank may have decided since, so ask it rather
+      // than report a stale status. The payment is never re-sent, the card details are not kept;
+      // if the bank cannot answer, background reconciliation keeps trying.
+      existingPayment = reconciler.resolve(existingPayment);
+    }
+    return mapToResponse(existingPayment, false);
+  }
+
+  private Payment newPendingPayment(PaymentRequest paymentRequest, String idempotencyKey) {
     UUID paymentId = UUID.randomUUID();
 
     LOG.info("Starting payment processing for payment {}: {}", paymentId, paymentRequest);
@@ -72,7 +379,7 @@ public class PaymentGatewayService {
     String lastFour = cardNumber.substring(cardNumber.length() - 4);
     String maskedNumber = Util.maskCardNumber(cardNumber);
 
-    Payment payment = Payment.builder()
+    return Payment.builder()
         .id(paymentId)
         .idempotencyKey(idempotencyKey)
         .status(PaymentStatus.PENDING)
@@ -84,25 +391,121 @@ public class PaymentGatewayService {
         .maskedCardNumber(maskedNumber)
         .createdAt(Instant.now())
         .build();
+  }
 
-    paymentsRepository.save(payment); // save before call bank
+  private PaymentResponse processNew(Payment payment, PaymentRequest paymentRequest, Deadline deadline) {
+    Payment pending = paymentsRepository.save(payment); // save before call bank
+    return callBank(pending, paymentRequest, deadline);
+  }
+
+  private PaymentResponse callBank(Payment payment, PaymentRequest paymentRequest, Deadline deadline) {
+    UUID paymentId = payment.getId();
+    try {
+      requireTimeLeft(deadline, paymentId);
+      return bankAnswered(payment, acquiringBank.process(paymentRequest, paymentId, deadline));
+    } catch (BankUnavailableException | DeadlineExceededException | EventProcessingException
+             | UpstreamTimeoutException e) {
+      throw bankCallFailed(payment, e);
+    }
+  }
 
+  private CompletableFuture<PaymentResponse> callBankAsync(Payment payment, PaymentRequest paymentRequest,
+      Deadline deadline) {
+    UUID paymentId = payment.getId();
+    CompletableFuture<BankResult> call;
     try {
-      BankResult result = acquiringBank.process(paymentRequest, paymentId);
+      requireTimeLeft(deadline, paymentId);
+      call = asyncAcquiringBank.process(paymentRequest, paymentId, deadline);
+    } catch (RuntimeException e) {
+      call = CompletableFuture.failedFuture(e);
+    }
+    // the bank answers on one of the client's few I/O threads, which must not wait for the store
+    return call.handleAsync((result, failure) -> {
+      if (failure != null) {
+        throw bankCallFailed(payment, failure instanceof CompletionException && failure.getCause() != null
+            ? failure.getCause() : failure);
+      }
+      return bankAnswered(payment, result);
+    }, bankCallbacks);
+  }
 
-      payment.setStatus(result.getStatus());
-      payment.setAuthorizationCode(result.getAuthorizationCode());
-      paymentsRepository.save(payment);
+  private PaymentResponse bankAnswered(Payment payment, BankResult result) {
+    Payment processed = transition(payment, result.getStatus(), result.getAuthorizationCode());
 
-      LOG.info("Payment {} successfully processed with status {}", paymentId, result.getStatus());
-      return mapToResponse(payment, false);
-    } catch (EventProcessingException e) {
-      LOG.error("Error processing payment {}", paymentId, e);
-      payment.setStatus(PaymentStatus.UNKNOWN);
-      paymentsRepository.save(payment);
+    LOG.info("Payment {} successfully processed with status {}", payment.getId(), processed.getStatus());
+    return mapToResponse(processed, false);
+  }
 
-      throw e;
+  // moves the payment on after a failed bank call and returns the exception to rethrow
+  private RuntimeException bankCallFailed(Payment payment, Throwable failure) {
+    UUID paymentId = payment.getId();
+    if (failure instanceof BankUnavailableException || failure instanceof DeadlineExceededException) {
+      // refused before reaching the bank, e.g. the breaker opened after requireBankAvailable
+      LOG.warn("Payment {} not sent to the bank: {}", paymentId, failure.getMessage());
+      transition(payment, PaymentStatus.REJECTED, null);
+    } else if (failure instanceof EventProcessingException) {
+      LOG.error("Error processing payment {}", paymentId, failure);
+      transition(payment, PaymentStatus.UNKNOWN, null);
+    } else if (failure instanceof UpstreamTimeoutException) {
+      // the bank may or may not have processed it; reconciliation will find out
+      LOG.error("Timeout processing payment {}", paymentId, failure);
+      transition(payment, PaymentStatus.UNKNOWN, null);
+    }
+    return failure instanceof RuntimeException runtime ? runtime
+        : new EventProcessingException("Unknow error processing payment", paymentId);
+  }
+
+  // the client has given up on the request, so there is no point in starting work for it
+  private void requireTimeLeft(Deadline deadline, UUID paymentId) {
+    if (deadline.isExpired(clock)) {
+      throw new DeadlineExceededException("Request deadline exceeded", paymentId);
+    }
+  }
+
+  // fail fast while the bank is known to be down, before any PENDING record is written
+  private void requireBankAvailable() {
+    if (!acquiringBank.isAvailable()) {
+      throw new BankUnavailableException("Bank is currently unavailable", null);
+    }
+  }
+
+  private Payment transition(Payment payment, PaymentStatus status, String authorizationCode) {
+    Payment next = payment.transitionTo(status, authorizationCode);
+    if (paymentsRepository.compareAndSet(payment.getId(), payment.getVersion(), next)) {
+      return next;
+    }
+    // someone else moved the payment on while the bank was called; their version stands
+    LOG.warn("Payment {} changed concurrently, not applying status {}", payment.getId(), status);
+    return paymentsRepository.get(payment.getId()).orElse(next);
+  }
+
+  private static Set<PaymentStatus> parseStatuses(List<String> statuses) {
+    if (statuses == null) {
+      return Set.of();
     }
+    try {
+      return statuses.stream().map(PaymentStatus::fromName).collect(Collectors.toUnmodifiableSet());
+    } catch (IllegalArgumentException e) {
+      throw new InvalidQueryException(e.getMessage());
+    }
+  }
+
+  private static PaymentCursor parseCursor(String cursor) {
+    if (cursor == null || cursor.isEmpty()) {
+      return null;
+    }
+    try {
+      return PaymentCursor.decode(cursor);
+    } catch (IllegalArgumentException e) {
+      throw new InvalidQueryException("Invalid cursor");
+    }
+  }
+
+  private RuntimeException followerTimedOut(String idempotencyKey) {
+    UUID paymentId = paymentsRepository.getByIdempotencyKey(idempotencyKey)
+        .map(Payment::getId)
+        .orElse(null);
+    return new UpstreamTimeoutException("Payment with the same idempotency key is still in progress", paymentId, null);
   }
 
   private PaymentResponse mapToResponse(Payment payment, boolean includeMaskedCardNumber) {
@@ -0,0 +1,170 @@
+package com.checkout.payment.gateway.application;
+
+import com.checkout.payment.gateway.domain.model.BankResult;
+import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentRequest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The accept-then-process pipeline behind {@link PaymentGatewayService#acceptPayment}. A payment
+ * already stored as PENDING goes through two stages, each with its own workers: dispatch workers
+ * call the bank and persistence workers store its answer, so a slow store never holds a bank
+ * connection.
+ * <p>
+ * The stages hand payments on through bounded ring buffers. A payment holds one of
+ * {@code capacity} slots from before it is stored until its outcome is, so the buffers never fill
+ * and a burst beyond the capacity is refused before anything is stored. The number of threads is
+ * fixed whatever the load.
+ * <p>
+ * The ids of submitted payments are kept until their outcome is stored, so that reconciliation
+ * leaves them alone, and the dispatcher may decline a payment that was settled while it queued.
+ */
+class PaymentPipeline {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PaymentPipeline.class);
+  private static final long SHUTDOWN_GRACE_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+  interface Dispatcher {
+    // null when the payment is no longer to be sent, and there is nothing to settle
+    BankResult dispatch(Payment payment, PaymentRequest request);
+  }
+
+  interface Settler {
+    // exactly one of result and failure is set
+    void settle(Payment payment, BankResult result, RuntimeException failure);
+  }
+
+  private record Accepted(Payment payment, PaymentRequest request) {
+  }
+
+  private record Dispatched(Payment payment, BankResult result, RuntimeException failure) {
+  }
+
+  private final int capacity;
+  private final Semaphore slots;
+  private final BlockingQueue<Accepted> accepted;
+  private final BlockingQueue<Dispatched> dispatched;
+  private final Dispatcher dispatcher;
+  private final Settler settler;
+  private final List<Thread> workers = new ArrayList<>();
+  private final Set<UUID> submitted = ConcurrentHashMap.newKeySet();
+
+  PaymentPipeline(PaymentGatewayProperties.Pipeline properties, Dispatcher dispatcher, Settler settler) {
+    this.capacity = properties.getCapacity();
+    this.slots = new Semaphore(capacity);
+    this.accepted = new ArrayBlockingQueue<>(capacity);
+    this.dispatched = new ArrayBlockingQueue<>(capacity);
+    this.dispatcher = dispatcher;
+    this.settler = settler;
+    start("payments-dispatch-", properties.getDispatchWorkers(), this::runDispatch);
+    start("payments-persist-", properties.getPersistenceWorkers(), this::runPersist);
+  }
+
+  // a slot for one payment, taken before it is stored; false when the pipeline is full
+  boolean tryReserve() {
+    return slots.tryAcquire();
+  }
+
+  // gives back a slot reserved for a payment that is not submitted after all
+  void release() {
+    slots.release();
+  }
+
+  // hands a stored payment to the dispatch stage, in the slot reserved for it
+  void submit(Payment payment, PaymentRequest request) {
+    submitted.add(payment.getId());
+    accepted.add(new Accepted(payment, request));
+  }
+
+  // submitted and its outcome not stored yet
+  boolean isInFlight(UUID paymentId) {
+    return submitted.contains(paymentId);
+  }
+
+  int inFlight() {
+    return capacity - slots.availablePermits();
+  }
+
+  /**
+   * Waits for the payments in the pipeline to be settled, then stops the workers. Payments still
+   * in it after the grace period stay PENDING, and reconciliation settles them.
+   */
+  void close() {
+    try {
+      if (!slots.tryAcquire(capacity, SHUTDOWN_GRACE_MILLIS, TimeUnit.MILLISECONDS)) {
+        LOG.warn("{} accepted payments left in the pipeline at shutdown", inFlight());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    workers.forEach(Thread::interrupt);
+  }
+
+  private void start(String name, int count, Runnable worker) {
+    for (int i = 0; i < count; i++) {
+      Thread thread = new Thread(worker, name + i);
+      thread.setDaemon(true);
+      thread.start();
+      workers.add(thread);
+    }
+  }
+
+  private void runDispatch() {
+    while (!Thread.currentThread().isInterrupted()) {
+      Accepted next;
+      try {
+        next = accepted.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      BankResult result = null;
+      RuntimeException failure = null;
+      try {
+        result = dispatcher.dispatch(next.payment(), next.request());
+      } catch (RuntimeException e) {
+        failure = e;
+      }
+      if (result == null && failure == null) {
+        done(next.payment());
+        continue;
+      }
+      // never full: the payment still holds its slot
+      dispatched.add(new Dispatched(next.payment(), result, failure));
+    }
+  }
+
+  private void runPersist() {
+    while (!Thread.currentThread().isInterrupted()) {
+      Dispatched next;
+      try {
+        next = dispatched.take();
+      } catch (InterruptedException e) {
+        return;
+      }
+      try {
+        settler.settle(next.payment(), next.result(), next.failure());
+      } catch (RuntimeException e) {
+        // left PENDING for reconciliation
+        LOG.error("Outcome of payment {} not stored", next.payment().getId(), e);
+      } finally {
+        done(next.payment());
+      }
+    }
+  }
+
+  private void done(Payment payment) {
+    submitted.remove(payment.getId());
+    slots.release();
+  }
+}
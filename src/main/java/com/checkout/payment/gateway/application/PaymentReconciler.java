@@ -0,0 +1,227 @@
+package com.checkout.payment.gateway.application;
+
+import com.checkout.payment.gateway.domain.model.BankResult;
+import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentCursor;
+import com.checkout.payment.gateway.domain.model.PaymentPage;
+import com.checkout.payment.gateway.domain.model.PaymentQuery;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.domain.model.PaymentsRepository;
+import com.checkout.payment.gateway.domain.service.BankStatusQuery;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Settles PENDING and UNKNOWN payments by asking the bank what it decided. Every run reads the
+ * next batch of stale payments from the status index, oldest first, and queries the bank for as
+ * many as the rate limit allows; the scan picks up where it left off on the next run. A payment
+ * the bank could not answer for is asked about again after an exponential, jittered backoff.
+ * <p>
+ * A PENDING payment the bank has no record of was never answered by it and is settled as
+ * REJECTED, but only once it is older than {@code staleAfter}. An UNKNOWN one may have reached the
+ * bank and been authorized all the same, so it stays UNKNOWN: it is asked about again after a
+ * backoff and counted in {@code payments.reconciliation.unmatched} for an operator to look into.
+ */
+@Component
+public class PaymentReconciler {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PaymentReconciler.class);
+  private static final Set<PaymentStatus> UNRESOLVED = Set.of(PaymentStatus.PENDING, PaymentStatus.UNKNOWN);
+
+  private record Backoff(int attempts, Instant nextAttemptAt) {
+  }
+
+  private final PaymentsRepository paymentsRepository;
+  private final BankStatusQuery bankStatusQuery;
+  private final PaymentGatewayProperties.Reconciliation properties;
+  private final Clock clock;
+
+  private final Map<UUID, Backoff> backoffs = new ConcurrentHashMap<>();
+  private final MeterRegistry meterRegistry;
+  private final AtomicInteger backlog = new AtomicInteger();
+  private final Counter queryFailures;
+  private final Counter unmatched;
+  // payments being processed elsewhere, which must not be settled behind their back
+  private volatile Predicate<UUID> inFlight = paymentId -> false;
+
+  // state of the scan, touched by the scheduler thread only
+  private PaymentCursor cursor;
+  private final Set<UUID> seenThisPass = new HashSet<>();
+  private double tokens;
+  private Instant lastRefill;
+
+  @Autowired
+  public PaymentReconciler(PaymentsRepository paymentsRepository, BankStatusQuery bankStatusQuery,
+      PaymentGatewayProperties properties, MeterRegistry meterRegistry) {
+    this(paymentsRepository, bankStatusQuery, properties, meterRegistry, Clock.systemUTC());
+  }
+
+  PaymentReconciler(PaymentsRepository paymentsRepository, BankStatusQuery bankStatusQuery,
+      PaymentGatewayProperties properties, MeterRegistry meterRegistry, Clock clock) {
+    this.paymentsRepository = paymentsRepository;
+    this.bankStatusQuery = bankStatusQuery;
+    this.properties = properties.getReconciliation();
+    this.meterRegistry = meterRegistry;
+    this.clock = clock;
+    this.tokens = this.properties.getBatchSize();
+    this.lastRefill = clock.instant();
+
+    meterRegistry.gauge("payments.reconciliation.backlog", backlog);
+    meterRegistry.gauge("payments.reconciliation.backing.off", backoffs, Map::size);
+    this.queryFailures = Counter.builder("payments.reconciliation.query.failures")
+        .description("Bank status queries that failed and were scheduled again")
+        .register(meterRegistry);
+    this.unmatched = Counter.builder("payments.reconciliation.unmatched")
+        .description("Lookups of UNKNOWN payments the bank had no record of; they are left UNKNOWN")
+        .register(meterRegistry);
+  }
+
+  /**
+   * Leaves alone the payments {@code inFlight} holds for: they are still on their way to the bank,
+   * and settling one now could reject a payment the bank is about to authorize.
+   */
+  void skipWhile(Predicate<UUID> inFlight) {
+    this.inFlight = inFlight;
+  }
+
+  @Scheduled(fixedDelayString = "#{@paymentGatewayProperties.reconciliation.interval.toMillis()}")
+  public void reconcile() {
+    if (!properties.isEnabled()) {
+      return;
+    }
+    Instant now = clock.instant();
+    refill(now);
+
+    PaymentPage page = paymentsRepository.find(PaymentQuery.builder()
+        .statuses(UNRESOLVED)
+        .to(now.minus(properties.getStaleAfter()))
+        .after(cursor)
+        .limit(properties.getBatchSize())
+        .build());
+    for (Payment payment : page.getPayments()) {
+      Backoff backoff = backoffs.get(payment.getId());
+      boolean due = (backoff == null || !backoff.nextAttemptAt().isAfter(now)) && !inFlight.test(payment.getId());
+      if (due && tokens < 1) {
+        // out of budget; the next run starts from this payment
+        return;
+      }
+      cursor = new PaymentCursor(payment.getCreatedAt(), payment.getId());
+      seenThisPass.add(payment.getId());
+      if (due) {
+        tokens--;
+        resolve(payment);
+      }
+    }
+    if (page.getNext() == null) {
+      endPass();
+    }
+  }
+
+  /**
+   * Asks the bank about one PENDING or UNKNOWN payment and stores its final status if it has one.
+   *
+   * @return the payment as stored afterwards, unchanged when the bank could not settle it
+   */
+  public Payment resolve(Payment payment) {
+    UUID paymentId = payment.getId();
+    if (inFlight.test(paymentId)) {
+      return payment;
+    }
+    Instant now = clock.instant();
+    Optional<BankResult> result;
+    try {
+      result = bankStatusQuery.findStatus(paymentId);
+    } catch (RuntimeException e) {
+      queryFailures.increment();
+      Backoff backoff = backOff(paymentId, now);
+      LOG.warn("Could not reconcile payment {} (attempt {}), retrying after {}: {}", paymentId,
+          backoff.attempts(), backoff.nextAttemptAt(), e.getMessage());
+      return payment;
+    }
+
+    PaymentStatus status;
+    String authorizationCode = null;
+    if (result.isPresent()) {
+      status = result.get().getStatus();
+      authorizationCode = result.get().getAuthorizationCode();
+    } else if (payment.getStatus() == PaymentStatus.UNKNOWN) {
+      // the call timed out or failed after it was sent: no record is not proof it was never made
+      unmatched.increment();
+      Backoff backoff = backOff(paymentId, now);
+      LOG.warn("Bank has no record of UNKNOWN payment {} (attempt {}), leaving it UNKNOWN until {}", paymentId,
+          backoff.attempts(), backoff.nextAttemptAt());
+      return payment;
+    } else if (payment.getCreatedAt().isBefore(now.minus(properties.getStaleAfter()))) {
+      // PENDING: the bank never answered it and has no record of it
+      status = PaymentStatus.REJECTED;
+    } else {
+      return payment;
+    }
+    if (!status.isFinal()) {
+      backOff(paymentId, now);
+      return payment;
+    }
+
+    backoffs.remove(paymentId);
+    Payment settled = payment.transitionTo(status, authorizationCode);
+    if (!paymentsRepository.compareAndSet(paymentId, payment.getVersion(), settled)) {
+      LOG.info("Payment {} changed while it was reconciled, keeping the stored version", paymentId);
+      return paymentsRepository.get(paymentId).orElse(payment);
+    }
+    LOG.info("Reconciled payment {} from {} to {}", paymentId, payment.getStatus(), status);
+    Timer.builder("payments.reconciliation.time.to.resolution")
+        .description("Time from creation until a PENDING or UNKNOWN payment was settled by reconciliation")
+        .tag("status", status.name().toLowerCase())
+        .register(meterRegistry)
+        .record(Duration.between(payment.getCreatedAt(), now));
+    return settled;
+  }
+
+  // every stale payment was visited: publish the backlog and forget payments settled elsewhere
+  private void endPass() {
+    backlog.set(seenThisPass.size());
+    backoffs.keySet().retainAll(seenThisPass);
+    seenThisPass.clear();
+    cursor = null;
+  }
+
+  private void refill(Instant now) {
+    double elapsedSeconds = Duration.between(lastRefill, now).toNanos() / 1e9;
+    tokens = Math.min(properties.getBatchSize(), tokens + elapsedSeconds * properties.getMaxQueriesPerSecond());
+    lastRefill = now;
+  }
+
+  // doubles per attempt up to maxBackoff, and waits a random half to full of that
+  private Backoff backOff(UUID paymentId, Instant now) {
+    return backoffs.compute(paymentId, (id, previous) -> {
+      int attempts = previous == null ? 1 : previous.attempts() + 1;
+      long capMillis = properties.getMaxBackoff().toMillis();
+      long delayMillis = Math.min(capMillis, properties.getInitialBackoff().toMillis() << Math.min(attempts - 1, 30));
+      long jittered = delayMillis / 2 + ThreadLocalRandom.current().nextLong(delayMillis / 2 + 1);
+      return new Backoff(attempts, now.plusMillis(jittered));
+    });
+  }
+
+  Optional<Instant> nextAttemptAt(UUID paymentId) {
+    return Optional.ofNullable(backoffs.get(paymentId)).map(Backoff::nextAttemptAt);
+  }
+}
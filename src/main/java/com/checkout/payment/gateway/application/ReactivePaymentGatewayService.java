@@ -0,0 +1,86 @@
+package com.checkout.payment.gateway.application;
+
+import com.checkout.payment.gateway.domain.model.Deadline;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentListResponse;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentLookupResponse;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentRequest;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * {@link PaymentGatewayService} for the reactive stack, where the calling thread is an event loop
+ * that must never block. Nothing is reimplemented: every call goes to the service, on a thread
+ * chosen by what it may block on.
+ * <p>
+ * Reads stay on the event loop when the store answers from memory; a store that touches the disk
+ * or queues writes behind a flusher is read on the bounded elastic scheduler. Creating a payment
+ * always starts on the bounded elastic scheduler, as a retry may ask the bank for the status
+ * synchronously and, without {@code payment-gateway.async.enabled}, the bank call itself blocks.
+ * With it, that thread is only held until the request is sent and the answer is handled on the
+ * bank callback executor.
+ */
+@Service
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactivePaymentGatewayService {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ReactivePaymentGatewayService.class);
+  private static final Set<String> MEMORY_STORES = Set.of("in-memory", "off-heap");
+
+  private final PaymentGatewayService service;
+  private final Scheduler reads;
+  private final Scheduler writes;
+
+  public ReactivePaymentGatewayService(PaymentGatewayService service, PaymentGatewayProperties properties) {
+    PaymentGatewayProperties.Repository repository = properties.getRepository();
+    boolean inMemory = MEMORY_STORES.contains(repository.getType()) && !repository.getWriteBehind().isEnabled();
+    this.service = service;
+    this.reads = inMemory ? Schedulers.immediate() : Schedulers.boundedElastic();
+    this.writes = Schedulers.boundedElastic();
+    LOG.info("Reactive payments read on the {}", inMemory ? "event loop" : "bounded elastic scheduler");
+  }
+
+  public Mono<PaymentResponse> getPaymentById(UUID id) {
+    return Mono.fromCallable(() -> service.getPaymentById(id)).subscribeOn(reads);
+  }
+
+  // only the first read happens on subscription; the wait itself holds no thread
+  public Mono<PaymentResponse> awaitPayment(UUID id, Duration wait) {
+    return Mono.fromFuture(() -> service.awaitPayment(id, wait)).subscribeOn(reads);
+  }
+
+  public Mono<PaymentListResponse> listPayments(List<String> statuses, Instant from, Instant to, String cursor,
+      int limit) {
+    return Mono.fromCallable(() -> service.listPayments(statuses, from, to, cursor, limit)).subscribeOn(reads);
+  }
+
+  public Mono<PaymentLookupResponse> lookupPayments(List<String> ids) {
+    return Mono.fromCallable(() -> service.lookupPayments(ids)).subscribeOn(reads);
+  }
+
+  public boolean acceptsThenProcesses() {
+    return service.acceptsThenProcesses();
+  }
+
+  // with payment-gateway.pipeline.enabled the payment is stored as PENDING and the bank called later
+  public Mono<PaymentResponse> processPayment(PaymentRequest paymentRequest, String idempotencyKey,
+      Deadline deadline) {
+    if (service.acceptsThenProcesses()) {
+      return Mono.fromCallable(() -> service.acceptPayment(paymentRequest, idempotencyKey, deadline))
+          .subscribeOn(writes);
+    }
+    return Mono.fromFuture(() -> service.processPaymentAsync(paymentRequest, idempotencyKey, deadline))
+        .subscribeOn(writes);
+  }
+}
@@ -0,0 +1,87 @@
+package com.checkout.payment.gateway.application;
+
+import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentChangeListener;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.stereotype.Component;
+
+/**
+ * Requests parked until a payment leaves PENDING and UNKNOWN, woken by the store's change
+ * notifications rather than by polling it. A waiter is a future, so a parked request holds no
+ * thread, only an entry here until it is completed or given up.
+ */
+@Component
+public class SettledPaymentWaiters implements PaymentChangeListener {
+
+  // each set is only changed inside the map's compute for its id
+  private final ConcurrentMap<UUID, Set<CompletableFuture<Payment>>> waiters = new ConcurrentHashMap<>();
+  private final AtomicInteger waiting = new AtomicInteger();
+  private final int maxWaiters;
+  private final Counter woken;
+  private final Counter refused;
+
+  public SettledPaymentWaiters(MeterRegistry meterRegistry, PaymentGatewayProperties properties) {
+    this.maxWaiters = properties.getLongPoll().getMaxWaiters();
+    this.woken = Counter.builder("payments.long.poll.woken")
+        .description("Parked requests woken by their payment settling")
+        .register(meterRegistry);
+    this.refused = Counter.builder("payments.long.poll.refused")
+        .description("Requests answered at once because max-waiters requests were parked already")
+        .register(meterRegistry);
+    meterRegistry.gauge("payments.long.poll.waiting", waiting);
+  }
+
+  /**
+   * A future completed with the first final version of the payment stored from now on, or empty
+   * when {@code maxWaiters} requests are parked already. Completing or cancelling it elsewhere,
+   * on a timeout for instance, gives its place up.
+   */
+  public Optional<CompletableFuture<Payment>> register(UUID id) {
+    if (waiting.incrementAndGet() > maxWaiters) {
+      waiting.decrementAndGet();
+      refused.increment();
+      return Optional.empty();
+    }
+    CompletableFuture<Payment> waiter = new CompletableFuture<>();
+    waiters.compute(id, (key, parked) -> {
+      Set<CompletableFuture<Payment>> set = parked == null ? new HashSet<>() : parked;
+      set.add(waiter);
+      return set;
+    });
+    waiter.whenComplete((payment, e) -> {
+      waiters.computeIfPresent(id, (key, parked) -> {
+        parked.remove(waiter);
+        return parked.isEmpty() ? null : parked;
+      });
+      waiting.decrementAndGet();
+    });
+    return Optional.of(waiter);
+  }
+
+  // runs on the writing thread; awaitPayment answers the woken requests on another
+  @Override
+  public void paymentChanged(Payment payment) {
+    if (!payment.getStatus().isFinal()) {
+      return;
+    }
+    Set<CompletableFuture<Payment>> parked = waiters.remove(payment.getId());
+    if (parked == null) {
+      return;
+    }
+    for (CompletableFuture<Payment> waiter : parked) {
+      if (waiter.complete(payment)) {
+        woken.increment();
+      }
+    }
+  }
+}
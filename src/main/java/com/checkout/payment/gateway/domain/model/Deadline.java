@@ -0,0 +1,48 @@
+package com.checkout.payment.gateway.domain.model;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Point in time by which the client needs an answer. Work still running for the request when it
+ * passes is wasted, so it is carried down to the bank call and bounds every wait on the way.
+ */
+public record Deadline(Instant at) {
+
+  private static final Deadline NONE = new Deadline(Instant.MAX);
+
+  public static Deadline none() {
+    return NONE;
+  }
+
+  public static Deadline after(Duration timeout, Clock clock) {
+    return new Deadline(clock.instant().plus(timeout));
+  }
+
+  public boolean isBounded() {
+    return !at.equals(Instant.MAX);
+  }
+
+  public boolean isExpired(Clock clock) {
+    return isBounded() && !clock.instant().isBefore(at);
+  }
+
+  // time left, zero once expired
+  public Duration remaining(Clock clock) {
+    if (!isBounded()) {
+      return ChronoUnit.FOREVER.getDuration();
+    }
+    Duration remaining = Duration.between(clock.instant(), at);
+    return remaining.isNegative() ? Duration.ZERO : remaining;
+  }
+
+  /**
+   * The shorter of {@code timeout} and the time left.
+   */
+  public Duration cap(Duration timeout, Clock clock) {
+    Duration remaining = remaining(clock);
+    return remaining.compareTo(timeout) < 0 ? remaining : timeout;
+  }
+}
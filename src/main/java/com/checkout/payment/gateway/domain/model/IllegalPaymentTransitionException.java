@@ -0,0 +1,14 @@
+package com.checkout.payment.gateway.domain.model;
+
+import java.util.UUID;
+import lombok.Getter;
+
+@Getter
+public class IllegalPaymentTransitionException extends RuntimeException {
+  private final UUID paymentId;
+
+  public IllegalPaymentTransitionException(UUID paymentId, PaymentStatus from, PaymentStatus to) {
+    super("Payment " + paymentId + " cannot move from " + from + " to " + to);
+    this.paymentId = paymentId;
+  }
+}
@@ -1,36 +1,58 @@
 package com.checkout.payment.gateway.domain.model;
 
-import lombok.AllArgsConstructor;
 import lombok.Builder;
-import lombok.Getter;
-import lombok.NoArgsConstructor;
-import lombok.Setter;
+import lombok.Value;
 import java.time.Instant;
 import java.util.UUID;
 
-@Getter
-@Setter
-@Builder
-@NoArgsConstructor
-@AllArgsConstructor
+/**
+ * Immutable snapshot of a payment. State changes produce a new version through
+ * {@link #transitionTo}, which the repository applies with
+ * {@link PaymentsRepository#compareAndSet}, so a reader can never observe a half-updated record.
+ */
+@Value
+@Builder(toBuilder = true)
 public class Payment {
-  private UUID id;
-  private PaymentStatus status;
-  private Long amount;
-  private String currency;
+  UUID id;
+  PaymentStatus status;
+  Long amount;
+  String currency;
 
-  private String cardLastFour;
-  private Integer cardExpiryMonth;
-  private Integer cardExpiryYear;
+  String cardLastFour;
+  Integer cardExpiryMonth;
+  Integer cardExpiryYear;
 
-  private String maskedCardNumber;
+  String maskedCardNumber;
 
-  private String authorizationCode;
+  String authorizationCode;
 
-  private String idempotencyKey;
+  String idempotencyKey;
 
-  private Instant createdAt;
-  private Instant updatedAt;
+  Instant createdAt;
+  Instant updatedAt;
+
+  // 0 when created, incremented by every transition
+  long version;
+
+  /**
+   * The next version of this payment, moved to {@code next}.
+   *
+   * @throws IllegalPaymentTransitionException when the lifecycle does not allow the move
+   */
+  public Payment transitionTo(PaymentStatus next, String authorizationCode) {
+    if (status == null || !status.canTransitionTo(next)) {
+      throw new IllegalPaymentTransitionException(id, status, next);
+    }
+    return toBuilder()
+        .status(next)
+        .authorizationCode(authorizationCode)
+        .version(version + 1)
+        .build();
+  }
+
+  public Payment withUpdatedAt(Instant updatedAt) {
+    return toBuilder().updatedAt(updatedAt).build();
+  }
 
   @Override
   public boolean equals(Object o) {
@@ -39,4 +61,9 @@ public class Payment {
     Payment payment = (Payment) o;
     return id != null && id.equals(payment.id);
   }
+
+  @Override
+  public int hashCode() {
+    return id == null ? 0 : id.hashCode();
+  }
 }
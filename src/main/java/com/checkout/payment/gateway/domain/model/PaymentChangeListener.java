@@ -0,0 +1,9 @@
+package com.checkout.payment.gateway.domain.model;
+
+/**
+ * Told about every version of a payment the store accepts, on the thread that wrote it, once the
+ * write is visible to readers. Must not block or write to the store.
+ */
+public interface PaymentChangeListener {
+  void paymentChanged(Payment payment);
+}
@@ -0,0 +1,31 @@
+package com.checkout.payment.gateway.domain.model;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Position in the creation-ordered listing of payments: the last payment of the previous page.
+ * Clients get it as an opaque string.
+ */
+public record PaymentCursor(Instant createdAt, UUID id) {
+
+  public String encode() {
+    String raw = createdAt.getEpochSecond() + ":" + createdAt.getNano() + ":" + id;
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * @throws IllegalArgumentException when {@code encoded} was not produced by {@link #encode()}
+   */
+  public static PaymentCursor decode(String encoded) {
+    String[] parts = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8).split(":", 3);
+    if (parts.length != 3) {
+      throw new IllegalArgumentException("Malformed cursor");
+    }
+    return new PaymentCursor(
+        Instant.ofEpochSecond(Long.parseLong(parts[0]), Long.parseLong(parts[1])),
+        UUID.fromString(parts[2]));
+  }
+}
@@ -0,0 +1,11 @@
+package com.checkout.payment.gateway.domain.model;
+
+import java.util.List;
+import lombok.Value;
+
+@Value
+public class PaymentPage {
+  List<Payment> payments;
+  // null on the last page
+  PaymentCursor next;
+}
@@ -0,0 +1,21 @@
+package com.checkout.payment.gateway.domain.model;
+
+import java.time.Instant;
+import java.util.Set;
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Payments in any of {@code statuses} (all statuses when empty) created in {@code [from, to)},
+ * in creation order, starting after {@code after}.
+ */
+@Value
+@Builder
+public class PaymentQuery {
+  @Builder.Default
+  Set<PaymentStatus> statuses = Set.of();
+  Instant from;
+  Instant to;
+  PaymentCursor after;
+  int limit;
+}
@@ -19,4 +19,30 @@ public enum PaymentStatus {
   public String getName() {
     return this.name;
   }
+
+  /**
+   * Case-insensitive lookup by either the display name or the constant name.
+   */
+  public static PaymentStatus fromName(String name) {
+    for (PaymentStatus status : values()) {
+      if (status.name.equalsIgnoreCase(name)) {
+        return status;
+      }
+    }
+    throw new IllegalArgumentException("Unknown payment status: " + name);
+  }
+
+  // final payments never change again; PENDING and UNKNOWN still await an answer from the bank
+  public boolean isFinal() {
+    return this == AUTHORIZED || this == DECLINED || this == REJECTED;
+  }
+
+  // PENDING -> any other status, UNKNOWN -> final; the lifecycle is acyclic
+  public boolean canTransitionTo(PaymentStatus next) {
+    return switch (this) {
+      case PENDING -> next != PENDING;
+      case UNKNOWN -> next.isFinal();
+      default -> false;
+    };
+  }
 }
@@ -1,10 +1,62 @@
 package com.checkout.payment.gateway.domain.model;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 
 public interface PaymentsRepository {
+  /**
+   * Stores the payment as-is, normally a newly created one; later versions go through
+   * {@link #compareAndSet}. If its idempotency key already belongs to another payment, nothing is
+   * stored and that payment is returned instead.
+   */
   Payment save(Payment payment);
+
+  /**
+   * Replaces the payment with {@code newRecord} if its stored version is still
+   * {@code expectedVersion}. {@code newRecord} must come from {@link Payment#transitionTo}.
+   *
+   * @return false when the payment is missing or has moved on since {@code expectedVersion}
+   * @throws IllegalPaymentTransitionException when the stored status cannot move to the new one
+   */
+  boolean compareAndSet(UUID id, long expectedVersion, Payment newRecord);
+
   Optional<Payment> get(UUID id);
   Optional<Payment> getByIdempotencyKey(String key);
+
+  /**
+   * The stored payments among {@code ids}, by id; ids that are not stored are left out. Stores
+   * that can read several records in one round-trip, or under one lock, override this.
+   */
+  default Map<UUID, Payment> getAll(Collection<UUID> ids) {
+    Map<UUID, Payment> payments = new HashMap<>();
+    for (UUID id : ids) {
+      get(id).ifPresent(payment -> payments.put(id, payment));
+    }
+    return payments;
+  }
+
+  /**
+   * Binds the payment's idempotency key to it and stores the payment as one atomic step.
+   *
+   * @return the payment that already owns the key, or empty when this payment won the claim
+   */
+  Optional<Payment> claimIdempotencyKey(Payment payment);
+
+  /**
+   * Runs a listing query through the status and creation-time index, at a cost proportional to
+   * the size of the page rather than the size of the store.
+   */
+  PaymentPage find(PaymentQuery query);
+
+  /**
+   * Stores already-validated versions of payments that own their idempotency key, if any, without
+   * a version check; used to flush writes accepted elsewhere. Stores that can persist several
+   * records in one round-trip override this.
+   */
+  default void saveAll(Collection<Payment> payments) {
+    payments.forEach(this::save);
+  }
 }
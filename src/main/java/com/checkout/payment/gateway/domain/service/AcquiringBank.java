@@ -1,9 +1,27 @@
 package com.checkout.payment.gateway.domain.service;
 
 import com.checkout.payment.gateway.domain.model.BankResult;
+import com.checkout.payment.gateway.domain.model.Deadline;
 import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentRequest;
 import java.util.UUID;
 
 public interface AcquiringBank {
   BankResult process(PaymentRequest request, UUID paymentId);
+
+  /**
+   * Like {@link #process(PaymentRequest, UUID)}, giving up once {@code deadline} passes: a call
+   * not yet sent fails with {@code DeadlineExceededException}, one in progress times out. Clients
+   * that cannot cut a call short ignore the deadline.
+   */
+  default BankResult process(PaymentRequest request, UUID paymentId, Deadline deadline) {
+    return process(request, paymentId);
+  }
+
+  /**
+   * False while calls are known to be refused without reaching the bank, so callers can fail
+   * fast before doing any work for the payment. A true answer is no guarantee.
+   */
+  default boolean isAvailable() {
+    return true;
+  }
 }
@@ -0,0 +1,23 @@
+package com.checkout.payment.gateway.domain.service;
+
+import com.checkout.payment.gateway.domain.model.BankResult;
+import com.checkout.payment.gateway.domain.model.Deadline;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentRequest;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variant of {@link AcquiringBank}: no thread waits while the bank answers. The
+ * future fails with the same exceptions {@link AcquiringBank#process} throws.
+ */
+public interface AsyncAcquiringBank {
+  CompletableFuture<BankResult> process(PaymentRequest request, UUID paymentId);
+
+  /**
+   * Like {@link #process(PaymentRequest, UUID)}, giving up once {@code deadline} passes, as
+   * {@link AcquiringBank#process(PaymentRequest, UUID, Deadline)} does.
+   */
+  default CompletableFuture<BankResult> process(PaymentRequest request, UUID paymentId, Deadline deadline) {
+    return process(request, paymentId);
+  }
+}
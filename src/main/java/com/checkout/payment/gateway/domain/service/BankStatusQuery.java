@@ -0,0 +1,17 @@
+package com.checkout.payment.gateway.domain.service;
+
+import com.checkout.payment.gateway.domain.model.BankResult;
+import java.util.Optional;
+import java.util.UUID;
+
+public interface BankStatusQuery {
+  /**
+   * What the bank decided for a payment sent with this id.
+   *
+   * @return empty when the bank has no record of the payment
+   * @throws com.checkout.payment.gateway.infrastructure.exception.EventProcessingException or
+   *     {@link com.checkout.payment.gateway.infrastructure.exception.UpstreamTimeoutException}
+   *     when the bank could not be asked
+   */
+  Optional<BankResult> findStatus(UUID paymentId);
+}
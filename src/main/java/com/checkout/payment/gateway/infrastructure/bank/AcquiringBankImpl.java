@@ -1,79 +1,96 @@
 package com.checkout.payment.gateway.infrastructure.bank;
 
 import com.checkout.payment.gateway.domain.model.BankResult;
-import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.domain.model.Deadline;
 import com.checkout.payment.gateway.domain.service.AcquiringBank;
+import com.checkout.payment.gateway.infrastructure.exception.DeadlineExceededException;
 import com.checkout.payment.gateway.infrastructure.exception.EventProcessingException;
 import com.checkout.payment.gateway.infrastructure.exception.UpstreamTimeoutException;
-import com.checkout.payment.gateway.interfaces.payment.web.dto.BankPaymentRequest;
-import com.checkout.payment.gateway.interfaces.payment.web.dto.BankPaymentResponse;
 import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentRequest;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.web.client.RestTemplateBuilder;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.ResponseEntity;
-import org.springframework.stereotype.Service;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.time.Clock;
 import java.util.UUID;
 
+/**
+ * Blocking client for one acquirer. The instances the application routes payments through are
+ * built by {@code BankConfiguration}, one per configured acquirer, each with an
+ * {@link AdaptiveTimeout} when {@code acquiring-bank.adaptive-timeout} is enabled.
+ */
 @Slf4j
-@Service
 public class AcquiringBankImpl implements AcquiringBank {
   private final RestTemplate restTemplate;
+  private final AdaptiveTimeout readTimeout;
+  private final Clock clock = Clock.systemUTC();
 
+  // the first configured acquirer, or the bank at acquiring-bank.url
+  @Autowired
   public AcquiringBankImpl(RestTemplateBuilder builder, AcquiringBankProperties properties) {
-    log.info("initializing AcquiringBank with properties {}", properties);
-    this.restTemplate = builder
-        .rootUri(properties.getUrl())
-        .setConnectTimeout(properties.getConnTimeout())
-        .setReadTimeout(properties.getReadTimeout())
-        .build();
+    this(builder, properties.resolveAcquirers().get(0));
   }
 
-  @Override
-  public BankResult process(PaymentRequest request, UUID paymentId) {
-    try {
-      BankPaymentRequest bankPaymentRequest = BankPaymentRequest.builder()
-          .cardNumber(request.getCardNumber())
-          .currency(request.getCurrency())
-          .amount(request.getAmount())
-          .cvv(request.getCvv())
-          .expiryDate(String.format("%02d/%d", request.getExpiryMonth(), request.getExpiryYear()))
-          .build();
+  // with the acquirer's fixed read timeout
+  public AcquiringBankImpl(RestTemplateBuilder builder, AcquiringBankProperties.Acquirer acquirer) {
+    log.info("initializing AcquiringBank with acquirer {}", acquirer);
+    this.restTemplate = BankHttpClients.restTemplate(builder, acquirer);
+    this.readTimeout = null;
+  }
 
-      // set payment id for bank to trace or dedup
-      HttpHeaders headers = new HttpHeaders();
-      headers.set("X-Payment-ID", paymentId.toString());
+  public AcquiringBankImpl(RestTemplateBuilder builder, AcquiringBankProperties.Acquirer acquirer,
+      AdaptiveTimeout readTimeout) {
+    log.info("initializing AcquiringBank with acquirer {} and an adaptive read timeout", acquirer);
+    this.restTemplate = BankHttpClients.restTemplate(builder, acquirer, readTimeout::current);
+    this.readTimeout = readTimeout;
+  }
 
-      HttpEntity<BankPaymentRequest> entity = new HttpEntity<>(bankPaymentRequest, headers);
+  @Override
+  public BankResult process(PaymentRequest request, UUID paymentId) {
+    return process(request, paymentId, Deadline.none());
+  }
 
+  // the connect and read timeouts are cut down to the time left before the deadline
+  @Override
+  public BankResult process(PaymentRequest request, UUID paymentId, Deadline deadline) {
+    if (deadline.isExpired(clock)) {
+      throw new DeadlineExceededException("Deadline passed before the bank was called", paymentId);
+    }
+    long start = System.nanoTime();
+    try {
       log.trace("Sending POST for payment {}", paymentId);
-      ResponseEntity<BankPaymentResponse> response = restTemplate.postForEntity(
-          "/payments",
-          entity,
-          BankPaymentResponse.class
-      );
+      BankResult result = BankHttpClients.withDeadline(deadline, () -> restTemplate.execute("/payments",
+          HttpMethod.POST,
+          httpRequest -> {
+            // set payment id for bank to trace or dedup
+            httpRequest.getHeaders().set("X-Payment-ID", paymentId.toString());
+            httpRequest.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+            writeBody(request, httpRequest);
+          },
+          AcquiringBankImpl::readBody));
+      recordLatency(System.nanoTime() - start, deadline);
 
-      if(response.getStatusCode().is2xxSuccessful() && response.getBody() != null) {
-        boolean authorized = response.getBody().isAuthorized();
-        log.info("Bank response for payment {}: authorized={}", paymentId, authorized);
-        return BankResult.builder()
-            .status(authorized? PaymentStatus.AUTHORIZED: PaymentStatus.DECLINED)
-            .authorizationCode(response.getBody().getAuthorizationCode())
-            .build();
+      if (result != null) {
+        log.info("Bank response for payment {}: status={}", paymentId, result.getStatus());
+        return result;
       }
 
       // call bank fail
-      log.error("Bank returned {} for payment {}", response.getStatusCode(), paymentId);
-      return BankResult.builder().status(PaymentStatus.REJECTED).build();
+      log.error("Bank returned no body for payment {}", paymentId);
+      return BankPaymentMapper.rejected();
 
     } catch (HttpClientErrorException e) {
       log.error("Error calling bank for payment {}, bank returned 4xx", paymentId, e);
-      return BankResult.builder().status(PaymentStatus.REJECTED).build();
+      return BankPaymentMapper.rejected();
     } catch (HttpServerErrorException e) {
       // IMPORTANT: undetermined status !! we don't know the payment success or not
       log.error("Bank server error for payment {}, received {}", paymentId, e.getStatusCode(), e);
@@ -81,6 +98,10 @@ public class AcquiringBankImpl implements AcquiringBank {
     } catch (ResourceAccessException e) {
       // timeout, undetermined status !!
       log.error("Bank request timeout for payment {}", paymentId, e);
+      if (readTimeout != null && e.getCause() instanceof SocketTimeoutException) {
+        // recorded at the timeout, so a timeout that is too tight pushes itself up
+        recordLatency(readTimeout.current().toNanos(), deadline);
+      }
       throw new UpstreamTimeoutException("Bank network issue", paymentId, e);
     } catch (Exception e) {
       // unknow error
@@ -88,4 +109,30 @@ public class AcquiringBankImpl implements AcquiringBank {
       throw new EventProcessingException("Unknow bank error", paymentId);
     }
   }
+
+  // only 2xx answers and read timeouts are recorded: a fast failure (refused connection, 4xx, 5xx)
+  // says nothing about how long the bank takes to answer and would pull the timeout down
+  private void recordLatency(long nanos, Deadline deadline) {
+    // neither does a call the deadline cut short
+    if (readTimeout != null && !deadline.isExpired(clock)) {
+      readTimeout.record(nanos);
+    }
+  }
+
+  private static void writeBody(PaymentRequest request, ClientHttpRequest httpRequest) throws IOException {
+    byte[] buffer = BankWireCodec.POOL.acquire();
+    int length = buffer.length;
+    try {
+      length = BankWireCodec.encode(request, buffer);
+      httpRequest.getHeaders().setContentLength(length);
+      httpRequest.getBody().write(buffer, 0, length);
+    } finally {
+      BankWireCodec.POOL.release(buffer, length);
+    }
+  }
+
+  // only called for 2xx responses, errors are raised before by the default error handler
+  static BankResult readBody(ClientHttpResponse response) throws IOException {
+    return BankWireCodec.read(response.getBody());
+  }
 }
@@ -1,11 +1,19 @@
 package com.checkout.payment.gateway.infrastructure.bank;
 
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.DecimalMax;
+import jakarta.validation.constraints.DecimalMin;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.validation.annotation.Validated;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 @Data
 @Validated
@@ -13,9 +21,219 @@ import java.time.Duration;
 @ConfigurationProperties(prefix="acquiring-bank")
 public class AcquiringBankProperties {
 
+  // the bank, unless acquirers are listed; also where the non-blocking client goes
   @NotNull
   private String url;
 
+  // defaults for every acquirer; with adaptive-timeout on, the read timeout until enough calls were seen
   private Duration readTimeout = Duration.ofSeconds(10);
   private Duration connTimeout = Duration.ofSeconds(10);
+
+  // when set, payments are routed across these instead of url
+  @Valid
+  private List<Acquirer> acquirers = new ArrayList<>();
+
+  @Valid
+  private Routing routing = new Routing();
+
+  @Valid
+  private Pool pool = new Pool();
+
+  @Valid
+  private CircuitBreaker circuitBreaker = new CircuitBreaker();
+
+  @Valid
+  private Bulkhead bulkhead = new Bulkhead();
+
+  @Valid
+  private AdaptiveTimeout adaptiveTimeout = new AdaptiveTimeout();
+
+  @Data
+  public static class Acquirer {
+    @NotBlank
+    private String name;
+
+    @NotBlank
+    private String url;
+
+    // inherited from acquiring-bank.read-timeout and conn-timeout when not set
+    private Duration readTimeout;
+    private Duration connTimeout;
+
+    // connections in this acquirer's own pool
+    @Min(1)
+    private int maxConnections = 100;
+
+    // relative share of traffic when acquirers perform alike
+    @DecimalMin("0.01")
+    private double weight = 1.0;
+  }
+
+  @Data
+  public static class Routing {
+    // weight of each new latency or error sample in the moving averages
+    @DecimalMin("0.01")
+    @DecimalMax("1.0")
+    private double smoothing = 0.1;
+
+    // how much worse than its latency an acquirer's score gets per unit of error rate
+    @DecimalMin("0.0")
+    private double errorPenalty = 10.0;
+
+    // an acquirer's error rate halves every this long without calls, so one that failed is tried again
+    @NotNull
+    private Duration errorHalfLife = Duration.ofSeconds(30);
+  }
+
+  /**
+   * The acquirers to route across, with timeouts filled in from the defaults; the bank at
+   * {@code url}, named "default", when none are listed.
+   */
+  public List<Acquirer> resolveAcquirers() {
+    if (acquirers.isEmpty()) {
+      Acquirer single = new Acquirer();
+      single.setName("default");
+      single.setUrl(url);
+      return List.of(withDefaults(single));
+    }
+    return acquirers.stream().map(this::withDefaults).toList();
+  }
+
+  private Acquirer withDefaults(Acquirer acquirer) {
+    Acquirer resolved = new Acquirer();
+    resolved.setName(acquirer.getName());
+    resolved.setUrl(acquirer.getUrl());
+    resolved.setReadTimeout(acquirer.getReadTimeout() == null ? readTimeout : acquirer.getReadTimeout());
+    resolved.setConnTimeout(acquirer.getConnTimeout() == null ? connTimeout : acquirer.getConnTimeout());
+    resolved.setMaxConnections(acquirer.getMaxConnections());
+    resolved.setWeight(acquirer.getWeight());
+    return resolved;
+  }
+
+  // connection pool of the non-blocking client
+  @Data
+  public static class Pool {
+    @Min(1)
+    private int maxConnections = 200;
+
+    // idle connections are kept open this long and then evicted
+    @NotNull
+    private Duration keepAlive = Duration.ofSeconds(30);
+
+    // negotiated through ALPN, so it only applies when the bank is reached over TLS
+    private boolean http2 = true;
+
+    @Min(1)
+    private int ioThreads = Runtime.getRuntime().availableProcessors();
+  }
+
+  @Data
+  public static class CircuitBreaker {
+    private boolean enabled = true;
+
+    // outcomes of the last calls the rates are computed over
+    @Min(1)
+    private int slidingWindowSize = 50;
+
+    // no decision is made on fewer calls than this
+    @Min(1)
+    private int minimumCalls = 20;
+
+    // percentages of the window at which the breaker opens
+    @Min(1)
+    @Max(100)
+    private int failureRateThreshold = 50;
+
+    @Min(1)
+    @Max(100)
+    private int slowCallRateThreshold = 80;
+
+    @NotNull
+    private Duration slowCallDuration = Duration.ofSeconds(3);
+
+    // how long an open breaker refuses calls before probing the bank again
+    @NotNull
+    private Duration waitInOpen = Duration.ofSeconds(10);
+
+    @Min(1)
+    private int permittedCallsInHalfOpen = 5;
+  }
+
+  // caps concurrent calls to the bank; calls over the cap wait up to maxWait, then fail fast
+  @Data
+  public static class Bulkhead {
+    // hard ceiling; with an adaptive limit, the actual cap moves between minLimit and this
+    @Min(1)
+    private int maxConcurrentCalls = 100;
+
+    @NotNull
+    private Duration maxWait = Duration.ofMillis(50);
+
+    // calls already waiting beyond this are refused without queueing
+    @Min(0)
+    private int maxQueued = 200;
+
+    @Valid
+    private AdaptiveLimit adaptive = new AdaptiveLimit();
+  }
+
+  // read timeout derived from recent bank latency: percentile times multiplier, between floor and ceiling
+  @Data
+  public static class AdaptiveTimeout {
+    private boolean enabled = true;
+
+    @DecimalMin("50.0")
+    @DecimalMax("100.0")
+    private double percentile = 99.9;
+
+    @DecimalMin("1.0")
+    private double multiplier = 2.0;
+
+    @NotNull
+    private Duration floor = Duration.ofMillis(500);
+
+    @NotNull
+    private Duration ceiling = Duration.ofSeconds(10);
+
+    // latencies older than this are forgotten; the timeout is recomputed every window / buckets
+    @NotNull
+    private Duration window = Duration.ofMinutes(1);
+
+    @Min(1)
+    private int buckets = 12;
+
+    // below this many calls in the window the configured read timeout applies
+    @Min(1)
+    private int minSamples = 100;
+  }
+
+  // gradient limit: shrinks when bank RTT rises above its long-term average or calls fail
+  @Data
+  public static class AdaptiveLimit {
+    private boolean enabled = true;
+
+    @Min(1)
+    private int initialLimit = 20;
+
+    @Min(1)
+    private int minLimit = 4;
+
+    // how far the latest RTT may exceed the long-term average before the limit shrinks
+    @DecimalMin("1.0")
+    private double rttTolerance = 1.5;
+
+    // weight of each new estimate against the current limit
+    @DecimalMin("0.01")
+    @DecimalMax("1.0")
+    private double smoothing = 0.2;
+
+    // multiplicative decrease applied on a failed or timed-out call
+    @DecimalMin("0.1")
+    @DecimalMax("1.0")
+    private double backoffRatio = 0.9;
+
+    // number of samples the long-term RTT average spans
+    @Min(1)
+    private int longWindow = 600;
+  }
 }
@@ -0,0 +1,140 @@
+package com.checkout.payment.gateway.infrastructure.bank;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Read timeout that follows the bank's latency. Calls are recorded, wait-free, into an HDR
+ * histogram; every {@code window / buckets} the interval is rotated into a ring covering the last
+ * {@code window}, and the timeout becomes the configured percentile of that window times the
+ * multiplier, clamped between floor and ceiling. With fewer than {@code minSamples} calls in the
+ * window, the acquirer's configured read timeout applies.
+ * <p>
+ * A call that timed out is recorded at the timeout, so a timeout that is too tight pushes itself up.
+ */
+public class AdaptiveTimeout {
+
+  // microseconds, two significant digits: one percent is plenty for a timeout and keeps each
+  // histogram at a few kilobytes
+  private static final int SIGNIFICANT_DIGITS = 2;
+
+  private final double percentile;
+  private final double multiplier;
+  private final long floorNanos;
+  private final long ceilingNanos;
+  private final long initialNanos;
+  private final int minSamples;
+  private final long bucketMillis;
+  private final long highestMicros;
+  private final Clock clock;
+
+  private final Recorder recorder;
+  private final ReentrantLock lock = new ReentrantLock();
+
+  // guarded by lock
+  private final Histogram[] ring;
+  private final Histogram window;
+  private Histogram interval;
+  private int next;
+  private long rotatedAt;
+
+  private volatile long timeoutNanos;
+  private volatile long percentileNanos = -1;
+
+  public AdaptiveTimeout(String acquirer, Duration initial, AcquiringBankProperties.AdaptiveTimeout properties,
+      MeterRegistry meterRegistry) {
+    this(acquirer, initial, properties, meterRegistry, Clock.systemUTC());
+  }
+
+  AdaptiveTimeout(String acquirer, Duration initial, AcquiringBankProperties.AdaptiveTimeout properties,
+      MeterRegistry meterRegistry, Clock clock) {
+    this.percentile = properties.getPercentile();
+    this.multiplier = properties.getMultiplier();
+    this.floorNanos = properties.getFloor().toNanos();
+    this.ceilingNanos = Math.max(floorNanos, properties.getCeiling().toNanos());
+    this.initialNanos = clamp(initial.toNanos());
+    this.minSamples = properties.getMinSamples();
+    this.bucketMillis = Math.max(1, properties.getWindow().toMillis() / properties.getBuckets());
+    this.highestMicros = Math.max(2, TimeUnit.NANOSECONDS.toMicros(ceilingNanos) * 2);
+    this.clock = clock;
+
+    this.recorder = new Recorder(highestMicros, SIGNIFICANT_DIGITS);
+    this.ring = new Histogram[properties.getBuckets()];
+    for (int i = 0; i < ring.length; i++) {
+      ring[i] = new Histogram(highestMicros, SIGNIFICANT_DIGITS);
+    }
+    this.window = new Histogram(highestMicros, SIGNIFICANT_DIGITS);
+    this.rotatedAt = clock.millis();
+    this.timeoutNanos = initialNanos;
+
+    Gauge.builder("bank.client.read.timeout", this, t -> t.timeoutNanos / 1e6)
+        .description("Read timeout currently applied to bank calls")
+        .baseUnit("milliseconds")
+        .tag("acquirer", acquirer)
+        .register(meterRegistry);
+    Gauge.builder("bank.client.latency.percentile", this, t -> t.percentileNanos < 0 ? -1 : t.percentileNanos / 1e6)
+        .description("Bank latency at the percentile the read timeout is derived from; -1 until enough calls were made")
+        .baseUnit("milliseconds")
+        .tag("acquirer", acquirer)
+        .tag("percentile", Double.toString(percentile))
+        .register(meterRegistry);
+  }
+
+  public void record(long latencyNanos) {
+    long micros = TimeUnit.NANOSECONDS.toMicros(latencyNanos);
+    recorder.recordValue(Math.max(1, Math.min(highestMicros, micros)));
+  }
+
+  public Duration current() {
+    if (clock.millis() - rotatedAt >= bucketMillis && lock.tryLock()) {
+      // whoever comes first recomputes; the others keep the value in place
+      try {
+        rotate();
+      } finally {
+        lock.unlock();
+      }
+    }
+    return Duration.ofNanos(timeoutNanos);
+  }
+
+  private void rotate() {
+    long now = clock.millis();
+    long elapsed = now - rotatedAt;
+    if (elapsed < bucketMillis) {
+      return;
+    }
+    // buckets that passed without a rotation count as empty
+    for (long skipped = Math.min(elapsed / bucketMillis, ring.length) - 1; skipped > 0; skipped--) {
+      ring[next].reset();
+      next = (next + 1) % ring.length;
+    }
+    interval = recorder.getIntervalHistogram(interval);
+    ring[next].reset();
+    ring[next].add(interval);
+    next = (next + 1) % ring.length;
+    rotatedAt = now;
+
+    window.reset();
+    for (Histogram bucket : ring) {
+      window.add(bucket);
+    }
+    if (window.getTotalCount() < minSamples) {
+      percentileNanos = -1;
+      timeoutNanos = initialNanos;
+      return;
+    }
+    long observed = TimeUnit.MICROSECONDS.toNanos(window.getValueAtPercentile(percentile));
+    percentileNanos = observed;
+    timeoutNanos = clamp((long) (observed * multiplier));
+  }
+
+  private long clamp(long nanos) {
+    return Math.max(floorNanos, Math.min(ceilingNanos, nanos));
+  }
+}
@@ -0,0 +1,253 @@
+package com.checkout.payment.gateway.infrastructure.bank;
+
+import com.checkout.payment.gateway.domain.model.BankResult;
+import com.checkout.payment.gateway.domain.model.Deadline;
+import com.checkout.payment.gateway.domain.service.AsyncAcquiringBank;
+import com.checkout.payment.gateway.infrastructure.exception.DeadlineExceededException;
+import com.checkout.payment.gateway.infrastructure.exception.EventProcessingException;
+import com.checkout.payment.gateway.infrastructure.exception.UpstreamTimeoutException;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentRequest;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.hc.client5.http.async.methods.SimpleHttpRequest;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleRequestBuilder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.function.ToIntFunction;
+
+/**
+ * {@link AsyncAcquiringBank} on a non-blocking HTTP client: a few I/O reactor threads serve every
+ * in-flight call, over a bounded pool of keep-alive connections. HTTP/2 is negotiated when the
+ * bank is reached over TLS, so concurrent calls share one multiplexed connection.
+ * <p>
+ * Responses map exactly as in {@link AcquiringBankImpl}: 4xx is REJECTED, 5xx fails with
+ * {@link EventProcessingException} and any I/O failure or timeout with {@link UpstreamTimeoutException}.
+ * One client per acquirer, built by the bank configuration behind the acquirer's breaker and
+ * limit; it is not a bean of its own.
+ */
+@Slf4j
+public class AsyncAcquiringBankImpl implements AsyncAcquiringBank {
+
+  private final String paymentsUri;
+  private final Duration connTimeout;
+  private final Duration readTimeout;
+  // null for the fixed readTimeout
+  private final AdaptiveTimeout adaptiveTimeout;
+  private final Clock clock = Clock.systemUTC();
+  private final PoolingAsyncClientConnectionManager connectionManager;
+  private final CloseableHttpAsyncClient client;
+
+  // the first configured acquirer
+  public AsyncAcquiringBankImpl(AcquiringBankProperties properties, MeterRegistry meterRegistry) {
+    this(properties.resolveAcquirers().get(0), properties.getPool(), null, meterRegistry);
+  }
+
+  public AsyncAcquiringBankImpl(AcquiringBankProperties.Acquirer acquirer, AcquiringBankProperties.Pool pool,
+      MeterRegistry meterRegistry) {
+    this(acquirer, pool, null, meterRegistry);
+  }
+
+  /**
+   * @param readTimeout the acquirer's adaptive read timeout, shared with its blocking client
+   */
+  public AsyncAcquiringBankImpl(AcquiringBankProperties.Acquirer acquirer, AcquiringBankProperties.Pool pool,
+      AdaptiveTimeout readTimeout, MeterRegistry meterRegistry) {
+    this.paymentsUri = acquirer.getUrl() + "/payments";
+    this.connTimeout = acquirer.getConnTimeout();
+    this.readTimeout = acquirer.getReadTimeout();
+    this.adaptiveTimeout = readTimeout;
+    this.connectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+        .setMaxConnTotal(pool.getMaxConnections())
+        // there is a single route, the acquirer
+        .setMaxConnPerRoute(pool.getMaxConnections())
+        .setDefaultConnectionConfig(ConnectionConfig.custom()
+            .setConnectTimeout(Timeout.of(connTimeout))
+            .build())
+        .setDefaultTlsConfig(TlsConfig.custom()
+            .setVersionPolicy(pool.isHttp2() ? HttpVersionPolicy.NEGOTIATE : HttpVersionPolicy.FORCE_HTTP_1)
+            .build())
+        .build();
+    this.client = HttpAsyncClients.custom()
+        .setConnectionManager(connectionManager)
+        .setIOReactorConfig(IOReactorConfig.custom().setIoThreadCount(pool.getIoThreads()).build())
+        .setDefaultRequestConfig(RequestConfig.custom()
+            .setConnectionRequestTimeout(Timeout.of(connTimeout))
+            .setResponseTimeout(Timeout.of(this.readTimeout))
+            .build())
+        .setKeepAliveStrategy((response, context) -> TimeValue.of(pool.getKeepAlive()))
+        .evictIdleConnections(TimeValue.of(pool.getKeepAlive()))
+        // a payment is never re-sent behind the caller's back, and a redirected POST is not followed,
+        // as with the blocking client
+        .disableAutomaticRetries()
+        .disableRedirectHandling()
+        .build();
+    this.client.start();
+
+    poolGauge(meterRegistry, acquirer.getName(), "leased", PoolStats::getLeased);
+    poolGauge(meterRegistry, acquirer.getName(), "available", PoolStats::getAvailable);
+    poolGauge(meterRegistry, acquirer.getName(), "pending", PoolStats::getPending);
+    log.info("initializing AsyncAcquiringBank with acquirer {} and pool {}", acquirer, pool);
+  }
+
+  @Override
+  public CompletableFuture<BankResult> process(PaymentRequest request, UUID paymentId) {
+    return process(request, paymentId, Deadline.none());
+  }
+
+  @Override
+  public CompletableFuture<BankResult> process(PaymentRequest request, UUID paymentId, Deadline deadline) {
+    if (deadline.isExpired(clock)) {
+      return CompletableFuture.failedFuture(
+          new DeadlineExceededException("Request deadline exceeded before calling the bank", paymentId));
+    }
+    CompletableFuture<BankResult> result = new CompletableFuture<>();
+    SimpleHttpRequest httpRequest;
+    byte[] buffer = BankWireCodec.POOL.acquire();
+    int length = buffer.length;
+    try {
+      // the client keeps the body until it is sent, so it gets its own copy of the pooled buffer
+      length = BankWireCodec.encode(request, buffer);
+      byte[] body = Arrays.copyOf(buffer, length);
+      httpRequest = SimpleRequestBuilder.post(paymentsUri)
+          // set payment id for bank to trace or dedup
+          .setHeader("X-Payment-ID", paymentId.toString())
+          .setBody(body, ContentType.APPLICATION_JSON)
+          .build();
+      if (deadline.isBounded() || adaptiveTimeout != null) {
+        Duration responseTimeout = adaptiveTimeout != null ? adaptiveTimeout.current() : readTimeout;
+        httpRequest.setConfig(RequestConfig.custom()
+            .setConnectionRequestTimeout(timeout(deadline.cap(connTimeout, clock)))
+            .setResponseTimeout(timeout(deadline.cap(responseTimeout, clock)))
+            .build());
+      }
+    } catch (IllegalArgumentException e) {
+      log.error("Unknown error calling bank for payment {}", paymentId, e);
+      return CompletableFuture.failedFuture(new EventProcessingException("Unknown bank error", paymentId));
+    } finally {
+      BankWireCodec.POOL.release(buffer, length);
+    }
+
+    log.trace("Sending POST for payment {}", paymentId);
+    long start = System.nanoTime();
+    client.execute(httpRequest, new FutureCallback<>() {
+      @Override
+      public void completed(SimpleHttpResponse response) {
+        if (response.getCode() >= 200 && response.getCode() < 300) {
+          recordLatency(System.nanoTime() - start, deadline);
+        }
+        try {
+          result.complete(toResult(response, paymentId));
+        } catch (RuntimeException e) {
+          result.completeExceptionally(e);
+        }
+      }
+
+      @Override
+      public void failed(Exception e) {
+        if (adaptiveTimeout != null && e instanceof SocketTimeoutException) {
+          // recorded at the timeout, so a timeout that is too tight pushes itself up
+          recordLatency(adaptiveTimeout.current().toNanos(), deadline);
+        }
+        result.completeExceptionally(toFailure(e, paymentId));
+      }
+
+      @Override
+      public void cancelled() {
+        log.error("Bank request for payment {} was cancelled", paymentId);
+        result.completeExceptionally(new EventProcessingException("Bank request cancelled", paymentId));
+      }
+    });
+    return result;
+  }
+
+  public void close() {
+    client.close(CloseMode.GRACEFUL);
+  }
+
+  // as in AcquiringBankImpl, only 2xx answers and response timeouts, and never a call the deadline
+  // cut short
+  private void recordLatency(long nanos, Deadline deadline) {
+    if (adaptiveTimeout != null && !deadline.isExpired(clock)) {
+      adaptiveTimeout.record(nanos);
+    }
+  }
+
+  private BankResult toResult(SimpleHttpResponse response, UUID paymentId) {
+    int status = response.getCode();
+    if (status >= 200 && status < 300) {
+      byte[] body = response.getBodyBytes();
+      BankResult result;
+      try {
+        result = body == null ? null : BankWireCodec.decode(body, 0, body.length);
+      } catch (IllegalArgumentException e) {
+        log.error("Unknown error calling bank for payment {}", paymentId, e);
+        throw new EventProcessingException("Unknown bank error", paymentId);
+      }
+      if (result == null) {
+        // call bank fail
+        log.error("Bank returned {} without a body for payment {}", status, paymentId);
+        return BankPaymentMapper.rejected();
+      }
+      log.info("Bank response for payment {}: status={}", paymentId, result.getStatus());
+      return result;
+    }
+    if (status >= 500) {
+      // IMPORTANT: undetermined status !! we don't know the payment success or not
+      log.error("Bank server error for payment {}, received {}", paymentId, status);
+      throw new EventProcessingException("Bank server error: " + status, paymentId);
+    }
+    if (status >= 400) {
+      log.error("Error calling bank for payment {}, bank returned {}", paymentId, status);
+    } else {
+      log.error("Bank returned {} for payment {}", status, paymentId);
+    }
+    return BankPaymentMapper.rejected();
+  }
+
+  private static RuntimeException toFailure(Exception e, UUID paymentId) {
+    if (e instanceof IOException || e instanceof TimeoutException) {
+      // timeout, connection or pool lease failure: undetermined status !!
+      log.error("Bank request timeout for payment {}", paymentId, e);
+      return new UpstreamTimeoutException("Bank network issue", paymentId, e);
+    }
+    log.error("Unknown error calling bank for payment {}", paymentId, e);
+    return new EventProcessingException("Unknown bank error", paymentId);
+  }
+
+  // a zero timeout means none to HttpClient
+  private static Timeout timeout(Duration duration) {
+    return Timeout.ofMilliseconds(Math.max(1, duration.toMillis()));
+  }
+
+  private void poolGauge(MeterRegistry meterRegistry, String acquirer, String state,
+      ToIntFunction<PoolStats> value) {
+    Gauge.builder("bank.client.connections", connectionManager, manager -> value.applyAsInt(manager.getTotalStats()))
+        .description("Connections in the bank client's pool, or requests waiting for one")
+        .tag("state", state)
+        .tag("acquirer", acquirer)
+        .register(meterRegistry);
+  }
+}
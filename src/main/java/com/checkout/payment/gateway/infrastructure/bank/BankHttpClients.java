@@ -0,0 +1,109 @@
+package com.checkout.payment.gateway.infrastructure.bank;
+
+import com.checkout.payment.gateway.domain.model.Deadline;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.core5.http.io.SocketConfig;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.web.client.RestTemplate;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Blocking clients for one acquirer, each over a connection pool of its own so a slow acquirer
+ * cannot hold the connections another one needs.
+ * <p>
+ * The response timeout is looked up for every request, so it can follow an {@link AdaptiveTimeout}.
+ * A request made inside {@link #withDeadline} has its pool, connect and response timeouts cut
+ * down to the time left before the deadline.
+ */
+final class BankHttpClients {
+
+  // RestTemplate offers no per-call timeouts; the request factory runs on the calling thread
+  private static final ThreadLocal<Deadline> DEADLINE = new ThreadLocal<>();
+
+  private BankHttpClients() {
+  }
+
+  static RestTemplate restTemplate(RestTemplateBuilder builder, AcquiringBankProperties.Acquirer acquirer) {
+    return restTemplate(builder, acquirer, acquirer::getReadTimeout);
+  }
+
+  /**
+   * @param readTimeout asked for the response timeout of every request, so it may change over time
+   */
+  static RestTemplate restTemplate(RestTemplateBuilder builder, AcquiringBankProperties.Acquirer acquirer,
+      Supplier<Duration> readTimeout) {
+    return builder
+        .rootUri(acquirer.getUrl())
+        .requestFactory(() -> requestFactory(acquirer, readTimeout, Clock.systemUTC()))
+        .build();
+  }
+
+  static <T> T withDeadline(Deadline deadline, Supplier<T> call) {
+    if (!deadline.isBounded()) {
+      return call.get();
+    }
+    DEADLINE.set(deadline);
+    try {
+      return call.get();
+    } finally {
+      DEADLINE.remove();
+    }
+  }
+
+  @SuppressWarnings("deprecation") // a per-request connect timeout is still honoured, ConnectionConfig is per pool
+  private static HttpComponentsClientHttpRequestFactory requestFactory(AcquiringBankProperties.Acquirer acquirer,
+      Supplier<Duration> readTimeout, Clock clock) {
+    HttpComponentsClientHttpRequestFactory factory = new HttpComponentsClientHttpRequestFactory(httpClient(acquirer));
+    factory.setHttpContextFactory((method, uri) -> {
+      Deadline deadline = DEADLINE.get();
+      if (deadline == null) {
+        deadline = Deadline.none();
+      }
+      HttpClientContext context = HttpClientContext.create();
+      context.setRequestConfig(RequestConfig.custom()
+          .setConnectionRequestTimeout(timeout(deadline.cap(acquirer.getConnTimeout(), clock)))
+          .setConnectTimeout(timeout(deadline.cap(acquirer.getConnTimeout(), clock)))
+          .setResponseTimeout(timeout(deadline.cap(readTimeout.get(), clock)))
+          .build());
+      return context;
+    });
+    return factory;
+  }
+
+  // a zero timeout means none to HttpClient
+  private static Timeout timeout(Duration duration) {
+    return Timeout.ofMilliseconds(Math.max(1, duration.toMillis()));
+  }
+
+  private static CloseableHttpClient httpClient(AcquiringBankProperties.Acquirer acquirer) {
+    Timeout connTimeout = Timeout.of(acquirer.getConnTimeout());
+    Timeout readTimeout = Timeout.of(acquirer.getReadTimeout());
+    return HttpClients.custom()
+        .setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+            .setMaxConnTotal(acquirer.getMaxConnections())
+            // there is a single route, the acquirer
+            .setMaxConnPerRoute(acquirer.getMaxConnections())
+            .setDefaultConnectionConfig(ConnectionConfig.custom()
+                .setConnectTimeout(connTimeout)
+                .setSocketTimeout(readTimeout)
+                .build())
+            .setDefaultSocketConfig(SocketConfig.custom().setSoTimeout(readTimeout).build())
+            .build())
+        .setDefaultRequestConfig(RequestConfig.custom()
+            .setConnectionRequestTimeout(connTimeout)
+            .setResponseTimeout(readTimeout)
+            .build())
+        // a payment is never re-sent behind the caller's back
+        .disableAutomaticRetries()
+        .build();
+  }
+}
@@ -0,0 +1,24 @@
+package com.checkout.payment.gateway.infrastructure.bank;
+
+import com.checkout.payment.gateway.domain.model.BankResult;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+
+// shared by the blocking and the non-blocking bank clients
+final class BankPaymentMapper {
+
+  private static final BankResult REJECTED = BankResult.builder().status(PaymentStatus.REJECTED).build();
+
+  private BankPaymentMapper() {
+  }
+
+  static BankResult toResult(boolean authorized, String authorizationCode) {
+    return BankResult.builder()
+        .status(authorized ? PaymentStatus.AUTHORIZED : PaymentStatus.DECLINED)
+        .authorizationCode(authorizationCode)
+        .build();
+  }
+
+  static BankResult rejected() {
+    return REJECTED;
+  }
+}
@@ -0,0 +1,88 @@
+package com.checkout.payment.gateway.infrastructure.bank;
+
+import com.checkout.payment.gateway.domain.model.BankResult;
+import com.checkout.payment.gateway.domain.service.BankStatusQuery;
+import com.checkout.payment.gateway.infrastructure.exception.EventProcessingException;
+import com.checkout.payment.gateway.infrastructure.exception.UpstreamTimeoutException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpMethod;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Looks a payment up by the {@code X-Payment-ID} it was sent with, {@code GET /payments/{id}}.
+ * With several acquirers, a payment may have been routed to any of them, so each is asked in
+ * turn until one knows it. A 404 is taken as the acquirer not knowing the payment. The simulator
+ * keeps no payments and its lookup stub answers 404 to every id, so against it no lookup ever
+ * finds a payment; that says nothing about what it did with one.
+ */
+@Slf4j
+@Service
+public class BankStatusQueryImpl implements BankStatusQuery {
+  private final Map<String, RestTemplate> restTemplates = new LinkedHashMap<>();
+
+  public BankStatusQueryImpl(RestTemplateBuilder builder, AcquiringBankProperties properties) {
+    for (AcquiringBankProperties.Acquirer acquirer : properties.resolveAcquirers()) {
+      restTemplates.put(acquirer.getName(), BankHttpClients.restTemplate(builder, acquirer));
+    }
+  }
+
+  /**
+   * @return the first acquirer's record of the payment; empty only when every acquirer answered
+   *     that it has none, a failed query is rethrown otherwise
+   */
+  @Override
+  public Optional<BankResult> findStatus(UUID paymentId) {
+    RuntimeException failure = null;
+    for (Map.Entry<String, RestTemplate> acquirer : restTemplates.entrySet()) {
+      try {
+        Optional<BankResult> result = findStatus(acquirer.getKey(), acquirer.getValue(), paymentId);
+        if (result.isPresent()) {
+          return result;
+        }
+      } catch (RuntimeException e) {
+        if (failure == null) {
+          failure = e;
+        }
+      }
+    }
+    if (failure != null) {
+      // one of the acquirers that could not answer may have the payment
+      throw failure;
+    }
+    return Optional.empty();
+  }
+
+  private Optional<BankResult> findStatus(String acquirer, RestTemplate restTemplate, UUID paymentId) {
+    try {
+      BankResult result = restTemplate.execute("/payments/{id}", HttpMethod.GET, null,
+          AcquiringBankImpl::readBody, paymentId);
+      if (result == null) {
+        throw new EventProcessingException("Empty bank status response", paymentId);
+      }
+      log.info("Bank status for payment {} from {}: {}", paymentId, acquirer, result.getStatus());
+      return Optional.of(result);
+    } catch (HttpClientErrorException.NotFound e) {
+      log.info("Acquirer {} answered 404 for payment {}", acquirer, paymentId);
+      return Optional.empty();
+    } catch (HttpClientErrorException | HttpServerErrorException e) {
+      log.warn("Bank status query for payment {} to {} failed with {}", paymentId, acquirer, e.getStatusCode());
+      throw new EventProcessingException("Bank status query failed: " + e.getStatusCode(), paymentId);
+    } catch (ResourceAccessException e) {
+      log.warn("Bank status query timeout for payment {} to {}", paymentId, acquirer, e);
+      throw new UpstreamTimeoutException("Bank network issue", paymentId, e);
+    } catch (RestClientException e) {
+      log.warn("Unreadable bank status for payment {} from {}", paymentId, acquirer, e);
+      throw new EventProcessingException("Unknown bank error", paymentId);
+    }
+  }
+}
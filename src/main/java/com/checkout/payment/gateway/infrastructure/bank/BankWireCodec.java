@@ -0,0 +1,370 @@
+package com.checkout.payment.gateway.infrastructure.bank;
+
+import com.checkout.payment.gateway.domain.model.BankResult;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentRequest;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The bank's JSON wire format, written straight from {@link PaymentRequest} and read straight
+ * into {@link BankResult}, without an object mapper or intermediate DTOs:
+ * <pre>
+ * request:  {"card_number":"...","expiry_date":"MM/YYYY","currency":"...","amount":123,"cvv":"..."}
+ * response: {"authorized":true,"authorization_code":"..."}
+ * </pre>
+ * Messages are encoded into and read from {@link #POOL} buffers. Decoding allocates nothing but
+ * the authorization code and the result; unknown response fields are skipped, and a missing
+ * {@code authorized} reads as false.
+ */
+final class BankWireCodec {
+
+  static final int BUFFER_SIZE = 4096;
+  static final BufferPool POOL = new BufferPool(Runtime.getRuntime().availableProcessors() * 4, BUFFER_SIZE);
+
+  private static final byte[] CARD_NUMBER = ascii("{\"card_number\":");
+  private static final byte[] EXPIRY_DATE = ascii(",\"expiry_date\":");
+  private static final byte[] CURRENCY = ascii(",\"currency\":");
+  private static final byte[] AMOUNT = ascii(",\"amount\":");
+  private static final byte[] CVV = ascii(",\"cvv\":");
+  private static final byte[] NULL = ascii("null");
+  private static final byte[] TRUE = ascii("true");
+  private static final byte[] FALSE = ascii("false");
+  private static final byte[] LONG_MIN = ascii(Long.toString(Long.MIN_VALUE));
+  private static final byte[] HEX = ascii("0123456789abcdef");
+
+  private static final byte[] AUTHORIZED = ascii("authorized");
+  private static final byte[] AUTHORIZATION_CODE = ascii("authorization_code");
+
+  private BankWireCodec() {
+  }
+
+  /**
+   * Writes the bank request for {@code request} at the start of {@code buffer}.
+   *
+   * @return the number of bytes written
+   * @throws IllegalArgumentException when the request does not fit in the buffer
+   */
+  static int encode(PaymentRequest request, byte[] buffer) {
+    try {
+      int p = put(buffer, 0, CARD_NUMBER);
+      p = putString(buffer, p, request.getCardNumber());
+      p = put(buffer, p, EXPIRY_DATE);
+      p = putExpiry(buffer, p, request.getExpiryMonth(), request.getExpiryYear());
+      p = put(buffer, p, CURRENCY);
+      p = putString(buffer, p, request.getCurrency());
+      p = put(buffer, p, AMOUNT);
+      p = request.getAmount() == null ? put(buffer, p, NULL) : putLong(buffer, p, request.getAmount());
+      p = put(buffer, p, CVV);
+      p = putString(buffer, p, request.getCvv());
+      buffer[p++] = '}';
+      return p;
+    } catch (ArrayIndexOutOfBoundsException e) {
+      throw new IllegalArgumentException("Bank request does not fit in " + buffer.length + " bytes");
+    }
+  }
+
+  /**
+   * Reads and decodes a whole response body through a pooled buffer.
+   *
+   * @return null when the body is empty or JSON {@code null}
+   * @throws IllegalArgumentException when the body is not a JSON object or does not fit in a buffer
+   */
+  static BankResult read(InputStream body) throws IOException {
+    byte[] buffer = POOL.acquire();
+    int length = buffer.length;
+    try {
+      length = body.readNBytes(buffer, 0, buffer.length);
+      if (length == buffer.length && body.read() != -1) {
+        throw new IllegalArgumentException("Bank response larger than " + buffer.length + " bytes");
+      }
+      return decode(buffer, 0, length);
+    } finally {
+      POOL.release(buffer, length);
+    }
+  }
+
+  /**
+   * Reads a bank response.
+   *
+   * @return null when the body is empty or JSON {@code null}
+   * @throws IllegalArgumentException when the body is not a JSON object
+   */
+  static BankResult decode(byte[] body, int offset, int length) {
+    int end = offset + length;
+    int p = skipWhitespace(body, offset, end);
+    if (p == end || matches(body, p, end, NULL)) {
+      return null;
+    }
+    expect(body, p++, end, '{');
+
+    boolean authorized = false;
+    String authorizationCode = null;
+    p = skipWhitespace(body, p, end);
+    if (p < end && body[p] == '}') {
+      return BankPaymentMapper.toResult(false, null);
+    }
+    while (true) {
+      expect(body, p, end, '"');
+      int keyStart = p + 1;
+      p = skipString(body, p, end);
+      int keyLength = p - 1 - keyStart;
+      p = skipWhitespace(body, p, end);
+      expect(body, p++, end, ':');
+      p = skipWhitespace(body, p, end);
+
+      if (equals(body, keyStart, keyLength, AUTHORIZED)) {
+        if (matches(body, p, end, TRUE)) {
+          authorized = true;
+          p += TRUE.length;
+        } else if (matches(body, p, end, FALSE)) {
+          authorized = false;
+          p += FALSE.length;
+        } else if (matches(body, p, end, NULL)) {
+          authorized = false;
+          p += NULL.length;
+        } else {
+          throw malformed(p);
+        }
+      } else if (equals(body, keyStart, keyLength, AUTHORIZATION_CODE)) {
+        if (matches(body, p, end, NULL)) {
+          authorizationCode = null;
+          p += NULL.length;
+        } else {
+          expect(body, p, end, '"');
+          int valueEnd = skipString(body, p, end);
+          authorizationCode = readString(body, p + 1, valueEnd - 1);
+          p = valueEnd;
+        }
+      } else {
+        p = skipValue(body, p, end);
+      }
+
+      p = skipWhitespace(body, p, end);
+      if (p < end && body[p] == ',') {
+        p = skipWhitespace(body, p + 1, end);
+        continue;
+      }
+      expect(body, p, end, '}');
+      // anything after the object is ignored, as with a default object mapper
+      return BankPaymentMapper.toResult(authorized, authorizationCode);
+    }
+  }
+
+  private static int put(byte[] buffer, int p, byte[] bytes) {
+    System.arraycopy(bytes, 0, buffer, p, bytes.length);
+    return p + bytes.length;
+  }
+
+  private static int putString(byte[] buffer, int p, String value) {
+    if (value == null) {
+      return put(buffer, p, NULL);
+    }
+    buffer[p++] = '"';
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c < 0x80) {
+        if (c == '"' || c == '\\') {
+          buffer[p++] = '\\';
+          buffer[p++] = (byte) c;
+        } else if (c < 0x20) {
+          buffer[p++] = '\\';
+          buffer[p++] = 'u';
+          buffer[p++] = '0';
+          buffer[p++] = '0';
+          buffer[p++] = HEX[c >> 4];
+          buffer[p++] = HEX[c & 0xF];
+        } else {
+          buffer[p++] = (byte) c;
+        }
+      } else if (c < 0x800) {
+        buffer[p++] = (byte) (0xC0 | c >> 6);
+        buffer[p++] = (byte) (0x80 | c & 0x3F);
+      } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+          && Character.isLowSurrogate(value.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, value.charAt(++i));
+        buffer[p++] = (byte) (0xF0 | codePoint >> 18);
+        buffer[p++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+        buffer[p++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+        buffer[p++] = (byte) (0x80 | codePoint & 0x3F);
+      } else if (Character.isSurrogate(c)) {
+        // unpaired surrogate, replaced as the JDK's encoder does
+        buffer[p++] = '?';
+      } else {
+        buffer[p++] = (byte) (0xE0 | c >> 12);
+        buffer[p++] = (byte) (0x80 | c >> 6 & 0x3F);
+        buffer[p++] = (byte) (0x80 | c & 0x3F);
+      }
+    }
+    buffer[p++] = '"';
+    return p;
+  }
+
+  // "%02d/%d", or null when either part is missing
+  private static int putExpiry(byte[] buffer, int p, Integer month, Integer year) {
+    if (month == null || year == null) {
+      return put(buffer, p, NULL);
+    }
+    buffer[p++] = '"';
+    if (month >= 0 && month < 10) {
+      buffer[p++] = '0';
+    }
+    p = putLong(buffer, p, month);
+    buffer[p++] = '/';
+    p = putLong(buffer, p, year);
+    buffer[p++] = '"';
+    return p;
+  }
+
+  private static int putLong(byte[] buffer, int p, long value) {
+    if (value == Long.MIN_VALUE) {
+      return put(buffer, p, LONG_MIN);
+    }
+    if (value < 0) {
+      buffer[p++] = '-';
+      value = -value;
+    }
+    int digits = 1;
+    for (long rest = value / 10; rest > 0; rest /= 10) {
+      digits++;
+    }
+    int end = p + digits;
+    for (int i = end - 1; i >= p; i--) {
+      buffer[i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    return end;
+  }
+
+  private static int skipWhitespace(byte[] body, int p, int end) {
+    while (p < end && (body[p] == ' ' || body[p] == '\n' || body[p] == '\r' || body[p] == '\t')) {
+      p++;
+    }
+    return p;
+  }
+
+  // p is at the opening quote; returns the position after the closing one
+  private static int skipString(byte[] body, int p, int end) {
+    for (p++; p < end; p++) {
+      if (body[p] == '\\') {
+        p++;
+      } else if (body[p] == '"') {
+        return p + 1;
+      }
+    }
+    throw malformed(end);
+  }
+
+  private static int skipValue(byte[] body, int p, int end) {
+    if (p >= end) {
+      throw malformed(p);
+    }
+    if (body[p] == '"') {
+      return skipString(body, p, end);
+    }
+    if (body[p] == '{' || body[p] == '[') {
+      int depth = 0;
+      while (p < end) {
+        byte b = body[p];
+        if (b == '"') {
+          p = skipString(body, p, end);
+          continue;
+        }
+        if (b == '{' || b == '[') {
+          depth++;
+        } else if ((b == '}' || b == ']') && --depth == 0) {
+          return p + 1;
+        }
+        p++;
+      }
+      throw malformed(end);
+    }
+    // number or literal
+    int start = p;
+    while (p < end && body[p] != ',' && body[p] != '}' && body[p] != ']' && body[p] != ' '
+        && body[p] != '\n' && body[p] != '\r' && body[p] != '\t') {
+      p++;
+    }
+    if (p == start) {
+      throw malformed(p);
+    }
+    return p;
+  }
+
+  // decodes the content of a string between from and to, the quotes excluded
+  private static String readString(byte[] body, int from, int to) {
+    int escape = from;
+    while (escape < to && body[escape] != '\\') {
+      escape++;
+    }
+    if (escape == to) {
+      return new String(body, from, to - from, StandardCharsets.UTF_8);
+    }
+    // escapes are not expected from the bank, so the slow path may allocate
+    StringBuilder value = new StringBuilder(new String(body, from, escape - from, StandardCharsets.UTF_8));
+    int p = escape;
+    while (p < to) {
+      if (body[p] != '\\') {
+        int next = p;
+        while (next < to && body[next] != '\\') {
+          next++;
+        }
+        value.append(new String(body, p, next - p, StandardCharsets.UTF_8));
+        p = next;
+        continue;
+      }
+      if (p + 1 >= to) {
+        throw malformed(p);
+      }
+      byte escaped = body[p + 1];
+      switch (escaped) {
+        case '"', '\\', '/' -> value.append((char) escaped);
+        case 'b' -> value.append('\b');
+        case 'f' -> value.append('\f');
+        case 'n' -> value.append('\n');
+        case 'r' -> value.append('\r');
+        case 't' -> value.append('\t');
+        case 'u' -> {
+          if (p + 6 > to) {
+            throw malformed(p);
+          }
+          value.append((char) Integer.parseInt(new String(body, p + 2, 4, StandardCharsets.US_ASCII), 16));
+          p += 4;
+        }
+        default -> throw malformed(p);
+      }
+      p += 2;
+    }
+    return value.toString();
+  }
+
+  private static boolean equals(byte[] body, int from, int length, byte[] expected) {
+    if (length != expected.length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (body[from + i] != expected[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean matches(byte[] body, int p, int end, byte[] expected) {
+    return end - p >= expected.length && equals(body, p, expected.length, expected);
+  }
+
+  private static void expect(byte[] body, int p, int end, char expected) {
+    if (p >= end || body[p] != expected) {
+      throw malformed(p);
+    }
+  }
+
+  private static IllegalArgumentException malformed(int position) {
+    return new IllegalArgumentException("Malformed bank response at byte " + position);
+  }
+
+  private static byte[] ascii(String value) {
+    return value.getBytes(StandardCharsets.US_ASCII);
+  }
+}
@@ -0,0 +1,54 @@
+package com.checkout.payment.gateway.infrastructure.bank;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed set of reusable byte arrays for encoding and reading bank messages. A caller that finds
+ * every slot taken gets a fresh array, which is pooled on release if a slot has freed up.
+ * Taking and returning a buffer allocates nothing, and no buffer is tied to a thread. Buffers
+ * carry card numbers and CVVs, so the used range is zeroed on release.
+ */
+final class BufferPool {
+
+  private final int bufferSize;
+  private final AtomicReferenceArray<byte[]> slots;
+
+  BufferPool(int buffers, int bufferSize) {
+    this.bufferSize = bufferSize;
+    this.slots = new AtomicReferenceArray<>(buffers);
+    for (int i = 0; i < buffers; i++) {
+      slots.set(i, new byte[bufferSize]);
+    }
+  }
+
+  byte[] acquire() {
+    // start at a thread-dependent slot so concurrent callers rarely contend for the same one
+    int start = (int) (Thread.currentThread().getId() % slots.length());
+    for (int i = 0; i < slots.length(); i++) {
+      int slot = (start + i) % slots.length();
+      byte[] buffer = slots.getAndSet(slot, null);
+      if (buffer != null) {
+        return buffer;
+      }
+    }
+    return new byte[bufferSize];
+  }
+
+  /**
+   * Returns a buffer to the pool after zeroing its first {@code used} bytes. Callers that fail
+   * part way through pass the buffer length.
+   */
+  void release(byte[] buffer, int used) {
+    Arrays.fill(buffer, 0, used, (byte) 0);
+    if (buffer.length != bufferSize) {
+      return;
+    }
+    int start = (int) (Thread.currentThread().getId() % slots.length());
+    for (int i = 0; i < slots.length(); i++) {
+      if (slots.compareAndSet((start + i) % slots.length(), null, buffer)) {
+        return;
+      }
+    }
+  }
+}
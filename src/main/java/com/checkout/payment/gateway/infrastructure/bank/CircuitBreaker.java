@@ -0,0 +1,203 @@
+package com.checkout.payment.gateway.infrastructure.bank;
+
+import lombok.extern.slf4j.Slf4j;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Count-based circuit breaker. The outcomes of the last {@code slidingWindowSize} calls are kept
+ * in a ring; once at least {@code minimumCalls} are recorded and either the failure rate or the
+ * slow-call rate reaches its threshold, the breaker opens and refuses calls for
+ * {@code waitInOpen}. It then lets {@code permittedCallsInHalfOpen} probe calls through and
+ * closes or reopens depending on how they went.
+ * <p>
+ * Bank calls take milliseconds, so a lock is cheap enough here. It is a {@link ReentrantLock}
+ * rather than a monitor because state changes are logged while it is held: on a virtual thread,
+ * console I/O inside {@code synchronized} would pin the carrier thread.
+ */
+@Slf4j
+public class CircuitBreaker {
+
+  public enum State {
+    CLOSED, OPEN, HALF_OPEN
+  }
+
+  private static final byte SUCCESS = 0;
+  private static final byte FAILURE = 1;
+  private static final byte SLOW = 2;
+  private static final byte SLOW_FAILURE = FAILURE | SLOW;
+
+  private final Clock clock;
+  private final int minimumCalls;
+  private final float failureRateThreshold;
+  private final float slowCallRateThreshold;
+  private final long slowCallNanos;
+  private final long waitInOpenMillis;
+  private final int permittedCallsInHalfOpen;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  // guarded by lock
+  private final byte[] window;
+  private int next;
+  private int recorded;
+  private int failures;
+  private int slowCalls;
+
+  private State state = State.CLOSED;
+  private long openedAt;
+  private int halfOpenPermits;
+
+  public CircuitBreaker(AcquiringBankProperties.CircuitBreaker properties, Clock clock) {
+    this.clock = clock;
+    this.window = new byte[properties.getSlidingWindowSize()];
+    this.minimumCalls = Math.min(properties.getMinimumCalls(), window.length);
+    this.failureRateThreshold = properties.getFailureRateThreshold();
+    this.slowCallRateThreshold = properties.getSlowCallRateThreshold();
+    this.slowCallNanos = properties.getSlowCallDuration().toNanos();
+    this.waitInOpenMillis = properties.getWaitInOpen().toMillis();
+    this.permittedCallsInHalfOpen = Math.min(properties.getPermittedCallsInHalfOpen(), window.length);
+  }
+
+  /**
+   * Takes a permit for one call. Every permit must be followed by {@link #onSuccess},
+   * {@link #onFailure} or {@link #releasePermission}.
+   */
+  public boolean tryAcquirePermission() {
+    lock.lock();
+    try {
+      if (state == State.OPEN) {
+        if (clock.millis() - openedAt < waitInOpenMillis) {
+          return false;
+        }
+        transitionTo(State.HALF_OPEN);
+      }
+      if (state == State.HALF_OPEN) {
+        if (halfOpenPermits == 0) {
+          return false;
+        }
+        halfOpenPermits--;
+      }
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Whether a call would currently get a permit, without taking one.
+   */
+  public boolean isCallPermitted() {
+    lock.lock();
+    try {
+      return switch (state) {
+        case CLOSED -> true;
+        case OPEN -> clock.millis() - openedAt >= waitInOpenMillis;
+        case HALF_OPEN -> halfOpenPermits > 0;
+      };
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // the call was permitted but never made
+  public void releasePermission() {
+    lock.lock();
+    try {
+      if (state == State.HALF_OPEN && halfOpenPermits < permittedCallsInHalfOpen) {
+        halfOpenPermits++;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void onSuccess(Duration duration) {
+    record(duration.toNanos() >= slowCallNanos ? SLOW : SUCCESS);
+  }
+
+  public void onFailure(Duration duration) {
+    record(duration.toNanos() >= slowCallNanos ? SLOW_FAILURE : FAILURE);
+  }
+
+  public State getState() {
+    lock.lock();
+    try {
+      return state;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // percentage of the recorded calls, or -1 until there are enough of them
+  public float getFailureRate() {
+    lock.lock();
+    try {
+      return recorded < minimumRecorded() ? -1 : 100f * failures / recorded;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public float getSlowCallRate() {
+    lock.lock();
+    try {
+      return recorded < minimumRecorded() ? -1 : 100f * slowCalls / recorded;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void record(byte outcome) {
+    lock.lock();
+    try {
+      if (state == State.OPEN) {
+        // permitted before the breaker opened; the window was reset since
+        return;
+      }
+      int size = state == State.HALF_OPEN ? permittedCallsInHalfOpen : window.length;
+      if (recorded == size) {
+        byte evicted = window[next];
+        failures -= evicted & FAILURE;
+        slowCalls -= (evicted & SLOW) >> 1;
+      } else {
+        recorded++;
+      }
+      window[next] = outcome;
+      failures += outcome & FAILURE;
+      slowCalls += (outcome & SLOW) >> 1;
+      next = (next + 1) % size;
+
+      if (recorded < minimumRecorded()) {
+        return;
+      }
+      boolean unhealthy = 100f * failures / recorded >= failureRateThreshold
+          || 100f * slowCalls / recorded >= slowCallRateThreshold;
+      if (unhealthy) {
+        transitionTo(State.OPEN);
+      } else if (state == State.HALF_OPEN) {
+        transitionTo(State.CLOSED);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private int minimumRecorded() {
+    return state == State.HALF_OPEN ? permittedCallsInHalfOpen : minimumCalls;
+  }
+
+  private void transitionTo(State target) {
+    log.warn("Bank circuit breaker moved from {} to {}", state, target);
+    state = target;
+    next = 0;
+    recorded = 0;
+    failures = 0;
+    slowCalls = 0;
+    if (target == State.OPEN) {
+      openedAt = clock.millis();
+    }
+    halfOpenPermits = target == State.HALF_OPEN ? permittedCallsInHalfOpen : 0;
+  }
+}
@@ -0,0 +1,181 @@
+package com.checkout.payment.gateway.infrastructure.bank;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limit on in-flight bank calls. Callers over the limit wait in line for up to the given timeout.
+ * <p>
+ * With the adaptive limit on, every completed call feeds a gradient estimate: the ratio of the
+ * long-term average RTT (with some tolerance) to the call's RTT, between 0.5 and 1. While the bank
+ * answers as fast as usual the ratio is 1 and the limit grows by about its square root per
+ * sample; as queueing at the bank pushes RTT up, the ratio drops and the limit shrinks towards
+ * what the bank can serve without queueing. A failed or timed-out call cuts the limit
+ * multiplicatively. Samples taken while less than half the limit was in use say nothing about
+ * the bank's capacity and are ignored.
+ * <p>
+ * Without it, the limit stays at {@code maxConcurrentCalls}, a plain bulkhead.
+ */
+public class ConcurrencyLimiter {
+
+  private final boolean adaptive;
+  private final int minLimit;
+  private final int maxLimit;
+  private final int maxQueued;
+  private final double rttTolerance;
+  private final double smoothing;
+  private final double backoffRatio;
+  private final int longWindow;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition slotFreed = lock.newCondition();
+
+  private volatile double limit;
+  private int inFlight;
+  private int queued;
+  private volatile double longRttNanos;
+
+  public ConcurrencyLimiter(AcquiringBankProperties.Bulkhead properties) {
+    AcquiringBankProperties.AdaptiveLimit adaptive = properties.getAdaptive();
+    this.adaptive = adaptive.isEnabled();
+    this.maxLimit = properties.getMaxConcurrentCalls();
+    this.minLimit = Math.min(adaptive.getMinLimit(), maxLimit);
+    this.maxQueued = properties.getMaxQueued();
+    this.rttTolerance = adaptive.getRttTolerance();
+    this.smoothing = adaptive.getSmoothing();
+    this.backoffRatio = adaptive.getBackoffRatio();
+    this.longWindow = adaptive.getLongWindow();
+    this.limit = this.adaptive ? Math.max(minLimit, Math.min(adaptive.getInitialLimit(), maxLimit)) : maxLimit;
+  }
+
+  /**
+   * Takes a slot, waiting up to {@code timeout} behind the callers already queued. Every slot
+   * taken must be given back through {@link #onSuccess}, {@link #onDropped} or {@link #release}.
+   */
+  public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+    lock.lock();
+    try {
+      if (queued == 0 && inFlight < getLimit()) {
+        inFlight++;
+        return true;
+      }
+      if (queued >= maxQueued) {
+        return false;
+      }
+      queued++;
+      try {
+        long remaining = unit.toNanos(timeout);
+        while (inFlight >= getLimit()) {
+          if (remaining <= 0) {
+            return false;
+          }
+          remaining = slotFreed.awaitNanos(remaining);
+        }
+        inFlight++;
+        return true;
+      } finally {
+        queued--;
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Takes a slot only if one is free now and nobody is queued for it, never waiting: for callers
+   * that must not block, like the non-blocking bank client.
+   */
+  public boolean tryAcquire() {
+    lock.lock();
+    try {
+      if (queued == 0 && inFlight < getLimit()) {
+        inFlight++;
+        return true;
+      }
+      return false;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // the bank answered, whatever the answer
+  public void onSuccess(long rttNanos) {
+    lock.lock();
+    try {
+      int inUse = inFlight;
+      inFlight--;
+      if (adaptive && rttNanos > 0) {
+        update(rttNanos, inUse);
+      }
+      slotFreed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // the bank failed or timed out: a sign of overload whatever the RTT
+  public void onDropped() {
+    lock.lock();
+    try {
+      inFlight--;
+      if (adaptive) {
+        limit = Math.max(minLimit, limit * backoffRatio);
+      }
+      slotFreed.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  // the slot was not used for a bank call
+  public void release() {
+    lock.lock();
+    try {
+      inFlight--;
+      slotFreed.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getLimit() {
+    return (int) limit;
+  }
+
+  public int getInFlight() {
+    lock.lock();
+    try {
+      return inFlight;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public int getQueued() {
+    lock.lock();
+    try {
+      return queued;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public double getLongRtt(TimeUnit unit) {
+    return longRttNanos / unit.toNanos(1);
+  }
+
+  private void update(long rttNanos, int inUse) {
+    longRttNanos = longRttNanos == 0 ? rttNanos : longRttNanos + (rttNanos - longRttNanos) / longWindow;
+    if (longRttNanos > 2 * rttNanos) {
+      // the bank has recovered from a slow period; let the baseline catch up faster
+      longRttNanos *= 0.95;
+    }
+    if (inUse < limit / 2) {
+      return;
+    }
+    double gradient = Math.max(0.5, Math.min(1.0, rttTolerance * longRttNanos / rttNanos));
+    double estimate = limit * gradient + Math.sqrt(limit);
+    limit = Math.max(minLimit, Math.min(maxLimit, limit * (1 - smoothing) + estimate * smoothing));
+  }
+}
@@ -0,0 +1,202 @@
+package com.checkout.payment.gateway.infrastructure.bank;
+
+import com.checkout.payment.gateway.domain.model.BankResult;
+import com.checkout.payment.gateway.domain.model.Deadline;
+import com.checkout.payment.gateway.domain.service.AcquiringBank;
+import com.checkout.payment.gateway.domain.service.AsyncAcquiringBank;
+import com.checkout.payment.gateway.infrastructure.exception.BankUnavailableException;
+import com.checkout.payment.gateway.infrastructure.exception.DeadlineExceededException;
+import com.checkout.payment.gateway.infrastructure.exception.UpstreamTimeoutException;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Circuit breaker and concurrency limit around another {@link AcquiringBank}. A call is refused
+ * with {@link BankUnavailableException}, without reaching the bank, while the breaker is open or
+ * when it cannot get under the {@link ConcurrencyLimiter}'s limit within {@code maxWait}.
+ * <p>
+ * 5xx answers, timeouts and any other exception count as failures; a 4xx is the bank working
+ * as intended and counts as a success. A call cut short by the caller's {@link Deadline} is not
+ * counted either way, and the wait for a slot never outlasts the deadline. {@link #async} puts
+ * the acquirer's non-blocking client behind the same breaker and limit.
+ */
+@Slf4j
+public class ResilientAcquiringBank implements AcquiringBank {
+
+  private final AcquiringBank delegate;
+  private final CircuitBreaker circuitBreaker;
+  private final ConcurrencyLimiter limiter;
+  private final long maxWaitNanos;
+  private final Clock clock = Clock.systemUTC();
+
+  private final Counter notPermitted;
+  private final Counter bulkheadFull;
+
+  /**
+   * @param acquirer name of the acquirer behind {@code delegate}, the {@code acquirer} tag on every meter
+   */
+  public ResilientAcquiringBank(String acquirer, AcquiringBank delegate, CircuitBreaker circuitBreaker,
+      AcquiringBankProperties.Bulkhead properties, MeterRegistry meterRegistry) {
+    this.delegate = delegate;
+    this.circuitBreaker = circuitBreaker;
+    this.limiter = new ConcurrencyLimiter(properties);
+    this.maxWaitNanos = properties.getMaxWait().toNanos();
+
+    for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+      Gauge.builder("bank.circuit.breaker.state", circuitBreaker, breaker -> breaker.getState() == state ? 1 : 0)
+          .description("1 for the state the bank circuit breaker is in, 0 for the others")
+          .tag("state", state.name().toLowerCase())
+          .tag("acquirer", acquirer)
+          .register(meterRegistry);
+    }
+    Gauge.builder("bank.circuit.breaker.failure.rate", circuitBreaker, CircuitBreaker::getFailureRate)
+        .description("Failed calls in the sliding window, in percent; -1 until enough calls were made")
+        .tag("acquirer", acquirer)
+        .register(meterRegistry);
+    Gauge.builder("bank.circuit.breaker.slow.call.rate", circuitBreaker, CircuitBreaker::getSlowCallRate)
+        .description("Slow calls in the sliding window, in percent; -1 until enough calls were made")
+        .tag("acquirer", acquirer)
+        .register(meterRegistry);
+    this.notPermitted = Counter.builder("bank.circuit.breaker.not.permitted")
+        .description("Bank calls refused because the breaker was open")
+        .tag("acquirer", acquirer)
+        .register(meterRegistry);
+    Gauge.builder("bank.bulkhead.limit", limiter, ConcurrencyLimiter::getLimit)
+        .description("Bank calls allowed in flight at once")
+        .tag("acquirer", acquirer)
+        .register(meterRegistry);
+    Gauge.builder("bank.bulkhead.in.flight", limiter, ConcurrencyLimiter::getInFlight)
+        .description("Bank calls in flight")
+        .tag("acquirer", acquirer)
+        .register(meterRegistry);
+    Gauge.builder("bank.bulkhead.available", limiter, l -> Math.max(0, l.getLimit() - l.getInFlight()))
+        .description("Bank calls that can still start before the bulkhead is full")
+        .tag("acquirer", acquirer)
+        .register(meterRegistry);
+    Gauge.builder("bank.bulkhead.queued", limiter, ConcurrencyLimiter::getQueued)
+        .description("Bank calls waiting for a slot under the limit")
+        .tag("acquirer", acquirer)
+        .register(meterRegistry);
+    Gauge.builder("bank.bulkhead.rtt.baseline", limiter, l -> l.getLongRtt(TimeUnit.MILLISECONDS))
+        .description("Long-term average bank RTT the adaptive limit compares new calls against")
+        .baseUnit("milliseconds")
+        .tag("acquirer", acquirer)
+        .register(meterRegistry);
+    this.bulkheadFull = Counter.builder("bank.bulkhead.rejected")
+        .description("Bank calls refused because they could not get under the limit in time")
+        .tag("acquirer", acquirer)
+        .register(meterRegistry);
+  }
+
+  @Override
+  public BankResult process(PaymentRequest request, UUID paymentId) {
+    return process(request, paymentId, Deadline.none());
+  }
+
+  @Override
+  public BankResult process(PaymentRequest request, UUID paymentId, Deadline deadline) {
+    if (!circuitBreaker.tryAcquirePermission()) {
+      notPermitted.increment();
+      throw new BankUnavailableException("Bank circuit breaker is open", paymentId);
+    }
+    if (!enterBulkhead(deadline)) {
+      circuitBreaker.releasePermission();
+      bulkheadFull.increment();
+      throw new BankUnavailableException("Too many concurrent bank calls", paymentId);
+    }
+
+    long start = System.nanoTime();
+    BankResult result;
+    try {
+      result = delegate.process(request, paymentId, deadline);
+    } catch (RuntimeException | Error e) {
+      completed(e, start, deadline);
+      throw e;
+    }
+    completed(null, start, deadline);
+    return result;
+  }
+
+  /**
+   * The non-blocking client for the same acquirer, behind this breaker and limit: the breaker
+   * learns from its calls and {@link #isAvailable()} follows them. No thread may wait there, so a
+   * call that finds the limit reached is refused at once rather than queued for {@code maxWait}.
+   */
+  public AsyncAcquiringBank async(AsyncAcquiringBank asyncDelegate) {
+    return new AsyncAcquiringBank() {
+      @Override
+      public CompletableFuture<BankResult> process(PaymentRequest request, UUID paymentId) {
+        return process(request, paymentId, Deadline.none());
+      }
+
+      @Override
+      public CompletableFuture<BankResult> process(PaymentRequest request, UUID paymentId, Deadline deadline) {
+        if (!circuitBreaker.tryAcquirePermission()) {
+          notPermitted.increment();
+          return CompletableFuture.failedFuture(
+              new BankUnavailableException("Bank circuit breaker is open", paymentId));
+        }
+        if (!limiter.tryAcquire()) {
+          circuitBreaker.releasePermission();
+          bulkheadFull.increment();
+          return CompletableFuture.failedFuture(
+              new BankUnavailableException("Too many concurrent bank calls", paymentId));
+        }
+
+        long start = System.nanoTime();
+        CompletableFuture<BankResult> call;
+        try {
+          call = asyncDelegate.process(request, paymentId, deadline);
+        } catch (RuntimeException | Error e) {
+          completed(e, start, deadline);
+          throw e;
+        }
+        return call.whenComplete((result, failure) -> completed(failure, start, deadline));
+      }
+    };
+  }
+
+  // gives back the permission and the slot of a call that ended, null failure for an answer
+  private void completed(Throwable failure, long start, Deadline deadline) {
+    if (failure instanceof CompletionException && failure.getCause() != null) {
+      failure = failure.getCause();
+    }
+    long rtt = System.nanoTime() - start;
+    if (failure == null) {
+      circuitBreaker.onSuccess(Duration.ofNanos(rtt));
+      limiter.onSuccess(rtt);
+    } else if (failure instanceof DeadlineExceededException || failure instanceof Error
+        || failure instanceof UpstreamTimeoutException && deadline.isExpired(clock)) {
+      // cut short by the caller's deadline, or failed on our side: says nothing about the bank
+      circuitBreaker.releasePermission();
+      limiter.release();
+    } else {
+      circuitBreaker.onFailure(Duration.ofNanos(rtt));
+      limiter.onDropped();
+    }
+  }
+
+  @Override
+  public boolean isAvailable() {
+    return circuitBreaker.isCallPermitted() && delegate.isAvailable();
+  }
+
+  private boolean enterBulkhead(Deadline deadline) {
+    try {
+      long waitNanos = deadline.cap(Duration.ofNanos(maxWaitNanos), clock).toNanos();
+      return limiter.tryAcquire(waitNanos, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return false;
+    }
+  }
+}
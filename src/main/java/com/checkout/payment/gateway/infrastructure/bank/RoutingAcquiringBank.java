@@ -0,0 +1,279 @@
+package com.checkout.payment.gateway.infrastructure.bank;
+
+import com.checkout.payment.gateway.domain.model.BankResult;
+import com.checkout.payment.gateway.domain.model.Deadline;
+import com.checkout.payment.gateway.domain.service.AcquiringBank;
+import com.checkout.payment.gateway.domain.service.AsyncAcquiringBank;
+import com.checkout.payment.gateway.infrastructure.exception.BankUnavailableException;
+import com.checkout.payment.gateway.infrastructure.exception.DeadlineExceededException;
+import com.checkout.payment.gateway.infrastructure.exception.UpstreamTimeoutException;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentRequest;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Spreads payments over several acquirers. For every payment two of the acquirers that currently
+ * take calls are drawn at random and the one with the lower cost gets it: its moving average
+ * latency, times the calls it has in flight, penalised by its moving average error rate and
+ * divided by its weight. Comparing two random candidates instead of always taking the best keeps
+ * a newly fast acquirer from being flooded by everyone at once.
+ * <p>
+ * An acquirer whose breaker is open reports itself unavailable and is left out of the draw until
+ * it closes again. A call it refuses without reaching the bank, open breaker or full bulkhead, is
+ * tried on another acquirer; any other failure is not, as the first acquirer may have charged the
+ * card. {@link #async()} routes non-blocking calls the same way.
+ */
+@Slf4j
+public class RoutingAcquiringBank implements AcquiringBank {
+
+  /**
+   * @param asyncBank the acquirer's non-blocking client, for {@link #async()}; may be null when
+   *     only blocking calls are made
+   */
+  public record Endpoint(String name, double weight, AcquiringBank bank, AsyncAcquiringBank asyncBank) {
+    public Endpoint(String name, double weight, AcquiringBank bank) {
+      this(name, weight, bank, null);
+    }
+  }
+
+  private final List<Route> routes = new ArrayList<>();
+  private final double smoothing;
+  private final double errorPenalty;
+  private final long errorHalfLifeMillis;
+  private final Clock clock;
+  // latencies are measured with it
+  private final LongSupplier nanoTime;
+
+  private final Counter rerouted;
+
+  public RoutingAcquiringBank(List<Endpoint> endpoints, AcquiringBankProperties.Routing properties,
+      MeterRegistry meterRegistry) {
+    this(endpoints, properties, meterRegistry, Clock.systemUTC(), System::nanoTime);
+  }
+
+  RoutingAcquiringBank(List<Endpoint> endpoints, AcquiringBankProperties.Routing properties,
+      MeterRegistry meterRegistry, Clock clock, LongSupplier nanoTime) {
+    this.smoothing = properties.getSmoothing();
+    this.errorPenalty = properties.getErrorPenalty();
+    this.errorHalfLifeMillis = Math.max(1, properties.getErrorHalfLife().toMillis());
+    this.clock = clock;
+    this.nanoTime = nanoTime;
+
+    for (Endpoint endpoint : endpoints) {
+      Route route = new Route(endpoint, clock.millis());
+      routes.add(route);
+      Gauge.builder("bank.acquirer.latency", route, Route::latencyMillis)
+          .description("Moving average latency of the acquirer")
+          .baseUnit("milliseconds")
+          .tag("acquirer", endpoint.name())
+          .register(meterRegistry);
+      Gauge.builder("bank.acquirer.error.rate", route, r -> r.errorRate(clock.millis()))
+          .description("Moving average share of calls to the acquirer that failed, between 0 and 1")
+          .tag("acquirer", endpoint.name())
+          .register(meterRegistry);
+      Gauge.builder("bank.acquirer.in.flight", route, r -> r.inFlight.get())
+          .description("Calls in flight to the acquirer")
+          .tag("acquirer", endpoint.name())
+          .register(meterRegistry);
+      Gauge.builder("bank.acquirer.available", route, r -> r.endpoint.bank().isAvailable() ? 1 : 0)
+          .description("1 while the acquirer takes calls, 0 while it is left out of routing")
+          .tag("acquirer", endpoint.name())
+          .register(meterRegistry);
+    }
+    this.rerouted = Counter.builder("bank.acquirer.rerouted")
+        .description("Payments sent to another acquirer after the chosen one refused them")
+        .register(meterRegistry);
+  }
+
+  @Override
+  public BankResult process(PaymentRequest request, UUID paymentId) {
+    return process(request, paymentId, Deadline.none());
+  }
+
+  @Override
+  public BankResult process(PaymentRequest request, UUID paymentId, Deadline deadline) {
+    List<Route> excluded = new ArrayList<>(1);
+    while (true) {
+      Route route = choose(excluded);
+      if (route == null) {
+        throw new BankUnavailableException("No acquirer available", paymentId);
+      }
+      route.inFlight.incrementAndGet();
+      long start = nanoTime.getAsLong();
+      try {
+        BankResult result = route.endpoint.bank().process(request, paymentId, deadline);
+        route.onSuccess(nanoTime.getAsLong() - start, clock.millis());
+        return result;
+      } catch (BankUnavailableException e) {
+        // refused before it reached the bank, so another acquirer can take it
+        route.onRefused(clock.millis());
+        excluded.add(route);
+        rerouted.increment();
+        log.warn("Acquirer {} refused payment {}: {}", route.endpoint.name(), paymentId, e.getMessage());
+      } catch (RuntimeException e) {
+        if (blamesAcquirer(e, deadline)) {
+          route.onFailure(nanoTime.getAsLong() - start, clock.millis());
+        }
+        throw e;
+      } finally {
+        route.inFlight.decrementAndGet();
+      }
+    }
+  }
+
+  /**
+   * The same routing over the acquirers' non-blocking clients, sharing the moving averages and
+   * in-flight counts with blocking calls. Every endpoint must have an {@code asyncBank}.
+   */
+  public AsyncAcquiringBank async() {
+    return new AsyncAcquiringBank() {
+      @Override
+      public CompletableFuture<BankResult> process(PaymentRequest request, UUID paymentId) {
+        return process(request, paymentId, Deadline.none());
+      }
+
+      @Override
+      public CompletableFuture<BankResult> process(PaymentRequest request, UUID paymentId, Deadline deadline) {
+        return processAsync(request, paymentId, deadline, new ArrayList<>(1));
+      }
+    };
+  }
+
+  @Override
+  public boolean isAvailable() {
+    for (Route route : routes) {
+      if (route.endpoint.bank().isAvailable()) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private CompletableFuture<BankResult> processAsync(PaymentRequest request, UUID paymentId, Deadline deadline,
+      List<Route> excluded) {
+    Route route = choose(excluded);
+    if (route == null) {
+      return CompletableFuture.failedFuture(new BankUnavailableException("No acquirer available", paymentId));
+    }
+    route.inFlight.incrementAndGet();
+    long start = nanoTime.getAsLong();
+    CompletableFuture<BankResult> call;
+    try {
+      call = route.endpoint.asyncBank().process(request, paymentId, deadline);
+    } catch (RuntimeException e) {
+      call = CompletableFuture.failedFuture(e);
+    }
+    return call.handle((result, failure) -> {
+      route.inFlight.decrementAndGet();
+      if (failure == null) {
+        route.onSuccess(nanoTime.getAsLong() - start, clock.millis());
+        return CompletableFuture.completedFuture(result);
+      }
+      Throwable cause = failure instanceof CompletionException && failure.getCause() != null
+          ? failure.getCause() : failure;
+      if (cause instanceof BankUnavailableException) {
+        route.onRefused(clock.millis());
+        excluded.add(route);
+        rerouted.increment();
+        log.warn("Acquirer {} refused payment {}: {}", route.endpoint.name(), paymentId, cause.getMessage());
+        return processAsync(request, paymentId, deadline, excluded);
+      }
+      if (cause instanceof RuntimeException e && blamesAcquirer(e, deadline)) {
+        route.onFailure(nanoTime.getAsLong() - start, clock.millis());
+      }
+      return CompletableFuture.<BankResult>failedFuture(cause);
+    }).thenCompose(Function.identity());
+  }
+
+  // a call cut short by the caller's deadline says nothing about the acquirer
+  private boolean blamesAcquirer(RuntimeException e, Deadline deadline) {
+    return !(e instanceof DeadlineExceededException)
+        && !(e instanceof UpstreamTimeoutException && deadline.isExpired(clock));
+  }
+
+  // the cheaper of two random acquirers that take calls, or null when none does
+  private Route choose(List<Route> excluded) {
+    List<Route> candidates = new ArrayList<>(routes.size());
+    for (Route route : routes) {
+      if (!excluded.contains(route) && route.endpoint.bank().isAvailable()) {
+        candidates.add(route);
+      }
+    }
+    if (candidates.size() <= 1) {
+      return candidates.isEmpty() ? null : candidates.get(0);
+    }
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+    int first = random.nextInt(candidates.size());
+    int second = random.nextInt(candidates.size() - 1);
+    if (second >= first) {
+      second++;
+    }
+    long now = clock.millis();
+    Route a = candidates.get(first);
+    Route b = candidates.get(second);
+    return a.cost(now) <= b.cost(now) ? a : b;
+  }
+
+  private final class Route {
+    private final Endpoint endpoint;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    // moving averages, guarded by this
+    private double latencyNanos;
+    private double errorRate;
+    private long lastSampleAt;
+
+    private Route(Endpoint endpoint, long now) {
+      this.endpoint = endpoint;
+      this.lastSampleAt = now;
+    }
+
+    synchronized double cost(long now) {
+      // an acquirer without samples yet costs the same as an idle, instant one and gets tried first
+      double latencyMillis = latencyNanos / 1e6 + 1;
+      return latencyMillis * (inFlight.get() + 1) * (1 + errorPenalty * errorRate(now)) / endpoint.weight();
+    }
+
+    synchronized double latencyMillis() {
+      return latencyNanos / 1e6;
+    }
+
+    synchronized double errorRate(long now) {
+      return errorRate * Math.pow(0.5, (double) (now - lastSampleAt) / errorHalfLifeMillis);
+    }
+
+    synchronized void onSuccess(long latency, long now) {
+      record(latency, 0, now);
+    }
+
+    synchronized void onFailure(long latency, long now) {
+      record(latency, 1, now);
+    }
+
+    // no latency to learn from, but a refusal still means the acquirer is struggling
+    synchronized void onRefused(long now) {
+      double current = errorRate(now);
+      errorRate = current + (1 - current) * smoothing;
+      lastSampleAt = now;
+    }
+
+    private void record(long latency, int error, long now) {
+      latencyNanos = latencyNanos == 0 ? latency : latencyNanos + (latency - latencyNanos) * smoothing;
+      double current = errorRate(now);
+      errorRate = current + (error - current) * smoothing;
+      lastSampleAt = now;
+    }
+  }
+}
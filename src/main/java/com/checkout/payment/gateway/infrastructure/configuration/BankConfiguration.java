@@ -0,0 +1,85 @@
+package com.checkout.payment.gateway.infrastructure.configuration;
+
+import com.checkout.payment.gateway.domain.service.AcquiringBank;
+import com.checkout.payment.gateway.domain.service.AsyncAcquiringBank;
+import com.checkout.payment.gateway.infrastructure.bank.AcquiringBankImpl;
+import com.checkout.payment.gateway.infrastructure.bank.AcquiringBankProperties;
+import com.checkout.payment.gateway.infrastructure.bank.AdaptiveTimeout;
+import com.checkout.payment.gateway.infrastructure.bank.AsyncAcquiringBankImpl;
+import com.checkout.payment.gateway.infrastructure.bank.CircuitBreaker;
+import com.checkout.payment.gateway.infrastructure.bank.ResilientAcquiringBank;
+import com.checkout.payment.gateway.infrastructure.bank.RoutingAcquiringBank;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The {@link AcquiringBank} and {@link AsyncAcquiringBank} the application layer gets: a blocking
+ * and a non-blocking client per configured acquirer, with a read timeout that follows its latency
+ * when {@code acquiring-bank.adaptive-timeout} is enabled, both behind the acquirer's one circuit
+ * breaker and concurrency limit when {@code acquiring-bank.circuit-breaker} is enabled, and a
+ * {@link RoutingAcquiringBank} over them when there is more than one.
+ */
+@Configuration
+public class BankConfiguration {
+
+  /**
+   * Both views of the acquirers. They share each acquirer's breaker, limit, timeout and routing
+   * statistics, so what one learns about an acquirer the other acts on.
+   */
+  public record BankClients(AcquiringBank blocking, AsyncAcquiringBank nonBlocking,
+      List<AsyncAcquiringBankImpl> asyncClients) implements AutoCloseable {
+
+    @Override
+    public void close() {
+      asyncClients.forEach(AsyncAcquiringBankImpl::close);
+    }
+  }
+
+  @Bean
+  public BankClients bankClients(RestTemplateBuilder builder, AcquiringBankProperties properties,
+      MeterRegistry meterRegistry) {
+    List<RoutingAcquiringBank.Endpoint> endpoints = new ArrayList<>();
+    List<AsyncAcquiringBankImpl> asyncClients = new ArrayList<>();
+    for (AcquiringBankProperties.Acquirer acquirer : properties.resolveAcquirers()) {
+      AdaptiveTimeout readTimeout = properties.getAdaptiveTimeout().isEnabled()
+          ? new AdaptiveTimeout(acquirer.getName(), acquirer.getReadTimeout(), properties.getAdaptiveTimeout(),
+              meterRegistry)
+          : null;
+      AcquiringBank bank = readTimeout != null
+          ? new AcquiringBankImpl(builder, acquirer, readTimeout)
+          : new AcquiringBankImpl(builder, acquirer);
+      AsyncAcquiringBankImpl asyncClient = new AsyncAcquiringBankImpl(acquirer, properties.getPool(), readTimeout,
+          meterRegistry);
+      asyncClients.add(asyncClient);
+      AsyncAcquiringBank asyncBank = asyncClient;
+      if (properties.getCircuitBreaker().isEnabled()) {
+        CircuitBreaker circuitBreaker = new CircuitBreaker(properties.getCircuitBreaker(), Clock.systemUTC());
+        ResilientAcquiringBank resilient = new ResilientAcquiringBank(acquirer.getName(), bank, circuitBreaker,
+            properties.getBulkhead(), meterRegistry);
+        bank = resilient;
+        asyncBank = resilient.async(asyncClient);
+      }
+      endpoints.add(new RoutingAcquiringBank.Endpoint(acquirer.getName(), acquirer.getWeight(), bank, asyncBank));
+    }
+    if (endpoints.size() == 1) {
+      return new BankClients(endpoints.get(0).bank(), endpoints.get(0).asyncBank(), asyncClients);
+    }
+    RoutingAcquiringBank routing = new RoutingAcquiringBank(endpoints, properties.getRouting(), meterRegistry);
+    return new BankClients(routing, routing.async(), asyncClients);
+  }
+
+  @Bean
+  public AcquiringBank acquiringBank(BankClients clients) {
+    return clients.blocking();
+  }
+
+  @Bean
+  public AsyncAcquiringBank asyncAcquiringBank(BankClients clients) {
+    return clients.nonBlocking();
+  }
+}
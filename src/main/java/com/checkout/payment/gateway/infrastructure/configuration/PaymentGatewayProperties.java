@@ -0,0 +1,255 @@
+package com.checkout.payment.gateway.infrastructure.configuration;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+import org.springframework.validation.annotation.Validated;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@Validated
+@Configuration
+@ConfigurationProperties(prefix = "payment-gateway")
+public class PaymentGatewayProperties {
+
+  @Valid
+  private Idempotency idempotency = new Idempotency();
+
+  @Valid
+  private Retention retention = new Retention();
+
+  @Valid
+  private Repository repository = new Repository();
+
+  @Valid
+  private Reconciliation reconciliation = new Reconciliation();
+
+  @Valid
+  private RequestDeadline deadline = new RequestDeadline();
+
+  @Valid
+  private Batch batch = new Batch();
+
+  @Valid
+  private ResponseCache responseCache = new ResponseCache();
+
+  private VirtualThreads virtualThreads = new VirtualThreads();
+
+  private Async async = new Async();
+
+  @Valid
+  private Pipeline pipeline = new Pipeline();
+
+  @Valid
+  private LongPoll longPoll = new LongPoll();
+
+  @Data
+  public static class Batch {
+    // payments accepted by one POST /api/v1/payments/batch
+    @Min(1)
+    private int maxItems = 1000;
+
+    // payments of one batch in flight at a time
+    @Min(1)
+    private int maxConcurrency = 16;
+  }
+
+  @Data
+  public static class Pipeline {
+    // accept-then-process: POST stores the payment as PENDING and answers 202, the bank is called
+    // in the background
+    private boolean enabled = false;
+
+    // payments accepted and not yet settled; beyond it POST answers 503
+    @Min(1)
+    private int capacity = 1024;
+
+    // threads calling the bank, so also the most bank calls in flight
+    @Min(1)
+    private int dispatchWorkers = 32;
+
+    // threads storing the bank's answers
+    @Min(1)
+    private int persistenceWorkers = 2;
+  }
+
+  @Data
+  public static class LongPoll {
+    // longest GET /api/v1/payments/{id}?waitFor= parks a request; longer waits are cut to it
+    @NotNull
+    private Duration maxWait = Duration.ofSeconds(30);
+
+    // requests parked at a time; beyond it a waitFor GET answers at once
+    @Min(1)
+    private int maxWaiters = 10_000;
+  }
+
+  @Data
+  public static class ResponseCache {
+    // keep the serialized responses of AUTHORIZED/DECLINED/REJECTED payments, which never change
+    private boolean enabled = true;
+
+    // responses kept, GET and replayed POST views counted apart; the oldest go first
+    @Min(1)
+    private int maxEntries = 50_000;
+
+    // a cached response may outlive its payment's retention by this much at most
+    @NotNull
+    private Duration expireAfter = Duration.ofHours(1);
+  }
+
+  @Data
+  public static class Async {
+    // send payments through the non-blocking bank client, so no thread waits while the bank answers;
+    // that client calls acquiring-bank.url only, outside routing, the breaker and the bulkhead
+    private boolean enabled = false;
+  }
+
+  @Data
+  public static class VirtualThreads {
+    // handle requests, and so the blocking bank call, on virtual threads; needs JDK 21
+    private boolean enabled = false;
+  }
+
+  @Data
+  public static class Idempotency {
+    // how long a request waits for a concurrent request with the same key to finish
+    @NotNull
+    private Duration followerWait = Duration.ofSeconds(10);
+  }
+
+  @Data
+  public static class RequestDeadline {
+    // timeout of a request without X-Request-Timeout, by route name; routes not listed get defaultTimeout
+    private Map<String, Duration> routes = new HashMap<>();
+
+    // none when not set: the bank's own timeouts are the only bound
+    private Duration defaultTimeout;
+
+    // longest timeout a client may ask for; none when not set
+    private Duration maxTimeout;
+  }
+
+  @Data
+  public static class Retention {
+    // idempotency keys are forgotten after this, the payment itself stays queryable by id
+    @NotNull
+    private Duration idempotencyKeyTtl = Duration.ofHours(24);
+
+    // AUTHORIZED/DECLINED/REJECTED payments are dropped this long after their last update;
+    // PENDING and UNKNOWN payments are kept for reconciliation
+    @NotNull
+    private Duration finalizedPayment = Duration.ofDays(7);
+
+    // granularity of the expiry timing wheel, also how often expiry runs
+    @NotNull
+    private Duration tick = Duration.ofSeconds(1);
+  }
+
+  @Data
+  public static class Repository {
+    // in-memory | off-heap | wal | partitioned
+    @NotNull
+    private String type = "in-memory";
+
+    @Valid
+    private OffHeap offHeap = new OffHeap();
+
+    @Valid
+    private Wal wal = new Wal();
+
+    @Valid
+    private Partitioned partitioned = new Partitioned();
+
+    @Valid
+    private WriteBehind writeBehind = new WriteBehind();
+  }
+
+  @Data
+  public static class OffHeap {
+    // fixed number of record slots, reserved lazily in chunks of direct memory
+    @Min(1)
+    private int capacity = 10_000_000;
+
+    // keep an on-heap status/createdAt index (about 150 bytes per payment) for listing queries;
+    // without it they scan the slots
+    private boolean index = false;
+  }
+
+  @Data
+  public static class Wal {
+    @NotNull
+    private Path directory = Path.of("data", "wal");
+
+    @NotNull
+    private DataSize segmentSize = DataSize.ofMegabytes(64);
+
+    // appends waiting for the writer are made durable with one fsync, at most this many at a time
+    @Min(1)
+    private int maxBatch = 1024;
+
+    // how often the in-memory state is snapshotted so older segments can be deleted
+    @NotNull
+    private Duration checkpointInterval = Duration.ofMinutes(5);
+  }
+
+  @Data
+  public static class Partitioned {
+    // one owner thread per partition
+    @Min(1)
+    private int partitions = Runtime.getRuntime().availableProcessors();
+  }
+
+  @Data
+  public static class WriteBehind {
+    // queue saves and flush them to the store in batches, merging versions of the same payment
+    private boolean enabled = false;
+
+    @Min(1)
+    private int maxBatch = 256;
+
+    // longest a queued save waits for its batch to fill up
+    @NotNull
+    private Duration flushInterval = Duration.ofMillis(20);
+
+    // write PENDING payments through before the bank is called, so a crash cannot lose them
+    private boolean strict = true;
+  }
+
+  @Data
+  public static class Reconciliation {
+    // the background scan; idempotent retries still check with the bank when this is off
+    private boolean enabled = true;
+
+    @NotNull
+    private Duration interval = Duration.ofSeconds(5);
+
+    // PENDING/UNKNOWN payments younger than this may still be on their way to the bank;
+    // keep it above the bank read timeout
+    @NotNull
+    private Duration staleAfter = Duration.ofMinutes(1);
+
+    // payments read from the index per run
+    @Min(1)
+    private int batchSize = 100;
+
+    // status queries the scan may send the bank per second, with bursts up to one batch
+    @Min(1)
+    private int maxQueriesPerSecond = 20;
+
+    // delay before asking again about a payment the bank could not answer for,
+    // doubled per failed attempt with jitter
+    @NotNull
+    private Duration initialBackoff = Duration.ofSeconds(5);
+
+    @NotNull
+    private Duration maxBackoff = Duration.ofMinutes(10);
+  }
+}
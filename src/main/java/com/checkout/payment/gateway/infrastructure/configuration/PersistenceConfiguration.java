@@ -0,0 +1,35 @@
+package com.checkout.payment.gateway.infrastructure.configuration;
+
+import com.checkout.payment.gateway.domain.model.PaymentChangeListener;
+import com.checkout.payment.gateway.domain.model.PaymentsRepository;
+import com.checkout.payment.gateway.infrastructure.persistence.NotifyingPaymentsRepository;
+import com.checkout.payment.gateway.infrastructure.persistence.WriteBehindPaymentsRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+
+/**
+ * Decorators around the store selected by {@code payment-gateway.repository.type}. The decorated
+ * bean is primary, so it is what the application layer gets injected; the store itself is passed
+ * in as the only other {@link PaymentsRepository} candidate.
+ * <p>
+ * Write-behind, when enabled, wraps the store, and change notifications wrap everything, so a
+ * listener hears of a write as soon as readers can see it, queued or not.
+ */
+@Configuration
+public class PersistenceConfiguration {
+
+  @Bean
+  @Primary
+  public NotifyingPaymentsRepository notifyingPaymentsRepository(PaymentsRepository store,
+      PaymentGatewayProperties properties, MeterRegistry meterRegistry,
+      ObjectProvider<PaymentChangeListener> listeners) {
+    PaymentGatewayProperties.WriteBehind writeBehind = properties.getRepository().getWriteBehind();
+    PaymentsRepository decorated = writeBehind.isEnabled()
+        ? new WriteBehindPaymentsRepository(store, writeBehind, meterRegistry)
+        : store;
+    return new NotifyingPaymentsRepository(decorated, listeners.orderedStream().toList());
+  }
+}
@@ -0,0 +1,31 @@
+package com.checkout.payment.gateway.infrastructure.configuration;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.boot.web.client.RestTemplateCustomizer;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * What the reactive stack, {@code spring.main.web-application-type=reactive}, needs beyond Boot's
+ * defaults with Tomcat still on the classpath.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveConfiguration {
+
+  // Boot prefers Tomcat whenever it is present; a few event loops on Netty are the point
+  @Bean
+  public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+    return new NettyReactiveWebServerFactory();
+  }
+
+  // Boot only auto-configures the builder outside reactive applications, but the blocking bank
+  // clients are still used, by retries and reconciliation and without payment-gateway.async
+  @Bean
+  public RestTemplateBuilder restTemplateBuilder(ObjectProvider<RestTemplateCustomizer> customizers) {
+    return new RestTemplateBuilder(customizers.orderedStream().toArray(RestTemplateCustomizer[]::new));
+  }
+}
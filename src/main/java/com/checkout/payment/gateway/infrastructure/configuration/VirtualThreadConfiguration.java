@@ -0,0 +1,47 @@
+package com.checkout.payment.gateway.infrastructure.configuration;
+
+import org.apache.tomcat.util.threads.VirtualThreadExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+
+/**
+ * Runs Tomcat's request processing, and with it the blocking bank call, on a virtual thread per
+ * request. A payment waiting for the bank then parks its virtual thread instead of holding one of
+ * {@code server.tomcat.threads.max} platform threads, so in-flight payments are bounded by
+ * {@code server.tomcat.max-connections}, the bank connection pool and the bulkhead instead.
+ * <p>
+ * Needs JDK 21; the application is still built for 17, so the threads are created through
+ * Tomcat's own JDK-version shim and startup fails on an older JDK.
+ */
+@Configuration
+@ConditionalOnProperty(prefix = "payment-gateway.virtual-threads", name = "enabled", havingValue = "true")
+public class VirtualThreadConfiguration {
+
+  private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadConfiguration.class);
+
+  public VirtualThreadConfiguration() {
+    if (Runtime.version().feature() < 21) {
+      throw new IllegalStateException(
+          "payment-gateway.virtual-threads.enabled needs JDK 21, running on " + Runtime.version());
+    }
+    LOG.info("Handling requests on virtual threads");
+  }
+
+  @Bean
+  public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer() {
+    return protocolHandler -> protocolHandler.setExecutor(new VirtualThreadExecutor("http-vt-"));
+  }
+
+  // async MVC requests and @Async work continue on virtual threads too
+  @Bean(name = TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+  public AsyncTaskExecutor applicationTaskExecutor() {
+    return new TaskExecutorAdapter(new VirtualThreadExecutor("task-vt-"));
+  }
+}
@@ -0,0 +1,19 @@
+package com.checkout.payment.gateway.infrastructure.exception;
+
+import lombok.Getter;
+import java.util.UUID;
+
+/**
+ * The bank was not called because it is known to be failing or already at its concurrency cap.
+ * Unlike {@link EventProcessingException}, the outcome is certain: the payment never reached it.
+ */
+@Getter
+public class BankUnavailableException extends RuntimeException {
+
+  private final UUID paymentId;
+
+  public BankUnavailableException(String message, UUID paymentId) {
+    super(message);
+    this.paymentId = paymentId;
+  }
+}
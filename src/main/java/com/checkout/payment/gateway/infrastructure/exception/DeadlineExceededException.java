@@ -0,0 +1,18 @@
+package com.checkout.payment.gateway.infrastructure.exception;
+
+import lombok.Getter;
+import java.util.UUID;
+
+/**
+ * The request's deadline passed before the payment was sent to the bank, so the bank never saw it.
+ */
+@Getter
+public class DeadlineExceededException extends RuntimeException {
+
+  private final UUID paymentId;
+
+  public DeadlineExceededException(String message, UUID paymentId) {
+    super(message);
+    this.paymentId = paymentId;
+  }
+}
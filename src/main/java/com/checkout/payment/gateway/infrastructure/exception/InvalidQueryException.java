@@ -0,0 +1,7 @@
+package com.checkout.payment.gateway.infrastructure.exception;
+
+public class InvalidQueryException extends RuntimeException {
+  public InvalidQueryException(String message) {
+    super(message);
+  }
+}
@@ -1,65 +1,223 @@
 package com.checkout.payment.gateway.infrastructure.persistence;
 
 import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentPage;
+import com.checkout.payment.gateway.domain.model.PaymentQuery;
 import com.checkout.payment.gateway.domain.model.PaymentsRepository;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Repository;
+import java.time.Clock;
 import java.time.Instant;
-import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Lock-free store: both maps are only touched through single-key atomic operations, so saves on
+ * different payments never contend and reads never block.
+ * The idempotency index is the source of truth for key ownership; {@code storage} is written
+ * right after a successful claim, so a lookup by key can observe a payment slightly before a
+ * lookup by id does. The index keeps the payment as it was when the key was claimed; lookups by
+ * key resolve it to the latest version in {@code storage}.
+ * <p>
+ * Idempotency keys expire after a TTL and finalized payments after a retention window. Both are
+ * tracked in timing wheels, so eviction never scans the maps.
+ */
 @Repository
+@ConditionalOnProperty(prefix = "payment-gateway.repository", name = "type", havingValue = "in-memory", matchIfMissing = true)
 public class InMemoryPaymentsRepository implements PaymentsRepository {
 
-  private final Map<UUID, Payment> storage = new ConcurrentHashMap<>();
-  private final Map<String, Payment> idempotencyIndex = new ConcurrentHashMap<>();
+  private static final Logger LOG = LoggerFactory.getLogger(InMemoryPaymentsRepository.class);
 
-  private final ReadWriteLock lock = new ReentrantReadWriteLock();
+  private final ConcurrentMap<UUID, Payment> storage = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Payment> idempotencyIndex = new ConcurrentHashMap<>();
+  private final PaymentIndex index = new PaymentIndex();
+
+  private final Clock clock;
+  private final long idempotencyKeyTtlMillis;
+  private final long retentionMillis;
+  private final TimingWheel<Payment> idempotencyExpiry;
+  private final TimingWheel<UUID> retentionExpiry;
+
+  private final Counter evictedKeys;
+  private final Counter evictedPayments;
+  private final Timer keyExpiryLag;
+  private final Timer paymentExpiryLag;
+
+  @Autowired
+  public InMemoryPaymentsRepository(PaymentGatewayProperties properties, MeterRegistry meterRegistry) {
+    this(properties, meterRegistry, Clock.systemUTC());
+  }
+
+  InMemoryPaymentsRepository(PaymentGatewayProperties properties, MeterRegistry meterRegistry, Clock clock) {
+    PaymentGatewayProperties.Retention retention = properties.getRetention();
+    this.clock = clock;
+    this.idempotencyKeyTtlMillis = retention.getIdempotencyKeyTtl().toMillis();
+    this.retentionMillis = retention.getFinalizedPayment().toMillis();
+    this.idempotencyExpiry = new TimingWheel<>(retention.getTick().toMillis(), clock.millis());
+    this.retentionExpiry = new TimingWheel<>(retention.getTick().toMillis(), clock.millis());
+
+    meterRegistry.gauge("payments.store.size", storage, ConcurrentMap::size);
+    meterRegistry.gauge("payments.idempotency.keys", idempotencyIndex, ConcurrentMap::size);
+    this.evictedKeys = evictedCounter(meterRegistry, "idempotency-key");
+    this.evictedPayments = evictedCounter(meterRegistry, "payment");
+    this.keyExpiryLag = expiryLagTimer(meterRegistry, "idempotency-key");
+    this.paymentExpiryLag = expiryLagTimer(meterRegistry, "payment");
+  }
 
   @Override
   public Payment save(Payment payment) {
-    lock.writeLock().lock();
-    try {
-      if(payment.getIdempotencyKey() != null && idempotencyIndex.containsKey(payment.getIdempotencyKey())) {
-        return idempotencyIndex.get(payment.getIdempotencyKey());
-      }
+    if (payment.getId() == null) {
+      throw new IllegalArgumentException("Payment ID cannot be null when saving");
+    }
 
-      if (payment.getId() == null) {
-        throw new IllegalArgumentException("Payment ID cannot be null when saving");
+    String key = payment.getIdempotencyKey();
+    if (key != null) {
+      // plain get first: putIfAbsent locks the bin even when the key is already present
+      Payment owner = idempotencyIndex.get(key);
+      if (owner == null) {
+        owner = idempotencyIndex.putIfAbsent(key, payment);
+        if (owner == null) {
+          idempotencyExpiry.schedule(payment, clock.millis() + idempotencyKeyTtlMillis);
+        }
       }
+      if (owner != null && !owner.equals(payment)) {
+        return latest(owner);
+      }
+    }
 
-      payment.setUpdatedAt(Instant.now());
-      storage.put(payment.getId(), payment);
+    Payment stored = payment.withUpdatedAt(Instant.now(clock));
+    storage.put(stored.getId(), stored);
+    index.update(stored);
+    scheduleRetention(stored);
+    return stored;
+  }
 
-      if (payment.getIdempotencyKey() != null) {
-        idempotencyIndex.put(payment.getIdempotencyKey(), payment);
-      }
-      return payment;
-    } finally {
-      lock.writeLock().unlock();
+  @Override
+  public boolean compareAndSet(UUID id, long expectedVersion, Payment newRecord) {
+    Payment stored = newRecord.withUpdatedAt(Instant.now(clock));
+    // not CHM.replace(k, old, new): payments are equal by id, whatever their version
+    Payment result = storage.computeIfPresent(id, (key, current) ->
+        VersionCheck.canReplace(current, id, expectedVersion, newRecord) ? stored : current);
+    if (result != stored) {
+      return false;
     }
+    index.update(stored);
+    scheduleRetention(stored);
+    return true;
   }
 
   @Override
-  public Optional<Payment> get(UUID id) {
-    lock.readLock().lock();
-    try {
-      return Optional.ofNullable(storage.get(id));
-    } finally {
-      lock.readLock().unlock();
+  public Optional<Payment> claimIdempotencyKey(Payment payment) {
+    if (payment.getId() == null) {
+      throw new IllegalArgumentException("Payment ID cannot be null when saving");
+    }
+    if (payment.getIdempotencyKey() == null) {
+      throw new IllegalArgumentException("Idempotency key is required to claim it");
+    }
+
+    Payment owner = idempotencyIndex.get(payment.getIdempotencyKey());
+    if (owner != null) {
+      return Optional.of(latest(owner));
     }
+
+    Payment stored = payment.withUpdatedAt(Instant.now(clock));
+    owner = idempotencyIndex.putIfAbsent(stored.getIdempotencyKey(), stored);
+    if (owner != null) {
+      return Optional.of(latest(owner));
+    }
+
+    storage.put(stored.getId(), stored);
+    index.update(stored);
+    idempotencyExpiry.schedule(stored, stored.getUpdatedAt().toEpochMilli() + idempotencyKeyTtlMillis);
+    return Optional.empty();
+  }
+
+  @Override
+  public Optional<Payment> get(UUID id) {
+    return Optional.ofNullable(storage.get(id));
   }
 
   @Override
   public Optional<Payment> getByIdempotencyKey(String key) {
-    lock.readLock().lock();
-    try {
-      return Optional.ofNullable(idempotencyIndex.get(key));
-    } finally {
-      lock.readLock().unlock();
+    return Optional.ofNullable(idempotencyIndex.get(key)).map(this::latest);
+  }
+
+  @Override
+  public PaymentPage find(PaymentQuery query) {
+    return index.query(query, this::get);
+  }
+
+  /**
+   * Drops expired idempotency keys and finalized payments past their retention window.
+   * Runs on the single scheduler thread, which is the only thread advancing the wheels.
+   */
+  @Scheduled(fixedDelayString = "#{@paymentGatewayProperties.retention.tick.toMillis()}")
+  public void evictExpired() {
+    long now = clock.millis();
+
+    int keys = idempotencyExpiry.advance(now, (payment, deadline) -> {
+      // conditional remove: the key may have expired and been claimed again since
+      if (idempotencyIndex.remove(payment.getIdempotencyKey(), payment)) {
+        evictedKeys.increment();
+        keyExpiryLag.record(now - deadline, TimeUnit.MILLISECONDS);
+      }
+    });
+
+    int payments = retentionExpiry.advance(now, (id, deadline) -> {
+      Payment payment = storage.get(id);
+      // stale entry when the payment was updated again after this deadline was scheduled
+      if (payment == null || !payment.getStatus().isFinal()
+          || payment.getUpdatedAt().toEpochMilli() + retentionMillis > now) {
+        return;
+      }
+      if (storage.remove(id, payment)) {
+        index.remove(payment);
+        if (payment.getIdempotencyKey() != null) {
+          idempotencyIndex.remove(payment.getIdempotencyKey(), payment);
+        }
+        evictedPayments.increment();
+        paymentExpiryLag.record(now - deadline, TimeUnit.MILLISECONDS);
+      }
+    });
+
+    if (keys > 0 || payments > 0) {
+      LOG.debug("Expired {} idempotency keys and {} finalized payments", keys, payments);
     }
   }
+
+  private Payment latest(Payment owner) {
+    Payment current = storage.get(owner.getId());
+    return current != null ? current : owner;
+  }
+
+  private void scheduleRetention(Payment payment) {
+    if (payment.getStatus() != null && payment.getStatus().isFinal()) {
+      retentionExpiry.schedule(payment.getId(), payment.getUpdatedAt().toEpochMilli() + retentionMillis);
+    }
+  }
+
+  private static Counter evictedCounter(MeterRegistry meterRegistry, String kind) {
+    return Counter.builder("payments.expiry.evicted")
+        .description("Entries evicted after their TTL or retention window")
+        .tag("kind", kind)
+        .register(meterRegistry);
+  }
+
+  private static Timer expiryLagTimer(MeterRegistry meterRegistry, String kind) {
+    return Timer.builder("payments.expiry.lag")
+        .description("Delay between an entry's deadline and its eviction")
+        .tag("kind", kind)
+        .register(meterRegistry);
+  }
 }
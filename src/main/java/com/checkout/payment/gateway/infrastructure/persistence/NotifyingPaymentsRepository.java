@@ -0,0 +1,105 @@
+package com.checkout.payment.gateway.infrastructure.persistence;
+
+import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentChangeListener;
+import com.checkout.payment.gateway.domain.model.PaymentPage;
+import com.checkout.payment.gateway.domain.model.PaymentQuery;
+import com.checkout.payment.gateway.domain.model.PaymentsRepository;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Outermost decorator: every write the delegate accepts is announced to the
+ * {@link PaymentChangeListener}s, so nothing has to poll the store to learn a payment settled.
+ * Rejected writes, a lost compare-and-set or a claim of a key owned by another payment, announce
+ * nothing. A failing listener is logged and never fails the write.
+ */
+public class NotifyingPaymentsRepository implements PaymentsRepository, AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(NotifyingPaymentsRepository.class);
+
+  private final PaymentsRepository delegate;
+  private final List<PaymentChangeListener> listeners;
+
+  public NotifyingPaymentsRepository(PaymentsRepository delegate, List<PaymentChangeListener> listeners) {
+    this.delegate = delegate;
+    this.listeners = List.copyOf(listeners);
+  }
+
+  @Override
+  public Payment save(Payment payment) {
+    Payment stored = delegate.save(payment);
+    // another payment owning the key was returned, and this one not stored
+    if (stored.getId().equals(payment.getId())) {
+      notifyListeners(stored);
+    }
+    return stored;
+  }
+
+  @Override
+  public boolean compareAndSet(UUID id, long expectedVersion, Payment newRecord) {
+    boolean set = delegate.compareAndSet(id, expectedVersion, newRecord);
+    if (set) {
+      notifyListeners(newRecord);
+    }
+    return set;
+  }
+
+  @Override
+  public Optional<Payment> get(UUID id) {
+    return delegate.get(id);
+  }
+
+  @Override
+  public Optional<Payment> getByIdempotencyKey(String key) {
+    return delegate.getByIdempotencyKey(key);
+  }
+
+  @Override
+  public Map<UUID, Payment> getAll(Collection<UUID> ids) {
+    return delegate.getAll(ids);
+  }
+
+  @Override
+  public Optional<Payment> claimIdempotencyKey(Payment payment) {
+    Optional<Payment> owner = delegate.claimIdempotencyKey(payment);
+    if (owner.isEmpty()) {
+      notifyListeners(payment);
+    }
+    return owner;
+  }
+
+  @Override
+  public PaymentPage find(PaymentQuery query) {
+    return delegate.find(query);
+  }
+
+  @Override
+  public void saveAll(Collection<Payment> payments) {
+    delegate.saveAll(payments);
+    payments.forEach(this::notifyListeners);
+  }
+
+  // closes a decorator it wraps, such as write-behind; stores close themselves as beans
+  @Override
+  public void close() throws Exception {
+    if (delegate instanceof AutoCloseable closeable) {
+      closeable.close();
+    }
+  }
+
+  private void notifyListeners(Payment payment) {
+    for (PaymentChangeListener listener : listeners) {
+      try {
+        listener.paymentChanged(payment);
+      } catch (RuntimeException e) {
+        LOG.warn("Change of payment {} not delivered to {}", payment.getId(), listener, e);
+      }
+    }
+  }
+}
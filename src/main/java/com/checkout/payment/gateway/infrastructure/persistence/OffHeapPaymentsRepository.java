@@ -0,0 +1,762 @@
+package com.checkout.payment.gateway.infrastructure.persistence;
+
+import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentCursor;
+import com.checkout.payment.gateway.domain.model.PaymentPage;
+import com.checkout.payment.gateway.domain.model.PaymentQuery;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.domain.model.PaymentsRepository;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import java.nio.ByteBuffer;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Compact store keeping every payment in a fixed-width slot of direct memory, so tens of millions
+ * of payments cost the heap only a few primitive index arrays.
+ * <p>
+ * Slot layout ({@value #RECORD_SIZE} bytes): id as two longs, amount, created/updated epoch
+ * millis, currency packed into a short, last four digits as a short, expiry, status as a byte,
+ * card length (the masked number is rebuilt from it on read), version as an unsigned byte (the
+ * lifecycle is acyclic, so it stays tiny) and Latin-1 authorization code and idempotency key.
+ * Strings that do not fit their field spill into small heap maps.
+ * <p>
+ * Locking is striped: a record is guarded by the stripe of its id, the idempotency index by the
+ * stripe of the key. When both are needed the key stripe is always taken first.
+ * Slots are never reclaimed; use the in-memory store when TTL expiry is required.
+ * <p>
+ * Listing queries scan the slots, reading only status, creation time and id, and keep the first
+ * page in a bounded heap. With {@code off-heap.index} enabled they go through an on-heap
+ * {@link PaymentIndex} instead, at about 150 more bytes of heap per payment.
+ */
+@Repository
+@ConditionalOnProperty(prefix = "payment-gateway.repository", name = "type", havingValue = "off-heap")
+public class OffHeapPaymentsRepository implements PaymentsRepository {
+
+  private static final int ID_MSB = 0;
+  private static final int ID_LSB = 8;
+  private static final int AMOUNT = 16;
+  private static final int CREATED_AT = 24;
+  private static final int UPDATED_AT = 32;
+  private static final int CURRENCY = 40;
+  private static final int LAST_FOUR = 42;
+  private static final int EXPIRY_YEAR = 44;
+  private static final int EXPIRY_MONTH = 46;
+  private static final int STATUS = 47;
+  private static final int CARD_LENGTH = 48;
+  private static final int AUTH_CODE_LENGTH = 49;
+  private static final int KEY_LENGTH = 50;
+  private static final int VERSION = 51;
+  private static final int AUTH_CODE = 52;
+  private static final int AUTH_CODE_CAPACITY = 44;
+  private static final int KEY = 96;
+  private static final int KEY_CAPACITY = 64;
+  static final int RECORD_SIZE = 160;
+
+  private static final long NULL_LONG = Long.MIN_VALUE;
+  private static final short NULL_SHORT = -1;
+  // length marker for strings kept in the heap overflow maps
+  private static final byte OVERFLOW = -1;
+
+  private static final int SLOTS_PER_CHUNK_BITS = 16;
+  private static final int SLOTS_PER_CHUNK = 1 << SLOTS_PER_CHUNK_BITS;
+  private static final int STRIPES = 64;
+
+  private static final PaymentStatus[] STATUSES = PaymentStatus.values();
+
+  private final Clock clock;
+  private final int capacity;
+  private final AtomicReferenceArray<ByteBuffer> chunks;
+  private final ReentrantLock chunkAllocation = new ReentrantLock();
+  private final AtomicInteger nextSlot = new AtomicInteger();
+
+  private final IdIndex[] idStripes = new IdIndex[STRIPES];
+  private final KeyIndex[] keyStripes = new KeyIndex[STRIPES];
+
+  // on-heap, roughly 150 bytes per payment; null when listing queries scan the slots
+  private final PaymentIndex index;
+
+  private final Map<Integer, String> overflowAuthCodes = new ConcurrentHashMap<>();
+  private final Map<Integer, String> overflowKeys = new ConcurrentHashMap<>();
+
+  @Autowired
+  public OffHeapPaymentsRepository(PaymentGatewayProperties properties, MeterRegistry meterRegistry) {
+    this(properties.getRepository().getOffHeap().getCapacity(), properties.getRepository().getOffHeap().isIndex(),
+        meterRegistry, Clock.systemUTC());
+  }
+
+  OffHeapPaymentsRepository(int capacity, MeterRegistry meterRegistry, Clock clock) {
+    this(capacity, false, meterRegistry, clock);
+  }
+
+  OffHeapPaymentsRepository(int capacity, boolean indexed, MeterRegistry meterRegistry, Clock clock) {
+    this.clock = clock;
+    this.capacity = capacity;
+    this.index = indexed ? new PaymentIndex() : null;
+    this.chunks = new AtomicReferenceArray<>((capacity + SLOTS_PER_CHUNK - 1) >>> SLOTS_PER_CHUNK_BITS);
+    for (int i = 0; i < STRIPES; i++) {
+      idStripes[i] = new IdIndex();
+      keyStripes[i] = new KeyIndex();
+    }
+
+    meterRegistry.gauge("payments.store.size", nextSlot, AtomicInteger::get);
+    meterRegistry.gauge("payments.store.off.heap.bytes", this, OffHeapPaymentsRepository::offHeapBytes);
+  }
+
+  public long offHeapBytes() {
+    long allocated = 0;
+    for (int i = 0; i < chunks.length(); i++) {
+      if (chunks.get(i) != null) {
+        allocated += (long) SLOTS_PER_CHUNK * RECORD_SIZE;
+      }
+    }
+    return allocated;
+  }
+
+  // buckets probed per id lookup, averaged over every stored id; about 1.5 at the index's load
+  double meanIdProbeLength() {
+    long probes = 0;
+    long ids = 0;
+    for (IdIndex idIndex : idStripes) {
+      idIndex.lock.readLock().lock();
+      try {
+        probes += idIndex.probes();
+        ids += idIndex.size;
+      } finally {
+        idIndex.lock.readLock().unlock();
+      }
+    }
+    return ids == 0 ? 0 : (double) probes / ids;
+  }
+
+  @Override
+  public Payment save(Payment payment) {
+    if (payment.getId() == null) {
+      throw new IllegalArgumentException("Payment ID cannot be null when saving");
+    }
+
+    Payment stored = payment.withUpdatedAt(Instant.now(clock));
+    String key = stored.getIdempotencyKey();
+    if (key == null) {
+      upsert(stored);
+      return stored;
+    }
+
+    long hash = hash(key);
+    KeyIndex keyIndex = keyStripes[stripe(hash)];
+    keyIndex.lock.writeLock().lock();
+    try {
+      int owner = keyIndex.find(hash, key);
+      if (owner >= 0 && !isRecordOf(owner, payment.getId())) {
+        return read(owner);
+      }
+      int slot = upsert(stored);
+      if (owner < 0) {
+        keyIndex.insert(hash, slot);
+      }
+      return stored;
+    } finally {
+      keyIndex.lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public boolean compareAndSet(UUID id, long expectedVersion, Payment newRecord) {
+    Payment stored = newRecord.withUpdatedAt(Instant.now(clock));
+    IdIndex idIndex = idStripes[stripe(id)];
+    idIndex.lock.writeLock().lock();
+    try {
+      int slot = idIndex.find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+      Payment current = slot < 0 ? null : readLocked(slot);
+      if (!VersionCheck.canReplace(current, id, expectedVersion, newRecord)) {
+        return false;
+      }
+      writeState(slot, stored);
+      if (index != null) {
+        index.update(stored);
+      }
+      return true;
+    } finally {
+      idIndex.lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public Optional<Payment> claimIdempotencyKey(Payment payment) {
+    if (payment.getId() == null) {
+      throw new IllegalArgumentException("Payment ID cannot be null when saving");
+    }
+    if (payment.getIdempotencyKey() == null) {
+      throw new IllegalArgumentException("Idempotency key is required to claim it");
+    }
+
+    String key = payment.getIdempotencyKey();
+    long hash = hash(key);
+    KeyIndex keyIndex = keyStripes[stripe(hash)];
+    keyIndex.lock.writeLock().lock();
+    try {
+      int owner = keyIndex.find(hash, key);
+      if (owner >= 0) {
+        return Optional.of(read(owner));
+      }
+      keyIndex.insert(hash, upsert(payment.withUpdatedAt(Instant.now(clock))));
+      return Optional.empty();
+    } finally {
+      keyIndex.lock.writeLock().unlock();
+    }
+  }
+
+  @Override
+  public Optional<Payment> get(UUID id) {
+    IdIndex idIndex = idStripes[stripe(id)];
+    idIndex.lock.readLock().lock();
+    try {
+      int slot = idIndex.find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+      return slot < 0 ? Optional.empty() : Optional.of(readLocked(slot));
+    } finally {
+      idIndex.lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * Groups the ids by stripe, so every stripe's read lock is taken once however many of the ids
+   * it guards.
+   */
+  @Override
+  public Map<UUID, Payment> getAll(Collection<UUID> ids) {
+    Map<Integer, List<UUID>> byStripe = new HashMap<>();
+    for (UUID id : ids) {
+      byStripe.computeIfAbsent(stripe(id), stripe -> new ArrayList<>()).add(id);
+    }
+    Map<UUID, Payment> payments = new HashMap<>();
+    for (Map.Entry<Integer, List<UUID>> stripeIds : byStripe.entrySet()) {
+      IdIndex idIndex = idStripes[stripeIds.getKey()];
+      idIndex.lock.readLock().lock();
+      try {
+        for (UUID id : stripeIds.getValue()) {
+          int slot = idIndex.find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+          if (slot >= 0) {
+            payments.put(id, readLocked(slot));
+          }
+        }
+      } finally {
+        idIndex.lock.readLock().unlock();
+      }
+    }
+    return payments;
+  }
+
+  @Override
+  public Optional<Payment> getByIdempotencyKey(String key) {
+    long hash = hash(key);
+    KeyIndex keyIndex = keyStripes[stripe(hash)];
+    int slot;
+    keyIndex.lock.readLock().lock();
+    try {
+      slot = keyIndex.find(hash, key);
+    } finally {
+      keyIndex.lock.readLock().unlock();
+    }
+    return slot < 0 ? Optional.empty() : Optional.of(read(slot));
+  }
+
+  @Override
+  public PaymentPage find(PaymentQuery query) {
+    return index != null ? index.query(query, this::get) : scan(query);
+  }
+
+  /**
+   * Reads status, creation time and id of every slot without locks, keeping the first
+   * {@code limit + 1} matches in a max-heap, then loads them in order and re-checks their status,
+   * as {@link PaymentIndex#query} does.
+   */
+  private PaymentPage scan(PaymentQuery query) {
+    int limit = query.getLimit();
+    boolean[] statuses = new boolean[STATUSES.length + 1];
+    for (PaymentStatus status : query.getStatuses().isEmpty() ? List.of(STATUSES) : query.getStatuses()) {
+      statuses[status.ordinal() + 1] = true;
+    }
+    PriorityQueue<Candidate> first = new PriorityQueue<>(Math.min(limit + 1, 1024), Comparator.reverseOrder());
+    int slots = Math.min(nextSlot.get(), capacity);
+    for (int slot = 0; slot < slots; slot++) {
+      ByteBuffer buffer = chunk(slot);
+      if (buffer == null) {
+        // allocated by a writer that has not reserved its chunk yet
+        continue;
+      }
+      int base = offset(slot);
+      if (!statuses[buffer.get(base + STATUS)]) {
+        continue;
+      }
+      long createdAt = buffer.getLong(base + CREATED_AT);
+      long msb = buffer.getLong(base + ID_MSB);
+      long lsb = buffer.getLong(base + ID_LSB);
+      Candidate candidate = new Candidate(createdAt == NULL_LONG ? 0 : createdAt, msb, lsb);
+      if (!candidate.matches(query) || first.size() > limit && candidate.compareTo(first.peek()) >= 0) {
+        continue;
+      }
+      first.add(candidate);
+      if (first.size() > limit + 1) {
+        first.poll();
+      }
+    }
+
+    boolean more = first.size() > limit;
+    Candidate[] ordered = first.toArray(new Candidate[0]);
+    Arrays.sort(ordered);
+    List<Payment> payments = new ArrayList<>(Math.min(limit, 1024));
+    Candidate last = null;
+    int examined = 0;
+    while (payments.size() < limit && examined < ordered.length) {
+      last = ordered[examined++];
+      get(new UUID(last.msb(), last.lsb()))
+          .filter(p -> query.getStatuses().isEmpty() || query.getStatuses().contains(p.getStatus()))
+          .ifPresent(payments::add);
+    }
+    // candidates dropped by the re-check leave the page short; the cursor still moves past them
+    PaymentCursor next = more && last != null
+        ? new PaymentCursor(Instant.ofEpochMilli(last.createdAt()), new UUID(last.msb(), last.lsb()))
+        : null;
+    return new PaymentPage(payments, next);
+  }
+
+  // ordered as PaymentIndex orders its entries: creation time, then id as UUID.compareTo does
+  private record Candidate(long createdAt, long msb, long lsb) implements Comparable<Candidate> {
+
+    boolean matches(PaymentQuery query) {
+      if (query.getFrom() != null && compare(createdAt, query.getFrom()) < 0) {
+        return false;
+      }
+      if (query.getTo() != null && compare(createdAt, query.getTo()) >= 0) {
+        return false;
+      }
+      PaymentCursor after = query.getAfter();
+      if (after == null) {
+        return true;
+      }
+      int byTime = compare(createdAt, after.createdAt());
+      return byTime > 0 || byTime == 0 && compareTo(new Candidate(createdAt, after.id().getMostSignificantBits(),
+          after.id().getLeastSignificantBits())) > 0;
+    }
+
+    // millis against an instant that may carry sub-millisecond nanos
+    private static int compare(long millis, Instant instant) {
+      int byMillis = Long.compare(millis, instant.toEpochMilli());
+      return byMillis != 0 || instant.getNano() % 1_000_000 == 0 ? byMillis : -1;
+    }
+
+    @Override
+    public int compareTo(Candidate other) {
+      int byTime = Long.compare(createdAt, other.createdAt);
+      if (byTime != 0) {
+        return byTime;
+      }
+      int byMsb = Long.compare(msb, other.msb);
+      return byMsb != 0 ? byMsb : Long.compare(lsb, other.lsb);
+    }
+  }
+
+  private int upsert(Payment payment) {
+    if (payment.getVersion() < 0 || payment.getVersion() > 0xFF) {
+      throw new IllegalArgumentException("Payment version " + payment.getVersion() + " does not fit the record");
+    }
+    UUID id = payment.getId();
+    IdIndex idIndex = idStripes[stripe(id)];
+    idIndex.lock.writeLock().lock();
+    try {
+      int slot = idIndex.find(id.getMostSignificantBits(), id.getLeastSignificantBits());
+      if (slot < 0) {
+        slot = allocate();
+        writeIdentity(slot, payment);
+        idIndex.insert(id.getMostSignificantBits(), id.getLeastSignificantBits(), slot);
+      }
+      writeState(slot, payment);
+      if (index != null) {
+        index.update(payment);
+      }
+      return slot;
+    } finally {
+      idIndex.lock.writeLock().unlock();
+    }
+  }
+
+  private int allocate() {
+    int slot = nextSlot.getAndIncrement();
+    if (slot >= capacity || slot < 0) {
+      nextSlot.decrementAndGet();
+      throw new IllegalStateException("Off-heap payment store is full (" + capacity + " payments)");
+    }
+    int chunk = slot >>> SLOTS_PER_CHUNK_BITS;
+    if (chunks.get(chunk) == null) {
+      chunkAllocation.lock();
+      try {
+        if (chunks.get(chunk) == null) {
+          chunks.set(chunk, ByteBuffer.allocateDirect(SLOTS_PER_CHUNK * RECORD_SIZE));
+        }
+      } finally {
+        chunkAllocation.unlock();
+      }
+    }
+    return slot;
+  }
+
+  private ByteBuffer chunk(int slot) {
+    return chunks.get(slot >>> SLOTS_PER_CHUNK_BITS);
+  }
+
+  private static int offset(int slot) {
+    return (slot & (SLOTS_PER_CHUNK - 1)) * RECORD_SIZE;
+  }
+
+  // fields that never change once the slot is published: id and idempotency key
+  private void writeIdentity(int slot, Payment payment) {
+    ByteBuffer buffer = chunk(slot);
+    int base = offset(slot);
+    buffer.putLong(base + ID_MSB, payment.getId().getMostSignificantBits());
+    buffer.putLong(base + ID_LSB, payment.getId().getLeastSignificantBits());
+    writeString(buffer, base + KEY_LENGTH, base + KEY, KEY_CAPACITY, payment.getIdempotencyKey(),
+        overflowKeys, slot);
+  }
+
+  private void writeState(int slot, Payment payment) {
+    ByteBuffer buffer = chunk(slot);
+    int base = offset(slot);
+    buffer.putLong(base + AMOUNT, payment.getAmount() == null ? NULL_LONG : payment.getAmount());
+    buffer.putLong(base + CREATED_AT, toMillis(payment.getCreatedAt()));
+    buffer.putLong(base + UPDATED_AT, toMillis(payment.getUpdatedAt()));
+    buffer.putShort(base + CURRENCY, packCurrency(payment.getCurrency()));
+    buffer.putShort(base + LAST_FOUR,
+        payment.getCardLastFour() == null ? NULL_SHORT : Short.parseShort(payment.getCardLastFour()));
+    buffer.putShort(base + EXPIRY_YEAR,
+        payment.getCardExpiryYear() == null ? 0 : payment.getCardExpiryYear().shortValue());
+    buffer.put(base + EXPIRY_MONTH,
+        payment.getCardExpiryMonth() == null ? 0 : payment.getCardExpiryMonth().byteValue());
+    buffer.put(base + STATUS,
+        payment.getStatus() == null ? 0 : (byte) (payment.getStatus().ordinal() + 1));
+    buffer.put(base + CARD_LENGTH,
+        payment.getMaskedCardNumber() == null ? 0 : (byte) payment.getMaskedCardNumber().length());
+    buffer.put(base + VERSION, (byte) payment.getVersion());
+    writeString(buffer, base + AUTH_CODE_LENGTH, base + AUTH_CODE, AUTH_CODE_CAPACITY,
+        payment.getAuthorizationCode(), overflowAuthCodes, slot);
+  }
+
+  private Payment read(int slot) {
+    ByteBuffer buffer = chunk(slot);
+    int base = offset(slot);
+    UUID id = new UUID(buffer.getLong(base + ID_MSB), buffer.getLong(base + ID_LSB));
+    IdIndex idIndex = idStripes[stripe(id)];
+    idIndex.lock.readLock().lock();
+    try {
+      return readLocked(slot);
+    } finally {
+      idIndex.lock.readLock().unlock();
+    }
+  }
+
+  private Payment readLocked(int slot) {
+    ByteBuffer buffer = chunk(slot);
+    int base = offset(slot);
+
+    long amount = buffer.getLong(base + AMOUNT);
+    short lastFour = buffer.getShort(base + LAST_FOUR);
+    short expiryYear = buffer.getShort(base + EXPIRY_YEAR);
+    byte expiryMonth = buffer.get(base + EXPIRY_MONTH);
+    byte status = buffer.get(base + STATUS);
+    int cardLength = buffer.get(base + CARD_LENGTH);
+    String cardLastFour = lastFour == NULL_SHORT ? null : formatLastFour(lastFour);
+
+    return Payment.builder()
+        .id(new UUID(buffer.getLong(base + ID_MSB), buffer.getLong(base + ID_LSB)))
+        .status(status == 0 ? null : STATUSES[status - 1])
+        .amount(amount == NULL_LONG ? null : amount)
+        .currency(unpackCurrency(buffer.getShort(base + CURRENCY)))
+        .cardLastFour(cardLastFour)
+        .cardExpiryMonth(expiryMonth == 0 ? null : (int) expiryMonth)
+        .cardExpiryYear(expiryYear == 0 ? null : (int) expiryYear)
+        .maskedCardNumber(cardLength == 0 || cardLastFour == null ? null : "*".repeat(cardLength - 4) + cardLastFour)
+        .authorizationCode(readString(buffer, base + AUTH_CODE_LENGTH, base + AUTH_CODE, overflowAuthCodes, slot))
+        .idempotencyKey(readString(buffer, base + KEY_LENGTH, base + KEY, overflowKeys, slot))
+        .createdAt(fromMillis(buffer.getLong(base + CREATED_AT)))
+        .updatedAt(fromMillis(buffer.getLong(base + UPDATED_AT)))
+        .version(buffer.get(base + VERSION) & 0xFF)
+        .build();
+  }
+
+  private boolean isRecordOf(int slot, UUID id) {
+    ByteBuffer buffer = chunk(slot);
+    int base = offset(slot);
+    return buffer.getLong(base + ID_MSB) == id.getMostSignificantBits()
+        && buffer.getLong(base + ID_LSB) == id.getLeastSignificantBits();
+  }
+
+  private boolean keyEquals(int slot, String key) {
+    ByteBuffer buffer = chunk(slot);
+    int base = offset(slot);
+    int length = buffer.get(base + KEY_LENGTH);
+    if (length == OVERFLOW) {
+      return key.equals(overflowKeys.get(slot));
+    }
+    if (length - 1 != key.length()) {
+      return false;
+    }
+    for (int i = 0; i < key.length(); i++) {
+      if ((buffer.get(base + KEY + i) & 0xFF) != key.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // Latin-1 strings stored inline as (length + 1) and bytes; 0 is null, OVERFLOW points to the heap map
+  private static void writeString(ByteBuffer buffer, int lengthOffset, int offset, int capacity,
+      String value, Map<Integer, String> overflow, int slot) {
+    if (value == null) {
+      buffer.put(lengthOffset, (byte) 0);
+      overflow.remove(slot);
+      return;
+    }
+    if (value.length() > capacity || !isLatin1(value)) {
+      buffer.put(lengthOffset, OVERFLOW);
+      overflow.put(slot, value);
+      return;
+    }
+    for (int i = 0; i < value.length(); i++) {
+      buffer.put(offset + i, (byte) value.charAt(i));
+    }
+    buffer.put(lengthOffset, (byte) (value.length() + 1));
+    overflow.remove(slot);
+  }
+
+  private static String readString(ByteBuffer buffer, int lengthOffset, int offset,
+      Map<Integer, String> overflow, int slot) {
+    int length = buffer.get(lengthOffset);
+    if (length == 0) {
+      return null;
+    }
+    if (length == OVERFLOW) {
+      return overflow.get(slot);
+    }
+    char[] chars = new char[length - 1];
+    for (int i = 0; i < chars.length; i++) {
+      chars[i] = (char) (buffer.get(offset + i) & 0xFF);
+    }
+    return new String(chars);
+  }
+
+  private static boolean isLatin1(String value) {
+    for (int i = 0; i < value.length(); i++) {
+      if (value.charAt(i) > 0xFF) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // three upper-case letters, five bits each, with the top bit marking a present value
+  static short packCurrency(String currency) {
+    if (currency == null) {
+      return 0;
+    }
+    if (currency.length() != 3) {
+      throw new IllegalArgumentException("Unsupported currency code " + currency);
+    }
+    int packed = 0x8000;
+    for (int i = 0; i < 3; i++) {
+      char c = currency.charAt(i);
+      if (c < 'A' || c > 'Z') {
+        throw new IllegalArgumentException("Unsupported currency code " + currency);
+      }
+      packed |= (c - 'A') << (10 - 5 * i);
+    }
+    return (short) packed;
+  }
+
+  static String unpackCurrency(short packed) {
+    if (packed == 0) {
+      return null;
+    }
+    return new String(new char[] {
+        (char) ('A' + ((packed >> 10) & 0x1F)),
+        (char) ('A' + ((packed >> 5) & 0x1F)),
+        (char) ('A' + (packed & 0x1F))
+    });
+  }
+
+  private static String formatLastFour(short lastFour) {
+    return new String(new char[] {
+        (char) ('0' + lastFour / 1000),
+        (char) ('0' + lastFour / 100 % 10),
+        (char) ('0' + lastFour / 10 % 10),
+        (char) ('0' + lastFour % 10)
+    });
+  }
+
+  private static long toMillis(Instant instant) {
+    return instant == null ? NULL_LONG : instant.toEpochMilli();
+  }
+
+  private static Instant fromMillis(long millis) {
+    return millis == NULL_LONG ? null : Instant.ofEpochMilli(millis);
+  }
+
+  private static int stripe(UUID id) {
+    return (int) (mix(id.getMostSignificantBits() ^ id.getLeastSignificantBits()) & (STRIPES - 1));
+  }
+
+  private static int stripe(long hash) {
+    return (int) (hash & (STRIPES - 1));
+  }
+
+  // FNV-1a over the UTF-16 code units, no allocation
+  private static long hash(String key) {
+    long hash = 0xcbf29ce484222325L;
+    for (int i = 0; i < key.length(); i++) {
+      hash ^= key.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    return mix(hash);
+  }
+
+  private static long mix(long value) {
+    value ^= value >>> 33;
+    value *= 0xff51afd7ed558ccdL;
+    value ^= value >>> 33;
+    return value;
+  }
+
+  /**
+   * Open-addressing, linear-probing index from id to slot. Entries are never removed, so no
+   * tombstones are needed. Guarded by its own lock, which also guards the records it points to.
+   */
+  private static final class IdIndex {
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    long[] msbs = new long[16];
+    long[] lsbs = new long[16];
+    // slot + 1, so that 0 marks an empty bucket
+    int[] slots = new int[16];
+    int size;
+
+    int find(long msb, long lsb) {
+      int mask = slots.length - 1;
+      for (int i = home(msb, lsb, mask); slots[i] != 0; i = (i + 1) & mask) {
+        if (msbs[i] == msb && lsbs[i] == lsb) {
+          return slots[i] - 1;
+        }
+      }
+      return -1;
+    }
+
+    void insert(long msb, long lsb, int slot) {
+      if ((size + 1) * 2 > slots.length) {
+        long[] oldMsbs = msbs;
+        long[] oldLsbs = lsbs;
+        int[] oldSlots = slots;
+        msbs = new long[oldSlots.length * 2];
+        lsbs = new long[oldSlots.length * 2];
+        slots = new int[oldSlots.length * 2];
+        for (int i = 0; i < oldSlots.length; i++) {
+          if (oldSlots[i] != 0) {
+            put(oldMsbs[i], oldLsbs[i], oldSlots[i]);
+          }
+        }
+      }
+      put(msb, lsb, slot + 1);
+      size++;
+    }
+
+    private void put(long msb, long lsb, int storedSlot) {
+      int mask = slots.length - 1;
+      int i = home(msb, lsb, mask);
+      while (slots[i] != 0) {
+        i = (i + 1) & mask;
+      }
+      msbs[i] = msb;
+      lsbs[i] = lsb;
+      slots[i] = storedSlot;
+    }
+
+    // the low bits of the hash pick the stripe, so every id in this index shares them: the home
+    // bucket is taken above them, or only one bucket in STRIPES could ever be a home
+    private static int home(long msb, long lsb, int mask) {
+      return (int) (mix(msb ^ lsb) >>> 8) & mask;
+    }
+
+    // buckets looked at to find every entry, for the probe-length check in tests
+    long probes() {
+      int mask = slots.length - 1;
+      long probes = 0;
+      for (int i = 0; i < slots.length; i++) {
+        if (slots[i] != 0) {
+          probes += ((i - home(msbs[i], lsbs[i], mask)) & mask) + 1;
+        }
+      }
+      return probes;
+    }
+  }
+
+  /**
+   * Open-addressing index from the 64-bit key hash to slot; hash collisions are resolved by
+   * comparing the key stored in the slot.
+   */
+  private final class KeyIndex {
+    final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    long[] hashes = new long[16];
+    int[] slots = new int[16];
+    int size;
+
+    int find(long hash, String key) {
+      int mask = slots.length - 1;
+      for (int i = (int) (hash >>> 8) & mask; slots[i] != 0; i = (i + 1) & mask) {
+        if (hashes[i] == hash && keyEquals(slots[i] - 1, key)) {
+          return slots[i] - 1;
+        }
+      }
+      return -1;
+    }
+
+    void insert(long hash, int slot) {
+      if ((size + 1) * 2 > slots.length) {
+        long[] oldHashes = hashes;
+        int[] oldSlots = slots;
+        hashes = new long[oldSlots.length * 2];
+        slots = new int[oldSlots.length * 2];
+        for (int i = 0; i < oldSlots.length; i++) {
+          if (oldSlots[i] != 0) {
+            put(oldHashes[i], oldSlots[i]);
+          }
+        }
+      }
+      put(hash, slot + 1);
+      size++;
+    }
+
+    private void put(long hash, int storedSlot) {
+      int mask = slots.length - 1;
+      int i = (int) (hash >>> 8) & mask;
+      while (slots[i] != 0) {
+        i = (i + 1) & mask;
+      }
+      hashes[i] = hash;
+      slots[i] = storedSlot;
+    }
+  }
+}
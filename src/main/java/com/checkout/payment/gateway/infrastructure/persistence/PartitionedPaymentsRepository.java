@@ -0,0 +1,275 @@
+package com.checkout.payment.gateway.infrastructure.persistence;
+
+import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentPage;
+import com.checkout.payment.gateway.domain.model.PaymentQuery;
+import com.checkout.payment.gateway.domain.model.PaymentsRepository;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Repository;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sharded store where every partition has exactly one writer: an owner thread draining a
+ * lock-free mailbox. Payments are partitioned by id and the idempotency index by key, so a write
+ * is a message to one owner, plus a hop to a second owner when a key is bound.
+ * <p>
+ * Payments are immutable, so readers go straight to the ones the owners published without
+ * involving the owner. Compare-and-set runs on the owner of the payment, which makes the version
+ * check and the write a single step. Each mailbox's depth is exported per partition.
+ */
+@Repository
+@ConditionalOnProperty(prefix = "payment-gateway.repository", name = "type", havingValue = "partitioned")
+public class PartitionedPaymentsRepository implements PaymentsRepository {
+
+  private static final Logger LOG = LoggerFactory.getLogger(PartitionedPaymentsRepository.class);
+
+  private final Clock clock;
+  private final Partition[] partitions;
+  private final PaymentIndex index = new PaymentIndex();
+
+  @Autowired
+  public PartitionedPaymentsRepository(PaymentGatewayProperties properties, MeterRegistry meterRegistry) {
+    this(properties.getRepository().getPartitioned().getPartitions(), meterRegistry, Clock.systemUTC());
+  }
+
+  PartitionedPaymentsRepository(int partitionCount, MeterRegistry meterRegistry, Clock clock) {
+    this.clock = clock;
+    this.partitions = new Partition[partitionCount];
+    for (int i = 0; i < partitionCount; i++) {
+      partitions[i] = new Partition(i);
+      Gauge.builder("payments.partition.queue.depth", partitions[i].depth, AtomicInteger::get)
+          .description("Writes waiting in a partition's mailbox")
+          .tag("partition", String.valueOf(i))
+          .register(meterRegistry);
+    }
+    Gauge.builder("payments.store.size", this, repository -> Arrays.stream(repository.partitions)
+            .mapToInt(partition -> partition.payments.size())
+            .sum())
+        .register(meterRegistry);
+    LOG.info("Started {} payment partitions", partitionCount);
+  }
+
+  @Override
+  public Payment save(Payment payment) {
+    if (payment.getId() == null) {
+      throw new IllegalArgumentException("Payment ID cannot be null when saving");
+    }
+
+    Payment stored = payment.withUpdatedAt(Instant.now(clock));
+    CompletableFuture<Payment> saved = new CompletableFuture<>();
+    String key = stored.getIdempotencyKey();
+    if (key == null) {
+      byId(stored.getId()).submit(saved, () -> {
+        publish(stored);
+        saved.complete(stored);
+      });
+    } else {
+      byKey(key).submit(saved, () -> {
+        Payment owner = byKey(key).keys.putIfAbsent(key, stored);
+        if (owner != null && !owner.equals(stored)) {
+          saved.complete(latest(owner));
+          return;
+        }
+        byId(stored.getId()).submit(saved, () -> {
+          publish(stored);
+          saved.complete(stored);
+        });
+      });
+    }
+    return await(saved);
+  }
+
+  @Override
+  public boolean compareAndSet(UUID id, long expectedVersion, Payment newRecord) {
+    Payment stored = newRecord.withUpdatedAt(Instant.now(clock));
+    CompletableFuture<Boolean> swapped = new CompletableFuture<>();
+    byId(id).submit(swapped, () -> {
+      if (!VersionCheck.canReplace(byId(id).payments.get(id), id, expectedVersion, newRecord)) {
+        swapped.complete(false);
+        return;
+      }
+      publish(stored);
+      swapped.complete(true);
+    });
+    return await(swapped);
+  }
+
+  @Override
+  public Optional<Payment> claimIdempotencyKey(Payment payment) {
+    if (payment.getId() == null) {
+      throw new IllegalArgumentException("Payment ID cannot be null when saving");
+    }
+    String key = payment.getIdempotencyKey();
+    if (key == null) {
+      throw new IllegalArgumentException("Idempotency key is required to claim it");
+    }
+
+    Payment stored = payment.withUpdatedAt(Instant.now(clock));
+    CompletableFuture<Optional<Payment>> claimed = new CompletableFuture<>();
+    byKey(key).submit(claimed, () -> {
+      Payment owner = byKey(key).keys.putIfAbsent(key, stored);
+      if (owner != null) {
+        claimed.complete(Optional.of(latest(owner)));
+        return;
+      }
+      byId(stored.getId()).submit(claimed, () -> {
+        publish(stored);
+        claimed.complete(Optional.empty());
+      });
+    });
+    return await(claimed);
+  }
+
+  @Override
+  public Optional<Payment> get(UUID id) {
+    return Optional.ofNullable(byId(id).payments.get(id));
+  }
+
+  @Override
+  public Optional<Payment> getByIdempotencyKey(String key) {
+    return Optional.ofNullable(byKey(key).keys.get(key)).map(this::latest);
+  }
+
+  @Override
+  public PaymentPage find(PaymentQuery query) {
+    return index.query(query, this::get);
+  }
+
+  @PreDestroy
+  public void close() {
+    for (Partition partition : partitions) {
+      partition.stop();
+    }
+  }
+
+  // runs on the owner thread of the payment's partition
+  private void publish(Payment snapshot) {
+    byId(snapshot.getId()).payments.put(snapshot.getId(), snapshot);
+    index.update(snapshot);
+  }
+
+  /**
+   * The key index keeps the owner as it was when it bound the key; its own partition has the
+   * latest version, unless that write is still in flight.
+   */
+  private Payment latest(Payment owner) {
+    Payment latest = byId(owner.getId()).payments.get(owner.getId());
+    return latest != null ? latest : owner;
+  }
+
+  private Partition byId(UUID id) {
+    return partitions[Math.floorMod(id.hashCode(), partitions.length)];
+  }
+
+  private Partition byKey(String key) {
+    return partitions[Math.floorMod(key.hashCode(), partitions.length)];
+  }
+
+  // rethrows what the owner's task threw, rather than the wrapping CompletionException
+  private static <T> T await(CompletableFuture<T> result) {
+    try {
+      return result.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw e;
+    }
+  }
+
+  private record Task(CompletableFuture<?> result, Runnable action) {
+  }
+
+  private static final class Partition implements Runnable {
+    // written only by the owner thread; concurrent maps so readers never need the owner
+    final ConcurrentMap<UUID, Payment> payments = new ConcurrentHashMap<>();
+    final ConcurrentMap<String, Payment> keys = new ConcurrentHashMap<>();
+
+    // lock-free multi-producer queue, drained by a single consumer
+    private final Queue<Task> mailbox = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final Thread owner;
+    private volatile boolean running = true;
+
+    Partition(int index) {
+      this.owner = new Thread(this, "payments-partition-" + index);
+      this.owner.setDaemon(true);
+      this.owner.start();
+    }
+
+    /**
+     * Queues {@code action} for the owner thread; {@code result} is failed if the action throws,
+     * and at once if the partition is stopped.
+     */
+    void submit(CompletableFuture<?> result, Runnable action) {
+      if (!running) {
+        result.completeExceptionally(closed());
+        return;
+      }
+      mailbox.offer(new Task(result, action));
+      depth.incrementAndGet();
+      // stopped since the check: the drain may have missed this task
+      if (!running) {
+        failPending();
+        return;
+      }
+      LockSupport.unpark(owner);
+    }
+
+    @Override
+    public void run() {
+      while (running) {
+        Task task = mailbox.poll();
+        if (task == null) {
+          LockSupport.park(this);
+          continue;
+        }
+        depth.decrementAndGet();
+        try {
+          task.action().run();
+        } catch (RuntimeException e) {
+          LOG.error("Partition task failed", e);
+          task.result().completeExceptionally(e);
+        }
+      }
+    }
+
+    // tasks never run fail, so nobody waits for them forever
+    void stop() {
+      running = false;
+      LockSupport.unpark(owner);
+      failPending();
+    }
+
+    private void failPending() {
+      Task task;
+      while ((task = mailbox.poll()) != null) {
+        depth.decrementAndGet();
+        task.result().completeExceptionally(closed());
+      }
+    }
+
+    private static IllegalStateException closed() {
+      return new IllegalStateException("Payment store is closed");
+    }
+  }
+}
@@ -0,0 +1,169 @@
+package com.checkout.payment.gateway.infrastructure.persistence;
+
+import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentCursor;
+import com.checkout.payment.gateway.domain.model.PaymentPage;
+import com.checkout.payment.gateway.domain.model.PaymentQuery;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Function;
+
+/**
+ * Secondary index of payments by status and creation time, shared by the stores.
+ * <p>
+ * Every status has a skip list ordered by {@code (createdAt, id)}, and one more list holds all
+ * payments. A query seeks to the start of its range in each list involved and merges them, so it
+ * costs O(log n) plus the size of the page. Payments are loaded back through the owning store and
+ * re-checked, so an entry that races with a status change is skipped rather than returned stale.
+ */
+public class PaymentIndex {
+
+  private static final UUID MIN_ID = new UUID(Long.MIN_VALUE, Long.MIN_VALUE);
+  private static final Comparator<Entry> ORDER =
+      Comparator.comparing(Entry::createdAt).thenComparing(Entry::id);
+
+  private final Map<PaymentStatus, NavigableSet<Entry>> byStatus = new EnumMap<>(PaymentStatus.class);
+  private final NavigableSet<Entry> all = new ConcurrentSkipListSet<>(ORDER);
+  // version and status each payment is currently indexed under; also serializes updates per payment
+  private final ConcurrentMap<UUID, Indexed> indexed = new ConcurrentHashMap<>();
+
+  private record Entry(Instant createdAt, UUID id) {
+  }
+
+  private record Indexed(PaymentStatus status, long version) {
+  }
+
+  public PaymentIndex() {
+    for (PaymentStatus status : PaymentStatus.values()) {
+      byStatus.put(status, new ConcurrentSkipListSet<>(ORDER));
+    }
+  }
+
+  /**
+   * Moves the payment to the list of its current status, if that changed since the last update.
+   * Updates for an older version than the one indexed are ignored, so callers need not order them.
+   */
+  public void update(Payment payment) {
+    PaymentStatus status = payment.getStatus();
+    if (status == null) {
+      return;
+    }
+    Entry entry = entry(payment);
+    indexed.compute(payment.getId(), (id, previous) -> {
+      if (previous == null) {
+        all.add(entry);
+      } else if (previous.version() > payment.getVersion()) {
+        return previous;
+      }
+      if (previous == null || previous.status() != status) {
+        byStatus.get(status).add(entry);
+        if (previous != null) {
+          byStatus.get(previous.status()).remove(entry);
+        }
+      }
+      return new Indexed(status, payment.getVersion());
+    });
+  }
+
+  public void remove(Payment payment) {
+    Entry entry = entry(payment);
+    indexed.computeIfPresent(payment.getId(), (id, previous) -> {
+      all.remove(entry);
+      byStatus.get(previous.status()).remove(entry);
+      return null;
+    });
+  }
+
+  public PaymentPage query(PaymentQuery query, Function<UUID, Optional<Payment>> loader) {
+    List<NavigableSet<Entry>> sources = query.getStatuses().isEmpty()
+        ? List.of(all)
+        : query.getStatuses().stream().map(byStatus::get).toList();
+
+    PriorityQueue<Cursor> merge = new PriorityQueue<>(Comparator.comparing(Cursor::head, ORDER));
+    for (NavigableSet<Entry> source : sources) {
+      Cursor cursor = new Cursor(range(source, query).iterator());
+      if (cursor.advance()) {
+        merge.add(cursor);
+      }
+    }
+
+    List<Payment> payments = new ArrayList<>(Math.min(query.getLimit(), 1024));
+    Entry last = null;
+    while (payments.size() < query.getLimit() && !merge.isEmpty()) {
+      Cursor cursor = merge.poll();
+      Entry entry = cursor.head;
+      if (cursor.advance()) {
+        merge.add(cursor);
+      }
+      Optional<Payment> payment = loader.apply(entry.id())
+          .filter(p -> query.getStatuses().isEmpty() || query.getStatuses().contains(p.getStatus()));
+      if (payment.isPresent()) {
+        payments.add(payment.get());
+        last = entry;
+      }
+    }
+
+    PaymentCursor next = !merge.isEmpty() && last != null ? new PaymentCursor(last.createdAt(), last.id()) : null;
+    return new PaymentPage(payments, next);
+  }
+
+  private static NavigableSet<Entry> range(NavigableSet<Entry> source, PaymentQuery query) {
+    Entry lower = query.getFrom() == null ? null : new Entry(query.getFrom(), MIN_ID);
+    boolean lowerInclusive = true;
+    PaymentCursor after = query.getAfter();
+    if (after != null) {
+      Entry afterEntry = new Entry(after.createdAt(), after.id());
+      if (lower == null || ORDER.compare(afterEntry, lower) >= 0) {
+        lower = afterEntry;
+        lowerInclusive = false;
+      }
+    }
+    Entry upper = query.getTo() == null ? null : new Entry(query.getTo(), MIN_ID);
+
+    if (lower != null && upper != null) {
+      return ORDER.compare(lower, upper) < 0
+          ? source.subSet(lower, lowerInclusive, upper, false)
+          : Collections.emptyNavigableSet();
+    }
+    if (lower != null) {
+      return source.tailSet(lower, lowerInclusive);
+    }
+    return upper != null ? source.headSet(upper, false) : source;
+  }
+
+  private static Entry entry(Payment payment) {
+    return new Entry(payment.getCreatedAt() == null ? Instant.EPOCH : payment.getCreatedAt(), payment.getId());
+  }
+
+  private static final class Cursor {
+    private final Iterator<Entry> iterator;
+    private Entry head;
+
+    Cursor(Iterator<Entry> iterator) {
+      this.iterator = iterator;
+    }
+
+    Entry head() {
+      return head;
+    }
+
+    boolean advance() {
+      head = iterator.hasNext() ? iterator.next() : null;
+      return head != null;
+    }
+  }
+}
@@ -0,0 +1,127 @@
+package com.checkout.payment.gateway.infrastructure.persistence;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hierarchical timing wheel (four levels of 64 slots) used to expire entries without scanning
+ * the maps they live in. Scheduling and expiring are O(1) per entry; an entry is moved down a
+ * level at most three times before it expires.
+ * <p>
+ * {@link #schedule} is thread-safe and lock-free: entries land in an inbox that is only drained
+ * by {@link #advance}, which must be called from a single thread.
+ */
+public final class TimingWheel<T> {
+
+  private static final int LEVEL_BITS = 6;
+  private static final int SLOTS = 1 << LEVEL_BITS;
+  private static final int SLOT_MASK = SLOTS - 1;
+  private static final int LEVELS = 4;
+  private static final long MAX_DELTA = (1L << (LEVEL_BITS * LEVELS)) - 1;
+
+  public interface ExpiryHandler<T> {
+    void expired(T item, long deadlineMillis);
+  }
+
+  private record Entry<T>(T item, long deadlineMillis) {
+  }
+
+  private final long tickMillis;
+  private final Queue<Entry<T>> inbox = new ConcurrentLinkedQueue<>();
+  private final ArrayDeque<Entry<T>>[][] wheels;
+  private long currentTick;
+  private int scheduled;
+
+  @SuppressWarnings("unchecked")
+  public TimingWheel(long tickMillis, long startMillis) {
+    if (tickMillis <= 0) {
+      throw new IllegalArgumentException("Tick must be positive");
+    }
+    this.tickMillis = tickMillis;
+    this.currentTick = startMillis / tickMillis;
+    this.wheels = new ArrayDeque[LEVELS][SLOTS];
+  }
+
+  public void schedule(T item, long deadlineMillis) {
+    inbox.add(new Entry<>(item, deadlineMillis));
+  }
+
+  /**
+   * Number of entries placed in the wheel, excluding the ones still in the inbox. Only meaningful
+   * from the thread calling {@link #advance}.
+   */
+  public int scheduled() {
+    return scheduled;
+  }
+
+  /**
+   * Fires every entry whose deadline is at or before {@code nowMillis}.
+   *
+   * @return the number of expired entries
+   */
+  public int advance(long nowMillis, ExpiryHandler<T> handler) {
+    Entry<T> incoming;
+    while ((incoming = inbox.poll()) != null) {
+      place(incoming);
+    }
+
+    int expired = 0;
+    long targetTick = nowMillis / tickMillis;
+    while (currentTick <= targetTick) {
+      cascade();
+      ArrayDeque<Entry<T>> bucket = wheels[0][(int) (currentTick & SLOT_MASK)];
+      if (bucket != null) {
+        Entry<T> entry;
+        while ((entry = bucket.poll()) != null) {
+          scheduled--;
+          if (entry.deadlineMillis() / tickMillis > currentTick) {
+            // was clamped to the wheel's horizon when scheduled
+            place(entry);
+          } else {
+            handler.expired(entry.item(), entry.deadlineMillis());
+            expired++;
+          }
+        }
+      }
+      currentTick++;
+    }
+    return expired;
+  }
+
+  private void cascade() {
+    for (int level = 1; level < LEVELS; level++) {
+      if ((currentTick & ((1L << (LEVEL_BITS * level)) - 1)) != 0) {
+        return;
+      }
+      int slot = (int) ((currentTick >>> (LEVEL_BITS * level)) & SLOT_MASK);
+      ArrayDeque<Entry<T>> bucket = wheels[level][slot];
+      if (bucket != null && !bucket.isEmpty()) {
+        wheels[level][slot] = null;
+        for (Entry<T> entry : bucket) {
+          scheduled--;
+          place(entry);
+        }
+      }
+    }
+  }
+
+  private void place(Entry<T> entry) {
+    long delta = Math.min(Math.max(entry.deadlineMillis() / tickMillis - currentTick, 0), MAX_DELTA);
+    long tick = currentTick + delta;
+
+    int level = 0;
+    while (level < LEVELS - 1 && delta >= (1L << (LEVEL_BITS * (level + 1)))) {
+      level++;
+    }
+    int slot = (int) ((tick >>> (LEVEL_BITS * level)) & SLOT_MASK);
+
+    ArrayDeque<Entry<T>> bucket = wheels[level][slot];
+    if (bucket == null) {
+      bucket = new ArrayDeque<>();
+      wheels[level][slot] = bucket;
+    }
+    bucket.add(entry);
+    scheduled++;
+  }
+}
@@ -0,0 +1,33 @@
+package com.checkout.payment.gateway.infrastructure.persistence;
+
+import com.checkout.payment.gateway.domain.model.IllegalPaymentTransitionException;
+import com.checkout.payment.gateway.domain.model.Payment;
+import java.util.UUID;
+
+/**
+ * The checks every store runs under its own atomicity before applying a compare-and-set.
+ */
+public final class VersionCheck {
+
+  private VersionCheck() {
+  }
+
+  /**
+   * @return whether {@code current} is still at {@code expectedVersion}
+   * @throws IllegalArgumentException when {@code next} is not the version after the expected one
+   * @throws IllegalPaymentTransitionException when the status change is not allowed
+   */
+  public static boolean canReplace(Payment current, UUID id, long expectedVersion, Payment next) {
+    if (!id.equals(next.getId()) || next.getVersion() != expectedVersion + 1) {
+      throw new IllegalArgumentException("Payment " + id + " version " + expectedVersion
+          + " can only be replaced by its next version");
+    }
+    if (current == null || current.getVersion() != expectedVersion) {
+      return false;
+    }
+    if (!current.getStatus().canTransitionTo(next.getStatus())) {
+      throw new IllegalPaymentTransitionException(id, current.getStatus(), next.getStatus());
+    }
+    return true;
+  }
+}
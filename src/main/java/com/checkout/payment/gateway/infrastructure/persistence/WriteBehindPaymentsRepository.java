@@ -0,0 +1,346 @@
+package com.checkout.payment.gateway.infrastructure.persistence;
+
+import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentPage;
+import com.checkout.payment.gateway.domain.model.PaymentQuery;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.domain.model.PaymentsRepository;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Write-behind decorator: saves are queued and flushed to the delegate in batches, once
+ * {@code maxBatch} payments are queued or {@code flushInterval} after the first of them.
+ * Compare-and-set is checked against the queued version, if any, and queued as well; a payment
+ * changed again while still queued is merged into the queued entry, so the PENDING and final
+ * versions of a fast bank call usually reach the store as a single write.
+ * <p>
+ * Reads check the queue first, so they always see the latest version. Idempotency key claims,
+ * and saves that would bind a key for the first time, go straight to the delegate because the
+ * caller needs to know the key's owner. In strict mode PENDING saves are written through as well,
+ * so the payment is durable before the bank is called.
+ * <p>
+ * Changes to one payment are ordered by a lock striped by id, and the store is called under that
+ * lock rather than inside a map compute, so a slow save (an fsync on the WAL store) holds up
+ * only the payments of its stripe.
+ */
+public class WriteBehindPaymentsRepository implements PaymentsRepository, AutoCloseable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WriteBehindPaymentsRepository.class);
+  private static final int GUARDS = 256;
+
+  private final PaymentsRepository delegate;
+  private final int maxBatch;
+  private final long flushIntervalNanos;
+  private final boolean strict;
+
+  // latest queued version per payment; the queue holds each id at most once while it is queued
+  private final ConcurrentMap<UUID, Version> queued = new ConcurrentHashMap<>();
+  private final AtomicLong versions = new AtomicLong();
+  private final BlockingQueue<UUID> flushOrder = new LinkedBlockingQueue<>();
+  private final Thread flusher;
+  // held by the flusher for a whole batch; taken before a guard, never after
+  private final Lock flushLock = new ReentrantLock();
+  // a payment's guard is held while its queued entry is read and replaced or removed
+  private final Lock[] guards = new Lock[GUARDS];
+  private volatile boolean running = true;
+
+  private final Counter merged;
+  private final Counter failedFlushes;
+  private final DistributionSummary batchSize;
+
+  // payments are equal by id whatever their version, so queued entries are told apart by sequence
+  private record Version(Payment payment, long sequence) {
+  }
+
+  public WriteBehindPaymentsRepository(PaymentsRepository delegate, PaymentGatewayProperties.WriteBehind properties,
+      MeterRegistry meterRegistry) {
+    this.delegate = delegate;
+    this.maxBatch = properties.getMaxBatch();
+    this.flushIntervalNanos = properties.getFlushInterval().toNanos();
+    this.strict = properties.isStrict();
+    for (int i = 0; i < GUARDS; i++) {
+      guards[i] = new ReentrantLock();
+    }
+
+    meterRegistry.gauge("payments.write.behind.queued", queued, ConcurrentMap::size);
+    this.merged = Counter.builder("payments.write.behind.merged")
+        .description("Saves merged into a version of the same payment that was still queued")
+        .register(meterRegistry);
+    this.failedFlushes = Counter.builder("payments.write.behind.failures")
+        .description("Batches the delegate store failed to save; their payments are queued again")
+        .register(meterRegistry);
+    this.batchSize = DistributionSummary.builder("payments.write.behind.batch.size")
+        .description("Payments flushed to the store in one batch")
+        .register(meterRegistry);
+
+    this.flusher = new Thread(this::runFlusher, "payments-write-behind");
+    this.flusher.setDaemon(true);
+    this.flusher.start();
+  }
+
+  @Override
+  public Payment save(Payment payment) {
+    if (payment.getId() == null) {
+      throw new IllegalArgumentException("Payment ID cannot be null when saving");
+    }
+
+    if ((strict && payment.getStatus() == PaymentStatus.PENDING) || !ownsKey(payment)) {
+      return writeThrough(payment);
+    }
+
+    enqueue(payment);
+    return payment;
+  }
+
+  @Override
+  public boolean compareAndSet(UUID id, long expectedVersion, Payment newRecord) {
+    Version version;
+    Lock guard = guard(id);
+    guard.lock();
+    try {
+      version = queued.get(id);
+      Payment current = version != null ? version.payment() : delegate.get(id).orElse(null);
+      if (!VersionCheck.canReplace(current, id, expectedVersion, newRecord)) {
+        return false;
+      }
+      queued.put(id, new Version(newRecord, versions.incrementAndGet()));
+    } finally {
+      guard.unlock();
+    }
+    if (version != null) {
+      merged.increment();
+    } else {
+      flushOrder.add(id);
+    }
+    return true;
+  }
+
+  @Override
+  public Optional<Payment> claimIdempotencyKey(Payment payment) {
+    return delegate.claimIdempotencyKey(payment).map(this::latest);
+  }
+
+  @Override
+  public Optional<Payment> get(UUID id) {
+    Version version = queued.get(id);
+    return version != null ? Optional.of(version.payment()) : delegate.get(id);
+  }
+
+  // queued versions first, the rest from the store in one call
+  @Override
+  public Map<UUID, Payment> getAll(Collection<UUID> ids) {
+    Map<UUID, Payment> payments = new HashMap<>();
+    List<UUID> stored = new ArrayList<>();
+    for (UUID id : ids) {
+      Version version = queued.get(id);
+      if (version != null) {
+        payments.put(id, version.payment());
+      } else {
+        stored.add(id);
+      }
+    }
+    if (!stored.isEmpty()) {
+      payments.putAll(delegate.getAll(stored));
+    }
+    return payments;
+  }
+
+  @Override
+  public Optional<Payment> getByIdempotencyKey(String key) {
+    return delegate.getByIdempotencyKey(key).map(this::latest);
+  }
+
+  /**
+   * Answered by the store's index, with queued versions overlaid. A payment whose first save is
+   * still queued is not listed until it has been flushed.
+   */
+  @Override
+  public PaymentPage find(PaymentQuery query) {
+    PaymentPage page = delegate.find(query);
+    List<Payment> payments = page.getPayments().stream()
+        .map(this::latest)
+        .filter(p -> query.getStatuses().isEmpty() || query.getStatuses().contains(p.getStatus()))
+        .toList();
+    return new PaymentPage(payments, page.getNext());
+  }
+
+  /**
+   * Stops the flusher and writes out whatever is still queued.
+   */
+  @Override
+  public void close() {
+    running = false;
+    flusher.interrupt();
+    try {
+      flusher.join(TimeUnit.SECONDS.toMillis(10));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    List<UUID> remaining = new ArrayList<>();
+    flushOrder.drainTo(remaining);
+    flush(remaining);
+  }
+
+  private boolean ownsKey(Payment payment) {
+    String key = payment.getIdempotencyKey();
+    return key == null || queued.containsKey(payment.getId())
+        || delegate.getByIdempotencyKey(key).map(owner -> owner.getId().equals(payment.getId())).orElse(false);
+  }
+
+  private Payment latest(Payment payment) {
+    Version version = queued.get(payment.getId());
+    return version != null ? version.payment() : payment;
+  }
+
+  /**
+   * Saves the payment to the store, superseding anything still queued for it. The queued entry
+   * is dropped only once the store has the new version, so reads never see an older one. An
+   * entry may already be in the batch being flushed, so that batch is waited for: it must not
+   * land after this write.
+   */
+  private Payment writeThrough(Payment payment) {
+    Lock guard = guard(payment.getId());
+    guard.lock();
+    try {
+      if (!queued.containsKey(payment.getId())) {
+        return delegate.save(payment);
+      }
+    } finally {
+      guard.unlock();
+    }
+    flushLock.lock();
+    try {
+      guard.lock();
+      try {
+        Payment stored = delegate.save(payment);
+        queued.remove(payment.getId());
+        return stored;
+      } finally {
+        guard.unlock();
+      }
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  private void enqueue(Payment payment) {
+    Version previous;
+    Lock guard = guard(payment.getId());
+    guard.lock();
+    try {
+      previous = queued.put(payment.getId(), new Version(payment, versions.incrementAndGet()));
+    } finally {
+      guard.unlock();
+    }
+    if (previous == null) {
+      flushOrder.add(payment.getId());
+    } else {
+      merged.increment();
+    }
+  }
+
+  Lock guard(UUID id) {
+    int hash = id.hashCode();
+    return guards[(hash ^ (hash >>> 16)) & (GUARDS - 1)];
+  }
+
+  private void runFlusher() {
+    List<UUID> batch = new ArrayList<>(maxBatch);
+    while (running) {
+      try {
+        batch.add(flushOrder.take());
+        long deadline = System.nanoTime() + flushIntervalNanos;
+        while (batch.size() < maxBatch) {
+          UUID next = flushOrder.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+          if (next == null) {
+            break;
+          }
+          batch.add(next);
+        }
+      } catch (InterruptedException e) {
+        // close() drains and flushes whatever is left
+        Thread.currentThread().interrupt();
+      }
+      if (!flush(batch)) {
+        // back off instead of retrying against a failing store in a tight loop
+        LockSupport.parkNanos(flushIntervalNanos);
+      }
+      batch.clear();
+    }
+  }
+
+  // false when the store failed the batch and it was queued again
+  private boolean flush(List<UUID> ids) {
+    if (ids.isEmpty()) {
+      return true;
+    }
+    // held from reading the versions until they are dequeued, see writeThrough
+    flushLock.lock();
+    try {
+      return flushLocked(ids);
+    } finally {
+      flushLock.unlock();
+    }
+  }
+
+  private boolean flushLocked(List<UUID> ids) {
+    List<Version> batch = new ArrayList<>(ids.size());
+    for (UUID id : ids) {
+      Version version = queued.get(id);
+      if (version != null) {
+        batch.add(version);
+      }
+    }
+    if (batch.isEmpty()) {
+      return true;
+    }
+    List<Payment> payments = batch.stream().map(Version::payment).toList();
+
+    try {
+      delegate.saveAll(payments);
+      batchSize.record(payments.size());
+    } catch (RuntimeException e) {
+      failedFlushes.increment();
+      LOG.error("Failed to flush {} payments, queueing them again", payments.size(), e);
+      payments.forEach(payment -> flushOrder.add(payment.getId()));
+      return false;
+    }
+
+    // entries stay queued until the store has them, so reads never fall back to an older version
+    for (Version version : batch) {
+      UUID id = version.payment().getId();
+      Lock guard = guard(id);
+      guard.lock();
+      try {
+        if (!queued.remove(id, version)) {
+          // saved again while the batch was being written: flush the newer version too
+          flushOrder.add(id);
+        }
+      } finally {
+        guard.unlock();
+      }
+    }
+    return true;
+  }
+}
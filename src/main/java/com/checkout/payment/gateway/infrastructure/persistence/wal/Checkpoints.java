@@ -0,0 +1,93 @@
+package com.checkout.payment.gateway.infrastructure.persistence.wal;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Snapshot files named after the first log segment they do not cover. A checkpoint uses the same
+ * frame format as a segment, and is written to a temporary file, fsynced and atomically renamed,
+ * so a crash mid-checkpoint leaves the previous one in place.
+ */
+final class Checkpoints {
+
+  private static final String PREFIX = "checkpoint-";
+  private static final String SUFFIX = ".snap";
+
+  private Checkpoints() {
+  }
+
+  static void write(Path directory, long segmentNumber, Iterable<byte[]> records) throws IOException {
+    Path target = path(directory, segmentNumber);
+    Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+    CRC32 crc = new CRC32();
+    try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      DataOutputStream out = new DataOutputStream(
+          new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+      for (byte[] record : records) {
+        crc.reset();
+        crc.update(record);
+        out.writeInt(record.length);
+        out.writeInt((int) crc.getValue());
+        out.write(record);
+      }
+      out.writeInt(0);
+      out.flush();
+      channel.force(true);
+    }
+    Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Replays the newest checkpoint, if any.
+   *
+   * @return the first segment number not covered by it, or 0 when there is no checkpoint
+   */
+  static long loadLatest(Path directory, Consumer<byte[]> consumer) throws IOException {
+    Optional<Long> latest = numbers(directory).stream().reduce((first, second) -> second);
+    if (latest.isEmpty()) {
+      return 0;
+    }
+    try (FileChannel channel = FileChannel.open(path(directory, latest.get()), StandardOpenOption.READ)) {
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      WriteAheadLog.readFrames(buffer, consumer);
+    }
+    return latest.get();
+  }
+
+  static void deleteBefore(Path directory, long segmentNumber) throws IOException {
+    for (long number : numbers(directory)) {
+      if (number < segmentNumber) {
+        Files.deleteIfExists(path(directory, number));
+      }
+    }
+  }
+
+  private static List<Long> numbers(Path directory) throws IOException {
+    try (Stream<Path> files = Files.list(directory)) {
+      return files
+          .map(file -> file.getFileName().toString())
+          .filter(name -> name.startsWith(PREFIX) && name.endsWith(SUFFIX))
+          .map(name -> Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length())))
+          .sorted()
+          .toList();
+    }
+  }
+
+  private static Path path(Path directory, long segmentNumber) {
+    return directory.resolve(String.format("%s%020d%s", PREFIX, segmentNumber, SUFFIX));
+  }
+}
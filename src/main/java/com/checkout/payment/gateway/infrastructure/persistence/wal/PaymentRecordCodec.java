@@ -0,0 +1,113 @@
+package com.checkout.payment.gateway.infrastructure.persistence.wal;
+
+import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Binary form of a payment as written to log segments and checkpoints. Every record carries the
+ * full state of the payment, so replay simply keeps the last record seen for each id.
+ * Version 2 appends the payment version; version 1 records decode as version 0.
+ */
+final class PaymentRecordCodec {
+
+  private static final byte VERSION = 2;
+  private static final byte VERSION_WITHOUT_PAYMENT_VERSION = 1;
+  private static final PaymentStatus[] STATUSES = PaymentStatus.values();
+
+  private PaymentRecordCodec() {
+  }
+
+  static byte[] encode(Payment payment) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(192);
+    try (DataOutputStream out = new DataOutputStream(bytes)) {
+      out.writeByte(VERSION);
+      out.writeLong(payment.getId().getMostSignificantBits());
+      out.writeLong(payment.getId().getLeastSignificantBits());
+      out.writeByte(payment.getStatus() == null ? -1 : payment.getStatus().ordinal());
+      writeLong(out, payment.getAmount());
+      writeString(out, payment.getCurrency());
+      writeString(out, payment.getCardLastFour());
+      out.writeInt(payment.getCardExpiryMonth() == null ? -1 : payment.getCardExpiryMonth());
+      out.writeInt(payment.getCardExpiryYear() == null ? -1 : payment.getCardExpiryYear());
+      writeString(out, payment.getMaskedCardNumber());
+      writeString(out, payment.getAuthorizationCode());
+      writeString(out, payment.getIdempotencyKey());
+      writeLong(out, payment.getCreatedAt() == null ? null : payment.getCreatedAt().toEpochMilli());
+      writeLong(out, payment.getUpdatedAt() == null ? null : payment.getUpdatedAt().toEpochMilli());
+      out.writeLong(payment.getVersion());
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  static Payment decode(byte[] record) {
+    try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+      byte version = in.readByte();
+      if (version != VERSION && version != VERSION_WITHOUT_PAYMENT_VERSION) {
+        throw new IllegalStateException("Unsupported payment record version " + version);
+      }
+      UUID id = new UUID(in.readLong(), in.readLong());
+      byte status = in.readByte();
+      Long amount = readLong(in);
+      String currency = readString(in);
+      String lastFour = readString(in);
+      int expiryMonth = in.readInt();
+      int expiryYear = in.readInt();
+      String maskedNumber = readString(in);
+      String authorizationCode = readString(in);
+      String idempotencyKey = readString(in);
+      Long createdAt = readLong(in);
+      Long updatedAt = readLong(in);
+      long paymentVersion = version == VERSION ? in.readLong() : 0;
+
+      return Payment.builder()
+          .id(id)
+          .status(status < 0 ? null : STATUSES[status])
+          .amount(amount)
+          .currency(currency)
+          .cardLastFour(lastFour)
+          .cardExpiryMonth(expiryMonth < 0 ? null : expiryMonth)
+          .cardExpiryYear(expiryYear < 0 ? null : expiryYear)
+          .maskedCardNumber(maskedNumber)
+          .authorizationCode(authorizationCode)
+          .idempotencyKey(idempotencyKey)
+          .createdAt(createdAt == null ? null : Instant.ofEpochMilli(createdAt))
+          .updatedAt(updatedAt == null ? null : Instant.ofEpochMilli(updatedAt))
+          .version(paymentVersion)
+          .build();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeUTF(value);
+    }
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static void writeLong(DataOutputStream out, Long value) throws IOException {
+    out.writeBoolean(value != null);
+    if (value != null) {
+      out.writeLong(value);
+    }
+  }
+
+  private static Long readLong(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readLong() : null;
+  }
+}
@@ -0,0 +1,330 @@
+package com.checkout.payment.gateway.infrastructure.persistence.wal;
+
+import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentPage;
+import com.checkout.payment.gateway.domain.model.PaymentQuery;
+import com.checkout.payment.gateway.domain.model.PaymentsRepository;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import com.checkout.payment.gateway.infrastructure.persistence.PaymentIndex;
+import com.checkout.payment.gateway.infrastructure.persistence.VersionCheck;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Repository;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Durable store: the same lock-free maps as the in-memory store, with every change appended to a
+ * {@link WriteAheadLog} before the call returns. Concurrent saves share an fsync through group
+ * commit, so throughput grows with concurrency instead of being capped by disk latency.
+ * <p>
+ * A change is published to the maps and queued for the log under the read side of
+ * {@code rollLock}, and the log is rolled under its write side. A change is then either in the
+ * rolled segment and already visible to the checkpoint's snapshot, or in the new segment that
+ * replay starts from, so deleting the rolled segments never loses it. If the append fails the
+ * change is rolled back and the save throws.
+ * Checkpoints snapshot the maps periodically so older segments can be deleted, and startup loads
+ * the latest checkpoint and replays only the segments written after it.
+ * Payments are never expired; use the in-memory store when TTL expiry is required.
+ */
+@Repository
+@ConditionalOnProperty(prefix = "payment-gateway.repository", name = "type", havingValue = "wal")
+public class WalPaymentsRepository implements PaymentsRepository {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WalPaymentsRepository.class);
+
+  private final ConcurrentMap<UUID, Payment> storage = new ConcurrentHashMap<>();
+  private final ConcurrentMap<String, Payment> idempotencyIndex = new ConcurrentHashMap<>();
+  private final PaymentIndex index = new PaymentIndex();
+
+  private final Clock clock;
+  private final Path directory;
+  private final WriteAheadLog log;
+  private final Timer checkpointTimer;
+  // read: publishing a change and queuing its record; write: rolling the log for a checkpoint
+  private final ReadWriteLock rollLock = new ReentrantReadWriteLock();
+
+  private record Applied(Payment previous, CompletableFuture<Long> append) {
+  }
+
+  @Autowired
+  public WalPaymentsRepository(PaymentGatewayProperties properties, MeterRegistry meterRegistry) {
+    this(properties.getRepository().getWal(), meterRegistry, Clock.systemUTC());
+  }
+
+  WalPaymentsRepository(PaymentGatewayProperties.Wal wal, MeterRegistry meterRegistry, Clock clock) {
+    this.clock = clock;
+    this.directory = wal.getDirectory();
+    try {
+      Files.createDirectories(directory);
+      long start = System.nanoTime();
+      long firstSegment = recover();
+      long elapsed = System.nanoTime() - start;
+      Timer.builder("payments.wal.recovery")
+          .description("Time spent loading the checkpoint and replaying the log at startup")
+          .register(meterRegistry)
+          .record(elapsed, TimeUnit.NANOSECONDS);
+      LOG.info("Recovered {} payments from {} in {} ms", storage.size(), directory,
+          TimeUnit.NANOSECONDS.toMillis(elapsed));
+      this.log = new WriteAheadLog(directory, (int) wal.getSegmentSize().toBytes(), wal.getMaxBatch(),
+          firstSegment, meterRegistry);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Failed to open write-ahead log in " + directory, e);
+    }
+    this.checkpointTimer = Timer.builder("payments.wal.checkpoint")
+        .description("Time to write a checkpoint and delete the segments it covers")
+        .register(meterRegistry);
+    meterRegistry.gauge("payments.store.size", storage, ConcurrentMap::size);
+  }
+
+  @Override
+  public Payment save(Payment payment) {
+    if (payment.getId() == null) {
+      throw new IllegalArgumentException("Payment ID cannot be null when saving");
+    }
+
+    Payment stored = payment.withUpdatedAt(Instant.now(clock));
+    String key = stored.getIdempotencyKey();
+    boolean claimedKey = false;
+    if (key != null) {
+      Payment owner = idempotencyIndex.get(key);
+      if (owner == null) {
+        owner = idempotencyIndex.putIfAbsent(key, stored);
+        claimedKey = owner == null;
+      }
+      if (owner != null && !owner.equals(stored)) {
+        return latest(owner);
+      }
+    }
+
+    Payment previous;
+    CompletableFuture<Long> append;
+    rollLock.readLock().lock();
+    try {
+      previous = storage.put(stored.getId(), stored);
+      index.update(stored);
+      append = log.append(PaymentRecordCodec.encode(stored));
+    } finally {
+      rollLock.readLock().unlock();
+    }
+    await(append, stored, previous, claimedKey);
+    return stored;
+  }
+
+  /**
+   * The record is queued for the log while the map bin is still locked, so the log holds the
+   * versions of a payment in the order they were applied and replay ends at the latest one.
+   */
+  @Override
+  public boolean compareAndSet(UUID id, long expectedVersion, Payment newRecord) {
+    Payment stored = newRecord.withUpdatedAt(Instant.now(clock));
+    Applied[] applied = new Applied[1];
+    Payment result;
+    rollLock.readLock().lock();
+    try {
+      result = storage.computeIfPresent(id, (key, current) -> {
+        if (!VersionCheck.canReplace(current, id, expectedVersion, newRecord)) {
+          return current;
+        }
+        applied[0] = new Applied(current, log.append(PaymentRecordCodec.encode(stored)));
+        return stored;
+      });
+    } finally {
+      rollLock.readLock().unlock();
+    }
+    if (result != stored) {
+      return false;
+    }
+    index.update(stored);
+    await(applied[0].append(), stored, applied[0].previous(), false);
+    return true;
+  }
+
+  /**
+   * Queues every record before waiting, so the whole batch usually shares one fsync.
+   */
+  @Override
+  public void saveAll(Collection<Payment> payments) {
+    List<Payment> stored = new ArrayList<>(payments.size());
+    List<Payment> previous = new ArrayList<>(payments.size());
+    List<CompletableFuture<Long>> appends = new ArrayList<>(payments.size());
+    rollLock.readLock().lock();
+    try {
+      for (Payment payment : payments) {
+        Payment record = payment.withUpdatedAt(Instant.now(clock));
+        stored.add(record);
+        previous.add(storage.put(record.getId(), record));
+        index.update(record);
+        appends.add(log.append(PaymentRecordCodec.encode(record)));
+      }
+    } finally {
+      rollLock.readLock().unlock();
+    }
+
+    Throwable failure = null;
+    for (int i = 0; i < stored.size(); i++) {
+      try {
+        appends.get(i).join();
+      } catch (CompletionException e) {
+        rollback(stored.get(i), previous.get(i), false);
+        failure = e.getCause();
+      }
+    }
+    if (failure != null) {
+      throw new IllegalStateException("Failed to persist a batch of " + payments.size() + " payments", failure);
+    }
+  }
+
+  @Override
+  public Optional<Payment> claimIdempotencyKey(Payment payment) {
+    if (payment.getId() == null) {
+      throw new IllegalArgumentException("Payment ID cannot be null when saving");
+    }
+    if (payment.getIdempotencyKey() == null) {
+      throw new IllegalArgumentException("Idempotency key is required to claim it");
+    }
+
+    Payment owner = idempotencyIndex.get(payment.getIdempotencyKey());
+    if (owner != null) {
+      return Optional.of(latest(owner));
+    }
+
+    Payment stored = payment.withUpdatedAt(Instant.now(clock));
+    owner = idempotencyIndex.putIfAbsent(stored.getIdempotencyKey(), stored);
+    if (owner != null) {
+      return Optional.of(latest(owner));
+    }
+
+    Payment previous;
+    CompletableFuture<Long> append;
+    rollLock.readLock().lock();
+    try {
+      previous = storage.put(stored.getId(), stored);
+      index.update(stored);
+      append = log.append(PaymentRecordCodec.encode(stored));
+    } finally {
+      rollLock.readLock().unlock();
+    }
+    await(append, stored, previous, true);
+    return Optional.empty();
+  }
+
+  @Override
+  public Optional<Payment> get(UUID id) {
+    return Optional.ofNullable(storage.get(id));
+  }
+
+  @Override
+  public Optional<Payment> getByIdempotencyKey(String key) {
+    return Optional.ofNullable(idempotencyIndex.get(key)).map(this::latest);
+  }
+
+  @Override
+  public PaymentPage find(PaymentQuery query) {
+    return index.query(query, this::get);
+  }
+
+  /**
+   * Rolls the log, snapshots every payment and deletes the segments and checkpoints the new
+   * checkpoint covers. Anything saved concurrently lands in the new segment and is replayed on top.
+   * Changes wait only while the roll is queued behind the records before it.
+   */
+  @Scheduled(initialDelayString = "#{@paymentGatewayProperties.repository.wal.checkpointInterval.toMillis()}",
+      fixedDelayString = "#{@paymentGatewayProperties.repository.wal.checkpointInterval.toMillis()}")
+  public void checkpoint() {
+    long start = System.nanoTime();
+    try {
+      CompletableFuture<Long> roll;
+      rollLock.writeLock().lock();
+      try {
+        roll = log.roll();
+      } finally {
+        rollLock.writeLock().unlock();
+      }
+      long segment = roll.join();
+      Checkpoints.write(directory, segment,
+          () -> storage.values().stream().map(PaymentRecordCodec::encode).iterator());
+      Checkpoints.deleteBefore(directory, segment);
+      log.deleteSegmentsBefore(segment);
+      LOG.debug("Checkpointed {} payments up to segment {}", storage.size(), segment);
+    } catch (IOException | CompletionException e) {
+      LOG.error("Failed to checkpoint write-ahead log in {}", directory, e);
+    }
+    checkpointTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+  }
+
+  @PreDestroy
+  public void close() {
+    log.close();
+  }
+
+  private long recover() throws IOException {
+    long fromSegment = Checkpoints.loadLatest(directory, this::restore);
+    long lastSegment = WriteAheadLog.replay(directory, fromSegment, this::restore);
+    return Math.max(fromSegment, lastSegment + 1);
+  }
+
+  private void restore(byte[] record) {
+    Payment payment = PaymentRecordCodec.decode(record);
+    storage.put(payment.getId(), payment);
+    index.update(payment);
+    if (payment.getIdempotencyKey() != null) {
+      // the first payment logged with a key owns it, later records only update that payment
+      idempotencyIndex.putIfAbsent(payment.getIdempotencyKey(), payment);
+    }
+  }
+
+  private Payment latest(Payment owner) {
+    Payment current = storage.get(owner.getId());
+    return current != null ? current : owner;
+  }
+
+  private void await(CompletableFuture<Long> append, Payment stored, Payment previous, boolean claimedKey) {
+    try {
+      append.join();
+    } catch (CompletionException e) {
+      rollback(stored, previous, claimedKey);
+      throw new IllegalStateException("Failed to persist payment " + stored.getId(), e.getCause());
+    }
+  }
+
+  private void rollback(Payment stored, Payment previous, boolean claimedKey) {
+    boolean[] restored = new boolean[1];
+    // by identity: payments are equal by id, and a later version may already have replaced this one
+    storage.computeIfPresent(stored.getId(), (id, current) -> {
+      restored[0] = current == stored;
+      return restored[0] ? previous : current;
+    });
+    if (restored[0]) {
+      index.remove(stored);
+      if (previous != null) {
+        index.update(previous);
+      }
+    }
+    if (claimedKey) {
+      idempotencyIndex.remove(stored.getIdempotencyKey(), stored);
+    }
+  }
+}
@@ -0,0 +1,280 @@
+package com.checkout.payment.gateway.infrastructure.persistence.wal;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Segmented, memory-mapped append-only log with group commit.
+ * <p>
+ * Appends are queued and written by a single writer thread, which makes everything it drained in
+ * one go durable with a single {@code force()} before completing the callers' futures. Frames are
+ * {@code [length][crc32][payload]}; a zero length marks the end of a segment, and a torn frame at
+ * the tail of the last segment is detected by its checksum and ignored on replay.
+ */
+public final class WriteAheadLog implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WriteAheadLog.class);
+
+  private static final int FRAME_HEADER = 8;
+  private static final String SEGMENT_PREFIX = "wal-";
+  private static final String SEGMENT_SUFFIX = ".log";
+
+  private final Path directory;
+  private final int segmentSize;
+  private final int maxBatch;
+  private final BlockingQueue<Append> queue = new LinkedBlockingQueue<>();
+  private final CRC32 crc = new CRC32();
+  private final Thread writer;
+  private final Timer commitTimer;
+  private final DistributionSummary batchSize;
+
+  private volatile boolean running = true;
+  private Segment segment;
+
+  private record Append(byte[] record, CompletableFuture<Long> done) {
+  }
+
+  WriteAheadLog(Path directory, int segmentSize, int maxBatch, long firstSegment, MeterRegistry meterRegistry)
+      throws IOException {
+    this.directory = directory;
+    this.segmentSize = segmentSize;
+    this.maxBatch = maxBatch;
+    this.segment = Segment.create(segmentPath(directory, firstSegment), firstSegment, segmentSize);
+    this.commitTimer = Timer.builder("payments.wal.commit")
+        .description("Time to write and fsync one group commit batch")
+        .register(meterRegistry);
+    this.batchSize = DistributionSummary.builder("payments.wal.batch.size")
+        .description("Appends made durable by a single fsync")
+        .register(meterRegistry);
+    this.writer = new Thread(this::runWriter, "wal-writer");
+    this.writer.setDaemon(true);
+    this.writer.start();
+  }
+
+  /**
+   * Queues a record; the future completes once it is durable on disk.
+   */
+  CompletableFuture<Long> append(byte[] record) {
+    if (record.length + FRAME_HEADER + Integer.BYTES > segmentSize) {
+      throw new IllegalArgumentException("Record of " + record.length + " bytes does not fit a segment");
+    }
+    if (!running) {
+      return CompletableFuture.failedFuture(new IllegalStateException("Write-ahead log is closed"));
+    }
+    CompletableFuture<Long> done = new CompletableFuture<>();
+    queue.add(new Append(record, done));
+    return done;
+  }
+
+  /**
+   * Closes the current segment; every record appended after this call lands in a segment with a
+   * number at least as high as the returned one.
+   */
+  CompletableFuture<Long> roll() {
+    CompletableFuture<Long> done = new CompletableFuture<>();
+    queue.add(new Append(null, done));
+    return done;
+  }
+
+  void deleteSegmentsBefore(long segmentNumber) throws IOException {
+    for (long number : segmentNumbers(directory)) {
+      if (number < segmentNumber) {
+        Files.deleteIfExists(segmentPath(directory, number));
+      }
+    }
+  }
+
+  private void runWriter() {
+    List<Append> batch = new ArrayList<>(maxBatch);
+    while (running || !queue.isEmpty()) {
+      try {
+        Append first = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (first == null) {
+          continue;
+        }
+        batch.add(first);
+        queue.drainTo(batch, maxBatch - 1);
+        commit(batch);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        running = false;
+      } finally {
+        batch.clear();
+      }
+    }
+  }
+
+  private void commit(List<Append> batch) {
+    long start = System.nanoTime();
+    List<CompletableFuture<Long>> durable = new ArrayList<>(batch.size());
+    try {
+      for (Append append : batch) {
+        if (append.record() == null) {
+          segment.force();
+          rollSegment();
+          append.done().complete(segment.number);
+          continue;
+        }
+        if (!segment.hasRoomFor(append.record().length)) {
+          segment.force();
+          rollSegment();
+        }
+        segment.write(append.record(), crc);
+        durable.add(append.done());
+      }
+      segment.force();
+      durable.forEach(done -> done.complete(segment.number));
+    } catch (IOException | RuntimeException e) {
+      LOG.error("Failed to commit {} write-ahead log records", batch.size(), e);
+      batch.forEach(append -> append.done().completeExceptionally(e));
+    }
+    commitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+    batchSize.record(durable.size());
+  }
+
+  private void rollSegment() throws IOException {
+    long next = segment.number + 1;
+    segment.close();
+    segment = Segment.create(segmentPath(directory, next), next, segmentSize);
+  }
+
+  @Override
+  public void close() {
+    running = false;
+    try {
+      writer.join(TimeUnit.SECONDS.toMillis(10));
+      segment.force();
+      segment.close();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * Replays every intact frame of the segments numbered {@code fromSegment} or higher, in order.
+   *
+   * @return the highest segment number found, or {@code fromSegment - 1} when there is none
+   */
+  static long replay(Path directory, long fromSegment, Consumer<byte[]> consumer) throws IOException {
+    long last = fromSegment - 1;
+    for (long number : segmentNumbers(directory)) {
+      if (number < fromSegment) {
+        continue;
+      }
+      last = number;
+      try (FileChannel channel = FileChannel.open(segmentPath(directory, number), StandardOpenOption.READ)) {
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        readFrames(buffer, consumer);
+      }
+    }
+    return last;
+  }
+
+  static int readFrames(ByteBuffer buffer, Consumer<byte[]> consumer) {
+    CRC32 checksum = new CRC32();
+    int frames = 0;
+    while (buffer.remaining() >= FRAME_HEADER) {
+      int length = buffer.getInt();
+      int expectedCrc = buffer.getInt();
+      if (length <= 0 || length > buffer.remaining()) {
+        break;
+      }
+      byte[] record = new byte[length];
+      buffer.get(record);
+      checksum.reset();
+      checksum.update(record);
+      if ((int) checksum.getValue() != expectedCrc) {
+        LOG.warn("Ignoring torn write-ahead log frame after {} intact frames", frames);
+        break;
+      }
+      consumer.accept(record);
+      frames++;
+    }
+    return frames;
+  }
+
+  static List<Long> segmentNumbers(Path directory) throws IOException {
+    if (!Files.isDirectory(directory)) {
+      return List.of();
+    }
+    try (Stream<Path> files = Files.list(directory)) {
+      return files
+          .map(path -> path.getFileName().toString())
+          .filter(name -> name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX))
+          .map(name -> Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())))
+          .sorted()
+          .toList();
+    }
+  }
+
+  static Path segmentPath(Path directory, long number) {
+    return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+  }
+
+  private static final class Segment {
+    final long number;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int forced;
+
+    private Segment(long number, FileChannel channel, MappedByteBuffer buffer) {
+      this.number = number;
+      this.channel = channel;
+      this.buffer = buffer;
+    }
+
+    static Segment create(Path path, long number, int size) throws IOException {
+      FileChannel channel = FileChannel.open(path,
+          StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+      return new Segment(number, channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+    }
+
+    // leaves room for the zero length that terminates the segment
+    boolean hasRoomFor(int recordLength) {
+      return buffer.position() + FRAME_HEADER + recordLength + Integer.BYTES <= buffer.capacity();
+    }
+
+    void write(byte[] record, CRC32 crc) {
+      crc.reset();
+      crc.update(record);
+      buffer.putInt(record.length);
+      buffer.putInt((int) crc.getValue());
+      buffer.put(record);
+    }
+
+    void force() {
+      int position = buffer.position();
+      if (position > forced) {
+        buffer.force(forced, position - forced);
+        forced = position;
+      }
+    }
+
+    void close() throws IOException {
+      channel.close();
+    }
+  }
+}
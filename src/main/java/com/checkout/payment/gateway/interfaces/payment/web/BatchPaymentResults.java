@@ -0,0 +1,106 @@
+package com.checkout.payment.gateway.interfaces.payment.web;
+
+import com.checkout.payment.gateway.infrastructure.exception.InvalidQueryException;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.BatchPaymentRequest;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.BatchPaymentResult;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.ErrorResponse;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentResponse;
+import com.checkout.payment.gateway.interfaces.payment.web.exception.CommonExceptionHandler;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.BindingResult;
+import org.springframework.validation.beanvalidation.SpringValidatorAdapter;
+
+/**
+ * Reading, validating and answering the payments of a batch, shared by both web stacks. Every
+ * payment gets the status and body the single-payment endpoint would have given it.
+ */
+@Component
+public class BatchPaymentResults {
+
+  private final ObjectMapper objectMapper;
+  private final ObjectReader reader;
+  private final SpringValidatorAdapter validator;
+  private final CommonExceptionHandler errors;
+
+  public BatchPaymentResults(ObjectMapper objectMapper, Validator validator, CommonExceptionHandler errors) {
+    this.objectMapper = objectMapper;
+    this.reader = objectMapper.readerFor(BatchPaymentRequest.class);
+    this.validator = new SpringValidatorAdapter(validator);
+    this.errors = errors;
+  }
+
+  /**
+   * The payments of a JSON array or of NDJSON, one object per line; Jackson reads both as a
+   * sequence of root-level values.
+   */
+  public List<BatchPaymentRequest> read(InputStream body, int maxItems) {
+    List<BatchPaymentRequest> payments = new ArrayList<>();
+    try (MappingIterator<BatchPaymentRequest> values = reader.readValues(body)) {
+      while (values.hasNextValue()) {
+        if (payments.size() == maxItems) {
+          throw new InvalidQueryException("A batch holds at most " + maxItems + " payments");
+        }
+        payments.add(values.nextValue());
+      }
+    } catch (IOException e) {
+      throw new InvalidQueryException("Malformed batch at payment " + payments.size());
+    }
+    return payments;
+  }
+
+  // the 400 the single-payment endpoint would have answered, if the payment is invalid
+  public Optional<BatchPaymentResult> rejected(int index, BatchPaymentRequest payment) {
+    BindingResult bindingResult = new BeanPropertyBindingResult(payment, "paymentRequest");
+    validator.validate(payment, bindingResult);
+    if (!bindingResult.hasErrors()) {
+      return Optional.empty();
+    }
+    return Optional.of(failed(index, payment, errors.handleValidationErrors(bindingResult)));
+  }
+
+  public BatchPaymentResult outcome(int index, BatchPaymentRequest payment, PaymentResponse response,
+      Throwable failure) {
+    if (failure != null) {
+      return failed(index, payment, errors.toResponse(failure));
+    }
+    return BatchPaymentResult.builder()
+        .index(index)
+        .idempotencyKey(payment.getIdempotencyKey())
+        .status(HttpStatus.CREATED.value())
+        .payment(response)
+        .build();
+  }
+
+  // one NDJSON line
+  public String toLine(BatchPaymentResult result) {
+    try {
+      return objectMapper.writeValueAsString(result) + "\n";
+    } catch (JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static BatchPaymentResult failed(int index, BatchPaymentRequest payment,
+      ResponseEntity<ErrorResponse> error) {
+    return BatchPaymentResult.builder()
+        .index(index)
+        .idempotencyKey(payment.getIdempotencyKey())
+        .status(error.getStatusCode().value())
+        .error(error.getBody())
+        .build();
+  }
+}
@@ -1,11 +1,38 @@
 package com.checkout.payment.gateway.interfaces.payment.web;
 
+import com.checkout.payment.gateway.application.PaymentBatchService;
 import com.checkout.payment.gateway.application.PaymentGatewayService;
+import com.checkout.payment.gateway.domain.model.Deadline;
+import com.checkout.payment.gateway.infrastructure.exception.InvalidQueryException;
+import com.checkout.payment.gateway.interfaces.payment.web.PaymentResponseCache.Body;
+import com.checkout.payment.gateway.interfaces.payment.web.PaymentResponseCache.View;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.BatchPaymentRequest;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.BatchPaymentResult;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentListResponse;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentLookupRequest;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentLookupResponse;
 import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentRequest;
 import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentResponse;
 import jakarta.validation.Valid;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.convert.DurationStyle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
@@ -13,29 +40,175 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.async.DeferredResult;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
 
+// the reactive stack serves the same paths through PaymentRouter
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @RequestMapping("/api/v1/payments")
 public class PaymentGatewayController {
 
+  private static final Logger LOG = LoggerFactory.getLogger(PaymentGatewayController.class);
+
   private final PaymentGatewayService paymentGatewayService;
+  private final PaymentBatchService paymentBatchService;
+  private final RequestDeadlineResolver deadlines;
+  private final BatchPaymentResults batchResults;
+  private final PaymentResponseCache responseCache;
 
-  public PaymentGatewayController(PaymentGatewayService paymentGatewayService) {
+  public PaymentGatewayController(PaymentGatewayService paymentGatewayService,
+      PaymentBatchService paymentBatchService, RequestDeadlineResolver deadlines, BatchPaymentResults batchResults,
+      PaymentResponseCache responseCache) {
     this.paymentGatewayService = paymentGatewayService;
+    this.paymentBatchService = paymentBatchService;
+    this.deadlines = deadlines;
+    this.batchResults = batchResults;
+    this.responseCache = responseCache;
+  }
+
+  @GetMapping
+  public ResponseEntity<PaymentListResponse> listPayments(
+      @RequestParam(required = false) List<String> status,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant from,
+      @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Instant to,
+      @RequestParam(required = false) String cursor,
+      @RequestParam(defaultValue = "100") int limit) {
+    return ResponseEntity.ok(paymentGatewayService.listPayments(status, from, to, cursor, limit));
   }
 
+  // Spring MVC answers 304 itself when If-None-Match holds the ETag
   @GetMapping("/{id}")
-  public ResponseEntity<PaymentResponse> getPostPaymentEventById(@PathVariable UUID id) {
-    return new ResponseEntity<PaymentResponse>(paymentGatewayService.getPaymentById(id), HttpStatus.OK);
+  public ResponseEntity<byte[]> getPostPaymentEventById(@PathVariable UUID id) {
+    Body body = responseCache.find(id, View.RETRIEVED)
+        .orElseGet(() -> responseCache.cache(paymentGatewayService.getPaymentById(id), View.RETRIEVED));
+    return ok(body);
+  }
+
+  /**
+   * Long poll: a payment still PENDING or UNKNOWN is answered once it settles, or as it is when
+   * {@code waitFor} ({@code 5s}, {@code 500ms}, capped at {@code payment-gateway.long-poll.max-wait})
+   * runs out. The request holds no servlet thread while it is parked.
+   */
+  @GetMapping(path = "/{id}", params = "waitFor")
+  public DeferredResult<ResponseEntity<byte[]>> awaitPayment(@PathVariable UUID id, @RequestParam String waitFor) {
+    Duration wait = parseWait(waitFor);
+    // no async timeout of its own: the wait is bounded by max-wait
+    DeferredResult<ResponseEntity<byte[]>> result = new DeferredResult<>(0L);
+    Optional<Body> cached = responseCache.find(id, View.RETRIEVED);
+    if (cached.isPresent()) {
+      result.setResult(ok(cached.get()));
+      return result;
+    }
+    paymentGatewayService.awaitPayment(id, wait).whenComplete((response, e) -> {
+      if (e == null) {
+        result.setResult(ok(responseCache.cache(response, View.RETRIEVED)));
+      } else {
+        result.setErrorResult(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+      }
+    });
+    return result;
+  }
+
+  // several payments by id in one request; ids that name no payment are listed as missing
+  @PostMapping("/lookup")
+  public ResponseEntity<PaymentLookupResponse> lookupPayments(@Valid @RequestBody PaymentLookupRequest request) {
+    return ResponseEntity.ok(paymentGatewayService.lookupPayments(request.getIds()));
   }
 
+  /**
+   * The servlet thread is released while the payment is in flight; failures map as for any
+   * handler. With {@code payment-gateway.pipeline.enabled} the payment is only accepted, and a
+   * {@code 202} points to where its outcome will be.
+   */
   @PostMapping
-  public ResponseEntity<PaymentResponse> createPayment(
+  public CompletableFuture<ResponseEntity<byte[]>> createPayment(
       @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+      @RequestHeader(value = RequestDeadlineResolver.HEADER, required = false) String timeout,
       @Valid @RequestBody PaymentRequest request) {
-    PaymentResponse response = paymentGatewayService.processPayment(request, idempotencyKey);
-    return new ResponseEntity<>(response, HttpStatus.CREATED);
+    Deadline deadline = deadlines.resolve(timeout, "create-payment");
+    boolean accepting = paymentGatewayService.acceptsThenProcesses();
+    CompletableFuture<PaymentResponse> outcome = accepting
+        ? CompletableFuture.completedFuture(paymentGatewayService.acceptPayment(request, idempotencyKey, deadline))
+        : paymentGatewayService.processPaymentAsync(request, idempotencyKey, deadline);
+    return outcome.thenApply(response -> {
+      // only a payment with a key is ever replayed
+      Body body = idempotencyKey == null
+          ? responseCache.serialize(response)
+          : responseCache.cache(response, View.CREATED);
+      if (accepting && !response.getStatus().isFinal()) {
+        return ResponseEntity.status(HttpStatus.ACCEPTED)
+            .location(URI.create("/api/v1/payments/" + response.getId()))
+            .contentType(MediaType.APPLICATION_JSON)
+            .body(body.json());
+      }
+      return ResponseEntity.status(HttpStatus.CREATED).contentType(MediaType.APPLICATION_JSON).body(body.json());
+    });
+  }
+
+  /**
+   * Payments as a JSON array or NDJSON, each with its own {@code idempotency_key}. The outcomes
+   * stream back as NDJSON in the order the payments complete, one line per payment with the
+   * status the single-payment endpoint would have answered; a failed payment fails only its line.
+   * Only a body that cannot be read, or holds too many payments, fails the whole batch.
+   */
+  @PostMapping(path = "/batch", consumes = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_NDJSON_VALUE})
+  public ResponseEntity<ResponseBodyEmitter> createPayments(
+      @RequestHeader(value = RequestDeadlineResolver.HEADER, required = false) String timeout,
+      InputStream body) {
+    Deadline deadline = deadlines.resolve(timeout, "batch-payments");
+    List<BatchPaymentRequest> payments = batchResults.read(body, paymentBatchService.maxItems());
+
+    // no async timeout of its own: every payment is bounded by the bank timeouts or the deadline
+    ResponseBodyEmitter emitter = new ResponseBodyEmitter(0L);
+    List<Integer> accepted = new ArrayList<>(payments.size());
+    AtomicInteger remaining = new AtomicInteger(payments.size());
+    for (int i = 0; i < payments.size(); i++) {
+      Optional<BatchPaymentResult> rejected = batchResults.rejected(i, payments.get(i));
+      if (rejected.isPresent()) {
+        send(emitter, rejected.get(), remaining);
+      } else {
+        accepted.add(i);
+      }
+    }
+    List<CompletableFuture<PaymentResponse>> outcomes = paymentBatchService.submit(
+        accepted.stream().map(payments::get).toList(), deadline);
+    for (int i = 0; i < outcomes.size(); i++) {
+      int index = accepted.get(i);
+      outcomes.get(i).whenComplete((response, failure) ->
+          send(emitter, batchResults.outcome(index, payments.get(index), response, failure), remaining));
+    }
+    if (payments.isEmpty()) {
+      emitter.complete();
+    }
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(emitter);
+  }
+
+  private static ResponseEntity<byte[]> ok(Body body) {
+    return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).eTag(body.etag()).body(body.json());
+  }
+
+  // same message as a type mismatch on the other parameters
+  private static Duration parseWait(String waitFor) {
+    try {
+      return DurationStyle.detectAndParse(waitFor.trim());
+    } catch (IllegalArgumentException e) {
+      throw new InvalidQueryException("Invalid value for parameter waitFor");
+    }
+  }
+
+  // a client gone mid-batch misses the rest of the lines; its payments still complete and are kept
+  private void send(ResponseBodyEmitter emitter, BatchPaymentResult result, AtomicInteger remaining) {
+    try {
+      emitter.send(batchResults.toLine(result), MediaType.APPLICATION_NDJSON);
+    } catch (IOException | IllegalStateException e) {
+      LOG.debug("Batch result {} not delivered: {}", result.getIndex(), e.getMessage());
+    }
+    if (remaining.decrementAndGet() == 0) {
+      emitter.complete();
+    }
   }
 
 
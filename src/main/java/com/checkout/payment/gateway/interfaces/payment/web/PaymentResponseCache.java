@@ -0,0 +1,131 @@
+package com.checkout.payment.gateway.interfaces.payment.web;
+
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentResponse;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.io.UncheckedIOException;
+import java.time.Clock;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+
+/**
+ * Payment responses as the JSON bytes sent to the client, with a strong ETag over them, shared by
+ * both web stacks. Responses of AUTHORIZED, DECLINED and REJECTED payments never change, so they
+ * are kept and served again without building or serializing anything: polling a final payment is
+ * a map lookup. Responses of other payments are serialized on every call.
+ * <p>
+ * At most {@code payment-gateway.response-cache.max-entries} are kept, the oldest evicted first,
+ * each for {@code expire-after}, which bounds how long one outlives its payment's retention.
+ */
+@Component
+public class PaymentResponseCache {
+
+  // the same payment is answered with and without the masked card number
+  public enum View {
+    // POST answers, replayed for a repeated idempotency key
+    CREATED,
+    // GET answers
+    RETRIEVED
+  }
+
+  public record Body(byte[] json, String etag) {
+  }
+
+  private record Key(UUID id, View view) {
+  }
+
+  private record Entry(Body body, long expiresAt) {
+  }
+
+  private final ObjectMapper objectMapper;
+  private final Clock clock = Clock.systemUTC();
+  private final boolean enabled;
+  private final int maxEntries;
+  private final long expireAfterMillis;
+  private final ConcurrentMap<Key, Entry> entries = new ConcurrentHashMap<>();
+  // insertion order, for eviction
+  private final Queue<Key> order = new ConcurrentLinkedQueue<>();
+  private final Counter hits;
+  private final Counter misses;
+
+  public PaymentResponseCache(ObjectMapper objectMapper, PaymentGatewayProperties properties,
+      MeterRegistry meterRegistry) {
+    PaymentGatewayProperties.ResponseCache cache = properties.getResponseCache();
+    this.objectMapper = objectMapper;
+    this.enabled = cache.isEnabled();
+    this.maxEntries = cache.getMaxEntries();
+    this.expireAfterMillis = cache.getExpireAfter().toMillis();
+    this.hits = Counter.builder("payments.response.cache.requests").tag("result", "hit")
+        .description("Payment responses served from the cache")
+        .register(meterRegistry);
+    this.misses = Counter.builder("payments.response.cache.requests").tag("result", "miss")
+        .description("Payment responses looked up in the cache and not found")
+        .register(meterRegistry);
+    meterRegistry.gauge("payments.response.cache.size", entries, ConcurrentMap::size);
+  }
+
+  public Optional<Body> find(UUID id, View view) {
+    if (!enabled) {
+      return Optional.empty();
+    }
+    // an expired entry stays until it is replaced or evicted, so the key is queued only once
+    Entry entry = entries.get(new Key(id, view));
+    if (entry == null || entry.expiresAt() <= clock.millis()) {
+      misses.increment();
+      return Optional.empty();
+    }
+    hits.increment();
+    return Optional.of(entry.body());
+  }
+
+  /**
+   * The cached body of the response if there is one, otherwise the response serialized, and kept
+   * when the payment is final.
+   */
+  public Body cache(PaymentResponse response, View view) {
+    if (!enabled || response.getStatus() == null || !response.getStatus().isFinal()) {
+      return serialize(response);
+    }
+    Optional<Body> cached = find(response.getId(), view);
+    if (cached.isPresent()) {
+      return cached.get();
+    }
+    Body body = serialize(response);
+    Key key = new Key(response.getId(), view);
+    if (entries.put(key, new Entry(body, clock.millis() + expireAfterMillis)) == null) {
+      order.add(key);
+      evict();
+    }
+    return body;
+  }
+
+  // never cached: a response nobody will ask for again
+  public Body serialize(PaymentResponse response) {
+    try {
+      byte[] json = objectMapper.writeValueAsBytes(response);
+      // the same tag Spring's ShallowEtagHeaderFilter would compute for these bytes
+      return new Body(json, "\"0" + DigestUtils.md5DigestAsHex(json) + "\"");
+    } catch (JsonProcessingException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private void evict() {
+    while (entries.size() > maxEntries) {
+      Key oldest = order.poll();
+      if (oldest == null) {
+        return;
+      }
+      entries.remove(oldest);
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package com.checkout.payment.gateway.interfaces.payment.web;
+
+import com.checkout.payment.gateway.domain.model.Deadline;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import com.checkout.payment.gateway.infrastructure.exception.InvalidQueryException;
+import java.time.Clock;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.stereotype.Component;
+
+/**
+ * Turns the {@code X-Request-Timeout} header into the request's {@link Deadline}, counted from
+ * when the request is handled. The header takes milliseconds ({@code 2500}) or a unit
+ * ({@code 2500ms}, {@code 3s}); without it, the route's configured timeout applies, if any.
+ */
+@Component
+public class RequestDeadlineResolver {
+
+  public static final String HEADER = "X-Request-Timeout";
+
+  private final PaymentGatewayProperties.RequestDeadline properties;
+  private final Clock clock;
+
+  @Autowired
+  public RequestDeadlineResolver(PaymentGatewayProperties properties) {
+    this(properties, Clock.systemUTC());
+  }
+
+  RequestDeadlineResolver(PaymentGatewayProperties properties, Clock clock) {
+    this.properties = properties.getDeadline();
+    this.clock = clock;
+  }
+
+  public Deadline resolve(String header, String route) {
+    Duration timeout = header == null ? properties.getRoutes().getOrDefault(route, properties.getDefaultTimeout())
+        : parse(header);
+    if (timeout == null) {
+      return Deadline.none();
+    }
+    if (properties.getMaxTimeout() != null && timeout.compareTo(properties.getMaxTimeout()) > 0) {
+      timeout = properties.getMaxTimeout();
+    }
+    return Deadline.after(timeout, clock);
+  }
+
+  private static Duration parse(String header) {
+    try {
+      Duration timeout = DurationStyle.detectAndParse(header.trim());
+      if (timeout.isNegative()) {
+        throw new IllegalArgumentException("Negative timeout");
+      }
+      return timeout;
+    } catch (IllegalArgumentException e) {
+      throw new InvalidQueryException("Invalid " + HEADER + " header: " + header);
+    }
+  }
+}
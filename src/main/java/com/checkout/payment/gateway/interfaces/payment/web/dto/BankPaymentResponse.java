@@ -1,14 +0,0 @@
-package com.checkout.payment.gateway.interfaces.payment.web.dto;
-
-import com.fasterxml.jackson.databind.PropertyNamingStrategies;
-import com.fasterxml.jackson.databind.annotation.JsonNaming;
-import lombok.Builder;
-import lombok.Value;
-
-@Value
-@Builder
-@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
-public class BankPaymentResponse {
-  boolean authorized;
-  String authorizationCode;
-}
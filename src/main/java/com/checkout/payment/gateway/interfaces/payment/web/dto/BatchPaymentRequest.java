@@ -0,0 +1,21 @@
+package com.checkout.payment.gateway.interfaces.payment.web.dto;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import jakarta.validation.constraints.NotBlank;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * One payment of a batch: the fields of a single {@link PaymentRequest}, plus the idempotency key
+ * that the {@code Idempotency-Key} header would carry. The key is required, so a batch can be
+ * resent after a dropped connection without charging any card twice.
+ */
+@Getter
+@Setter
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public class BatchPaymentRequest extends PaymentRequest {
+
+  @NotBlank(message = "Idempotency key is required")
+  private String idempotencyKey;
+}
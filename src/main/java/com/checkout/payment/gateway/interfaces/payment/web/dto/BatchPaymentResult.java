@@ -0,0 +1,29 @@
+package com.checkout.payment.gateway.interfaces.payment.web.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Outcome of one payment of a batch, a line of the NDJSON response. {@code status} is what the
+ * single-payment endpoint would have answered; {@code payment} is set on 201, {@code error} otherwise.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(Include.NON_NULL)
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public class BatchPaymentResult {
+  // position of the payment in the request, results come in completion order
+  private int index;
+  private String idempotencyKey;
+  private int status;
+  private PaymentResponse payment;
+  private ErrorResponse error;
+}
@@ -2,16 +2,19 @@ package com.checkout.payment.gateway.interfaces.payment.web.dto;
 
 import com.fasterxml.jackson.databind.PropertyNamingStrategies;
 import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
 
 @Data
 @Builder
+@NoArgsConstructor
+@AllArgsConstructor
 @JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
-public class BankPaymentRequest {
-  private String cardNumber;
-  private String expiryDate;
-  private String currency;
-  private Long amount;
-  private String cvv;
+public class PaymentListResponse {
+  private List<PaymentResponse> payments;
+  // pass back as ?cursor= to get the next page; null on the last page
+  private String nextCursor;
 }
@@ -0,0 +1,19 @@
+package com.checkout.payment.gateway.interfaces.payment.web.dto;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.Getter;
+import lombok.Setter;
+import java.util.List;
+
+@Getter
+@Setter
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public class PaymentLookupRequest {
+
+  // strings rather than UUIDs, so that one malformed id is reported as missing instead of
+  // failing the whole lookup
+  @NotEmpty(message = "Payment ids are required")
+  private List<String> ids;
+}
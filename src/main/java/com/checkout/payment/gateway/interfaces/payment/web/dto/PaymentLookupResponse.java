@@ -0,0 +1,21 @@
+package com.checkout.payment.gateway.interfaces.payment.web.dto;
+
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public class PaymentLookupResponse {
+  // in the order they were asked for, as GET /api/v1/payments/{id} returns them
+  private List<PaymentResponse> payments;
+  // ids asked for that name no payment, including any that are not UUIDs
+  private List<String> missing;
+}
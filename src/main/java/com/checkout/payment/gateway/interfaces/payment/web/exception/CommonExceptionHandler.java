@@ -1,6 +1,10 @@
 package com.checkout.payment.gateway.interfaces.payment.web.exception;
 
+import com.checkout.payment.gateway.domain.model.IllegalPaymentTransitionException;
+import com.checkout.payment.gateway.infrastructure.exception.BankUnavailableException;
+import com.checkout.payment.gateway.infrastructure.exception.DeadlineExceededException;
 import com.checkout.payment.gateway.infrastructure.exception.EventProcessingException;
+import com.checkout.payment.gateway.infrastructure.exception.InvalidQueryException;
 import com.checkout.payment.gateway.infrastructure.exception.PaymentNotFoundException;
 import com.checkout.payment.gateway.infrastructure.exception.UpstreamTimeoutException;
 import com.checkout.payment.gateway.interfaces.payment.web.dto.ErrorResponse;
@@ -8,10 +12,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.validation.BindingResult;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 import java.util.stream.Collectors;
 
 @ControllerAdvice
@@ -42,10 +48,49 @@ public class CommonExceptionHandler {
     );
   }
 
+  @ExceptionHandler(DeadlineExceededException.class)
+  public ResponseEntity<ErrorResponse> handleDeadlineExceeded(DeadlineExceededException ex) {
+    LOG.info("Deadline exceeded: {}", ex.getMessage());
+    return new ResponseEntity<>(
+        new ErrorResponse("Request deadline exceeded before the payment was sent to the bank.", ex.getPaymentId()),
+        HttpStatus.GATEWAY_TIMEOUT
+    );
+  }
+
+  @ExceptionHandler(BankUnavailableException.class)
+  public ResponseEntity<ErrorResponse> handleBankUnavailable(BankUnavailableException ex) {
+    LOG.warn("Bank unavailable: {}", ex.getMessage());
+    return new ResponseEntity<>(
+        new ErrorResponse("Upstream provider is unavailable. Please retry later.", ex.getPaymentId()),
+        HttpStatus.SERVICE_UNAVAILABLE
+    );
+  }
+
+  @ExceptionHandler(IllegalPaymentTransitionException.class)
+  public ResponseEntity<ErrorResponse> handleIllegalTransition(IllegalPaymentTransitionException ex) {
+    LOG.warn("Rejected payment state change", ex);
+    return new ResponseEntity<>(new ErrorResponse(ex.getMessage(), ex.getPaymentId()), HttpStatus.CONFLICT);
+  }
+
+  @ExceptionHandler(InvalidQueryException.class)
+  public ResponseEntity<ErrorResponse> handleInvalidQuery(InvalidQueryException ex) {
+    return new ResponseEntity<>(new ErrorResponse(ex.getMessage()), HttpStatus.BAD_REQUEST);
+  }
+
+  @ExceptionHandler(MethodArgumentTypeMismatchException.class)
+  public ResponseEntity<ErrorResponse> handleTypeMismatch(MethodArgumentTypeMismatchException ex) {
+    return new ResponseEntity<>(new ErrorResponse("Invalid value for parameter " + ex.getName()), HttpStatus.BAD_REQUEST);
+  }
+
   @ExceptionHandler(MethodArgumentNotValidException.class)
   public ResponseEntity<ErrorResponse> handleValidationExceptions(MethodArgumentNotValidException ex) {
+    return handleValidationErrors(ex.getBindingResult());
+  }
+
+  // also the reactive handler's, which validates the request body itself
+  public ResponseEntity<ErrorResponse> handleValidationErrors(BindingResult bindingResult) {
 
-    String errorMessage = ex.getBindingResult().getAllErrors().stream()
+    String errorMessage = bindingResult.getAllErrors().stream()
         .map(error -> {
           String fieldName = ((FieldError) error).getField();
           String message = error.getDefaultMessage();
@@ -59,6 +104,29 @@ public class CommonExceptionHandler {
     );
   }
 
+  /**
+   * The response the handlers above give {@code failure}, for failures that do not reach Spring's
+   * exception handling: items of a batch, and the reactive stack.
+   */
+  public ResponseEntity<ErrorResponse> toResponse(Throwable failure) {
+    if (failure instanceof PaymentNotFoundException ex) {
+      return handleNotFound(ex);
+    } else if (failure instanceof EventProcessingException ex) {
+      return handleException(ex);
+    } else if (failure instanceof UpstreamTimeoutException ex) {
+      return handleUpstreamTimeout(ex);
+    } else if (failure instanceof DeadlineExceededException ex) {
+      return handleDeadlineExceeded(ex);
+    } else if (failure instanceof BankUnavailableException ex) {
+      return handleBankUnavailable(ex);
+    } else if (failure instanceof IllegalPaymentTransitionException ex) {
+      return handleIllegalTransition(ex);
+    } else if (failure instanceof InvalidQueryException ex) {
+      return handleInvalidQuery(ex);
+    }
+    return handleGeneric(failure instanceof Exception ex ? ex : new IllegalStateException(failure));
+  }
+
   @ExceptionHandler(Exception.class)
   public ResponseEntity<ErrorResponse> handleGeneric(Exception ex) {
     LOG.error("Unexpected error", ex);
@@ -0,0 +1,239 @@
+package com.checkout.payment.gateway.interfaces.payment.web.reactive;
+
+import com.checkout.payment.gateway.application.PaymentBatchService;
+import com.checkout.payment.gateway.application.ReactivePaymentGatewayService;
+import com.checkout.payment.gateway.domain.model.Deadline;
+import com.checkout.payment.gateway.infrastructure.exception.InvalidQueryException;
+import com.checkout.payment.gateway.interfaces.payment.web.BatchPaymentResults;
+import com.checkout.payment.gateway.interfaces.payment.web.PaymentResponseCache;
+import com.checkout.payment.gateway.interfaces.payment.web.PaymentResponseCache.Body;
+import com.checkout.payment.gateway.interfaces.payment.web.PaymentResponseCache.View;
+import com.checkout.payment.gateway.interfaces.payment.web.RequestDeadlineResolver;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.BatchPaymentRequest;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.BatchPaymentResult;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.ErrorResponse;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentLookupRequest;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentRequest;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentResponse;
+import com.checkout.payment.gateway.interfaces.payment.web.exception.CommonExceptionHandler;
+import jakarta.validation.Validator;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Function;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import org.springframework.validation.BeanPropertyBindingResult;
+import org.springframework.validation.BindingResult;
+import org.springframework.validation.beanvalidation.SpringValidatorAdapter;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.springframework.web.server.ServerWebInputException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Request handling for {@link PaymentRouter}. Bodies are validated with the same constraints as
+ * the controller's {@code @Valid}, and every failure is answered by {@link CommonExceptionHandler},
+ * so both stacks return the same status and body for it.
+ */
+@Component
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class PaymentHandler {
+
+  private final ReactivePaymentGatewayService payments;
+  private final PaymentBatchService batches;
+  private final RequestDeadlineResolver deadlines;
+  private final SpringValidatorAdapter validator;
+  private final CommonExceptionHandler errors;
+  private final BatchPaymentResults batchResults;
+  private final PaymentResponseCache responseCache;
+
+  public PaymentHandler(ReactivePaymentGatewayService payments, PaymentBatchService batches,
+      RequestDeadlineResolver deadlines, Validator validator, CommonExceptionHandler errors,
+      BatchPaymentResults batchResults, PaymentResponseCache responseCache) {
+    this.payments = payments;
+    this.batches = batches;
+    this.deadlines = deadlines;
+    this.validator = new SpringValidatorAdapter(validator);
+    this.errors = errors;
+    this.batchResults = batchResults;
+    this.responseCache = responseCache;
+  }
+
+  // a cached response is answered on the event loop, without going to the store
+  public Mono<ServerResponse> getPayment(ServerRequest request) {
+    return Mono.defer(() -> {
+          UUID id = parse(request.pathVariable("id"), "id", UUID::fromString);
+          return Mono.justOrEmpty(responseCache.find(id, View.RETRIEVED))
+              .switchIfEmpty(Mono.defer(() -> payments.getPaymentById(id)
+                  .map(payment -> responseCache.cache(payment, View.RETRIEVED))));
+        })
+        .flatMap(body -> ok(request, body))
+        .onErrorResume(this::error);
+  }
+
+  // long poll, as the controller's: parked until the payment settles or waitFor runs out
+  public Mono<ServerResponse> awaitPayment(ServerRequest request) {
+    return Mono.defer(() -> {
+          UUID id = parse(request.pathVariable("id"), "id", UUID::fromString);
+          Duration wait = parse(request.queryParam("waitFor").orElse("").trim(), "waitFor",
+              DurationStyle::detectAndParse);
+          return Mono.justOrEmpty(responseCache.find(id, View.RETRIEVED))
+              .switchIfEmpty(Mono.defer(() -> payments.awaitPayment(id, wait)
+                  .map(payment -> responseCache.cache(payment, View.RETRIEVED))));
+        })
+        .flatMap(body -> ok(request, body))
+        .onErrorResume(this::error);
+  }
+
+  public Mono<ServerResponse> listPayments(ServerRequest request) {
+    return Mono.defer(() -> payments.listPayments(
+            request.queryParams().get("status"),
+            param(request, "from").map(from -> parse(from, "from", Instant::parse)).orElse(null),
+            param(request, "to").map(to -> parse(to, "to", Instant::parse)).orElse(null),
+            param(request, "cursor").orElse(null),
+            param(request, "limit").map(limit -> parse(limit, "limit", Integer::valueOf)).orElse(100)))
+        .flatMap(page -> json(HttpStatus.OK, page))
+        .onErrorResume(this::error);
+  }
+
+  public Mono<ServerResponse> lookupPayments(ServerRequest request) {
+    return request.bodyToMono(PaymentLookupRequest.class)
+        .switchIfEmpty(Mono.error(() -> new ServerWebInputException("Missing request body")))
+        .flatMap(lookup -> {
+          BindingResult bindingResult = new BeanPropertyBindingResult(lookup, "paymentLookupRequest");
+          validator.validate(lookup, bindingResult);
+          if (bindingResult.hasErrors()) {
+            return respond(errors.handleValidationErrors(bindingResult));
+          }
+          return payments.lookupPayments(lookup.getIds()).flatMap(found -> json(HttpStatus.OK, found));
+        })
+        .onErrorResume(this::error);
+  }
+
+  public Mono<ServerResponse> createPayment(ServerRequest request) {
+    String idempotencyKey = request.headers().firstHeader("Idempotency-Key");
+    return Mono.defer(() -> {
+          // counted from here, as the controller does once the request is dispatched
+          Deadline deadline = deadlines.resolve(request.headers().firstHeader(RequestDeadlineResolver.HEADER),
+              "create-payment");
+          return request.bodyToMono(PaymentRequest.class)
+              .switchIfEmpty(Mono.error(() -> new ServerWebInputException("Missing request body")))
+              .flatMap(payment -> {
+                BindingResult bindingResult = new BeanPropertyBindingResult(payment, "paymentRequest");
+                validator.validate(payment, bindingResult);
+                if (bindingResult.hasErrors()) {
+                  return respond(errors.handleValidationErrors(bindingResult));
+                }
+                return payments.processPayment(payment, idempotencyKey, deadline)
+                    .flatMap(response -> {
+                      byte[] body = (idempotencyKey == null
+                          ? responseCache.serialize(response)
+                          : responseCache.cache(response, View.CREATED)).json();
+                      if (payments.acceptsThenProcesses() && !response.getStatus().isFinal()) {
+                        return ServerResponse.accepted()
+                            .location(URI.create("/api/v1/payments/" + response.getId()))
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .bodyValue(body);
+                      }
+                      return json(HttpStatus.CREATED, body);
+                    });
+              });
+        })
+        .onErrorResume(this::error);
+  }
+
+  // Jackson reads a JSON array or NDJSON as a stream of payments, and writes the results as NDJSON
+  public Mono<ServerResponse> createPayments(ServerRequest request) {
+    int maxItems = batches.maxItems();
+    return Mono.defer(() -> {
+          Deadline deadline = deadlines.resolve(request.headers().firstHeader(RequestDeadlineResolver.HEADER),
+              "batch-payments");
+          return request.bodyToFlux(BatchPaymentRequest.class)
+              .take(maxItems + 1L)
+              .collectList()
+              .onErrorMap(ServerWebInputException.class, e -> new InvalidQueryException("Malformed batch"))
+              .flatMap(batch -> {
+                if (batch.size() > maxItems) {
+                  return Mono.error(new InvalidQueryException("A batch holds at most " + maxItems + " payments"));
+                }
+                return ServerResponse.ok().contentType(MediaType.APPLICATION_NDJSON)
+                    .body(results(batch, deadline), BatchPaymentResult.class);
+              });
+        })
+        .onErrorResume(this::error);
+  }
+
+  // rejected payments first, then the others as they complete
+  private Flux<BatchPaymentResult> results(List<BatchPaymentRequest> batch, Deadline deadline) {
+    return Flux.defer(() -> {
+      List<BatchPaymentResult> rejected = new ArrayList<>();
+      List<Integer> accepted = new ArrayList<>(batch.size());
+      for (int i = 0; i < batch.size(); i++) {
+        int index = i;
+        batchResults.rejected(i, batch.get(i)).ifPresentOrElse(rejected::add, () -> accepted.add(index));
+      }
+      List<CompletableFuture<PaymentResponse>> outcomes = batches.submit(
+          accepted.stream().map(batch::get).toList(), deadline);
+      List<Mono<BatchPaymentResult>> completed = new ArrayList<>(outcomes.size());
+      for (int i = 0; i < outcomes.size(); i++) {
+        int index = accepted.get(i);
+        completed.add(Mono.fromFuture(outcomes.get(i))
+            .map(response -> batchResults.outcome(index, batch.get(index), response, null))
+            .onErrorResume(e -> Mono.just(batchResults.outcome(index, batch.get(index), null, e))));
+      }
+      // every outcome subscribed at once, so they come out in completion order
+      return Flux.concat(Flux.fromIterable(rejected),
+          Flux.merge(Flux.fromIterable(completed), Math.max(1, completed.size())));
+    });
+  }
+
+  private static Optional<String> param(ServerRequest request, String name) {
+    return request.queryParam(name).filter(value -> !value.isEmpty());
+  }
+
+  // same message as a type mismatch on the controller's parameters
+  private static <T> T parse(String value, String name, Function<String, T> parser) {
+    try {
+      return parser.apply(value);
+    } catch (IllegalArgumentException | DateTimeParseException e) {
+      throw new InvalidQueryException("Invalid value for parameter " + name);
+    }
+  }
+
+  // a 304 when If-None-Match holds the ETag
+  private static Mono<ServerResponse> ok(ServerRequest request, Body body) {
+    return request.checkNotModified(body.etag())
+        .switchIfEmpty(Mono.defer(() -> ServerResponse.ok().contentType(MediaType.APPLICATION_JSON)
+            .eTag(body.etag()).bodyValue(body.json())));
+  }
+
+  private static Mono<ServerResponse> json(HttpStatus status, Object body) {
+    return ServerResponse.status(status).contentType(MediaType.APPLICATION_JSON).bodyValue(body);
+  }
+
+  private static Mono<ServerResponse> respond(ResponseEntity<ErrorResponse> error) {
+    return ServerResponse.status(error.getStatusCode()).contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(error.getBody());
+  }
+
+  private Mono<ServerResponse> error(Throwable failure) {
+    if (failure instanceof Error e) {
+      return Mono.error(e);
+    }
+    return respond(errors.toResponse(
+        failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure));
+  }
+}
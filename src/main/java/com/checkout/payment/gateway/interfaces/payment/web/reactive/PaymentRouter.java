@@ -0,0 +1,31 @@
+package com.checkout.payment.gateway.interfaces.payment.web.reactive;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.reactive.function.server.RequestPredicates;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+
+/**
+ * The payments API on WebFlux, chosen with {@code spring.main.web-application-type=reactive}.
+ * Same paths, headers, bodies and error responses as the servlet controller.
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class PaymentRouter {
+
+  @Bean
+  public RouterFunction<ServerResponse> paymentRoutes(PaymentHandler handler) {
+    return RouterFunctions.route()
+        .GET("/api/v1/payments", handler::listPayments)
+        .GET("/api/v1/payments/{id}", RequestPredicates.queryParam("waitFor", waitFor -> true),
+            handler::awaitPayment)
+        .GET("/api/v1/payments/{id}", handler::getPayment)
+        .POST("/api/v1/payments", handler::createPayment)
+        .POST("/api/v1/payments/batch", handler::createPayments)
+        .POST("/api/v1/payments/lookup", handler::lookupPayments)
+        .build();
+  }
+}
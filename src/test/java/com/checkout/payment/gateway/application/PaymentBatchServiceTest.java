@@ -0,0 +1,93 @@
+package com.checkout.payment.gateway.application;
+
+import com.checkout.payment.gateway.domain.model.Deadline;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import com.checkout.payment.gateway.infrastructure.exception.UpstreamTimeoutException;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.BatchPaymentRequest;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PaymentBatchServiceTest {
+
+  private final PaymentGatewayService paymentGatewayService = mock(PaymentGatewayService.class);
+  private final PaymentGatewayProperties properties = new PaymentGatewayProperties();
+  private final Map<String, CompletableFuture<PaymentResponse>> inFlight = new HashMap<>();
+
+  private PaymentBatchService service(int maxConcurrency) {
+    properties.getBatch().setMaxConcurrency(maxConcurrency);
+    when(paymentGatewayService.processPaymentAsync(any(), anyString(), any())).thenAnswer(invocation -> {
+      CompletableFuture<PaymentResponse> future = new CompletableFuture<>();
+      inFlight.put(invocation.getArgument(1), future);
+      return future;
+    });
+    return new PaymentBatchService(paymentGatewayService, properties, Runnable::run);
+  }
+
+  private static List<BatchPaymentRequest> batch(int size) {
+    return IntStream.range(0, size).mapToObj(i -> {
+      BatchPaymentRequest payment = new BatchPaymentRequest();
+      payment.setIdempotencyKey("key-" + i);
+      return payment;
+    }).toList();
+  }
+
+  private static PaymentResponse authorized() {
+    return PaymentResponse.builder().id(UUID.randomUUID()).status(PaymentStatus.AUTHORIZED).build();
+  }
+
+  @Test
+  void shouldKeepAtMostMaxConcurrencyPaymentsInFlight_AndStartTheNextOnCompletion() {
+    PaymentBatchService service = service(2);
+
+    List<CompletableFuture<PaymentResponse>> outcomes = service.submit(batch(4), Deadline.none());
+
+    assertThat(inFlight).containsOnlyKeys("key-0", "key-1");
+    verify(paymentGatewayService, never()).processPaymentAsync(any(), eq("key-2"), any());
+
+    inFlight.get("key-1").complete(authorized());
+    assertThat(inFlight).containsOnlyKeys("key-0", "key-1", "key-2");
+    assertThat(outcomes.get(1)).isCompleted();
+    assertThat(outcomes.get(0)).isNotDone();
+
+    inFlight.get("key-0").complete(authorized());
+    inFlight.get("key-2").complete(authorized());
+    inFlight.get("key-3").complete(authorized());
+    assertThat(outcomes).allSatisfy(outcome -> assertThat(outcome).isCompleted());
+  }
+
+  @Test
+  void shouldFailOnlyThePaymentThatFailed() {
+    PaymentBatchService service = service(4);
+    UUID paymentId = UUID.randomUUID();
+    when(paymentGatewayService.processPaymentAsync(any(), eq("key-1"), any()))
+        .thenThrow(new UpstreamTimeoutException("Bank network issue", paymentId, null));
+
+    List<CompletableFuture<PaymentResponse>> outcomes = service.submit(batch(3), Deadline.none());
+    inFlight.get("key-0").complete(authorized());
+    inFlight.get("key-2").complete(authorized());
+
+    assertThat(outcomes.get(0)).isCompleted();
+    assertThat(outcomes.get(2)).isCompleted();
+    assertThat(outcomes.get(1)).isCompletedExceptionally();
+    // the service's own exception, as the single-payment endpoint would see it
+    assertThat(outcomes.get(1).handle((response, failure) -> failure).join())
+        .isInstanceOf(UpstreamTimeoutException.class);
+  }
+}
@@ -1,29 +1,64 @@
 package com.checkout.payment.gateway.application;
 
 import com.checkout.payment.gateway.domain.model.BankResult;
+import com.checkout.payment.gateway.domain.model.Deadline;
 import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentCursor;
+import com.checkout.payment.gateway.domain.model.PaymentPage;
+import com.checkout.payment.gateway.domain.model.PaymentQuery;
 import com.checkout.payment.gateway.domain.model.PaymentStatus;
 import com.checkout.payment.gateway.domain.model.PaymentsRepository;
 import com.checkout.payment.gateway.domain.service.AcquiringBank;
+import com.checkout.payment.gateway.domain.service.AsyncAcquiringBank;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import com.checkout.payment.gateway.infrastructure.exception.BankUnavailableException;
+import com.checkout.payment.gateway.infrastructure.exception.DeadlineExceededException;
+import com.checkout.payment.gateway.infrastructure.exception.InvalidQueryException;
 import com.checkout.payment.gateway.infrastructure.exception.PaymentNotFoundException;
+import com.checkout.payment.gateway.infrastructure.exception.UpstreamTimeoutException;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentListResponse;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentLookupResponse;
 import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentRequest;
 import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentResponse;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.task.SyncTaskExecutor;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.internal.verification.VerificationModeFactory.times;
@@ -36,9 +71,34 @@ class PaymentGatewayServiceTest {
   @Mock
   private AcquiringBank acquiringBank;
 
+  @Mock
+  private AsyncAcquiringBank asyncAcquiringBank;
+
+  @Mock
+  private PaymentReconciler reconciler;
+
+  @Spy
+  private PaymentGatewayProperties properties = new PaymentGatewayProperties();
+
+  @Spy
+  private SyncTaskExecutor bankCallbacks = new SyncTaskExecutor();
+
+  @Spy
+  private InFlightPaymentRegistry inFlightPayments =
+      new InFlightPaymentRegistry(new SimpleMeterRegistry(), new PaymentGatewayProperties());
+
+  @Spy
+  private SettledPaymentWaiters settledPayments =
+      new SettledPaymentWaiters(new SimpleMeterRegistry(), new PaymentGatewayProperties());
+
   @InjectMocks
   private PaymentGatewayService paymentGatewayService;
 
+  @BeforeEach
+  void bankIsUp() {
+    lenient().when(acquiringBank.isAvailable()).thenReturn(true);
+  }
+
   @Test
   void processPayment_ShouldGenerateIdAndMaskCard_WhenBankAuthorizes() {
     // Given
@@ -50,8 +110,10 @@ class PaymentGatewayServiceTest {
     request.setCurrency("USD");
     request.setCvv("123");
 
+    when(paymentsRepository.save(any(Payment.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    when(paymentsRepository.compareAndSet(any(UUID.class), anyLong(), any(Payment.class))).thenReturn(true);
     // Mock bank response
-    when(acquiringBank.process(eq(request), any(UUID.class))).thenReturn(
+    when(acquiringBank.process(eq(request), any(UUID.class), any())).thenReturn(
         BankResult.builder().status(PaymentStatus.AUTHORIZED).authorizationCode("abc123").build());
 
     // When
@@ -64,14 +126,186 @@ class PaymentGatewayServiceTest {
     assertThat(response.getCard().getMaskedNumber()).isNull();
 
     // 2. Verify Repository Persistence
+    ArgumentCaptor<Payment> pendingCaptor = ArgumentCaptor.forClass(Payment.class);
+    verify(paymentsRepository, times(1)).save(pendingCaptor.capture());
+    assertThat(pendingCaptor.getValue().getStatus()).isEqualTo(PaymentStatus.PENDING);
+
+    // the bank's answer is applied as the next version of the PENDING record
     ArgumentCaptor<Payment> paymentCaptor = ArgumentCaptor.forClass(Payment.class);
-    verify(paymentsRepository, times(2)).save(paymentCaptor.capture());
+    verify(paymentsRepository, times(1)).compareAndSet(eq(response.getId()), eq(0L), paymentCaptor.capture());
 
     Payment savedPayment = paymentCaptor.getValue();
     assertThat(savedPayment.getId()).isEqualTo(response.getId());
     assertThat(savedPayment.getCardLastFour()).isEqualTo("5678");
     assertThat(savedPayment.getMaskedCardNumber()).isEqualTo("************5678");
     assertThat(savedPayment.getStatus()).isEqualTo(PaymentStatus.AUTHORIZED);
+    assertThat(savedPayment.getVersion()).isEqualTo(1);
+  }
+
+  @Test
+  void processPayment_ShouldReturnStoredVersion_WhenPaymentChangedConcurrently() {
+    PaymentRequest request = new PaymentRequest();
+    request.setCardNumber("1234567812345678");
+    request.setExpiryMonth(12);
+    request.setExpiryYear(2030);
+    request.setAmount(100L);
+    request.setCurrency("USD");
+    request.setCvv("123");
+
+    when(paymentsRepository.save(any(Payment.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    when(acquiringBank.process(eq(request), any(UUID.class), any())).thenReturn(
+        BankResult.builder().status(PaymentStatus.AUTHORIZED).authorizationCode("abc123").build());
+    // e.g. reconciliation already settled the payment as declined
+    when(paymentsRepository.compareAndSet(any(UUID.class), anyLong(), any(Payment.class))).thenReturn(false);
+    when(paymentsRepository.get(any(UUID.class))).thenAnswer(invocation -> Optional.of(Payment.builder()
+        .id(invocation.getArgument(0))
+        .status(PaymentStatus.DECLINED)
+        .cardLastFour("5678")
+        .version(1)
+        .build()));
+
+    PaymentResponse response = paymentGatewayService.processPayment(request, null);
+
+    assertThat(response.getStatus()).isEqualTo(PaymentStatus.DECLINED);
+  }
+
+  @Test
+  void processPayment_ShouldFailFastWithoutSaving_WhenBankIsUnavailable() {
+    PaymentRequest request = new PaymentRequest();
+    request.setCardNumber("1234567812345678");
+    request.setExpiryMonth(12);
+    request.setExpiryYear(2030);
+    request.setAmount(100L);
+    request.setCurrency("USD");
+    request.setCvv("123");
+
+    when(acquiringBank.isAvailable()).thenReturn(false);
+
+    assertThatThrownBy(() -> paymentGatewayService.processPayment(request, null))
+        .isInstanceOf(BankUnavailableException.class);
+    assertThatThrownBy(() -> paymentGatewayService.processPayment(request, "key-while-down"))
+        .isInstanceOf(BankUnavailableException.class);
+
+    verify(paymentsRepository, never()).save(any(Payment.class));
+    verify(paymentsRepository, never()).claimIdempotencyKey(any(Payment.class));
+    verify(acquiringBank, never()).process(any(), any(), any());
+  }
+
+  @Test
+  void processPayment_ShouldFailWithoutSaving_WhenDeadlineHasAlreadyPassed() {
+    PaymentRequest request = new PaymentRequest();
+    request.setCardNumber("1234567812345678");
+    request.setExpiryMonth(12);
+    request.setExpiryYear(2030);
+    request.setAmount(100L);
+    request.setCurrency("USD");
+    request.setCvv("123");
+    Deadline expired = new Deadline(Instant.now().minusMillis(1));
+
+    assertThatThrownBy(() -> paymentGatewayService.processPayment(request, null, expired))
+        .isInstanceOf(DeadlineExceededException.class);
+    assertThatThrownBy(() -> paymentGatewayService.processPayment(request, "key-too-late", expired))
+        .isInstanceOf(DeadlineExceededException.class);
+
+    verify(paymentsRepository, never()).save(any(Payment.class));
+    verify(paymentsRepository, never()).getByIdempotencyKey(any());
+    verify(paymentsRepository, never()).claimIdempotencyKey(any(Payment.class));
+    verify(acquiringBank, never()).process(any(), any(), any());
+  }
+
+  @Test
+  void processPayment_ShouldPassDeadlineToBank() {
+    PaymentRequest request = new PaymentRequest();
+    request.setCardNumber("1234567812345678");
+    request.setExpiryMonth(12);
+    request.setExpiryYear(2030);
+    request.setAmount(100L);
+    request.setCurrency("USD");
+    request.setCvv("123");
+    Deadline deadline = new Deadline(Instant.now().plusSeconds(5));
+
+    when(paymentsRepository.save(any(Payment.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    when(paymentsRepository.compareAndSet(any(UUID.class), anyLong(), any(Payment.class))).thenReturn(true);
+    when(acquiringBank.process(eq(request), any(UUID.class), eq(deadline)))
+        .thenReturn(BankResult.builder().status(PaymentStatus.AUTHORIZED).authorizationCode("auth").build());
+
+    PaymentResponse response = paymentGatewayService.processPayment(request, null, deadline);
+
+    assertThat(response.getStatus()).isEqualTo(PaymentStatus.AUTHORIZED);
+  }
+
+  @Test
+  void processPayment_ShouldRejectPendingPayment_WhenBankRefusesCallAfterSave() {
+    PaymentRequest request = new PaymentRequest();
+    request.setCardNumber("1234567812345678");
+    request.setExpiryMonth(12);
+    request.setExpiryYear(2030);
+    request.setAmount(100L);
+    request.setCurrency("USD");
+    request.setCvv("123");
+
+    when(paymentsRepository.save(any(Payment.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    when(paymentsRepository.compareAndSet(any(UUID.class), anyLong(), any(Payment.class))).thenReturn(true);
+    when(acquiringBank.process(eq(request), any(UUID.class), any()))
+        .thenThrow(new BankUnavailableException("Bank circuit breaker is open", null));
+
+    assertThatThrownBy(() -> paymentGatewayService.processPayment(request, null))
+        .isInstanceOf(BankUnavailableException.class);
+
+    ArgumentCaptor<Payment> rejected = ArgumentCaptor.forClass(Payment.class);
+    verify(paymentsRepository).compareAndSet(any(UUID.class), eq(0L), rejected.capture());
+    assertThat(rejected.getValue().getStatus()).isEqualTo(PaymentStatus.REJECTED);
+  }
+
+  @Test
+  void processPayment_ShouldMarkUnknown_WhenBankTimesOut() {
+    PaymentRequest request = new PaymentRequest();
+    request.setCardNumber("1234567812345678");
+    request.setExpiryMonth(12);
+    request.setExpiryYear(2030);
+    request.setAmount(100L);
+    request.setCurrency("USD");
+    request.setCvv("123");
+
+    when(paymentsRepository.save(any(Payment.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    when(paymentsRepository.compareAndSet(any(UUID.class), anyLong(), any(Payment.class))).thenReturn(true);
+    when(acquiringBank.process(eq(request), any(UUID.class), any()))
+        .thenThrow(new UpstreamTimeoutException("Bank network issue", null, null));
+
+    assertThatThrownBy(() -> paymentGatewayService.processPayment(request, null))
+        .isInstanceOf(UpstreamTimeoutException.class);
+
+    ArgumentCaptor<Payment> unknown = ArgumentCaptor.forClass(Payment.class);
+    verify(paymentsRepository).compareAndSet(any(UUID.class), eq(0L), unknown.capture());
+    assertThat(unknown.getValue().getStatus()).isEqualTo(PaymentStatus.UNKNOWN);
+  }
+
+  @Test
+  void processPayment_ShouldAskBank_WhenRetryFindsUnresolvedPayment() {
+    String idempotencyKey = "retry-after-timeout";
+    PaymentRequest request = new PaymentRequest();
+    request.setCardNumber("1234567812345678");
+    request.setExpiryMonth(12);
+    request.setExpiryYear(2030);
+    request.setAmount(100L);
+    request.setCurrency("USD");
+    request.setCvv("123");
+
+    Payment unknown = Payment.builder()
+        .id(UUID.randomUUID())
+        .idempotencyKey(idempotencyKey)
+        .status(PaymentStatus.UNKNOWN)
+        .cardLastFour("5678")
+        .build();
+    when(paymentsRepository.getByIdempotencyKey(idempotencyKey)).thenReturn(Optional.of(unknown));
+    when(paymentsRepository.claimIdempotencyKey(any(Payment.class))).thenReturn(Optional.of(unknown));
+    when(reconciler.resolve(unknown)).thenReturn(unknown.transitionTo(PaymentStatus.AUTHORIZED, "late-auth"));
+
+    PaymentResponse response = paymentGatewayService.processPayment(request, idempotencyKey);
+
+    assertThat(response.getId()).isEqualTo(unknown.getId());
+    assertThat(response.getStatus()).isEqualTo(PaymentStatus.AUTHORIZED);
+    verify(acquiringBank, never()).process(any(), any(), any());
   }
 
   @Test
@@ -106,6 +340,51 @@ class PaymentGatewayServiceTest {
         .hasMessageContaining("not found");
   }
 
+  @Test
+  void awaitPayment_ShouldCompleteWhenPaymentSettles_WithoutReadingAgain() {
+    UUID id = UUID.randomUUID();
+    Payment pending = Payment.builder().id(id).status(PaymentStatus.PENDING).cardLastFour("4242").build();
+    when(paymentsRepository.get(id)).thenReturn(Optional.of(pending));
+
+    CompletableFuture<PaymentResponse> response = paymentGatewayService.awaitPayment(id, Duration.ofSeconds(5));
+    assertFalse(response.isDone());
+
+    // a PENDING to UNKNOWN change is not what the request waits for
+    settledPayments.paymentChanged(pending.toBuilder().status(PaymentStatus.UNKNOWN).build());
+    assertFalse(response.isDone());
+
+    settledPayments.paymentChanged(pending.toBuilder().status(PaymentStatus.AUTHORIZED).build());
+    assertThat(response).isCompleted();
+    assertThat(response.join().getStatus()).isEqualTo(PaymentStatus.AUTHORIZED);
+    verify(paymentsRepository, times(1)).get(id);
+  }
+
+  @Test
+  void awaitPayment_ShouldReturnLatestVersion_WhenWaitRunsOut() {
+    UUID id = UUID.randomUUID();
+    Payment pending = Payment.builder().id(id).status(PaymentStatus.PENDING).cardLastFour("4242").build();
+    when(paymentsRepository.get(id)).thenReturn(Optional.of(pending),
+        Optional.of(pending.toBuilder().status(PaymentStatus.UNKNOWN).build()));
+
+    PaymentResponse response = paymentGatewayService.awaitPayment(id, Duration.ofMillis(20)).join();
+
+    assertThat(response.getStatus()).isEqualTo(PaymentStatus.UNKNOWN);
+    verify(paymentsRepository, times(2)).get(id);
+  }
+
+  @Test
+  void awaitPayment_ShouldAnswerAtOnce_WhenPaymentIsFinalOrMissing() {
+    UUID id = UUID.randomUUID();
+    when(paymentsRepository.get(id)).thenReturn(
+        Optional.of(Payment.builder().id(id).status(PaymentStatus.DECLINED).cardLastFour("4242").build()));
+    UUID missing = UUID.randomUUID();
+    when(paymentsRepository.get(missing)).thenReturn(Optional.empty());
+
+    assertThat(paymentGatewayService.awaitPayment(id, Duration.ofSeconds(5))).isCompleted();
+    assertThatThrownBy(() -> paymentGatewayService.awaitPayment(missing, Duration.ofSeconds(5)))
+        .isInstanceOf(PaymentNotFoundException.class);
+  }
+
   @Test
   void processPayment_ShouldReturnCached_WhenIdempotencyKeyExists() {
     PaymentRequest request = new PaymentRequest();
@@ -133,7 +412,7 @@ class PaymentGatewayServiceTest {
     assertThat(response.getStatus()).isEqualTo(PaymentStatus.AUTHORIZED);
 
     // should not processed by bank again
-    verify(acquiringBank, never()).process(any(), any());
+    verify(acquiringBank, never()).process(any(), any(), any());
     assertThat(response.getCard().getMaskedNumber()).isNull();
   }
 
@@ -156,13 +435,369 @@ class PaymentGatewayServiceTest {
     when(paymentsRepository.getByIdempotencyKey(idempotencyKey))
         .thenReturn(Optional.empty());
 
-    when(acquiringBank.process(any(), any())).thenReturn(bankResult);
+    when(acquiringBank.process(any(), any(), any())).thenReturn(bankResult);
 
     PaymentResponse response = paymentGatewayService.processPayment(request, idempotencyKey);
 
-    verify(acquiringBank, times(1)).process(any(), any());
-    verify(paymentsRepository, times(2)).save(any(Payment.class));
+    verify(acquiringBank, times(1)).process(any(), any(), any());
+    verify(paymentsRepository, times(1)).claimIdempotencyKey(any(Payment.class));
+    verify(paymentsRepository, times(1)).compareAndSet(any(UUID.class), eq(0L), any(Payment.class));
+    verify(paymentsRepository, never()).save(any(Payment.class));
 
     assertThat(response.getStatus()).isEqualTo(PaymentStatus.AUTHORIZED);
   }
+
+  @Test
+  void processPayment_ShouldCallBankOnce_WhenSameIdempotencyKeyIsInFlight() throws Exception {
+    String idempotencyKey = "concurrent-key";
+    PaymentRequest request = new PaymentRequest();
+    request.setCardNumber("1234567812345678");
+    request.setExpiryMonth(12);
+    request.setExpiryYear(2025);
+    request.setAmount(100L);
+    request.setCurrency("USD");
+    request.setCvv("123");
+
+    CountDownLatch bankCalled = new CountDownLatch(1);
+    CountDownLatch releaseBank = new CountDownLatch(1);
+    when(paymentsRepository.getByIdempotencyKey(idempotencyKey)).thenReturn(Optional.empty());
+    when(acquiringBank.process(any(), any(), any())).thenAnswer(invocation -> {
+      bankCalled.countDown();
+      releaseBank.await();
+      return BankResult.builder().status(PaymentStatus.AUTHORIZED).authorizationCode("AUTH_1").build();
+    });
+
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<PaymentResponse> leader = executor.submit(
+          () -> paymentGatewayService.processPayment(request, idempotencyKey));
+      bankCalled.await();
+      Future<PaymentResponse> follower = executor.submit(
+          () -> paymentGatewayService.processPayment(request, idempotencyKey));
+
+      // give the follower time to attach to the in-flight request before the bank answers
+      Thread.sleep(100);
+      releaseBank.countDown();
+
+      assertThat(follower.get().getId()).isEqualTo(leader.get().getId());
+      assertThat(follower.get().getStatus()).isEqualTo(PaymentStatus.AUTHORIZED);
+      verify(acquiringBank, times(1)).process(any(), any(), any());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void listPayments_ShouldQueryIndexAndEncodeNextCursor() {
+    Payment pending = Payment.builder()
+        .id(UUID.randomUUID())
+        .status(PaymentStatus.PENDING)
+        .amount(100L)
+        .currency("USD")
+        .cardLastFour("4242")
+        .maskedCardNumber("************4242")
+        .createdAt(Instant.parse("2025-01-01T00:00:00Z"))
+        .build();
+    PaymentCursor next = new PaymentCursor(pending.getCreatedAt(), pending.getId());
+    ArgumentCaptor<PaymentQuery> query = ArgumentCaptor.forClass(PaymentQuery.class);
+    when(paymentsRepository.find(query.capture())).thenReturn(new PaymentPage(List.of(pending), next));
+
+    PaymentListResponse response = paymentGatewayService.listPayments(List.of("PENDING"), null, null, null, 10_000);
+
+    assertThat(query.getValue().getStatuses()).isEqualTo(Set.of(PaymentStatus.PENDING));
+    assertThat(query.getValue().getLimit()).isEqualTo(500);
+    assertThat(response.getPayments().get(0).getCard().getMaskedNumber()).isEqualTo("************4242");
+    assertThat(PaymentCursor.decode(response.getNextCursor())).isEqualTo(next);
+  }
+
+  @Test
+  void lookupPayments_ShouldReadStoreOnce_AndListUnknownAndMalformedIdsAsMissing() {
+    UUID found = UUID.randomUUID();
+    UUID unknown = UUID.randomUUID();
+    Payment payment = Payment.builder()
+        .id(found)
+        .status(PaymentStatus.DECLINED)
+        .amount(200L)
+        .currency("EUR")
+        .cardLastFour("4242")
+        .maskedCardNumber("************4242")
+        .build();
+    when(paymentsRepository.getAll(any())).thenReturn(Map.of(found, payment));
+
+    PaymentLookupResponse response = paymentGatewayService.lookupPayments(
+        List.of(unknown.toString(), "not-an-id", found.toString(), found.toString()));
+
+    assertEquals(1, response.getPayments().size());
+    assertThat(response.getPayments().get(0).getCard().getMaskedNumber()).isEqualTo("************4242");
+    assertEquals(List.of(unknown.toString(), "not-an-id"), response.getMissing());
+    verify(paymentsRepository, times(1)).getAll(any());
+    verify(paymentsRepository, never()).get(any());
+  }
+
+  @Test
+  void lookupPayments_ShouldRejectTooManyIds() {
+    List<String> ids = Stream.generate(() -> UUID.randomUUID().toString()).limit(501).toList();
+
+    assertThatThrownBy(() -> paymentGatewayService.lookupPayments(ids))
+        .isInstanceOf(InvalidQueryException.class)
+        .hasMessageContaining("at most 500");
+  }
+
+  @Test
+  void listPayments_ShouldRejectUnknownStatusAndMalformedCursor() {
+    assertThatThrownBy(() -> paymentGatewayService.listPayments(List.of("Settled"), null, null, null, 10))
+        .isInstanceOf(InvalidQueryException.class);
+    assertThatThrownBy(() -> paymentGatewayService.listPayments(null, null, null, "not a cursor", 10))
+        .isInstanceOf(InvalidQueryException.class);
+  }
+
+  @Test
+  void processPaymentAsync_ShouldProcessOnCallingThread_WhenAsyncIsDisabled() {
+    PaymentRequest request = asyncRequest();
+    when(paymentsRepository.save(any(Payment.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    when(paymentsRepository.compareAndSet(any(UUID.class), anyLong(), any(Payment.class))).thenReturn(true);
+    when(acquiringBank.process(eq(request), any(UUID.class), any()))
+        .thenReturn(BankResult.builder().status(PaymentStatus.AUTHORIZED).authorizationCode("AUTH_1").build());
+
+    CompletableFuture<PaymentResponse> response = paymentGatewayService.processPaymentAsync(request, null,
+        Deadline.none());
+
+    assertThat(response.getNow(null).getStatus()).isEqualTo(PaymentStatus.AUTHORIZED);
+    verify(asyncAcquiringBank, never()).process(any(), any(), any());
+  }
+
+  @Test
+  void processPaymentAsync_ShouldCompleteWhenBankAnswers_WithoutBlockingCaller() {
+    PaymentGatewayService service = asyncService();
+    PaymentRequest request = asyncRequest();
+    CompletableFuture<BankResult> bank = new CompletableFuture<>();
+    when(paymentsRepository.save(any(Payment.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    when(paymentsRepository.compareAndSet(any(UUID.class), anyLong(), any(Payment.class))).thenReturn(true);
+    when(asyncAcquiringBank.process(eq(request), any(UUID.class), any())).thenReturn(bank);
+
+    CompletableFuture<PaymentResponse> response = service.processPaymentAsync(request, null, Deadline.none());
+
+    assertThat(response.isDone()).isFalse();
+    bank.complete(BankResult.builder().status(PaymentStatus.AUTHORIZED).authorizationCode("AUTH_1").build());
+    assertThat(response.join().getStatus()).isEqualTo(PaymentStatus.AUTHORIZED);
+    verify(acquiringBank, never()).process(any(), any(), any());
+  }
+
+  @Test
+  void processPaymentAsync_ShouldMarkUnknown_WhenBankTimesOut() {
+    PaymentGatewayService service = asyncService();
+    PaymentRequest request = asyncRequest();
+    when(paymentsRepository.save(any(Payment.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    when(paymentsRepository.compareAndSet(any(UUID.class), anyLong(), any(Payment.class))).thenReturn(true);
+    when(asyncAcquiringBank.process(eq(request), any(UUID.class), any()))
+        .thenReturn(CompletableFuture.failedFuture(new UpstreamTimeoutException("Bank network issue", null, null)));
+
+    CompletableFuture<PaymentResponse> response = service.processPaymentAsync(request, null, Deadline.none());
+
+    assertThatThrownBy(response::join).hasCauseInstanceOf(UpstreamTimeoutException.class);
+    ArgumentCaptor<Payment> unknown = ArgumentCaptor.forClass(Payment.class);
+    verify(paymentsRepository).compareAndSet(any(UUID.class), eq(0L), unknown.capture());
+    assertThat(unknown.getValue().getStatus()).isEqualTo(PaymentStatus.UNKNOWN);
+  }
+
+  @Test
+  void processPaymentAsync_ShouldCallBankOnce_WhenSameIdempotencyKeyIsInFlight() {
+    PaymentGatewayService service = asyncService();
+    PaymentRequest request = asyncRequest();
+    String idempotencyKey = "async-key";
+    CompletableFuture<BankResult> bank = new CompletableFuture<>();
+    when(paymentsRepository.getByIdempotencyKey(idempotencyKey)).thenReturn(Optional.empty());
+    when(paymentsRepository.compareAndSet(any(UUID.class), anyLong(), any(Payment.class))).thenReturn(true);
+    when(asyncAcquiringBank.process(eq(request), any(UUID.class), any())).thenReturn(bank);
+
+    CompletableFuture<PaymentResponse> leader = service.processPaymentAsync(request, idempotencyKey, Deadline.none());
+    CompletableFuture<PaymentResponse> follower = service.processPaymentAsync(request, idempotencyKey,
+        Deadline.none());
+    bank.complete(BankResult.builder().status(PaymentStatus.AUTHORIZED).authorizationCode("AUTH_1").build());
+
+    assertThat(follower.join().getId()).isEqualTo(leader.join().getId());
+    assertThat(follower.join().getStatus()).isEqualTo(PaymentStatus.AUTHORIZED);
+    verify(asyncAcquiringBank, times(1)).process(any(), any(), any());
+  }
+
+  @Test
+  void processPaymentAsync_ShouldAskBankOffCallerThread_WhenReplayingUnsettledPayment() {
+    List<Runnable> bankCallbackTasks = new ArrayList<>();
+    PaymentGatewayService service = asyncService(bankCallbackTasks::add);
+    String idempotencyKey = "async-replay";
+    Payment unknown = Payment.builder()
+        .id(UUID.randomUUID())
+        .idempotencyKey(idempotencyKey)
+        .status(PaymentStatus.UNKNOWN)
+        .cardLastFour("5678")
+        .build();
+    when(paymentsRepository.getByIdempotencyKey(idempotencyKey)).thenReturn(Optional.of(unknown));
+    when(paymentsRepository.claimIdempotencyKey(any(Payment.class))).thenReturn(Optional.of(unknown));
+    when(reconciler.resolve(unknown)).thenReturn(unknown.transitionTo(PaymentStatus.AUTHORIZED, "late-auth"));
+
+    CompletableFuture<PaymentResponse> response = service.processPaymentAsync(asyncRequest(), idempotencyKey,
+        Deadline.none());
+
+    verify(reconciler, never()).resolve(any());
+    assertThat(bankCallbackTasks.size()).isOne();
+    bankCallbackTasks.get(0).run();
+    assertThat(response.join().getStatus()).isEqualTo(PaymentStatus.AUTHORIZED);
+    verify(asyncAcquiringBank, never()).process(any(), any(), any());
+  }
+
+  @Test
+  void acceptPayment_ShouldReturnPendingAtOnce_AndStoreBankAnswerInBackground() throws Exception {
+    PaymentGatewayService service = pipelineService(1);
+    PaymentRequest request = asyncRequest();
+    CountDownLatch bankAnswers = new CountDownLatch(1);
+    Map<UUID, Payment> stored = new ConcurrentHashMap<>();
+    when(paymentsRepository.save(any(Payment.class))).thenAnswer(invocation -> {
+      Payment payment = invocation.getArgument(0);
+      stored.put(payment.getId(), payment);
+      return payment;
+    });
+    when(paymentsRepository.get(any(UUID.class))).thenAnswer(invocation ->
+        Optional.ofNullable(stored.get(invocation.<UUID>getArgument(0))));
+    when(paymentsRepository.compareAndSet(any(UUID.class), anyLong(), any(Payment.class))).thenReturn(true);
+    when(acquiringBank.process(eq(request), any(UUID.class), any())).thenAnswer(invocation -> {
+      bankAnswers.await();
+      return BankResult.builder().status(PaymentStatus.AUTHORIZED).authorizationCode("AUTH_1").build();
+    });
+    try {
+      PaymentResponse response = service.acceptPayment(request, null, Deadline.none());
+
+      assertThat(response.getStatus()).isEqualTo(PaymentStatus.PENDING);
+      bankAnswers.countDown();
+      ArgumentCaptor<Payment> settled = ArgumentCaptor.forClass(Payment.class);
+      verify(paymentsRepository, timeout(5000)).compareAndSet(eq(response.getId()), eq(0L), settled.capture());
+      assertThat(settled.getValue().getStatus()).isEqualTo(PaymentStatus.AUTHORIZED);
+    } finally {
+      bankAnswers.countDown();
+      service.close();
+    }
+  }
+
+  @Test
+  void acceptPayment_ShouldRefuseBeforeStoring_WhenPipelineIsFull() {
+    PaymentGatewayService service = pipelineService(1);
+    PaymentRequest request = asyncRequest();
+    CountDownLatch bankAnswers = new CountDownLatch(1);
+    when(paymentsRepository.save(any(Payment.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    lenient().when(paymentsRepository.get(any(UUID.class))).thenAnswer(invocation -> Optional.of(Payment.builder()
+        .id(invocation.getArgument(0)).status(PaymentStatus.PENDING).build()));
+    lenient().when(acquiringBank.process(eq(request), any(UUID.class), any())).thenAnswer(invocation -> {
+      bankAnswers.await();
+      throw new UpstreamTimeoutException("Bank network issue", null, null);
+    });
+    try {
+      service.acceptPayment(request, null, Deadline.none());
+
+      assertThatThrownBy(() -> service.acceptPayment(request, null, Deadline.none()))
+          .isInstanceOf(BankUnavailableException.class);
+      verify(paymentsRepository, times(1)).save(any());
+    } finally {
+      bankAnswers.countDown();
+      service.close();
+    }
+  }
+
+  @Test
+  void acceptPayment_ShouldReturnStoredPayment_WhenIdempotencyKeyExists() {
+    PaymentGatewayService service = pipelineService(1);
+    Payment existing = Payment.builder()
+        .id(UUID.randomUUID())
+        .status(PaymentStatus.PENDING)
+        .cardLastFour("5678")
+        .build();
+    when(paymentsRepository.getByIdempotencyKey("accept-key")).thenReturn(Optional.of(existing));
+    try {
+      PaymentResponse response = service.acceptPayment(asyncRequest(), "accept-key", Deadline.none());
+
+      assertThat(response.getId()).isEqualTo(existing.getId());
+      verify(paymentsRepository, never()).claimIdempotencyKey(any());
+      verify(acquiringBank, never()).process(any(), any(), any());
+    } finally {
+      service.close();
+    }
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void acceptPayment_ShouldNotSendPayment_WhenSettledWhileQueued() throws Exception {
+    PaymentGatewayService service = pipelineService(2);
+    ArgumentCaptor<Predicate<UUID>> inPipeline = ArgumentCaptor.forClass(Predicate.class);
+    verify(reconciler).skipWhile(inPipeline.capture());
+    PaymentRequest request = asyncRequest();
+    Map<UUID, Payment> stored = new ConcurrentHashMap<>();
+    when(paymentsRepository.save(any(Payment.class))).thenAnswer(invocation -> {
+      Payment payment = invocation.getArgument(0);
+      stored.put(payment.getId(), payment);
+      return payment;
+    });
+    when(paymentsRepository.get(any(UUID.class))).thenAnswer(invocation ->
+        Optional.ofNullable(stored.get(invocation.<UUID>getArgument(0))));
+    CountDownLatch dispatching = new CountDownLatch(1);
+    CountDownLatch bankAnswers = new CountDownLatch(1);
+    lenient().when(paymentsRepository.compareAndSet(any(UUID.class), anyLong(), any(Payment.class))).thenReturn(true);
+    when(acquiringBank.process(eq(request), any(UUID.class), any())).thenAnswer(invocation -> {
+      dispatching.countDown();
+      bankAnswers.await();
+      return BankResult.builder().status(PaymentStatus.AUTHORIZED).authorizationCode("AUTH_1").build();
+    });
+    try {
+      // the single dispatch worker is busy with the first payment, so the second waits in the queue
+      service.acceptPayment(request, null, Deadline.none());
+      assertThat(dispatching.await(5, TimeUnit.SECONDS)).isTrue();
+      UUID queued = service.acceptPayment(request, null, Deadline.none()).getId();
+
+      assertThat(inPipeline.getValue().test(queued)).isTrue();
+      // settled elsewhere before the dispatcher reaches it
+      stored.computeIfPresent(queued, (id, payment) -> payment.transitionTo(PaymentStatus.REJECTED, null));
+      bankAnswers.countDown();
+
+      verify(paymentsRepository, timeout(5000)).get(queued);
+      long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+      while (inPipeline.getValue().test(queued) && System.nanoTime() < waitUntil) {
+        Thread.sleep(10);
+      }
+      assertThat(inPipeline.getValue().test(queued)).isFalse();
+      verify(acquiringBank, times(1)).process(any(), any(), any());
+      verify(paymentsRepository, never()).compareAndSet(eq(queued), anyLong(), any());
+    } finally {
+      bankAnswers.countDown();
+      service.close();
+    }
+  }
+
+  private PaymentGatewayService pipelineService(int capacity) {
+    PaymentGatewayProperties pipelineProperties = new PaymentGatewayProperties();
+    pipelineProperties.getPipeline().setEnabled(true);
+    pipelineProperties.getPipeline().setCapacity(capacity);
+    pipelineProperties.getPipeline().setDispatchWorkers(1);
+    pipelineProperties.getPipeline().setPersistenceWorkers(1);
+    return new PaymentGatewayService(paymentsRepository, acquiringBank, asyncAcquiringBank, inFlightPayments,
+        settledPayments, reconciler, pipelineProperties, new SyncTaskExecutor());
+  }
+
+  private PaymentGatewayService asyncService() {
+    return asyncService(new SyncTaskExecutor());
+  }
+
+  private PaymentGatewayService asyncService(Executor bankCallbacks) {
+    PaymentGatewayProperties asyncProperties = new PaymentGatewayProperties();
+    asyncProperties.getAsync().setEnabled(true);
+    return new PaymentGatewayService(paymentsRepository, acquiringBank, asyncAcquiringBank, inFlightPayments,
+        settledPayments, reconciler, asyncProperties, bankCallbacks);
+  }
+
+  private static PaymentRequest asyncRequest() {
+    PaymentRequest request = new PaymentRequest();
+    request.setCardNumber("1234567812345678");
+    request.setExpiryMonth(12);
+    request.setExpiryYear(2030);
+    request.setAmount(100L);
+    request.setCurrency("USD");
+    request.setCvv("123");
+    return request;
+  }
 }
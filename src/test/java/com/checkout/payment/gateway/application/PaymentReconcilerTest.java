@@ -0,0 +1,214 @@
+package com.checkout.payment.gateway.application;
+
+import com.checkout.payment.gateway.domain.model.BankResult;
+import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.domain.model.PaymentsRepository;
+import com.checkout.payment.gateway.domain.service.BankStatusQuery;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import com.checkout.payment.gateway.infrastructure.exception.UpstreamTimeoutException;
+import com.checkout.payment.gateway.infrastructure.persistence.InMemoryPaymentsRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class PaymentReconcilerTest {
+
+  private static final Instant NOW = Instant.parse("2025-01-01T12:00:00Z");
+
+  private final MutableClock clock = new MutableClock(NOW);
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final PaymentGatewayProperties properties = new PaymentGatewayProperties();
+  private final PaymentsRepository repository = new InMemoryPaymentsRepository(properties, meterRegistry);
+  private final BankStatusQuery bank = mock(BankStatusQuery.class);
+
+  private PaymentReconciler reconciler() {
+    return new PaymentReconciler(repository, bank, properties, meterRegistry, clock);
+  }
+
+  private Payment stored(PaymentStatus status, Duration age) {
+    Payment payment = Payment.builder()
+        .id(UUID.randomUUID())
+        .status(PaymentStatus.PENDING)
+        .amount(100L)
+        .currency("GBP")
+        .cardLastFour("4242")
+        .createdAt(NOW.minus(age))
+        .build();
+    repository.save(payment);
+    if (status != PaymentStatus.PENDING) {
+      repository.compareAndSet(payment.getId(), 0, payment.transitionTo(status, null));
+    }
+    return repository.get(payment.getId()).orElseThrow();
+  }
+
+  private PaymentStatus statusOf(Payment payment) {
+    return repository.get(payment.getId()).orElseThrow().getStatus();
+  }
+
+  @Test
+  void shouldLeavePaymentsInThePipelineAlone() {
+    Payment queued = stored(PaymentStatus.PENDING, Duration.ofMinutes(5));
+    Payment stale = stored(PaymentStatus.PENDING, Duration.ofMinutes(5));
+    when(bank.findStatus(any())).thenReturn(Optional.empty());
+    PaymentReconciler reconciler = reconciler();
+    reconciler.skipWhile(queued.getId()::equals);
+
+    reconciler.reconcile();
+
+    verify(bank, never()).findStatus(queued.getId());
+    assertThat(statusOf(queued)).isEqualTo(PaymentStatus.PENDING);
+    assertThat(statusOf(stale)).isEqualTo(PaymentStatus.REJECTED);
+    // nor does a replayed request settle it
+    assertThat(reconciler.resolve(queued).getStatus()).isEqualTo(PaymentStatus.PENDING);
+    assertThat(statusOf(queued)).isEqualTo(PaymentStatus.PENDING);
+  }
+
+  @Test
+  void shouldApplyBankDecision_ToStalePendingAndUnknownPayments() {
+    Payment pending = stored(PaymentStatus.PENDING, Duration.ofMinutes(5));
+    Payment unknown = stored(PaymentStatus.UNKNOWN, Duration.ofMinutes(5));
+    when(bank.findStatus(pending.getId())).thenReturn(Optional.of(
+        BankResult.builder().status(PaymentStatus.AUTHORIZED).authorizationCode("auth-1").build()));
+    when(bank.findStatus(unknown.getId())).thenReturn(Optional.of(
+        BankResult.builder().status(PaymentStatus.DECLINED).build()));
+
+    reconciler().reconcile();
+
+    assertThat(repository.get(pending.getId()).orElseThrow())
+        .returns(PaymentStatus.AUTHORIZED, Payment::getStatus)
+        .returns("auth-1", Payment::getAuthorizationCode);
+    assertThat(statusOf(unknown)).isEqualTo(PaymentStatus.DECLINED);
+    assertThat(meterRegistry.get("payments.reconciliation.time.to.resolution").tag("status", "authorized")
+        .timer().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("payments.reconciliation.backlog").gauge().value()).isEqualTo(2);
+  }
+
+  @Test
+  void shouldReject_WhenBankNeverSawStalePayment() {
+    Payment stale = stored(PaymentStatus.PENDING, Duration.ofMinutes(5));
+    Payment recent = stored(PaymentStatus.PENDING, Duration.ofSeconds(5));
+    when(bank.findStatus(any())).thenReturn(Optional.empty());
+
+    PaymentReconciler reconciler = reconciler();
+    reconciler.reconcile();
+
+    assertThat(statusOf(stale)).isEqualTo(PaymentStatus.REJECTED);
+    // may still be on its way to the bank: neither scanned nor settled when asked directly
+    verify(bank, never()).findStatus(recent.getId());
+    assertThat(reconciler.resolve(recent).getStatus()).isEqualTo(PaymentStatus.PENDING);
+    assertThat(statusOf(recent)).isEqualTo(PaymentStatus.PENDING);
+  }
+
+  @Test
+  void shouldLeaveUnknownPayment_WhenBankHasNoRecordOfIt() {
+    Payment unknown = stored(PaymentStatus.UNKNOWN, Duration.ofMinutes(5));
+    when(bank.findStatus(unknown.getId())).thenReturn(Optional.empty());
+    PaymentReconciler reconciler = reconciler();
+
+    reconciler.reconcile();
+
+    // the timed out call may have been authorized all the same
+    assertThat(statusOf(unknown)).isEqualTo(PaymentStatus.UNKNOWN);
+    assertThat(reconciler.resolve(unknown).getStatus()).isEqualTo(PaymentStatus.UNKNOWN);
+    assertThat(reconciler.nextAttemptAt(unknown.getId())).isPresent();
+    assertThat(meterRegistry.get("payments.reconciliation.unmatched").counter().count()).isEqualTo(2);
+  }
+
+  @Test
+  void shouldBackOff_WhenBankCannotAnswer() {
+    Payment payment = stored(PaymentStatus.UNKNOWN, Duration.ofMinutes(5));
+    when(bank.findStatus(payment.getId()))
+        .thenThrow(new UpstreamTimeoutException("Bank network issue", payment.getId(), null))
+        .thenReturn(Optional.of(BankResult.builder().status(PaymentStatus.AUTHORIZED).build()));
+    PaymentReconciler reconciler = reconciler();
+
+    reconciler.reconcile();
+    Instant retryAt = reconciler.nextAttemptAt(payment.getId()).orElseThrow();
+    // 5s initial backoff, jittered between half and all of it
+    assertThat(retryAt).isBetween(NOW.plusMillis(2_500), NOW.plusSeconds(5));
+
+    clock.advance(Duration.ofMillis(2_000));
+    reconciler.reconcile();
+    verify(bank, times(1)).findStatus(payment.getId());
+    assertThat(statusOf(payment)).isEqualTo(PaymentStatus.UNKNOWN);
+
+    clock.advance(Duration.ofSeconds(5));
+    reconciler.reconcile();
+    reconciler.reconcile();
+    assertThat(statusOf(payment)).isEqualTo(PaymentStatus.AUTHORIZED);
+    assertThat(meterRegistry.get("payments.reconciliation.query.failures").counter().count()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldNotExceedQueryRate() {
+    properties.getReconciliation().setBatchSize(2);
+    properties.getReconciliation().setMaxQueriesPerSecond(1);
+    for (int i = 0; i < 5; i++) {
+      stored(PaymentStatus.PENDING, Duration.ofMinutes(5 + i));
+    }
+    when(bank.findStatus(any())).thenReturn(Optional.of(BankResult.builder().status(PaymentStatus.DECLINED).build()));
+    PaymentReconciler reconciler = reconciler();
+
+    // the initial burst is one batch, then one query per second
+    reconciler.reconcile();
+    reconciler.reconcile();
+    verify(bank, times(2)).findStatus(any());
+
+    clock.advance(Duration.ofSeconds(1));
+    reconciler.reconcile();
+    verify(bank, times(3)).findStatus(any());
+  }
+
+  @Test
+  void shouldDoNothing_WhenDisabled() {
+    properties.getReconciliation().setEnabled(false);
+    stored(PaymentStatus.PENDING, Duration.ofMinutes(5));
+
+    reconciler().reconcile();
+
+    verify(bank, never()).findStatus(any());
+  }
+
+  private static class MutableClock extends Clock {
+    private Instant now;
+
+    MutableClock(Instant now) {
+      this.now = now;
+    }
+
+    void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+}
@@ -0,0 +1,67 @@
+package com.checkout.payment.gateway.application;
+
+import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SettledPaymentWaitersTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+  private SettledPaymentWaiters waiters(int maxWaiters) {
+    PaymentGatewayProperties properties = new PaymentGatewayProperties();
+    properties.getLongPoll().setMaxWaiters(maxWaiters);
+    return new SettledPaymentWaiters(meterRegistry, properties);
+  }
+
+  private double waiting() {
+    return meterRegistry.get("payments.long.poll.waiting").gauge().value();
+  }
+
+  private static Payment payment(UUID id, PaymentStatus status) {
+    return Payment.builder().id(id).status(status).build();
+  }
+
+  @Test
+  void shouldWakeEveryWaiterOfThePayment_OnlyOnceItIsFinal() {
+    SettledPaymentWaiters waiters = waiters(10);
+    UUID id = UUID.randomUUID();
+    CompletableFuture<Payment> first = waiters.register(id).orElseThrow();
+    CompletableFuture<Payment> second = waiters.register(id).orElseThrow();
+    CompletableFuture<Payment> other = waiters.register(UUID.randomUUID()).orElseThrow();
+
+    waiters.paymentChanged(payment(id, PaymentStatus.UNKNOWN));
+    assertThat(first).isNotDone();
+
+    waiters.paymentChanged(payment(id, PaymentStatus.REJECTED));
+    assertThat(first.join().getStatus()).isEqualTo(PaymentStatus.REJECTED);
+    assertThat(second.join().getStatus()).isEqualTo(PaymentStatus.REJECTED);
+    assertThat(other).isNotDone();
+    assertThat(waiting()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldGivePlaceUp_WhenWaiterIsCompletedElsewhere_AndRefuseBeyondMaxWaiters() {
+    SettledPaymentWaiters waiters = waiters(1);
+    UUID id = UUID.randomUUID();
+    CompletableFuture<Payment> parked = waiters.register(id).orElseThrow();
+
+    assertThat(waiters.register(id)).isEmpty();
+
+    // a timeout completes the waiter with null
+    parked.complete(null);
+    assertThat(waiting()).isZero();
+    Optional<CompletableFuture<Payment>> next = waiters.register(id);
+    assertThat(next).isPresent();
+    waiters.paymentChanged(payment(id, PaymentStatus.AUTHORIZED));
+    assertThat(next.get()).isCompleted();
+  }
+}
@@ -2,28 +2,50 @@ package com.checkout.payment.gateway.controller;
 
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.checkout.payment.gateway.application.PaymentGatewayService;
+import com.checkout.payment.gateway.domain.model.Deadline;
 import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.infrastructure.exception.DeadlineExceededException;
+import com.checkout.payment.gateway.infrastructure.exception.InvalidQueryException;
 import com.checkout.payment.gateway.infrastructure.exception.PaymentNotFoundException;
+import com.checkout.payment.gateway.infrastructure.exception.UpstreamTimeoutException;
 import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentCardInfo;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentListResponse;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentLookupResponse;
 import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentRequest;
 import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentResponse;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
 
@@ -70,6 +92,67 @@ class PaymentGatewayControllerTest {
         .andExpect(jsonPath("$.amount").value(payment.getAmount()));
   }
 
+  @Test
+  void getPayment_ShouldServeFinalPaymentFromCache_AndAnswer304ForItsETag() throws Exception {
+    UUID paymentId = UUID.randomUUID();
+    when(paymentGatewayService.getPaymentById(paymentId)).thenReturn(PaymentResponse.builder()
+        .id(paymentId)
+        .status(PaymentStatus.DECLINED)
+        .card(PaymentCardInfo.builder().lastFour("4321").maskedNumber("************4321").build())
+        .build());
+
+    String etag = mvc.perform(MockMvcRequestBuilders.get("/api/v1/payments/" + paymentId))
+        .andExpect(status().isOk())
+        .andExpect(header().exists("ETag"))
+        .andReturn().getResponse().getHeader("ETag");
+    mvc.perform(MockMvcRequestBuilders.get("/api/v1/payments/" + paymentId))
+        .andExpect(status().isOk())
+        .andExpect(header().string("ETag", etag))
+        .andExpect(jsonPath("$.card.masked_number").value("************4321"));
+    mvc.perform(MockMvcRequestBuilders.get("/api/v1/payments/" + paymentId).header("If-None-Match", etag))
+        .andExpect(status().isNotModified());
+
+    verify(paymentGatewayService, times(1)).getPaymentById(paymentId);
+  }
+
+  @Test
+  void getPayment_ShouldAskServiceEveryTime_WhenPaymentIsNotFinal() throws Exception {
+    UUID paymentId = UUID.randomUUID();
+    when(paymentGatewayService.getPaymentById(paymentId))
+        .thenReturn(PaymentResponse.builder().id(paymentId).status(PaymentStatus.PENDING).build());
+
+    mvc.perform(MockMvcRequestBuilders.get("/api/v1/payments/" + paymentId)).andExpect(status().isOk());
+    mvc.perform(MockMvcRequestBuilders.get("/api/v1/payments/" + paymentId)).andExpect(status().isOk());
+
+    verify(paymentGatewayService, times(2)).getPaymentById(paymentId);
+  }
+
+  @Test
+  void awaitPayment_ShouldParkRequestUntilPaymentSettles() throws Exception {
+    UUID paymentId = UUID.randomUUID();
+    CompletableFuture<PaymentResponse> settled = new CompletableFuture<>();
+    when(paymentGatewayService.awaitPayment(paymentId, Duration.ofSeconds(5))).thenReturn(settled);
+
+    MvcResult result = mvc.perform(MockMvcRequestBuilders.get("/api/v1/payments/" + paymentId)
+            .param("waitFor", "5s"))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+    settled.complete(PaymentResponse.builder().id(paymentId).status(PaymentStatus.AUTHORIZED).build());
+
+    mvc.perform(asyncDispatch(result))
+        .andExpect(status().isOk())
+        .andExpect(header().exists("ETag"))
+        .andExpect(jsonPath("$.status").value(PaymentStatus.AUTHORIZED.getName()));
+    verify(paymentGatewayService, never()).getPaymentById(any());
+  }
+
+  @Test
+  void awaitPayment_ShouldReturn400_WhenWaitForIsInvalid() throws Exception {
+    mvc.perform(MockMvcRequestBuilders.get("/api/v1/payments/" + UUID.randomUUID()).param("waitFor", "soon"))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.message").value("Invalid value for parameter waitFor"));
+  }
+
   @Test
   void whenPaymentWithIdDoesNotExistThen404IsReturned() throws Exception {
     when(paymentGatewayService.getPaymentById(any(UUID.class)))
@@ -95,14 +178,213 @@ class PaymentGatewayControllerTest {
         .card(PaymentCardInfo.builder().lastFour("4242").build()) // POST response has no masked number
         .build();
 
-    when(paymentGatewayService.processPayment(any(), eq(idempotencyKey))).thenReturn(mockResponse);
-    mvc.perform(post("/api/v1/payments")
+    when(paymentGatewayService.processPaymentAsync(any(), eq(idempotencyKey), any()))
+        .thenReturn(CompletableFuture.completedFuture(mockResponse));
+    MvcResult result = mvc.perform(post("/api/v1/payments")
             .contentType(MediaType.APPLICATION_JSON)
             .content(objectMapper.writeValueAsString(request))
-            .header("Idempotency-Key", "test-header-key"))
+            .header("Idempotency-Key", idempotencyKey))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+    mvc.perform(asyncDispatch(result))
         .andExpect(status().isCreated());
 
-    verify(paymentGatewayService).processPayment(any(), eq("test-header-key"));
+    verify(paymentGatewayService).processPaymentAsync(any(), eq(idempotencyKey), any());
+  }
+
+  @Test
+  void createPayment_ShouldReturn202WithLocation_WhenPaymentIsOnlyAccepted() throws Exception {
+    UUID paymentId = UUID.randomUUID();
+    when(paymentGatewayService.acceptsThenProcesses()).thenReturn(true);
+    when(paymentGatewayService.acceptPayment(any(), eq("accept-key"), any()))
+        .thenReturn(PaymentResponse.builder().id(paymentId).status(PaymentStatus.PENDING).build());
+
+    MvcResult result = mvc.perform(post("/api/v1/payments")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsString(createValidPaymentRequest()))
+            .header("Idempotency-Key", "accept-key"))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+    mvc.perform(asyncDispatch(result))
+        .andExpect(status().isAccepted())
+        .andExpect(header().string("Location", "/api/v1/payments/" + paymentId))
+        .andExpect(jsonPath("$.id").value(paymentId.toString()));
+
+    verify(paymentGatewayService, never()).processPaymentAsync(any(), any(), any());
+  }
+
+  @Test
+  void createPayment_ShouldPassDeadlineFromTimeoutHeader() throws Exception {
+    PaymentRequest request = createValidPaymentRequest();
+    when(paymentGatewayService.processPaymentAsync(any(), any(), any()))
+        .thenReturn(CompletableFuture.completedFuture(PaymentResponse.builder()
+            .id(UUID.randomUUID())
+            .status(PaymentStatus.AUTHORIZED)
+            .card(PaymentCardInfo.builder().lastFour("4242").build())
+            .build()));
+    Instant before = Instant.now();
+
+    MvcResult result = mvc.perform(post("/api/v1/payments")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsString(request))
+            .header("X-Request-Timeout", "1500"))
+        .andReturn();
+    mvc.perform(asyncDispatch(result))
+        .andExpect(status().isCreated());
+
+    ArgumentCaptor<Deadline> deadline = ArgumentCaptor.forClass(Deadline.class);
+    verify(paymentGatewayService).processPaymentAsync(any(), any(), deadline.capture());
+    assertThat(deadline.getValue().at()).isBetween(before.plusMillis(1500), Instant.now().plusMillis(1500));
+  }
+
+  @Test
+  void createPayment_ShouldReturn400_WhenTimeoutHeaderIsInvalid() throws Exception {
+    mvc.perform(post("/api/v1/payments")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsString(createValidPaymentRequest()))
+            .header("X-Request-Timeout", "soon"))
+        .andExpect(status().isBadRequest());
+
+    verify(paymentGatewayService, never()).processPaymentAsync(any(), any(), any());
+  }
+
+  @Test
+  void createPayment_ShouldReturn504_WhenDeadlineIsExceeded() throws Exception {
+    when(paymentGatewayService.processPaymentAsync(any(), any(), any()))
+        .thenThrow(new DeadlineExceededException("Request deadline exceeded", null));
+
+    mvc.perform(post("/api/v1/payments")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsString(createValidPaymentRequest()))
+            .header("X-Request-Timeout", "0"))
+        .andExpect(status().isGatewayTimeout());
+  }
+
+  @Test
+  void createPayment_ShouldMapFailureOfPendingPayment_AsForBlockingCall() throws Exception {
+    UUID paymentId = UUID.randomUUID();
+    CompletableFuture<PaymentResponse> inFlight = new CompletableFuture<>();
+    when(paymentGatewayService.processPaymentAsync(any(), any(), any())).thenReturn(inFlight);
+
+    MvcResult result = mvc.perform(post("/api/v1/payments")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content(objectMapper.writeValueAsString(createValidPaymentRequest())))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+    inFlight.completeExceptionally(new UpstreamTimeoutException("Bank network issue", paymentId, null));
+
+    mvc.perform(asyncDispatch(result))
+        .andExpect(status().isGatewayTimeout())
+        .andExpect(jsonPath("$.paymentId").value(paymentId.toString()));
+  }
+
+  @Test
+  void listPayments_ShouldPassFiltersAndReturnNextCursor() throws Exception {
+    PaymentResponse payment = PaymentResponse.builder()
+        .id(UUID.randomUUID())
+        .status(PaymentStatus.PENDING)
+        .amount(100L)
+        .currency("USD")
+        .card(PaymentCardInfo.builder().lastFour("4242").maskedNumber("************4242").build())
+        .build();
+    when(paymentGatewayService.listPayments(List.of("Pending", "Unknown"),
+        Instant.parse("2025-01-01T00:00:00Z"), null, "abc", 50))
+        .thenReturn(PaymentListResponse.builder().payments(List.of(payment)).nextCursor("def").build());
+
+    mvc.perform(MockMvcRequestBuilders.get("/api/v1/payments")
+            .param("status", "Pending", "Unknown")
+            .param("from", "2025-01-01T00:00:00Z")
+            .param("cursor", "abc")
+            .param("limit", "50"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.payments[0].id").value(payment.getId().toString()))
+        .andExpect(jsonPath("$.payments[0].card.masked_number").value("************4242"))
+        .andExpect(jsonPath("$.next_cursor").value("def"));
+  }
+
+  @Test
+  void listPayments_ShouldReturn400_WhenQueryIsInvalid() throws Exception {
+    when(paymentGatewayService.listPayments(any(), any(), any(), eq("garbage"), anyInt()))
+        .thenThrow(new InvalidQueryException("Invalid cursor"));
+
+    mvc.perform(MockMvcRequestBuilders.get("/api/v1/payments").param("cursor", "garbage"))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.message").value("Invalid cursor"));
+  }
+
+  @Test
+  void lookupPayments_ShouldReturnFoundPaymentsAndMissingIds() throws Exception {
+    UUID paymentId = UUID.randomUUID();
+    PaymentResponse payment = PaymentResponse.builder()
+        .id(paymentId)
+        .status(PaymentStatus.AUTHORIZED)
+        .card(PaymentCardInfo.builder().lastFour("4242").maskedNumber("************4242").build())
+        .build();
+    when(paymentGatewayService.lookupPayments(List.of(paymentId.toString(), "unknown")))
+        .thenReturn(PaymentLookupResponse.builder().payments(List.of(payment)).missing(List.of("unknown")).build());
+
+    mvc.perform(post("/api/v1/payments/lookup")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"ids\": [\"" + paymentId + "\", \"unknown\"]}"))
+        .andExpect(status().isOk())
+        .andExpect(jsonPath("$.payments[0].card.masked_number").value("************4242"))
+        .andExpect(jsonPath("$.missing[0]").value("unknown"));
+  }
+
+  @Test
+  void lookupPayments_ShouldReturn400_WhenNoIdsAreGiven() throws Exception {
+    mvc.perform(post("/api/v1/payments/lookup")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"ids\": []}"))
+        .andExpect(status().isBadRequest());
+    verify(paymentGatewayService, never()).lookupPayments(any());
+  }
+
+  @Test
+  void createPayments_ShouldStreamOneResultPerPayment_WhenSomeFail() throws Exception {
+    UUID paymentId = UUID.randomUUID();
+    when(paymentGatewayService.processPaymentAsync(any(), eq("batch-1"), any()))
+        .thenReturn(CompletableFuture.completedFuture(PaymentResponse.builder()
+            .id(paymentId)
+            .status(PaymentStatus.AUTHORIZED)
+            .card(PaymentCardInfo.builder().lastFour("2345").build())
+            .build()));
+    when(paymentGatewayService.processPaymentAsync(any(), eq("batch-2"), any()))
+        .thenReturn(CompletableFuture.failedFuture(new UpstreamTimeoutException("Bank network issue", paymentId, null)));
+    String valid = objectMapper.writeValueAsString(createValidPaymentRequest());
+    String ndjson = valid.replace("{", "{\"idempotency_key\":\"batch-1\",") + "\n"
+        + valid.replace("{", "{\"idempotency_key\":\"batch-2\",") + "\n"
+        + valid.replace("{", "{\"idempotency_key\":\"batch-3\",").replace("\"123\"", "\"1\"") + "\n";
+
+    MvcResult result = mvc.perform(post("/api/v1/payments/batch")
+            .contentType(MediaType.APPLICATION_NDJSON)
+            .content(ndjson))
+        .andExpect(request().asyncStarted())
+        .andReturn();
+    result.getAsyncResult(5000);
+
+    List<Map<String, Object>> lines = result.getResponse().getContentAsString().lines()
+        .map(line -> {
+          try {
+            return objectMapper.readValue(line, new TypeReference<Map<String, Object>>() { });
+          } catch (Exception e) {
+            throw new AssertionError(e);
+          }
+        })
+        .toList();
+    assertThat(result.getResponse().getContentType()).startsWith(MediaType.APPLICATION_NDJSON_VALUE);
+    assertThat(lines).extracting(line -> line.get("idempotency_key"), line -> line.get("status"))
+        .containsExactlyInAnyOrder(tuple("batch-1", 201), tuple("batch-2", 504), tuple("batch-3", 400));
+    verify(paymentGatewayService, never()).processPaymentAsync(any(), eq("batch-3"), any());
+  }
+
+  @Test
+  void createPayments_ShouldReturn400_WhenBatchIsMalformed() throws Exception {
+    mvc.perform(post("/api/v1/payments/batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("[{\"idempotency_key\": \"batch-1\", "))
+        .andExpect(status().isBadRequest())
+        .andExpect(jsonPath("$.message").value("Malformed batch at payment 0"));
   }
 
   private PaymentRequest createValidPaymentRequest() {
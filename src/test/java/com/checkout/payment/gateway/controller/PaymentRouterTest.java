@@ -0,0 +1,254 @@
+package com.checkout.payment.gateway.controller;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.checkout.payment.gateway.application.PaymentGatewayService;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.infrastructure.exception.PaymentNotFoundException;
+import com.checkout.payment.gateway.infrastructure.exception.UpstreamTimeoutException;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.BatchPaymentRequest;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.BatchPaymentResult;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentCardInfo;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentListResponse;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentLookupResponse;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentRequest;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+// the same API on the reactive stack: same statuses, bodies and error responses as the controller
+@SpringBootTest(properties = "spring.main.web-application-type=reactive")
+@AutoConfigureWebTestClient
+class PaymentRouterTest {
+
+  @Autowired
+  private WebTestClient client;
+
+  @MockBean
+  private PaymentGatewayService paymentGatewayService;
+
+  @Test
+  void whenPaymentWithIdExistThenCorrectPaymentIsReturned() {
+    UUID paymentId = UUID.randomUUID();
+    when(paymentGatewayService.getPaymentById(paymentId)).thenReturn(PaymentResponse.builder()
+        .id(paymentId)
+        .status(PaymentStatus.AUTHORIZED)
+        .amount(100L)
+        .currency("USD")
+        .card(PaymentCardInfo.builder().lastFour("4321").maskedNumber("************4321").build())
+        .build());
+
+    client.get().uri("/api/v1/payments/" + paymentId).exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.id").isEqualTo(paymentId.toString())
+        .jsonPath("$.status").isEqualTo(PaymentStatus.AUTHORIZED.getName())
+        .jsonPath("$.card.masked_number").isEqualTo("************4321");
+  }
+
+  @Test
+  void getPayment_ShouldServeFinalPaymentFromCache_AndAnswer304ForItsETag() {
+    UUID paymentId = UUID.randomUUID();
+    when(paymentGatewayService.getPaymentById(paymentId))
+        .thenReturn(PaymentResponse.builder().id(paymentId).status(PaymentStatus.AUTHORIZED).build());
+
+    String etag = client.get().uri("/api/v1/payments/" + paymentId).exchange()
+        .expectStatus().isOk()
+        .returnResult(String.class).getResponseHeaders().getETag();
+    client.get().uri("/api/v1/payments/" + paymentId).ifNoneMatch(etag).exchange()
+        .expectStatus().isNotModified();
+
+    assertThat(etag).isNotNull();
+    verify(paymentGatewayService, times(1)).getPaymentById(paymentId);
+  }
+
+  @Test
+  void awaitPayment_ShouldAnswerOncePaymentSettles() {
+    UUID paymentId = UUID.randomUUID();
+    when(paymentGatewayService.awaitPayment(paymentId, Duration.ofMillis(500))).thenReturn(
+        CompletableFuture.completedFuture(
+            PaymentResponse.builder().id(paymentId).status(PaymentStatus.DECLINED).build()));
+
+    client.get().uri("/api/v1/payments/" + paymentId + "?waitFor=500ms").exchange()
+        .expectStatus().isOk()
+        .expectHeader().exists("ETag")
+        .expectBody().jsonPath("$.status").isEqualTo(PaymentStatus.DECLINED.getName());
+    client.get().uri("/api/v1/payments/" + paymentId + "?waitFor=later").exchange()
+        .expectStatus().isBadRequest()
+        .expectBody().jsonPath("$.message").isEqualTo("Invalid value for parameter waitFor");
+    verify(paymentGatewayService, never()).getPaymentById(any());
+  }
+
+  @Test
+  void getPayment_ShouldReturn404_WhenPaymentDoesNotExist() {
+    when(paymentGatewayService.getPaymentById(any())).thenThrow(new PaymentNotFoundException("Payment not found"));
+
+    client.get().uri("/api/v1/payments/" + UUID.randomUUID()).exchange()
+        .expectStatus().isNotFound()
+        .expectBody().jsonPath("$.message").isEqualTo("Payment not found");
+  }
+
+  @Test
+  void getPayment_ShouldReturn400_WhenIdIsNotAUuid() {
+    client.get().uri("/api/v1/payments/not-a-uuid").exchange()
+        .expectStatus().isBadRequest()
+        .expectBody().jsonPath("$.message").isEqualTo("Invalid value for parameter id");
+  }
+
+  @Test
+  void lookupPayments_ShouldReturnFoundPaymentsAndMissingIds() {
+    UUID paymentId = UUID.randomUUID();
+    when(paymentGatewayService.lookupPayments(List.of(paymentId.toString(), "unknown")))
+        .thenReturn(PaymentLookupResponse.builder()
+            .payments(List.of(PaymentResponse.builder().id(paymentId).status(PaymentStatus.DECLINED).build()))
+            .missing(List.of("unknown"))
+            .build());
+
+    client.post().uri("/api/v1/payments/lookup")
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue("{\"ids\": [\"" + paymentId + "\", \"unknown\"]}")
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody()
+        .jsonPath("$.payments[0].id").isEqualTo(paymentId.toString())
+        .jsonPath("$.missing[0]").isEqualTo("unknown");
+  }
+
+  @Test
+  void createPayment_ShouldPassIdempotencyKeyAndReturn201() {
+    UUID paymentId = UUID.randomUUID();
+    when(paymentGatewayService.processPaymentAsync(any(), eq("key_12345"), any()))
+        .thenReturn(CompletableFuture.completedFuture(PaymentResponse.builder()
+            .id(paymentId)
+            .status(PaymentStatus.AUTHORIZED)
+            .card(PaymentCardInfo.builder().lastFour("2345").build())
+            .build()));
+
+    client.post().uri("/api/v1/payments")
+        .contentType(MediaType.APPLICATION_JSON)
+        .header("Idempotency-Key", "key_12345")
+        .bodyValue(createValidPaymentRequest())
+        .exchange()
+        .expectStatus().isCreated()
+        .expectBody().jsonPath("$.id").isEqualTo(paymentId.toString());
+  }
+
+  @Test
+  void createPayment_ShouldReturn400WithFieldErrors_WhenRequestIsInvalid() {
+    PaymentRequest request = createValidPaymentRequest();
+    request.setCvv("1");
+
+    client.post().uri("/api/v1/payments")
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(request)
+        .exchange()
+        .expectStatus().isBadRequest()
+        .expectBody().jsonPath("$.message").value(message ->
+            assertThat((String) message)
+                .startsWith("Payment Rejected. Validation Failed: ").contains("cvv: "));
+
+    verify(paymentGatewayService, never()).processPaymentAsync(any(), any(), any());
+  }
+
+  @Test
+  void createPayment_ShouldMapFailureOfPendingPayment_AsForBlockingCall() {
+    UUID paymentId = UUID.randomUUID();
+    when(paymentGatewayService.processPaymentAsync(any(), any(), any()))
+        .thenReturn(CompletableFuture.failedFuture(new UpstreamTimeoutException("Bank network issue", paymentId, null)));
+
+    client.post().uri("/api/v1/payments")
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(createValidPaymentRequest())
+        .exchange()
+        .expectStatus().isEqualTo(504)
+        .expectBody().jsonPath("$.paymentId").isEqualTo(paymentId.toString());
+  }
+
+  @Test
+  void listPayments_ShouldPassFilters() {
+    when(paymentGatewayService.listPayments(List.of("Pending", "Unknown"),
+        Instant.parse("2025-01-01T00:00:00Z"), null, "abc", 50))
+        .thenReturn(PaymentListResponse.builder().payments(List.of()).nextCursor("def").build());
+
+    client.get().uri("/api/v1/payments?status=Pending&status=Unknown&from=2025-01-01T00:00:00Z&cursor=abc&limit=50")
+        .exchange()
+        .expectStatus().isOk()
+        .expectBody().jsonPath("$.next_cursor").isEqualTo("def");
+  }
+
+  @Test
+  void listPayments_ShouldReturn400_WhenDateIsInvalid() {
+    client.get().uri("/api/v1/payments?from=yesterday").exchange()
+        .expectStatus().isBadRequest()
+        .expectBody().jsonPath("$.message").isEqualTo("Invalid value for parameter from");
+  }
+
+  @Test
+  void createPayments_ShouldStreamOneResultPerPayment_WhenSomeFail() {
+    when(paymentGatewayService.processPaymentAsync(any(), eq("batch-1"), any()))
+        .thenReturn(CompletableFuture.completedFuture(PaymentResponse.builder()
+            .id(UUID.randomUUID())
+            .status(PaymentStatus.AUTHORIZED)
+            .build()));
+    when(paymentGatewayService.processPaymentAsync(any(), eq("batch-2"), any()))
+        .thenReturn(CompletableFuture.failedFuture(new UpstreamTimeoutException("Bank network issue", null, null)));
+    BatchPaymentRequest first = batchPayment("batch-1");
+    BatchPaymentRequest second = batchPayment("batch-2");
+    BatchPaymentRequest invalid = batchPayment("batch-3");
+    invalid.setCvv("1");
+
+    List<BatchPaymentResult> results = client.post().uri("/api/v1/payments/batch")
+        .contentType(MediaType.APPLICATION_JSON)
+        .bodyValue(List.of(first, second, invalid))
+        .exchange()
+        .expectStatus().isOk()
+        .expectHeader().contentTypeCompatibleWith(MediaType.APPLICATION_NDJSON)
+        .returnResult(BatchPaymentResult.class)
+        .getResponseBody()
+        .collectList()
+        .block();
+
+    assertThat(results).extracting(BatchPaymentResult::getIdempotencyKey, BatchPaymentResult::getStatus)
+        .containsExactlyInAnyOrder(tuple("batch-1", 201), tuple("batch-2", 504), tuple("batch-3", 400));
+  }
+
+  private BatchPaymentRequest batchPayment(String idempotencyKey) {
+    BatchPaymentRequest payment = new BatchPaymentRequest();
+    payment.setIdempotencyKey(idempotencyKey);
+    payment.setAmount(100L);
+    payment.setCurrency("USD");
+    payment.setCvv("123");
+    payment.setCardNumber("123456789012345");
+    payment.setExpiryMonth(3);
+    payment.setExpiryYear(2030);
+    return payment;
+  }
+
+  private PaymentRequest createValidPaymentRequest() {
+    PaymentRequest paymentRequest = new PaymentRequest();
+    paymentRequest.setAmount(100L);
+    paymentRequest.setCurrency("USD");
+    paymentRequest.setCvv("123");
+    paymentRequest.setCardNumber("123456789012345");
+    paymentRequest.setExpiryMonth(3);
+    paymentRequest.setExpiryYear(2030);
+    return paymentRequest;
+  }
+}
@@ -0,0 +1,86 @@
+package com.checkout.payment.gateway.e2e;
+
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentRequest;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentResponse;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Routing over the two simulators of docker-compose.yml and an acquirer nobody listens for, which
+ * must be ejected after a few failed calls.
+ */
+@SpringBootTest(
+    webEnvironment = WebEnvironment.RANDOM_PORT,
+    properties = {
+        "acquiring-bank.url=http://localhost:8080",
+        "acquiring-bank.acquirers[0].name=simulator-1",
+        "acquiring-bank.acquirers[0].url=http://localhost:8080",
+        "acquiring-bank.acquirers[1].name=simulator-2",
+        "acquiring-bank.acquirers[1].url=http://localhost:8081",
+        "acquiring-bank.acquirers[2].name=down",
+        "acquiring-bank.acquirers[2].url=http://localhost:8089",
+        "acquiring-bank.acquirers[2].conn-timeout=200ms",
+        "acquiring-bank.circuit-breaker.sliding-window-size=4",
+        "acquiring-bank.circuit-breaker.minimum-calls=4",
+        "acquiring-bank.circuit-breaker.wait-in-open=1m"
+    }
+)
+@Tag("e2e")
+public class TestWithSimulators {
+  @LocalServerPort
+  private int port;
+
+  @Autowired
+  private TestRestTemplate restTemplate;
+
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  private ResponseEntity<PaymentResponse> postPayment() {
+    PaymentRequest request = new PaymentRequest();
+    request.setCardNumber("1234567812345671");
+    request.setExpiryMonth(12);
+    request.setExpiryYear(2030);
+    request.setAmount(100L);
+    request.setCurrency("USD");
+    request.setCvv("123");
+    return restTemplate.postForEntity("http://localhost:" + port + "/api/v1/payments", request,
+        PaymentResponse.class);
+  }
+
+  @Test
+  void shouldStopRoutingToAcquirerThatIsDown() {
+    // until its breaker opens, payments routed to the dead acquirer time out
+    for (int i = 0; i < 100 && openBreaker("down") == 0; i++) {
+      postPayment();
+    }
+    assertThat(openBreaker("down")).isEqualTo(1);
+
+    for (int i = 0; i < 20; i++) {
+      ResponseEntity<PaymentResponse> response = postPayment();
+      assertThat(response.getStatusCode()).isEqualTo(HttpStatus.CREATED);
+      assertThat(response.getBody().getStatus()).isEqualTo(PaymentStatus.AUTHORIZED);
+    }
+    assertThat(meterRegistry.get("bank.acquirer.latency").tag("acquirer", "simulator-1").gauge().value())
+        .isPositive();
+    assertThat(meterRegistry.get("bank.acquirer.latency").tag("acquirer", "simulator-2").gauge().value())
+        .isPositive();
+    assertThat(meterRegistry.get("bank.acquirer.available").tag("acquirer", "down").gauge().value()).isZero();
+  }
+
+  private double openBreaker(String acquirer) {
+    return meterRegistry.get("bank.circuit.breaker.state").tag("acquirer", acquirer).tag("state", "open")
+        .gauge().value();
+  }
+}
@@ -0,0 +1,185 @@
+package com.checkout.payment.gateway.infrastructure.bank;
+
+import com.checkout.payment.gateway.domain.model.Deadline;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.infrastructure.exception.DeadlineExceededException;
+import com.checkout.payment.gateway.infrastructure.exception.EventProcessingException;
+import com.checkout.payment.gateway.infrastructure.exception.UpstreamTimeoutException;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentRequest;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Runs against a real HTTP server, as the deadline and the adaptive timeout act on the HTTP
+ * client's timeouts.
+ */
+class AcquiringBankImplDeadlineTest {
+
+  private final AtomicInteger requests = new AtomicInteger();
+  private volatile long delayMillis;
+  private volatile int status = 200;
+  private HttpServer server;
+  private AcquiringBankImpl bank;
+
+  @BeforeEach
+  void startBank() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/payments", exchange -> {
+      requests.incrementAndGet();
+      try {
+        Thread.sleep(delayMillis);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      byte[] body = "{\"authorized\": true, \"authorization_code\": \"abc\"}".getBytes(StandardCharsets.UTF_8);
+      exchange.getResponseHeaders().set("Content-Type", "application/json");
+      exchange.sendResponseHeaders(status, body.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    });
+    server.start();
+
+    bank = new AcquiringBankImpl(new RestTemplateBuilder(), acquirer());
+  }
+
+  private AcquiringBankProperties.Acquirer acquirer() {
+    AcquiringBankProperties.Acquirer acquirer = new AcquiringBankProperties.Acquirer();
+    acquirer.setName("default");
+    acquirer.setUrl("http://localhost:" + server.getAddress().getPort());
+    acquirer.setReadTimeout(Duration.ofSeconds(10));
+    acquirer.setConnTimeout(Duration.ofSeconds(10));
+    return acquirer;
+  }
+
+  private AdaptiveTimeout adaptiveTimeout(MutableClock clock) {
+    AcquiringBankProperties.AdaptiveTimeout properties = new AcquiringBankProperties.AdaptiveTimeout();
+    properties.setPercentile(99);
+    properties.setMultiplier(2);
+    properties.setFloor(Duration.ofMillis(100));
+    properties.setCeiling(Duration.ofSeconds(10));
+    properties.setWindow(Duration.ofMinutes(1));
+    properties.setBuckets(12);
+    properties.setMinSamples(10);
+    return new AdaptiveTimeout("default", Duration.ofSeconds(5), properties, new SimpleMeterRegistry(), clock);
+  }
+
+  @AfterEach
+  void stopBank() {
+    server.stop(0);
+  }
+
+  private static PaymentRequest request() {
+    PaymentRequest request = new PaymentRequest();
+    request.setCardNumber("1234567812345671");
+    request.setExpiryMonth(12);
+    request.setExpiryYear(2030);
+    request.setAmount(100L);
+    request.setCurrency("USD");
+    request.setCvv("123");
+    return request;
+  }
+
+  @Test
+  void shouldCutBankCallShort_WhenDeadlineRunsOut() {
+    delayMillis = 3_000;
+    Deadline deadline = Deadline.after(Duration.ofMillis(200), Clock.systemUTC());
+
+    long start = System.nanoTime();
+    assertThatThrownBy(() -> bank.process(request(), UUID.randomUUID(), deadline))
+        .isInstanceOf(UpstreamTimeoutException.class);
+
+    // well before both the bank's answer and the 10s read timeout
+    assertThat(Duration.ofNanos(System.nanoTime() - start)).isLessThan(Duration.ofSeconds(2));
+  }
+
+  @Test
+  void shouldNotCallBank_WhenDeadlineHasPassed() {
+    UUID paymentId = UUID.randomUUID();
+
+    assertThatThrownBy(() -> bank.process(request(), paymentId, new Deadline(Instant.now().minusMillis(1))))
+        .isInstanceOf(DeadlineExceededException.class)
+        .hasFieldOrPropertyWithValue("paymentId", paymentId);
+    assertThat(requests).hasValue(0);
+  }
+
+  @Test
+  void shouldUseConfiguredTimeouts_WhenDeadlineLeavesEnoughTime() {
+    delayMillis = 100;
+
+    assertThat(bank.process(request(), UUID.randomUUID(), Deadline.after(Duration.ofSeconds(5), Clock.systemUTC()))
+        .getStatus()).isEqualTo(PaymentStatus.AUTHORIZED);
+    assertThat(bank.process(request(), UUID.randomUUID()).getStatus()).isEqualTo(PaymentStatus.AUTHORIZED);
+  }
+
+  @Test
+  void shouldNotLowerAdaptiveTimeout_WhenBankFailsFast() {
+    MutableClock clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+    AdaptiveTimeout readTimeout = adaptiveTimeout(clock);
+    AcquiringBankImpl adaptiveBank = new AcquiringBankImpl(new RestTemplateBuilder(), acquirer(), readTimeout);
+    status = 500;
+
+    for (int i = 0; i < 20; i++) {
+      assertThatThrownBy(() -> adaptiveBank.process(request(), UUID.randomUUID()))
+          .isInstanceOf(EventProcessingException.class);
+    }
+    clock.advance(Duration.ofSeconds(5));
+
+    assertThat(readTimeout.current()).isEqualTo(Duration.ofSeconds(5));
+
+    // while answers from a fast bank do
+    status = 200;
+    for (int i = 0; i < 20; i++) {
+      adaptiveBank.process(request(), UUID.randomUUID());
+    }
+    clock.advance(Duration.ofSeconds(5));
+
+    assertThat(readTimeout.current()).isLessThan(Duration.ofSeconds(1));
+  }
+
+  private static class MutableClock extends Clock {
+    private Instant now;
+
+    MutableClock(Instant now) {
+      this.now = now;
+    }
+
+    void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+}
@@ -24,7 +24,7 @@ import static org.springframework.test.web.client.response.MockRestResponseCreat
 import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
 
 @RestClientTest(AcquiringBankImpl.class)
-@Import(AcquiringBankProperties.class)
+@Import({AcquiringBankProperties.class, AcquiringBankImpl.class})
 class AcquiringBankImplTest {
   @Autowired AcquiringBankImpl bank;
 
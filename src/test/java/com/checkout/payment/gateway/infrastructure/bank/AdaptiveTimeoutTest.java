@@ -0,0 +1,149 @@
+package com.checkout.payment.gateway.infrastructure.bank;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class AdaptiveTimeoutTest {
+
+  private static final Duration INITIAL = Duration.ofSeconds(5);
+  private static final Duration BUCKET = Duration.ofSeconds(5);
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final MutableClock clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+  private final AcquiringBankProperties.AdaptiveTimeout properties = new AcquiringBankProperties.AdaptiveTimeout();
+
+  AdaptiveTimeoutTest() {
+    properties.setPercentile(99);
+    properties.setMultiplier(2);
+    properties.setFloor(Duration.ofMillis(100));
+    properties.setCeiling(Duration.ofSeconds(10));
+    properties.setWindow(Duration.ofMinutes(1));
+    properties.setBuckets(12);
+    properties.setMinSamples(100);
+  }
+
+  private AdaptiveTimeout timeout() {
+    return new AdaptiveTimeout("default", INITIAL, properties, meterRegistry, clock);
+  }
+
+  private static void record(AdaptiveTimeout timeout, int calls, Duration latency) {
+    for (int i = 0; i < calls; i++) {
+      timeout.record(latency.toNanos());
+    }
+  }
+
+  @Test
+  void shouldKeepInitialTimeout_UntilEnoughCallsWereRecorded() {
+    AdaptiveTimeout timeout = timeout();
+    record(timeout, 99, Duration.ofMillis(200));
+
+    clock.advance(BUCKET);
+
+    assertThat(timeout.current()).isEqualTo(INITIAL);
+    assertThat(meterRegistry.get("bank.client.latency.percentile").gauge().value()).isEqualTo(-1);
+  }
+
+  @Test
+  void shouldDeriveTimeoutFromPercentileOfRecordedLatency() {
+    AdaptiveTimeout timeout = timeout();
+    record(timeout, 990, Duration.ofMillis(200));
+    record(timeout, 10, Duration.ofMillis(1000));
+
+    // nothing changes before the bucket is rotated
+    assertThat(timeout.current()).isEqualTo(INITIAL);
+    clock.advance(BUCKET);
+
+    // p99 is 200ms, within the histogram's one percent precision
+    assertThat(timeout.current().toMillis()).isCloseTo(400, within(4L));
+    assertThat(meterRegistry.get("bank.client.read.timeout").tag("acquirer", "default").gauge().value())
+        .isCloseTo(400, within(4.0));
+    assertThat(meterRegistry.get("bank.client.latency.percentile").tag("percentile", "99.0").gauge().value())
+        .isCloseTo(200, within(2.0));
+  }
+
+  @Test
+  void shouldClampTimeoutBetweenFloorAndCeiling() {
+    AdaptiveTimeout fast = timeout();
+    record(fast, 1000, Duration.ofMillis(5));
+    AdaptiveTimeout slow = new AdaptiveTimeout("slow", INITIAL, properties, meterRegistry, clock);
+    record(slow, 1000, Duration.ofSeconds(8));
+
+    clock.advance(BUCKET);
+
+    assertThat(fast.current()).isEqualTo(Duration.ofMillis(100));
+    assertThat(slow.current()).isEqualTo(Duration.ofSeconds(10));
+  }
+
+  @Test
+  void shouldForgetLatencyOlderThanWindow() {
+    AdaptiveTimeout timeout = timeout();
+    record(timeout, 1000, Duration.ofSeconds(1));
+    clock.advance(BUCKET);
+    assertThat(timeout.current().toMillis()).isCloseTo(2000, within(20L));
+
+    record(timeout, 1000, Duration.ofMillis(200));
+    clock.advance(BUCKET);
+    // both buckets are in the window, and the slow one still holds the percentile up
+    assertThat(timeout.current().toMillis()).isCloseTo(2000, within(20L));
+
+    // the slow bucket falls out of the window while nothing is recorded, the fast one is still in
+    clock.advance(Duration.ofSeconds(55));
+    assertThat(timeout.current().toMillis()).isCloseTo(400, within(4L));
+
+    // and with an empty window the initial timeout applies again
+    clock.advance(BUCKET);
+    assertThat(timeout.current()).isEqualTo(INITIAL);
+  }
+
+  @Test
+  void shouldFollowFasterBank_OnceSlowBucketsHaveRotatedOut() {
+    AdaptiveTimeout timeout = timeout();
+    record(timeout, 1000, Duration.ofSeconds(1));
+    clock.advance(BUCKET);
+    timeout.current();
+
+    for (int i = 0; i < 12; i++) {
+      record(timeout, 100, Duration.ofMillis(200));
+      clock.advance(BUCKET);
+      timeout.current();
+    }
+
+    assertThat(timeout.current().toMillis()).isCloseTo(400, within(4L));
+  }
+
+  private static class MutableClock extends Clock {
+    private Instant now;
+
+    MutableClock(Instant now) {
+      this.now = now;
+    }
+
+    void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+}
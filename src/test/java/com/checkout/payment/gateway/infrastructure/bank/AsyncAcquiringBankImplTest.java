@@ -0,0 +1,162 @@
+package com.checkout.payment.gateway.infrastructure.bank;
+
+import com.checkout.payment.gateway.domain.model.BankResult;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.infrastructure.exception.EventProcessingException;
+import com.checkout.payment.gateway.infrastructure.exception.UpstreamTimeoutException;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentRequest;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AsyncAcquiringBankImplTest {
+
+  private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+  private final AtomicReference<Responder> responder = new AtomicReference<>();
+  private final AtomicReference<HttpExchange> lastExchange = new AtomicReference<>();
+  private final AtomicReference<byte[]> lastBody = new AtomicReference<>();
+
+  private HttpServer server;
+  private AsyncAcquiringBankImpl bank;
+
+  private interface Responder {
+    void respond(HttpExchange exchange) throws Exception;
+  }
+
+  @BeforeEach
+  void start() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/payments", exchange -> {
+      lastExchange.set(exchange);
+      lastBody.set(exchange.getRequestBody().readAllBytes());
+      try {
+        responder.get().respond(exchange);
+      } catch (Exception e) {
+        exchange.sendResponseHeaders(599, -1);
+      } finally {
+        exchange.close();
+      }
+    });
+    server.start();
+
+    AcquiringBankProperties properties = new AcquiringBankProperties();
+    properties.setUrl("http://localhost:" + server.getAddress().getPort());
+    properties.setReadTimeout(Duration.ofMillis(300));
+    properties.setConnTimeout(Duration.ofSeconds(1));
+    bank = new AsyncAcquiringBankImpl(properties, new SimpleMeterRegistry());
+  }
+
+  @AfterEach
+  void stop() {
+    bank.close();
+    server.stop(0);
+  }
+
+  private static PaymentRequest paymentRequest() {
+    PaymentRequest request = new PaymentRequest();
+    request.setCardNumber("1234567812345678");
+    request.setExpiryMonth(4);
+    request.setExpiryYear(2030);
+    request.setAmount(100L);
+    request.setCurrency("GBP");
+    request.setCvv("123");
+    return request;
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json");
+    exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+    exchange.getResponseBody().write(bytes);
+  }
+
+  @Test
+  void processShouldSendCorrectJsonFormatAndParseResponse() throws Exception {
+    responder.set(exchange -> respond(exchange, 200, """
+        {"authorized": true, "authorization_code": "abc-123"}
+        """));
+    UUID paymentId = UUID.randomUUID();
+
+    BankResult result = bank.process(paymentRequest(), paymentId).join();
+
+    assertThat(result.getStatus()).isEqualTo(PaymentStatus.AUTHORIZED);
+    assertThat(result.getAuthorizationCode()).isEqualTo("abc-123");
+    assertThat(lastExchange.get().getRequestHeaders().getFirst("X-Payment-ID")).isEqualTo(paymentId.toString());
+    JsonNode sent = objectMapper.readTree(lastBody.get());
+    assertThat(sent.get("card_number").asText()).isEqualTo("1234567812345678");
+    assertThat(sent.get("expiry_date").asText()).isEqualTo("04/2030");
+    assertThat(sent.get("amount").asLong()).isEqualTo(100L);
+  }
+
+  @Test
+  @DisplayName("Should return REJECTED when bank API returns 4xx Client Error")
+  void process_ShouldReturnRejected_WhenBankReturns4xxError() {
+    responder.set(exchange -> respond(exchange, 400, ""));
+
+    BankResult result = bank.process(paymentRequest(), UUID.randomUUID()).join();
+
+    assertThat(result.getStatus()).isEqualTo(PaymentStatus.REJECTED);
+    assertThat(result.getAuthorizationCode()).isNull();
+  }
+
+  @Test
+  void process_ShouldReturnDeclined_WhenBankReturnsEmptyObject() {
+    responder.set(exchange -> respond(exchange, 200, "{}"));
+
+    BankResult result = bank.process(paymentRequest(), UUID.randomUUID()).join();
+
+    assertThat(result.getStatus()).isEqualTo(PaymentStatus.DECLINED);
+  }
+
+  @Test
+  void process_ShouldFailWithEventProcessingException_WhenBankReturns5xxError() {
+    responder.set(exchange -> respond(exchange, 503, ""));
+    UUID paymentId = UUID.randomUUID();
+
+    assertThatThrownBy(() -> bank.process(paymentRequest(), paymentId).join())
+        .isInstanceOf(CompletionException.class)
+        .cause()
+        .isInstanceOf(EventProcessingException.class)
+        .hasFieldOrPropertyWithValue("paymentId", paymentId);
+  }
+
+  @Test
+  void process_ShouldFailWithUpstreamTimeoutException_WhenBankIsTooSlow() {
+    responder.set(exchange -> {
+      // well past the read timeout, which the I/O reactor checks about once a second
+      Thread.sleep(3_000);
+      respond(exchange, 200, "{}");
+    });
+
+    assertThatThrownBy(() -> bank.process(paymentRequest(), UUID.randomUUID()).join())
+        .cause()
+        .isInstanceOf(UpstreamTimeoutException.class);
+  }
+
+  @Test
+  void process_ShouldFailWithUpstreamTimeoutException_WhenBankIsUnreachable() {
+    server.stop(0);
+
+    assertThatThrownBy(() -> bank.process(paymentRequest(), UUID.randomUUID()).join())
+        .cause()
+        .isInstanceOf(UpstreamTimeoutException.class);
+  }
+}
@@ -0,0 +1,73 @@
+package com.checkout.payment.gateway.infrastructure.bank;
+
+import com.checkout.payment.gateway.domain.model.BankResult;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.infrastructure.exception.EventProcessingException;
+import com.checkout.payment.gateway.infrastructure.exception.UpstreamTimeoutException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.client.RestClientTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withServerError;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+@RestClientTest(BankStatusQueryImpl.class)
+@Import(AcquiringBankProperties.class)
+class BankStatusQueryImplTest {
+  @Autowired BankStatusQueryImpl bank;
+
+  @Autowired
+  private MockRestServiceServer server;
+
+  @Test
+  void findStatusShouldReturnBankDecision() {
+    UUID paymentId = UUID.randomUUID();
+    server.expect(requestTo("/payments/" + paymentId))
+        .andExpect(method(HttpMethod.GET))
+        .andRespond(withSuccess("""
+            {"authorized": true, "authorization_code": "abc-123"}
+            """, MediaType.APPLICATION_JSON));
+
+    Optional<BankResult> result = bank.findStatus(paymentId);
+
+    assertThat(result).map(BankResult::getStatus).contains(PaymentStatus.AUTHORIZED);
+    assertThat(result).map(BankResult::getAuthorizationCode).contains("abc-123");
+  }
+
+  @Test
+  void findStatusShouldReturnEmpty_WhenBankHasNoRecord() {
+    UUID paymentId = UUID.randomUUID();
+    server.expect(requestTo("/payments/" + paymentId)).andRespond(withStatus(HttpStatus.NOT_FOUND));
+
+    assertThat(bank.findStatus(paymentId)).isEmpty();
+  }
+
+  @Test
+  void findStatusShouldFail_WhenBankCannotAnswer() {
+    UUID paymentId = UUID.randomUUID();
+    server.expect(requestTo("/payments/" + paymentId)).andRespond(withServerError());
+
+    assertThatThrownBy(() -> bank.findStatus(paymentId)).isInstanceOf(EventProcessingException.class);
+
+    server.reset();
+    server.expect(requestTo("/payments/" + paymentId)).andRespond(response -> {
+      throw new ResourceAccessException("Connection timed out");
+    });
+
+    assertThatThrownBy(() -> bank.findStatus(paymentId)).isInstanceOf(UpstreamTimeoutException.class);
+  }
+}
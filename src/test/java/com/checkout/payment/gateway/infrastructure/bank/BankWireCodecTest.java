@@ -0,0 +1,139 @@
+package com.checkout.payment.gateway.infrastructure.bank;
+
+import com.checkout.payment.gateway.domain.model.BankResult;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentRequest;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BankWireCodecTest {
+
+  private final ObjectMapper objectMapper = new ObjectMapper();
+
+  private static BankResult decode(String body) {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    return BankWireCodec.decode(bytes, 0, bytes.length);
+  }
+
+  private JsonNode encode(PaymentRequest request) throws Exception {
+    byte[] buffer = new byte[BankWireCodec.BUFFER_SIZE];
+    int length = BankWireCodec.encode(request, buffer);
+    return objectMapper.readTree(new String(buffer, 0, length, StandardCharsets.UTF_8));
+  }
+
+  @Test
+  void encodeShouldWriteSnakeCaseBankRequest() throws Exception {
+    PaymentRequest request = new PaymentRequest();
+    request.setCardNumber("2222405343248877");
+    request.setExpiryMonth(4);
+    request.setExpiryYear(2030);
+    request.setCurrency("GBP");
+    request.setAmount(100L);
+    request.setCvv("123");
+
+    JsonNode sent = encode(request);
+
+    assertThat(sent.get("card_number").asText()).isEqualTo("2222405343248877");
+    assertThat(sent.get("expiry_date").asText()).isEqualTo("04/2030");
+    assertThat(sent.get("currency").asText()).isEqualTo("GBP");
+    assertThat(sent.get("amount").isLong() || sent.get("amount").isInt()).isTrue();
+    assertThat(sent.get("amount").asLong()).isEqualTo(100L);
+    assertThat(sent.get("cvv").asText()).isEqualTo("123");
+  }
+
+  @Test
+  void encodeShouldEscapeStringsAndWriteNulls() throws Exception {
+    PaymentRequest request = new PaymentRequest();
+    request.setCardNumber("12\"34\\\n€😀");
+    request.setExpiryMonth(12);
+    request.setAmount(Long.MIN_VALUE);
+
+    JsonNode sent = encode(request);
+
+    assertThat(sent.get("card_number").asText()).isEqualTo("12\"34\\\n€😀");
+    assertThat(sent.get("expiry_date").isNull()).isTrue();
+    assertThat(sent.get("currency").isNull()).isTrue();
+    assertThat(sent.get("amount").asLong()).isEqualTo(Long.MIN_VALUE);
+  }
+
+  @Test
+  void encodeShouldFail_WhenRequestDoesNotFit() {
+    PaymentRequest request = new PaymentRequest();
+    request.setCardNumber("1".repeat(BankWireCodec.BUFFER_SIZE));
+
+    assertThatThrownBy(() -> BankWireCodec.encode(request, new byte[BankWireCodec.BUFFER_SIZE]))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void decodeShouldReadBankResponse() {
+    BankResult authorized = decode("""
+        {"authorized": true, "authorization_code": "0bb07405-6d44-4b50-a14f-7ae0beff13ad"}
+        """);
+    BankResult declined = decode("{\"authorized\":false,\"authorization_code\":\"\"}");
+
+    assertThat(authorized.getStatus()).isEqualTo(PaymentStatus.AUTHORIZED);
+    assertThat(authorized.getAuthorizationCode()).isEqualTo("0bb07405-6d44-4b50-a14f-7ae0beff13ad");
+    assertThat(declined.getStatus()).isEqualTo(PaymentStatus.DECLINED);
+    assertThat(declined.getAuthorizationCode()).isEmpty();
+  }
+
+  @Test
+  void decodeShouldSkipUnknownFieldsAndUnescapeCode() {
+    BankResult result = decode("""
+        {"trace": {"ids": [1, "a}"], "ok": null}, "authorization_code": "a\\"b\\u00e9", "score": -1.5e3,
+         "authorized": true}
+        """);
+
+    assertThat(result.getStatus()).isEqualTo(PaymentStatus.AUTHORIZED);
+    assertThat(result.getAuthorizationCode()).isEqualTo("a\"bé");
+  }
+
+  @Test
+  void decodeShouldTreatMissingFieldsAsDeclinedAndEmptyBodyAsNull() {
+    assertThat(decode("{}").getStatus()).isEqualTo(PaymentStatus.DECLINED);
+    assertThat(decode("{\"authorized\": null}").getStatus()).isEqualTo(PaymentStatus.DECLINED);
+    assertThat(decode("")).isNull();
+    assertThat(decode("  null ")).isNull();
+  }
+
+  @Test
+  void decodeShouldRejectMalformedBodies() {
+    assertThatThrownBy(() -> decode("[]")).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> decode("{\"authorized\": tru}")).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> decode("{\"authorized\": true")).isInstanceOf(IllegalArgumentException.class);
+    assertThatThrownBy(() -> decode("{\"authorization_code\": \"abc}")).isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void readShouldRejectBodiesLargerThanBuffer() {
+    byte[] body = ("{\"pad\":\"" + "x".repeat(BankWireCodec.BUFFER_SIZE) + "\"}").getBytes(StandardCharsets.UTF_8);
+
+    assertThatThrownBy(() -> BankWireCodec.read(new ByteArrayInputStream(body)))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  void releasedBuffersShouldNotKeepCardData() {
+    BufferPool pool = new BufferPool(1, BankWireCodec.BUFFER_SIZE);
+    PaymentRequest request = new PaymentRequest();
+    request.setCardNumber("2222405343248877");
+    request.setExpiryMonth(4);
+    request.setExpiryYear(2030);
+    request.setCurrency("GBP");
+    request.setAmount(100L);
+    request.setCvv("123");
+
+    byte[] buffer = pool.acquire();
+    pool.release(buffer, BankWireCodec.encode(request, buffer));
+
+    assertThat(pool.acquire()).isSameAs(buffer).containsOnly((byte) 0);
+  }
+}
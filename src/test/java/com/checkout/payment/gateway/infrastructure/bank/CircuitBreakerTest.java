@@ -0,0 +1,162 @@
+package com.checkout.payment.gateway.infrastructure.bank;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CircuitBreakerTest {
+
+  private static final Duration FAST = Duration.ofMillis(10);
+  private static final Duration SLOW = Duration.ofSeconds(5);
+
+  private final MutableClock clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+
+  private CircuitBreaker circuitBreaker() {
+    AcquiringBankProperties.CircuitBreaker properties = new AcquiringBankProperties.CircuitBreaker();
+    properties.setSlidingWindowSize(10);
+    properties.setMinimumCalls(4);
+    properties.setFailureRateThreshold(50);
+    properties.setSlowCallRateThreshold(80);
+    properties.setSlowCallDuration(Duration.ofSeconds(1));
+    properties.setWaitInOpen(Duration.ofSeconds(10));
+    properties.setPermittedCallsInHalfOpen(2);
+    return new CircuitBreaker(properties, clock);
+  }
+
+  private static void call(CircuitBreaker circuitBreaker, boolean success, Duration duration) {
+    assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+    if (success) {
+      circuitBreaker.onSuccess(duration);
+    } else {
+      circuitBreaker.onFailure(duration);
+    }
+  }
+
+  @Test
+  void shouldOpen_WhenFailureRateReachesThreshold() {
+    CircuitBreaker circuitBreaker = circuitBreaker();
+
+    call(circuitBreaker, true, FAST);
+    call(circuitBreaker, false, FAST);
+    call(circuitBreaker, true, FAST);
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    assertThat(circuitBreaker.getFailureRate()).isEqualTo(-1f);
+
+    call(circuitBreaker, false, FAST);
+
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThat(circuitBreaker.tryAcquirePermission()).isFalse();
+    assertThat(circuitBreaker.isCallPermitted()).isFalse();
+  }
+
+  @Test
+  void shouldStayClosed_WhileFailuresAreBelowMinimumCallsOrThreshold() {
+    CircuitBreaker circuitBreaker = circuitBreaker();
+
+    call(circuitBreaker, false, FAST);
+    call(circuitBreaker, false, FAST);
+    call(circuitBreaker, false, FAST);
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+
+    CircuitBreaker healthy = circuitBreaker();
+    for (int i = 0; i < 20; i++) {
+      call(healthy, i % 3 != 2, FAST);
+    }
+    assertThat(healthy.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    assertThat(healthy.getFailureRate()).isLessThan(50f);
+  }
+
+  @Test
+  void shouldOpen_WhenMostCallsAreSlow() {
+    CircuitBreaker circuitBreaker = circuitBreaker();
+
+    call(circuitBreaker, true, SLOW);
+    call(circuitBreaker, true, SLOW);
+    call(circuitBreaker, true, SLOW);
+    call(circuitBreaker, true, SLOW);
+
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+  }
+
+  @Test
+  void shouldCloseAfterWait_WhenProbeCallsSucceed() {
+    CircuitBreaker circuitBreaker = circuitBreaker();
+    for (int i = 0; i < 4; i++) {
+      call(circuitBreaker, false, FAST);
+    }
+
+    clock.advance(Duration.ofSeconds(10));
+    assertThat(circuitBreaker.isCallPermitted()).isTrue();
+    call(circuitBreaker, true, FAST);
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+    call(circuitBreaker, true, FAST);
+    // only the probes are let through while half open
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+  }
+
+  @Test
+  void shouldReopen_WhenProbeCallsFail() {
+    CircuitBreaker circuitBreaker = circuitBreaker();
+    for (int i = 0; i < 4; i++) {
+      call(circuitBreaker, false, FAST);
+    }
+
+    clock.advance(Duration.ofSeconds(10));
+    call(circuitBreaker, false, FAST);
+    call(circuitBreaker, true, FAST);
+
+    assertThat(circuitBreaker.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    assertThat(circuitBreaker.tryAcquirePermission()).isFalse();
+  }
+
+  @Test
+  void shouldLimitProbeCalls_WhileHalfOpen() {
+    CircuitBreaker circuitBreaker = circuitBreaker();
+    for (int i = 0; i < 4; i++) {
+      call(circuitBreaker, false, FAST);
+    }
+
+    clock.advance(Duration.ofSeconds(10));
+    assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+    assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+    assertThat(circuitBreaker.tryAcquirePermission()).isFalse();
+
+    // a permit that was never used goes back
+    circuitBreaker.releasePermission();
+    assertThat(circuitBreaker.tryAcquirePermission()).isTrue();
+  }
+
+  private static class MutableClock extends Clock {
+    private Instant now;
+
+    MutableClock(Instant now) {
+      this.now = now;
+    }
+
+    void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+}
@@ -0,0 +1,124 @@
+package com.checkout.payment.gateway.infrastructure.bank;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConcurrencyLimiterTest {
+
+  private static final long RTT = TimeUnit.MILLISECONDS.toNanos(20);
+
+  private static ConcurrencyLimiter limiter(boolean adaptive) {
+    AcquiringBankProperties.Bulkhead properties = new AcquiringBankProperties.Bulkhead();
+    properties.setMaxConcurrentCalls(100);
+    properties.setMaxQueued(1);
+    properties.getAdaptive().setEnabled(adaptive);
+    properties.getAdaptive().setInitialLimit(10);
+    properties.getAdaptive().setMinLimit(2);
+    return new ConcurrencyLimiter(properties);
+  }
+
+  // fills the limit, then completes every call with the given RTT
+  private static void round(ConcurrencyLimiter limiter, long rttNanos) throws InterruptedException {
+    int calls = limiter.getLimit();
+    for (int i = 0; i < calls; i++) {
+      assertThat(limiter.tryAcquire(0, TimeUnit.MILLISECONDS)).isTrue();
+    }
+    for (int i = 0; i < calls; i++) {
+      limiter.onSuccess(rttNanos);
+    }
+  }
+
+  @Test
+  void shouldGrowLimit_WhileRttStaysAtBaseline() throws Exception {
+    ConcurrencyLimiter limiter = limiter(true);
+
+    for (int i = 0; i < 5; i++) {
+      round(limiter, RTT);
+    }
+
+    assertThat(limiter.getLimit()).isGreaterThan(20);
+    assertThat(limiter.getInFlight()).isZero();
+  }
+
+  @Test
+  void shouldShrinkLimit_WhenRttRisesAboveBaseline() throws Exception {
+    ConcurrencyLimiter limiter = limiter(true);
+    for (int i = 0; i < 5; i++) {
+      round(limiter, RTT);
+    }
+    int grown = limiter.getLimit();
+
+    for (int i = 0; i < 5; i++) {
+      round(limiter, RTT * 4);
+    }
+
+    assertThat(limiter.getLimit()).isLessThan(grown / 2);
+  }
+
+  @Test
+  void shouldIgnoreSamples_WhenLimitIsMostlyUnused() throws Exception {
+    ConcurrencyLimiter limiter = limiter(true);
+
+    for (int i = 0; i < 100; i++) {
+      assertThat(limiter.tryAcquire(0, TimeUnit.MILLISECONDS)).isTrue();
+      limiter.onSuccess(RTT);
+    }
+
+    assertThat(limiter.getLimit()).isEqualTo(10);
+  }
+
+  @Test
+  void shouldBackOffMultiplicatively_WhenCallsFail() throws Exception {
+    ConcurrencyLimiter limiter = limiter(true);
+
+    for (int i = 0; i < 100; i++) {
+      assertThat(limiter.tryAcquire(0, TimeUnit.MILLISECONDS)).isTrue();
+      limiter.onDropped();
+    }
+
+    assertThat(limiter.getLimit()).isEqualTo(2);
+  }
+
+  @Test
+  void shouldKeepFixedLimit_WhenNotAdaptive() throws Exception {
+    ConcurrencyLimiter limiter = limiter(false);
+
+    round(limiter, RTT);
+    round(limiter, RTT * 10);
+    assertThat(limiter.tryAcquire(0, TimeUnit.MILLISECONDS)).isTrue();
+    limiter.onDropped();
+
+    assertThat(limiter.getLimit()).isEqualTo(100);
+  }
+
+  @Test
+  void shouldQueueBriefly_ThenGiveUp() throws Exception {
+    ConcurrencyLimiter limiter = limiter(true);
+    for (int i = 0; i < 10; i++) {
+      assertThat(limiter.tryAcquire(0, TimeUnit.MILLISECONDS)).isTrue();
+    }
+
+    assertThat(limiter.tryAcquire(20, TimeUnit.MILLISECONDS)).isFalse();
+
+    CompletableFuture<Boolean> waiting = CompletableFuture.supplyAsync(() -> {
+      try {
+        return limiter.tryAcquire(5, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        throw new IllegalStateException(e);
+      }
+    });
+    while (limiter.getQueued() == 0) {
+      Thread.onSpinWait();
+    }
+    // the queue holds one caller
+    assertThat(limiter.tryAcquire(5, TimeUnit.SECONDS)).isFalse();
+
+    limiter.release();
+    assertThat(waiting.get(5, TimeUnit.SECONDS)).isTrue();
+    assertThat(limiter.getInFlight()).isEqualTo(10);
+  }
+}
@@ -0,0 +1,145 @@
+package com.checkout.payment.gateway.infrastructure.bank;
+
+import com.checkout.payment.gateway.domain.model.BankResult;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.domain.service.AcquiringBank;
+import com.checkout.payment.gateway.domain.service.AsyncAcquiringBank;
+import com.checkout.payment.gateway.infrastructure.exception.BankUnavailableException;
+import com.checkout.payment.gateway.infrastructure.exception.EventProcessingException;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ResilientAcquiringBankTest {
+
+  private static final BankResult AUTHORIZED = BankResult.builder().status(PaymentStatus.AUTHORIZED).build();
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final PaymentRequest request = new PaymentRequest();
+
+  private ResilientAcquiringBank resilient(AcquiringBank delegate, int maxConcurrentCalls) {
+    AcquiringBankProperties.CircuitBreaker circuitBreaker = new AcquiringBankProperties.CircuitBreaker();
+    circuitBreaker.setSlidingWindowSize(4);
+    circuitBreaker.setMinimumCalls(4);
+    AcquiringBankProperties.Bulkhead bulkhead = new AcquiringBankProperties.Bulkhead();
+    bulkhead.setMaxConcurrentCalls(maxConcurrentCalls);
+    bulkhead.setMaxWait(Duration.ofMillis(10));
+    return new ResilientAcquiringBank("default", delegate, new CircuitBreaker(circuitBreaker, Clock.systemUTC()), bulkhead,
+        meterRegistry);
+  }
+
+  @Test
+  void shouldFailFastWithoutCallingBank_WhenBreakerIsOpen() {
+    AtomicInteger calls = new AtomicInteger();
+    ResilientAcquiringBank bank = resilient((request, paymentId) -> {
+      calls.incrementAndGet();
+      throw new EventProcessingException("Bank server error: 503", paymentId);
+    }, 10);
+
+    for (int i = 0; i < 4; i++) {
+      assertThatThrownBy(() -> bank.process(request, UUID.randomUUID()))
+          .isInstanceOf(EventProcessingException.class);
+    }
+    assertThat(bank.isAvailable()).isFalse();
+
+    UUID paymentId = UUID.randomUUID();
+    assertThatThrownBy(() -> bank.process(request, paymentId))
+        .isInstanceOf(BankUnavailableException.class)
+        .hasFieldOrPropertyWithValue("paymentId", paymentId);
+    assertThat(calls).hasValue(4);
+    assertThat(meterRegistry.get("bank.circuit.breaker.not.permitted").counter().count()).isEqualTo(1);
+    assertThat(meterRegistry.get("bank.circuit.breaker.state").tag("state", "open").gauge().value()).isEqualTo(1);
+  }
+
+  @Test
+  void shouldCountRejectionsAsSuccess() {
+    ResilientAcquiringBank bank = resilient(
+        (request, paymentId) -> BankResult.builder().status(PaymentStatus.REJECTED).build(), 10);
+
+    for (int i = 0; i < 10; i++) {
+      assertThat(bank.process(request, UUID.randomUUID()).getStatus()).isEqualTo(PaymentStatus.REJECTED);
+    }
+    assertThat(bank.isAvailable()).isTrue();
+  }
+
+  @Test
+  void shouldRejectCallsOverConcurrencyCap() throws Exception {
+    CountDownLatch entered = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    ResilientAcquiringBank bank = resilient((request, paymentId) -> {
+      entered.countDown();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return BankResult.builder().status(PaymentStatus.AUTHORIZED).build();
+    }, 1);
+
+    CompletableFuture<BankResult> inFlight = CompletableFuture.supplyAsync(() -> bank.process(request, UUID.randomUUID()));
+    assertThat(entered.await(5, TimeUnit.SECONDS)).isTrue();
+
+    assertThatThrownBy(() -> bank.process(request, UUID.randomUUID()))
+        .isInstanceOf(BankUnavailableException.class);
+    assertThat(meterRegistry.get("bank.bulkhead.rejected").counter().count()).isEqualTo(1);
+
+    release.countDown();
+    assertThat(inFlight.get(5, TimeUnit.SECONDS).getStatus()).isEqualTo(PaymentStatus.AUTHORIZED);
+    assertThat(meterRegistry.get("bank.bulkhead.available").gauge().value()).isEqualTo(1);
+  }
+
+  @Test
+  void asyncCallsShouldOpenTheBreakerTheBlockingClientSees() {
+    AtomicInteger calls = new AtomicInteger();
+    ResilientAcquiringBank bank = resilient((request, paymentId) -> AUTHORIZED, 10);
+    AsyncAcquiringBank async = bank.async((request, paymentId) -> {
+      calls.incrementAndGet();
+      return CompletableFuture.failedFuture(new EventProcessingException("Bank server error: 503", paymentId));
+    });
+
+    for (int i = 0; i < 4; i++) {
+      assertThatThrownBy(() -> async.process(request, UUID.randomUUID()).join())
+          .hasCauseInstanceOf(EventProcessingException.class);
+    }
+    assertThat(bank.isAvailable()).isFalse();
+
+    assertThatThrownBy(() -> async.process(request, UUID.randomUUID()).join())
+        .hasCauseInstanceOf(BankUnavailableException.class);
+    assertThatThrownBy(() -> bank.process(request, UUID.randomUUID()))
+        .isInstanceOf(BankUnavailableException.class);
+    assertThat(calls).hasValue(4);
+    assertThat(meterRegistry.get("bank.bulkhead.in.flight").gauge().value()).isZero();
+  }
+
+  @Test
+  void asyncCallsShouldBeRefusedAtOnce_WhenTheLimitIsReached() {
+    CompletableFuture<BankResult> answer = new CompletableFuture<>();
+    ResilientAcquiringBank bank = resilient((request, paymentId) -> AUTHORIZED, 1);
+    AsyncAcquiringBank async = bank.async((request, paymentId) -> answer);
+
+    CompletableFuture<BankResult> inFlight = async.process(request, UUID.randomUUID());
+
+    // the blocking client shares the limit
+    assertThatThrownBy(() -> bank.process(request, UUID.randomUUID()))
+        .isInstanceOf(BankUnavailableException.class);
+    assertThatThrownBy(() -> async.process(request, UUID.randomUUID()).join())
+        .hasCauseInstanceOf(BankUnavailableException.class);
+    assertThat(meterRegistry.get("bank.bulkhead.rejected").counter().count()).isEqualTo(2);
+
+    answer.complete(AUTHORIZED);
+    assertThat(inFlight.join()).isSameAs(AUTHORIZED);
+    assertThat(meterRegistry.get("bank.bulkhead.available").gauge().value()).isEqualTo(1);
+    assertThat(bank.process(request, UUID.randomUUID())).isSameAs(AUTHORIZED);
+  }
+}
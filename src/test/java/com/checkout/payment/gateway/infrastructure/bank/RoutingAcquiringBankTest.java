@@ -0,0 +1,239 @@
+package com.checkout.payment.gateway.infrastructure.bank;
+
+import com.checkout.payment.gateway.domain.model.BankResult;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.domain.service.AcquiringBank;
+import com.checkout.payment.gateway.domain.service.AsyncAcquiringBank;
+import com.checkout.payment.gateway.infrastructure.exception.BankUnavailableException;
+import com.checkout.payment.gateway.infrastructure.exception.EventProcessingException;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentRequest;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class RoutingAcquiringBankTest {
+
+  private static final BankResult AUTHORIZED = BankResult.builder().status(PaymentStatus.AUTHORIZED).build();
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final MutableClock clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+  // latencies are whatever the stubs say, however long the JVM takes to run them
+  private final AtomicLong nanoTime = new AtomicLong();
+  private final PaymentRequest request = new PaymentRequest();
+
+  private RoutingAcquiringBank routing(StubBank... banks) {
+    AcquiringBankProperties.Routing properties = new AcquiringBankProperties.Routing();
+    properties.setSmoothing(0.5);
+    properties.setErrorHalfLife(Duration.ofSeconds(10));
+    List<RoutingAcquiringBank.Endpoint> endpoints = List.of(banks).stream()
+        .map(bank -> new RoutingAcquiringBank.Endpoint(bank.name, bank.weight, bank, bank::processAsync))
+        .toList();
+    return new RoutingAcquiringBank(endpoints, properties, meterRegistry, clock, nanoTime::get);
+  }
+
+  @Test
+  void shouldSendTrafficAwayFromFailingAcquirer() {
+    StubBank failing = new StubBank("a");
+    StubBank healthy = new StubBank("b");
+    failing.failing = true;
+    RoutingAcquiringBank bank = routing(failing, healthy);
+
+    int failures = 0;
+    for (int i = 0; i < 50; i++) {
+      try {
+        bank.process(request, UUID.randomUUID());
+      } catch (EventProcessingException e) {
+        failures++;
+      }
+    }
+
+    // the failing acquirer is only ever chosen before its first failure
+    assertThat(failures).isEqualTo(1);
+    assertThat(failing.calls).hasValue(1);
+    assertThat(healthy.calls).hasValue(49);
+    assertThat(meterRegistry.get("bank.acquirer.error.rate").tag("acquirer", "a").gauge().value()).isEqualTo(0.5);
+  }
+
+  @Test
+  void shouldTryFailedAcquirerAgain_OnceItsErrorRateHasDecayed() {
+    StubBank recovering = new StubBank("a");
+    StubBank healthy = new StubBank("b");
+    recovering.failing = true;
+    recovering.delayMillis = 1;
+    healthy.delayMillis = 20;
+    RoutingAcquiringBank bank = routing(recovering, healthy);
+    for (int i = 0; i < 10; i++) {
+      try {
+        bank.process(request, UUID.randomUUID());
+      } catch (EventProcessingException ignored) {
+      }
+    }
+    recovering.failing = false;
+    int before = recovering.calls.get();
+
+    // after thirty half-lives the penalty is gone and the faster acquirer is cheaper again
+    clock.advance(Duration.ofMinutes(5));
+    for (int i = 0; i < 10; i++) {
+      bank.process(request, UUID.randomUUID());
+    }
+
+    assertThat(recovering.calls.get()).isGreaterThan(before);
+  }
+
+  @Test
+  void shouldRerouteToAnotherAcquirer_WhenChosenOneRefusesCall() {
+    StubBank refusing = new StubBank("a");
+    StubBank healthy = new StubBank("b");
+    refusing.refusing = true;
+    RoutingAcquiringBank bank = routing(refusing, healthy);
+
+    for (int i = 0; i < 20; i++) {
+      assertThat(bank.process(request, UUID.randomUUID())).isSameAs(AUTHORIZED);
+    }
+
+    assertThat(healthy.calls).hasValue(20);
+    assertThat(meterRegistry.get("bank.acquirer.rerouted").counter().count()).isEqualTo(refusing.calls.get());
+  }
+
+  @Test
+  void shouldRouteAsyncCalls_AndRerouteThoseTheChosenAcquirerRefuses() {
+    StubBank refusing = new StubBank("a");
+    StubBank failing = new StubBank("b");
+    refusing.refusing = true;
+    failing.failing = true;
+    AsyncAcquiringBank bank = routing(refusing, failing).async();
+
+    for (int i = 0; i < 20; i++) {
+      assertThatThrownBy(() -> bank.process(request, UUID.randomUUID()).join())
+          .hasCauseInstanceOf(EventProcessingException.class);
+    }
+
+    assertThat(failing.calls).hasValue(20);
+    assertThat(meterRegistry.get("bank.acquirer.rerouted").counter().count()).isEqualTo(refusing.calls.get());
+    assertThat(meterRegistry.get("bank.acquirer.error.rate").tag("acquirer", "b").gauge().value()).isGreaterThan(0.9);
+    assertThat(meterRegistry.get("bank.acquirer.in.flight").tag("acquirer", "b").gauge().value()).isZero();
+
+    refusing.refusing = false;
+    failing.available = false;
+    assertThat(bank.process(request, UUID.randomUUID()).join()).isSameAs(AUTHORIZED);
+    assertThat(refusing.calls.get()).isGreaterThan(0);
+  }
+
+  @Test
+  void shouldLeaveOutUnavailableAcquirers_AndFailFastWhenNoneIsLeft() {
+    StubBank ejected = new StubBank("a");
+    StubBank healthy = new StubBank("b");
+    ejected.available = false;
+    RoutingAcquiringBank bank = routing(ejected, healthy);
+
+    for (int i = 0; i < 20; i++) {
+      bank.process(request, UUID.randomUUID());
+    }
+    assertThat(ejected.calls).hasValue(0);
+    assertThat(healthy.calls).hasValue(20);
+    assertThat(meterRegistry.get("bank.acquirer.available").tag("acquirer", "a").gauge().value()).isZero();
+
+    healthy.available = false;
+    UUID paymentId = UUID.randomUUID();
+    assertThat(bank.isAvailable()).isFalse();
+    assertThatThrownBy(() -> bank.process(request, paymentId))
+        .isInstanceOf(BankUnavailableException.class)
+        .hasFieldOrPropertyWithValue("paymentId", paymentId);
+  }
+
+  @Test
+  void shouldFavourHeavierAcquirer_WhenAcquirersPerformAlike() {
+    StubBank heavy = new StubBank("a");
+    StubBank light = new StubBank("b");
+    heavy.weight = 3;
+    RoutingAcquiringBank bank = routing(heavy, light);
+
+    for (int i = 0; i < 100; i++) {
+      bank.process(request, UUID.randomUUID());
+    }
+
+    assertThat(heavy.calls.get()).isGreaterThan(light.calls.get());
+  }
+
+  // a stub's delay passes on the test's nano clock, on success and failure alike
+  private class StubBank implements AcquiringBank {
+    private final String name;
+    private final AtomicInteger calls = new AtomicInteger();
+    private double weight = 1;
+    private volatile boolean failing;
+    private volatile boolean refusing;
+    private volatile boolean available = true;
+    private long delayMillis;
+
+    StubBank(String name) {
+      this.name = name;
+    }
+
+    @Override
+    public BankResult process(PaymentRequest request, UUID paymentId) {
+      calls.incrementAndGet();
+      nanoTime.addAndGet(TimeUnit.MILLISECONDS.toNanos(delayMillis));
+      if (refusing) {
+        throw new BankUnavailableException("Bank circuit breaker is open", paymentId);
+      }
+      if (failing) {
+        throw new EventProcessingException("Bank server error: 503", paymentId);
+      }
+      return AUTHORIZED;
+    }
+
+    CompletableFuture<BankResult> processAsync(PaymentRequest request, UUID paymentId) {
+      try {
+        return CompletableFuture.completedFuture(process(request, paymentId));
+      } catch (RuntimeException e) {
+        return CompletableFuture.failedFuture(e);
+      }
+    }
+
+    @Override
+    public boolean isAvailable() {
+      return available;
+    }
+  }
+
+  private static class MutableClock extends Clock {
+    private Instant now;
+
+    MutableClock(Instant now) {
+      this.now = now;
+    }
+
+    void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+}
@@ -0,0 +1,208 @@
+package com.checkout.payment.gateway.infrastructure.persistence;
+
+import com.checkout.payment.gateway.domain.model.IllegalPaymentTransitionException;
+import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InMemoryPaymentsRepositoryTest {
+
+  private final MutableClock clock = new MutableClock(Instant.parse("2025-01-01T00:00:00Z"));
+  private final PaymentGatewayProperties properties = new PaymentGatewayProperties();
+  private final InMemoryPaymentsRepository repository =
+      new InMemoryPaymentsRepository(properties, new SimpleMeterRegistry(), clock);
+
+  private static Payment pendingPayment(String idempotencyKey) {
+    return Payment.builder()
+        .id(UUID.randomUUID())
+        .idempotencyKey(idempotencyKey)
+        .status(PaymentStatus.PENDING)
+        .amount(100L)
+        .currency("GBP")
+        .cardLastFour("4242")
+        .build();
+  }
+
+  @Test
+  void saveShouldStoreAndIndexPayment() {
+    Payment payment = pendingPayment("key-1");
+
+    Payment saved = repository.save(payment);
+
+    assertThat(saved.getUpdatedAt()).isNotNull();
+    assertThat(repository.get(payment.getId())).contains(payment);
+    assertThat(repository.getByIdempotencyKey("key-1")).contains(payment);
+  }
+
+  @Test
+  void saveShouldReturnOwner_WhenIdempotencyKeyBelongsToAnotherPayment() {
+    Payment first = pendingPayment("key-1");
+    Payment second = pendingPayment("key-1");
+    repository.save(first);
+
+    Payment saved = repository.save(second);
+
+    assertThat(saved).isEqualTo(first);
+    assertThat(repository.get(second.getId())).isEmpty();
+  }
+
+  @Test
+  void saveShouldRejectPaymentWithoutId() {
+    Payment payment = pendingPayment(null).toBuilder().id(null).build();
+
+    assertThatThrownBy(() -> repository.save(payment))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  @DisplayName("Only one of many concurrent claims for the same key should win")
+  void claimIdempotencyKeyShouldHaveSingleWinner() throws Exception {
+    int contenders = 16;
+    ExecutorService executor = Executors.newFixedThreadPool(contenders);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Optional<Payment>>> results = new ArrayList<>();
+
+    try {
+      for (int i = 0; i < contenders; i++) {
+        Payment candidate = pendingPayment("contended-key");
+        results.add(executor.submit(() -> {
+          start.await();
+          return repository.claimIdempotencyKey(candidate);
+        }));
+      }
+      start.countDown();
+
+      int winners = 0;
+      for (Future<Optional<Payment>> result : results) {
+        if (result.get().isEmpty()) {
+          winners++;
+        }
+      }
+
+      assertThat(winners).isEqualTo(1);
+      Payment owner = repository.getByIdempotencyKey("contended-key").orElseThrow();
+      assertThat(repository.get(owner.getId())).contains(owner);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void evictExpiredShouldDropIdempotencyKeyAfterTtlButKeepPayment() {
+    Payment payment = pendingPayment("key-1");
+    repository.claimIdempotencyKey(payment);
+
+    clock.advance(Duration.ofHours(23));
+    repository.evictExpired();
+    assertThat(repository.getByIdempotencyKey("key-1")).contains(payment);
+
+    clock.advance(Duration.ofHours(2));
+    repository.evictExpired();
+    assertThat(repository.getByIdempotencyKey("key-1")).isEmpty();
+    assertThat(repository.get(payment.getId())).contains(payment);
+  }
+
+  @Test
+  void evictExpiredShouldDropFinalizedPaymentsAfterRetentionOnly() {
+    Payment authorized = pendingPayment("key-1");
+    Payment unknown = pendingPayment("key-2");
+    repository.claimIdempotencyKey(authorized);
+    repository.claimIdempotencyKey(unknown);
+    repository.compareAndSet(authorized.getId(), 0, authorized.transitionTo(PaymentStatus.AUTHORIZED, "auth-1"));
+    repository.compareAndSet(unknown.getId(), 0, unknown.transitionTo(PaymentStatus.UNKNOWN, null));
+
+    clock.advance(properties.getRetention().getFinalizedPayment().plusSeconds(1));
+    repository.evictExpired();
+
+    assertThat(repository.get(authorized.getId())).isEmpty();
+    // non-final payments are kept for reconciliation
+    assertThat(repository.get(unknown.getId())).contains(unknown);
+  }
+
+  @Test
+  void compareAndSetShouldApplyNextVersion() {
+    Payment payment = repository.save(pendingPayment("key-1"));
+
+    boolean swapped = repository.compareAndSet(payment.getId(), 0,
+        payment.transitionTo(PaymentStatus.AUTHORIZED, "auth-1"));
+
+    assertThat(swapped).isTrue();
+    Payment stored = repository.get(payment.getId()).orElseThrow();
+    assertThat(stored.getStatus()).isEqualTo(PaymentStatus.AUTHORIZED);
+    assertThat(stored.getAuthorizationCode()).isEqualTo("auth-1");
+    assertThat(stored.getVersion()).isEqualTo(1);
+    assertThat(repository.getByIdempotencyKey("key-1")).map(Payment::getStatus).contains(PaymentStatus.AUTHORIZED);
+  }
+
+  @Test
+  void compareAndSetShouldFail_WhenVersionIsStale() {
+    Payment payment = repository.save(pendingPayment(null));
+    repository.compareAndSet(payment.getId(), 0, payment.transitionTo(PaymentStatus.UNKNOWN, null));
+
+    boolean swapped = repository.compareAndSet(payment.getId(), 0,
+        payment.transitionTo(PaymentStatus.DECLINED, null));
+
+    assertThat(swapped).isFalse();
+    assertThat(repository.get(payment.getId())).map(Payment::getStatus).contains(PaymentStatus.UNKNOWN);
+  }
+
+  @Test
+  void compareAndSetShouldRejectIllegalTransition() {
+    Payment payment = repository.save(pendingPayment(null));
+    Payment authorized = payment.transitionTo(PaymentStatus.AUTHORIZED, "auth-1");
+    repository.compareAndSet(payment.getId(), 0, authorized);
+    // a final payment never changes again, so build the would-be next version by hand
+    Payment backToPending = authorized.toBuilder().status(PaymentStatus.PENDING).version(2).build();
+
+    assertThatThrownBy(() -> repository.compareAndSet(payment.getId(), 1, backToPending))
+        .isInstanceOf(IllegalPaymentTransitionException.class);
+    assertThat(repository.get(payment.getId())).map(Payment::getStatus).contains(PaymentStatus.AUTHORIZED);
+  }
+
+  private static class MutableClock extends Clock {
+    private Instant now;
+
+    MutableClock(Instant now) {
+      this.now = now;
+    }
+
+    void advance(Duration duration) {
+      now = now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone() {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(ZoneId zone) {
+      return this;
+    }
+
+    @Override
+    public Instant instant() {
+      return now;
+    }
+  }
+}
\ No newline at end of file
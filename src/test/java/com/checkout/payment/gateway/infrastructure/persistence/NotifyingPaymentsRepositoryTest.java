@@ -0,0 +1,65 @@
+package com.checkout.payment.gateway.infrastructure.persistence;
+
+import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentChangeListener;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class NotifyingPaymentsRepositoryTest {
+
+  private final List<Payment> changes = new ArrayList<>();
+  private final PaymentChangeListener failing = payment -> {
+    throw new IllegalStateException("listener down");
+  };
+  private final NotifyingPaymentsRepository repository = new NotifyingPaymentsRepository(
+      new InMemoryPaymentsRepository(new PaymentGatewayProperties(), new SimpleMeterRegistry()),
+      List.of(failing, changes::add));
+
+  private static Payment pendingPayment(String idempotencyKey) {
+    return Payment.builder()
+        .id(UUID.randomUUID())
+        .idempotencyKey(idempotencyKey)
+        .status(PaymentStatus.PENDING)
+        .amount(1050L)
+        .currency("GBP")
+        .cardLastFour("0042")
+        .createdAt(Instant.now())
+        .build();
+  }
+
+  @Test
+  void shouldAnnounceAcceptedWrites_EvenWhenAnotherListenerFails() {
+    Payment pending = repository.save(pendingPayment(null));
+    Payment authorized = pending.transitionTo(PaymentStatus.AUTHORIZED, "auth");
+
+    assertThat(repository.compareAndSet(pending.getId(), pending.getVersion(), authorized)).isTrue();
+
+    assertThat(changes).extracting(Payment::getStatus)
+        .containsExactly(PaymentStatus.PENDING, PaymentStatus.AUTHORIZED);
+  }
+
+  @Test
+  void shouldAnnounceNothing_WhenWriteIsRejected() {
+    Payment owner = repository.save(pendingPayment("key-1"));
+    Payment authorized = owner.transitionTo(PaymentStatus.AUTHORIZED, "auth");
+    repository.compareAndSet(owner.getId(), owner.getVersion(), authorized);
+    changes.clear();
+
+    assertThat(repository.save(pendingPayment("key-1")).getId()).isEqualTo(owner.getId());
+    assertThat(repository.claimIdempotencyKey(pendingPayment("key-1"))).isPresent();
+    // the stored version has moved on
+    assertThat(repository.compareAndSet(owner.getId(), owner.getVersion(),
+        owner.transitionTo(PaymentStatus.DECLINED, null))).isFalse();
+
+    assertThat(changes).isEmpty();
+  }
+}
@@ -0,0 +1,160 @@
+package com.checkout.payment.gateway.infrastructure.persistence;
+
+import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentCursor;
+import com.checkout.payment.gateway.domain.model.PaymentPage;
+import com.checkout.payment.gateway.domain.model.PaymentQuery;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class OffHeapPaymentsRepositoryTest {
+
+  private final OffHeapPaymentsRepository repository =
+      new OffHeapPaymentsRepository(1_000, new SimpleMeterRegistry(), Clock.systemUTC());
+
+  private static Payment pendingPayment(String idempotencyKey) {
+    return Payment.builder()
+        .id(UUID.randomUUID())
+        .idempotencyKey(idempotencyKey)
+        .status(PaymentStatus.PENDING)
+        .amount(1050L)
+        .currency("GBP")
+        .cardLastFour("0042")
+        .cardExpiryMonth(4)
+        .cardExpiryYear(2030)
+        .maskedCardNumber("************0042")
+        .createdAt(Instant.parse("2025-01-01T10:15:30.123Z"))
+        .build();
+  }
+
+  @Test
+  void shouldRoundTripEveryField() {
+    Payment payment = pendingPayment("a-very-long-idempotency-key-that-does-not-fit-the-inline-field-0123456789");
+    repository.save(payment);
+    assertThat(repository.compareAndSet(payment.getId(), 0,
+        payment.transitionTo(PaymentStatus.AUTHORIZED, "0bb07405-6d44-4b50-a14f-7ae0beff13ad"))).isTrue();
+
+    Payment stored = repository.get(payment.getId()).orElseThrow();
+
+    assertThat(stored.getId()).isEqualTo(payment.getId());
+    assertThat(stored.getStatus()).isEqualTo(PaymentStatus.AUTHORIZED);
+    assertThat(stored.getAmount()).isEqualTo(1050L);
+    assertThat(stored.getCurrency()).isEqualTo("GBP");
+    assertThat(stored.getCardLastFour()).isEqualTo("0042");
+    assertThat(stored.getMaskedCardNumber()).isEqualTo("************0042");
+    assertThat(stored.getCardExpiryMonth()).isEqualTo(4);
+    assertThat(stored.getCardExpiryYear()).isEqualTo(2030);
+    assertThat(stored.getAuthorizationCode()).isEqualTo("0bb07405-6d44-4b50-a14f-7ae0beff13ad");
+    assertThat(stored.getIdempotencyKey()).isEqualTo(payment.getIdempotencyKey());
+    assertThat(stored.getCreatedAt()).isEqualTo(payment.getCreatedAt());
+    assertThat(stored.getUpdatedAt()).isNotNull();
+    assertThat(stored.getVersion()).isEqualTo(1);
+  }
+
+  @Test
+  void claimIdempotencyKeyShouldReturnOwner_WhenKeyIsTaken() {
+    Payment first = pendingPayment("key-1");
+    Payment second = pendingPayment("key-1");
+
+    assertThat(repository.claimIdempotencyKey(first)).isEmpty();
+    Optional<Payment> owner = repository.claimIdempotencyKey(second);
+
+    assertThat(owner).map(Payment::getId).contains(first.getId());
+    assertThat(repository.get(second.getId())).isEmpty();
+    assertThat(repository.getByIdempotencyKey("key-1")).map(Payment::getId).contains(first.getId());
+  }
+
+  @Test
+  void getAllShouldReturnStoredPaymentsOnly() {
+    List<Payment> stored = List.of(pendingPayment("key-1"), pendingPayment("key-2"), pendingPayment("key-3"));
+    stored.forEach(repository::save);
+    UUID unknown = UUID.randomUUID();
+
+    var found = repository.getAll(List.of(stored.get(0).getId(), unknown, stored.get(2).getId()));
+
+    assertThat(found).containsOnlyKeys(stored.get(0).getId(), stored.get(2).getId());
+    assertThat(found.get(stored.get(2).getId()).getIdempotencyKey()).isEqualTo("key-3");
+  }
+
+  @Test
+  void shouldRejectWritesBeyondCapacity() {
+    OffHeapPaymentsRepository tiny =
+        new OffHeapPaymentsRepository(1, new SimpleMeterRegistry(), Clock.systemUTC());
+    tiny.save(pendingPayment(null));
+
+    assertThatThrownBy(() -> tiny.save(pendingPayment(null)))
+        .isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  void currencyShouldPackIntoAShort() {
+    for (String currency : new String[] {"GBP", "USD", "EUR", "AAA", "ZZZ"}) {
+      assertThat(OffHeapPaymentsRepository.unpackCurrency(OffHeapPaymentsRepository.packCurrency(currency)))
+          .isEqualTo(currency);
+    }
+  }
+
+  @Test
+  void idLookupsShouldStayShort_WhenStripesFillUp() {
+    OffHeapPaymentsRepository large = new OffHeapPaymentsRepository(20_000, new SimpleMeterRegistry(), Clock.systemUTC());
+    for (int i = 0; i < 16_000; i++) {
+      large.save(pendingPayment("key-" + i));
+    }
+
+    // linear probing at a load factor of at most a half averages 1.5
+    assertThat(large.meanIdProbeLength()).isLessThan(2.5);
+  }
+
+  @Test
+  void scanShouldListTheSamePagesAsTheIndex() {
+    OffHeapPaymentsRepository indexed =
+        new OffHeapPaymentsRepository(1_000, true, new SimpleMeterRegistry(), Clock.systemUTC());
+    Instant start = Instant.parse("2025-01-01T10:00:00Z");
+    for (int i = 0; i < 200; i++) {
+      // ten payments per millisecond, so ties are broken by id
+      Payment payment = pendingPayment("key-" + i).toBuilder().createdAt(start.plusMillis(i / 10)).build();
+      repository.save(payment);
+      indexed.save(payment);
+      if (i % 3 == 0) {
+        Payment authorized = payment.transitionTo(PaymentStatus.AUTHORIZED, "auth-" + i);
+        repository.compareAndSet(payment.getId(), 0, authorized);
+        indexed.compareAndSet(payment.getId(), 0, authorized);
+      }
+    }
+
+    for (PaymentQuery query : List.of(
+        PaymentQuery.builder().limit(25).build(),
+        PaymentQuery.builder().statuses(Set.of(PaymentStatus.PENDING)).limit(7).build(),
+        PaymentQuery.builder().statuses(Set.of(PaymentStatus.AUTHORIZED, PaymentStatus.DECLINED))
+            .from(start.plusMillis(3)).to(start.plusNanos(15_500_000)).limit(10).build())) {
+      PaymentQuery page = query;
+      List<UUID> scanned = new ArrayList<>();
+      List<UUID> listed = new ArrayList<>();
+      PaymentCursor next;
+      do {
+        PaymentPage fromScan = repository.find(page);
+        PaymentPage fromIndex = indexed.find(page);
+        fromScan.getPayments().forEach(payment -> scanned.add(payment.getId()));
+        fromIndex.getPayments().forEach(payment -> listed.add(payment.getId()));
+        assertThat(fromScan.getNext()).isEqualTo(fromIndex.getNext());
+        next = fromScan.getNext();
+        page = PaymentQuery.builder().statuses(query.getStatuses()).from(query.getFrom()).to(query.getTo())
+            .after(next).limit(query.getLimit()).build();
+      } while (next != null);
+
+      assertThat(scanned).isNotEmpty().isEqualTo(listed);
+    }
+  }
+}
@@ -0,0 +1,143 @@
+package com.checkout.payment.gateway.infrastructure.persistence;
+
+import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class PartitionedPaymentsRepositoryTest {
+
+  private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+  private final PartitionedPaymentsRepository repository =
+      new PartitionedPaymentsRepository(4, meterRegistry, Clock.systemUTC());
+
+  @AfterEach
+  void stop() {
+    repository.close();
+  }
+
+  private static Payment pendingPayment(String idempotencyKey) {
+    return Payment.builder()
+        .id(UUID.randomUUID())
+        .idempotencyKey(idempotencyKey)
+        .status(PaymentStatus.PENDING)
+        .amount(1050L)
+        .currency("GBP")
+        .cardLastFour("0042")
+        .cardExpiryMonth(4)
+        .cardExpiryYear(2030)
+        .maskedCardNumber("************0042")
+        .createdAt(Instant.now())
+        .build();
+  }
+
+  @Test
+  void compareAndSetShouldRunOnOwnerAndCheckVersion() {
+    Payment payment = repository.save(pendingPayment(null));
+
+    assertThat(repository.compareAndSet(payment.getId(), 0, payment.transitionTo(PaymentStatus.UNKNOWN, null)))
+        .isTrue();
+    assertThat(repository.compareAndSet(payment.getId(), 0, payment.transitionTo(PaymentStatus.AUTHORIZED, "auth-1")))
+        .isFalse();
+
+    Payment stored = repository.get(payment.getId()).orElseThrow();
+    assertThat(stored.getStatus()).isEqualTo(PaymentStatus.UNKNOWN);
+    assertThat(stored.getVersion()).isEqualTo(1);
+  }
+
+  @Test
+  void getByIdempotencyKeyShouldReturnLatestVersionOfOwner() {
+    Payment payment = pendingPayment("key-1");
+    assertThat(repository.claimIdempotencyKey(payment)).isEmpty();
+
+    repository.compareAndSet(payment.getId(), 0, payment.transitionTo(PaymentStatus.AUTHORIZED, "auth-1"));
+
+    assertThat(repository.getByIdempotencyKey("key-1")).map(Payment::getStatus).contains(PaymentStatus.AUTHORIZED);
+  }
+
+  @Test
+  void saveShouldReturnOwner_WhenKeyBelongsToAnotherPayment() {
+    Payment first = pendingPayment("key-1");
+    repository.save(first);
+
+    Payment owner = repository.save(pendingPayment("key-1"));
+
+    assertThat(owner.getId()).isEqualTo(first.getId());
+  }
+
+  @Test
+  void saveShouldRejectNullId() {
+    Payment payment = pendingPayment(null).toBuilder().id(null).build();
+
+    assertThatThrownBy(() -> repository.save(payment))
+        .isInstanceOf(IllegalArgumentException.class);
+  }
+
+  @Test
+  @DisplayName("Only one of many concurrent claims for the same key should win")
+  void claimIdempotencyKeyShouldHaveSingleWinner() throws Exception {
+    int contenders = 16;
+    ExecutorService executor = Executors.newFixedThreadPool(contenders);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<Optional<Payment>>> results = new ArrayList<>();
+
+    try {
+      for (int i = 0; i < contenders; i++) {
+        Payment candidate = pendingPayment("contended-key");
+        results.add(executor.submit(() -> {
+          start.await();
+          return repository.claimIdempotencyKey(candidate);
+        }));
+      }
+      start.countDown();
+
+      int winners = 0;
+      for (Future<Optional<Payment>> result : results) {
+        if (result.get().isEmpty()) {
+          winners++;
+        }
+      }
+
+      assertThat(winners).isEqualTo(1);
+      Payment owner = repository.getByIdempotencyKey("contended-key").orElseThrow();
+      assertThat(repository.get(owner.getId())).contains(owner);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  void shouldFailWritesAtOnce_OnceClosed() {
+    Payment payment = repository.save(pendingPayment(null));
+    repository.close();
+
+    assertThatThrownBy(() -> repository.save(pendingPayment("key-1")))
+        .isInstanceOf(IllegalStateException.class);
+    assertThatThrownBy(() -> repository.compareAndSet(payment.getId(), 0,
+        payment.transitionTo(PaymentStatus.AUTHORIZED, "auth-1")))
+        .isInstanceOf(IllegalStateException.class);
+    // reads do not need the owners
+    assertThat(repository.get(payment.getId())).isPresent();
+  }
+
+  @Test
+  void shouldExportQueueDepthPerPartition() {
+    assertThat(meterRegistry.find("payments.partition.queue.depth").gauges()).hasSize(4);
+  }
+}
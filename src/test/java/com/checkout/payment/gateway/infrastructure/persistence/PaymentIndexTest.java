@@ -0,0 +1,116 @@
+package com.checkout.payment.gateway.infrastructure.persistence;
+
+import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentPage;
+import com.checkout.payment.gateway.domain.model.PaymentQuery;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PaymentIndexTest {
+
+  private static final Instant T0 = Instant.parse("2025-01-01T00:00:00Z");
+
+  private final PaymentIndex index = new PaymentIndex();
+  private final Map<UUID, Payment> store = new HashMap<>();
+
+  private Payment save(PaymentStatus status, int minute) {
+    Payment payment = Payment.builder()
+        .id(UUID.randomUUID())
+        .status(status)
+        .createdAt(T0.plusSeconds(60L * minute))
+        .build();
+    store.put(payment.getId(), payment);
+    index.update(payment);
+    return payment;
+  }
+
+  private PaymentPage find(PaymentQuery query) {
+    return index.query(query, id -> Optional.ofNullable(store.get(id)));
+  }
+
+  @Test
+  void shouldReturnOnlyRequestedStatusesInCreationOrder() {
+    Payment unknown = save(PaymentStatus.UNKNOWN, 3);
+    save(PaymentStatus.AUTHORIZED, 2);
+    Payment pending = save(PaymentStatus.PENDING, 1);
+    Payment laterPending = save(PaymentStatus.PENDING, 5);
+
+    PaymentPage page = find(PaymentQuery.builder()
+        .statuses(Set.of(PaymentStatus.PENDING, PaymentStatus.UNKNOWN))
+        .limit(10)
+        .build());
+
+    assertThat(page.getPayments()).containsExactly(pending, unknown, laterPending);
+    assertThat(page.getNext()).isNull();
+  }
+
+  @Test
+  void shouldFollowStatusTransitions() {
+    Payment payment = save(PaymentStatus.PENDING, 0);
+
+    Payment authorized = payment.transitionTo(PaymentStatus.AUTHORIZED, "auth-1");
+    store.put(authorized.getId(), authorized);
+    index.update(authorized);
+    // an update for an older version arriving late is ignored
+    index.update(payment);
+
+    assertThat(find(PaymentQuery.builder().statuses(Set.of(PaymentStatus.PENDING)).limit(10).build())
+        .getPayments()).isEmpty();
+    assertThat(find(PaymentQuery.builder().statuses(Set.of(PaymentStatus.AUTHORIZED)).limit(10).build())
+        .getPayments()).containsExactly(payment);
+    assertThat(find(PaymentQuery.builder().limit(10).build()).getPayments()).containsExactly(payment);
+  }
+
+  @Test
+  void shouldRestrictToHalfOpenTimeRange() {
+    save(PaymentStatus.PENDING, 0);
+    Payment inside = save(PaymentStatus.PENDING, 10);
+    save(PaymentStatus.PENDING, 20);
+
+    PaymentPage page = find(PaymentQuery.builder()
+        .from(T0.plusSeconds(600))
+        .to(T0.plusSeconds(1200))
+        .limit(10)
+        .build());
+
+    assertThat(page.getPayments()).containsExactly(inside);
+  }
+
+  @Test
+  void shouldWalkAllPagesWithCursor() {
+    List<Payment> expected = new ArrayList<>();
+    for (int i = 0; i < 25; i++) {
+      expected.add(save(i % 2 == 0 ? PaymentStatus.PENDING : PaymentStatus.UNKNOWN, i));
+    }
+
+    List<Payment> seen = new ArrayList<>();
+    PaymentPage page = find(PaymentQuery.builder().limit(10).build());
+    seen.addAll(page.getPayments());
+    while (page.getNext() != null) {
+      page = find(PaymentQuery.builder().after(page.getNext()).limit(10).build());
+      seen.addAll(page.getPayments());
+    }
+
+    assertThat(seen).containsExactlyElementsOf(expected);
+  }
+
+  @Test
+  void shouldSkipRemovedPayments() {
+    Payment payment = save(PaymentStatus.DECLINED, 0);
+
+    index.remove(payment);
+
+    assertThat(find(PaymentQuery.builder().limit(10).build()).getPayments()).isEmpty();
+  }
+}
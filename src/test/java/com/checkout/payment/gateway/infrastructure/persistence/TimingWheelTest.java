@@ -0,0 +1,71 @@
+package com.checkout.payment.gateway.infrastructure.persistence;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimingWheelTest {
+
+  private static final long TICK = 1000;
+
+  @Test
+  void shouldFireEntriesOnlyOnceTheirDeadlinePasses() {
+    TimingWheel<String> wheel = new TimingWheel<>(TICK, 0);
+    List<String> fired = new ArrayList<>();
+    wheel.schedule("soon", 5_000);
+    wheel.schedule("later", 90_000);
+
+    wheel.advance(4_000, (item, deadline) -> fired.add(item));
+    assertThat(fired).isEmpty();
+
+    wheel.advance(5_000, (item, deadline) -> fired.add(item));
+    assertThat(fired).containsExactly("soon");
+
+    wheel.advance(89_000, (item, deadline) -> fired.add(item));
+    assertThat(fired).containsExactly("soon");
+
+    wheel.advance(90_500, (item, deadline) -> fired.add(item));
+    assertThat(fired).containsExactly("soon", "later");
+  }
+
+  @Test
+  void shouldCascadeEntriesFromEveryLevel() {
+    TimingWheel<Long> wheel = new TimingWheel<>(TICK, 0);
+    // one entry per level: ticks of 1, 64, 64^2 and 64^3 seconds
+    long[] deadlines = {30_000, 100_000, 5_000_000, 300_000_000};
+    for (long deadline : deadlines) {
+      wheel.schedule(deadline, deadline);
+    }
+
+    List<Long> fired = new ArrayList<>();
+    List<Long> firedAt = new ArrayList<>();
+    for (long now = 0; now <= 300_000_000; now += 1_000_000) {
+      long at = now;
+      wheel.advance(now, (item, deadline) -> {
+        fired.add(item);
+        firedAt.add(at);
+      });
+    }
+
+    assertThat(fired).containsExactly(30_000L, 100_000L, 5_000_000L, 300_000_000L);
+    for (int i = 0; i < fired.size(); i++) {
+      assertThat(firedAt.get(i)).isGreaterThanOrEqualTo(fired.get(i));
+    }
+    assertThat(wheel.scheduled()).isZero();
+  }
+
+  @Test
+  void shouldFirePastDeadlinesOnNextAdvance() {
+    TimingWheel<String> wheel = new TimingWheel<>(TICK, 10_000);
+    List<String> fired = new ArrayList<>();
+    wheel.schedule("overdue", 1_000);
+
+    int expired = wheel.advance(10_000, (item, deadline) -> fired.add(item));
+
+    assertThat(expired).isEqualTo(1);
+    assertThat(fired).containsExactly("overdue");
+  }
+}
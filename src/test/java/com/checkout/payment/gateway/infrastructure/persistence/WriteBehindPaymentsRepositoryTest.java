@@ -0,0 +1,212 @@
+package com.checkout.payment.gateway.infrastructure.persistence;
+
+import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+class WriteBehindPaymentsRepositoryTest {
+
+  private final InMemoryPaymentsRepository store =
+      spy(new InMemoryPaymentsRepository(new PaymentGatewayProperties(), new SimpleMeterRegistry()));
+
+  private WriteBehindPaymentsRepository repository;
+
+  @AfterEach
+  void close() {
+    repository.close();
+  }
+
+  private WriteBehindPaymentsRepository writeBehind(int maxBatch, Duration flushInterval, boolean strict) {
+    PaymentGatewayProperties.WriteBehind properties = new PaymentGatewayProperties.WriteBehind();
+    properties.setMaxBatch(maxBatch);
+    properties.setFlushInterval(flushInterval);
+    properties.setStrict(strict);
+    repository = new WriteBehindPaymentsRepository(store, properties, new SimpleMeterRegistry());
+    return repository;
+  }
+
+  private static Payment pendingPayment(String idempotencyKey) {
+    return Payment.builder()
+        .id(UUID.randomUUID())
+        .idempotencyKey(idempotencyKey)
+        .status(PaymentStatus.PENDING)
+        .amount(1050L)
+        .currency("GBP")
+        .cardLastFour("0042")
+        .cardExpiryMonth(4)
+        .cardExpiryYear(2030)
+        .maskedCardNumber("************0042")
+        .createdAt(Instant.now())
+        .build();
+  }
+
+  @Test
+  void shouldMergeQueuedVersionsIntoOneWrite() {
+    writeBehind(100, Duration.ofMinutes(1), false);
+    Payment payment = pendingPayment(null);
+
+    repository.save(payment);
+    repository.compareAndSet(payment.getId(), 0, payment.transitionTo(PaymentStatus.AUTHORIZED, "auth-1"));
+
+    assertThat(repository.get(payment.getId())).map(Payment::getStatus).contains(PaymentStatus.AUTHORIZED);
+    verify(store, never()).save(any());
+    verify(store, never()).compareAndSet(any(), anyLong(), any());
+
+    repository.close();
+
+    verify(store).saveAll(List.of(payment));
+    assertThat(store.get(payment.getId())).map(Payment::getStatus).contains(PaymentStatus.AUTHORIZED);
+  }
+
+  @Test
+  void getAllShouldOverlayQueuedVersions_AndReadTheRestInOneCall() {
+    writeBehind(100, Duration.ofMinutes(1), false);
+    Payment queued = pendingPayment(null);
+    Payment flushed = pendingPayment(null);
+    store.save(flushed);
+
+    repository.save(queued);
+    var found = repository.getAll(List.of(queued.getId(), flushed.getId()));
+
+    assertThat(found).containsOnlyKeys(queued.getId(), flushed.getId());
+    verify(store).getAll(List.of(flushed.getId()));
+  }
+
+  @Test
+  void shouldWritePendingThrough_WhenStrict() {
+    writeBehind(100, Duration.ofMinutes(1), true);
+    Payment payment = pendingPayment(null);
+
+    repository.save(payment);
+
+    assertThat(store.get(payment.getId())).isPresent();
+
+    assertThat(repository.compareAndSet(payment.getId(), 0, payment.transitionTo(PaymentStatus.DECLINED, null)))
+        .isTrue();
+    assertThat(repository.compareAndSet(payment.getId(), 0, payment.transitionTo(PaymentStatus.UNKNOWN, null)))
+        .isFalse();
+
+    verify(store, never()).saveAll(anyCollection());
+    assertThat(repository.get(payment.getId())).map(Payment::getStatus).contains(PaymentStatus.DECLINED);
+  }
+
+  @Test
+  void writeThroughShouldWaitForBatchHoldingAnOlderVersion() throws Exception {
+    writeBehind(1, Duration.ofMinutes(1), true);
+    CountDownLatch flushing = new CountDownLatch(1);
+    CountDownLatch storeAnswers = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      flushing.countDown();
+      storeAnswers.await();
+      return invocation.callRealMethod();
+    }).when(store).saveAll(anyCollection());
+    Payment queued = pendingPayment(null).toBuilder().status(PaymentStatus.UNKNOWN).build();
+    Payment pending = queued.toBuilder().status(PaymentStatus.PENDING).amount(2000L).build();
+
+    repository.save(queued);
+    assertThat(flushing.await(2, TimeUnit.SECONDS)).isTrue();
+    CompletableFuture<Payment> writtenThrough = CompletableFuture.supplyAsync(() -> repository.save(pending));
+    Thread.sleep(100);
+    assertThat(writtenThrough).isNotDone();
+    // still the queued version until the store has the new one
+    assertThat(repository.get(queued.getId())).map(Payment::getStatus).contains(PaymentStatus.UNKNOWN);
+
+    storeAnswers.countDown();
+    writtenThrough.get(2, TimeUnit.SECONDS);
+
+    assertThat(store.get(queued.getId())).map(Payment::getAmount).contains(2000L);
+    assertThat(repository.get(queued.getId())).map(Payment::getAmount).contains(2000L);
+  }
+
+  @Test
+  void slowWriteThroughShouldNotHoldUpOtherPayments() throws Exception {
+    writeBehind(10_000, Duration.ofMinutes(1), true);
+    Payment slow = pendingPayment(null);
+    CountDownLatch saving = new CountDownLatch(1);
+    CountDownLatch storeAnswers = new CountDownLatch(1);
+    doAnswer(invocation -> {
+      if (invocation.<Payment>getArgument(0).getId().equals(slow.getId())) {
+        saving.countDown();
+        storeAnswers.await();
+      }
+      return invocation.callRealMethod();
+    }).when(store).save(any());
+
+    CompletableFuture<Payment> writtenThrough = CompletableFuture.supplyAsync(() -> repository.save(slow));
+    try {
+      assertThat(saving.await(2, TimeUnit.SECONDS)).isTrue();
+      // enough queued payments to resize the map while the slow save is in the store
+      CompletableFuture<Void> others = CompletableFuture.runAsync(() -> {
+        int saved = 0;
+        while (saved < 2_000) {
+          Payment payment = pendingPayment(null).toBuilder().status(PaymentStatus.UNKNOWN).build();
+          if (repository.guard(payment.getId()) != repository.guard(slow.getId())) {
+            repository.save(payment);
+            repository.compareAndSet(payment.getId(), 0, payment.transitionTo(PaymentStatus.AUTHORIZED, "auth"));
+            saved++;
+          }
+        }
+      });
+
+      others.get(2, TimeUnit.SECONDS);
+      assertThat(writtenThrough).isNotDone();
+    } finally {
+      storeAnswers.countDown();
+    }
+    assertThat(writtenThrough.get(2, TimeUnit.SECONDS).getId()).isEqualTo(slow.getId());
+  }
+
+  @Test
+  void shouldFlush_WhenBatchIsFull() {
+    writeBehind(2, Duration.ofMinutes(1), false);
+
+    repository.save(pendingPayment(null));
+    repository.save(pendingPayment(null));
+
+    verify(store, timeout(2_000)).saveAll(anyCollection());
+  }
+
+  @Test
+  void shouldFlush_WhenIntervalElapses() {
+    writeBehind(100, Duration.ofMillis(50), false);
+    Payment payment = pendingPayment(null);
+
+    repository.save(payment);
+
+    verify(store, timeout(2_000)).saveAll(List.of(payment));
+  }
+
+  @Test
+  void shouldBindIdempotencyKeyThroughTheStore() {
+    writeBehind(100, Duration.ofMinutes(1), false);
+    Payment first = pendingPayment("key-1");
+    Payment second = pendingPayment("key-1");
+
+    assertThat(repository.claimIdempotencyKey(first)).isEmpty();
+    Payment owner = repository.save(second);
+
+    assertThat(owner.getId()).isEqualTo(first.getId());
+    assertThat(repository.get(second.getId())).isEmpty();
+  }
+}
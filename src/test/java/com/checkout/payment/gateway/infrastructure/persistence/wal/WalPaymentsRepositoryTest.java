@@ -0,0 +1,172 @@
+package com.checkout.payment.gateway.infrastructure.persistence.wal;
+
+import com.checkout.payment.gateway.domain.model.Payment;
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WalPaymentsRepositoryTest {
+
+  @TempDir
+  Path directory;
+
+  private final List<WalPaymentsRepository> opened = new ArrayList<>();
+
+  @AfterEach
+  void closeAll() {
+    opened.forEach(WalPaymentsRepository::close);
+  }
+
+  private WalPaymentsRepository open() {
+    PaymentGatewayProperties.Wal wal = new PaymentGatewayProperties.Wal();
+    wal.setDirectory(directory);
+    wal.setSegmentSize(DataSize.ofKilobytes(4));
+    WalPaymentsRepository repository = new WalPaymentsRepository(wal, new SimpleMeterRegistry(), Clock.systemUTC());
+    opened.add(repository);
+    return repository;
+  }
+
+  private static Payment pendingPayment(String idempotencyKey) {
+    return Payment.builder()
+        .id(UUID.randomUUID())
+        .idempotencyKey(idempotencyKey)
+        .status(PaymentStatus.PENDING)
+        .amount(1050L)
+        .currency("GBP")
+        .cardLastFour("0042")
+        .cardExpiryMonth(4)
+        .cardExpiryYear(2030)
+        .maskedCardNumber("************0042")
+        .createdAt(Instant.parse("2025-01-01T10:15:30.123Z"))
+        .build();
+  }
+
+  @Test
+  void shouldRecoverLatestStateAfterRestart() {
+    WalPaymentsRepository repository = open();
+    Payment payment = pendingPayment("key-1");
+    assertThat(repository.claimIdempotencyKey(payment)).isEmpty();
+    repository.compareAndSet(payment.getId(), 0, payment.transitionTo(PaymentStatus.AUTHORIZED, "auth-1"));
+    repository.close();
+    opened.clear();
+
+    WalPaymentsRepository recovered = open();
+
+    Payment stored = recovered.get(payment.getId()).orElseThrow();
+    assertThat(stored).isEqualTo(payment);
+    assertThat(stored.getStatus()).isEqualTo(PaymentStatus.AUTHORIZED);
+    assertThat(stored.getVersion()).isEqualTo(1);
+    assertThat(recovered.getByIdempotencyKey("key-1")).contains(stored);
+    assertThat(recovered.claimIdempotencyKey(pendingPayment("key-1"))).contains(stored);
+  }
+
+  @Test
+  void shouldRecoverFromCheckpointAndLaterSegments() {
+    WalPaymentsRepository repository = open();
+    // enough records to roll several 4 KB segments
+    List<Payment> before = new ArrayList<>();
+    for (int i = 0; i < 100; i++) {
+      before.add(repository.save(pendingPayment("before-" + i)));
+    }
+    repository.checkpoint();
+    Payment after = repository.save(pendingPayment("after"));
+    repository.close();
+    opened.clear();
+
+    WalPaymentsRepository recovered = open();
+
+    before.forEach(payment -> assertThat(recovered.get(payment.getId())).contains(payment));
+    assertThat(recovered.get(after.getId())).contains(after);
+  }
+
+  @Test
+  void checkpointsShouldNotLoseConcurrentCompareAndSets() throws Exception {
+    WalPaymentsRepository repository = open();
+    List<Payment> payments = new ArrayList<>();
+    for (int i = 0; i < 400; i++) {
+      payments.add(repository.save(pendingPayment(null)));
+    }
+
+    AtomicBoolean done = new AtomicBoolean();
+    CompletableFuture<Void> checkpoints = CompletableFuture.runAsync(() -> {
+      while (!done.get()) {
+        repository.checkpoint();
+      }
+    });
+    ExecutorService workers = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> swaps = new ArrayList<>();
+      for (Payment payment : payments) {
+        swaps.add(workers.submit(() -> {
+          Payment unknown = payment.transitionTo(PaymentStatus.UNKNOWN, null);
+          assertThat(repository.compareAndSet(payment.getId(), 0, unknown)).isTrue();
+          assertThat(repository.compareAndSet(payment.getId(), 1,
+              unknown.transitionTo(PaymentStatus.AUTHORIZED, "auth"))).isTrue();
+        }));
+      }
+      for (Future<?> swap : swaps) {
+        swap.get(10, TimeUnit.SECONDS);
+      }
+    } finally {
+      done.set(true);
+      workers.shutdown();
+    }
+    checkpoints.get(10, TimeUnit.SECONDS);
+    repository.close();
+    opened.clear();
+
+    WalPaymentsRepository recovered = open();
+
+    for (Payment payment : payments) {
+      assertThat(recovered.get(payment.getId())).map(Payment::getVersion).contains(2L);
+    }
+  }
+
+  @Test
+  void shouldIgnoreTornFrameAtTheTailOfTheLog() throws IOException {
+    WalPaymentsRepository repository = open();
+    Payment kept = repository.save(pendingPayment(null));
+    Payment torn = repository.save(pendingPayment(null));
+    repository.close();
+    opened.clear();
+
+    long segment = WriteAheadLog.segmentNumbers(directory).get(0);
+    try (FileChannel channel = FileChannel.open(WriteAheadLog.segmentPath(directory, segment),
+        StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      int firstFrame = 8 + PaymentRecordCodec.encode(kept).length;
+      // corrupt the last byte of the second frame's payload
+      long lastByte = firstFrame + 8 + PaymentRecordCodec.encode(torn).length - 1;
+      ByteBuffer value = ByteBuffer.allocate(1);
+      channel.read(value, lastByte);
+      channel.write(ByteBuffer.wrap(new byte[]{(byte) ~value.get(0)}), lastByte);
+    }
+
+    WalPaymentsRepository recovered = open();
+
+    assertThat(recovered.get(kept.getId())).contains(kept);
+    assertThat(recovered.get(torn.getId())).isEmpty();
+  }
+}
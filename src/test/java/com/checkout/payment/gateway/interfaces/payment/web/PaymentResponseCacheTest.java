@@ -0,0 +1,85 @@
+package com.checkout.payment.gateway.interfaces.payment.web;
+
+import com.checkout.payment.gateway.domain.model.PaymentStatus;
+import com.checkout.payment.gateway.infrastructure.configuration.PaymentGatewayProperties;
+import com.checkout.payment.gateway.interfaces.payment.web.PaymentResponseCache.Body;
+import com.checkout.payment.gateway.interfaces.payment.web.PaymentResponseCache.View;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentCardInfo;
+import com.checkout.payment.gateway.interfaces.payment.web.dto.PaymentResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class PaymentResponseCacheTest {
+
+  private final ObjectMapper objectMapper = spy(new ObjectMapper());
+  private final PaymentGatewayProperties properties = new PaymentGatewayProperties();
+
+  private PaymentResponseCache cache(int maxEntries) {
+    properties.getResponseCache().setMaxEntries(maxEntries);
+    return new PaymentResponseCache(objectMapper, properties, new SimpleMeterRegistry());
+  }
+
+  private static PaymentResponse response(PaymentStatus status) {
+    return PaymentResponse.builder()
+        .id(UUID.randomUUID())
+        .status(status)
+        .amount(100L)
+        .currency("GBP")
+        .card(PaymentCardInfo.builder().lastFour("4242").maskedNumber("************4242").build())
+        .build();
+  }
+
+  @Test
+  void shouldServeFinalPaymentWithoutSerializingAgain() throws Exception {
+    PaymentResponseCache cache = cache(10);
+    PaymentResponse response = response(PaymentStatus.AUTHORIZED);
+
+    Body first = cache.cache(response, View.RETRIEVED);
+    Body second = cache.cache(response, View.RETRIEVED);
+
+    assertThat(second).isSameAs(first);
+    assertThat(cache.find(response.getId(), View.RETRIEVED)).containsSame(first);
+    assertThat(cache.find(response.getId(), View.CREATED)).isEmpty();
+    assertThat(new String(first.json(), StandardCharsets.UTF_8)).contains("************4242");
+    assertThat(first.etag()).startsWith("\"").endsWith("\"");
+    verify(objectMapper, times(1)).writeValueAsBytes(any());
+  }
+
+  @Test
+  void shouldNotKeepPaymentThatMayStillChange() {
+    PaymentResponseCache cache = cache(10);
+    PaymentResponse response = response(PaymentStatus.PENDING);
+
+    Body body = cache.cache(response, View.RETRIEVED);
+
+    assertThat(cache.find(response.getId(), View.RETRIEVED)).isEmpty();
+    // the same bytes get the same tag, cached or not
+    assertThat(cache.serialize(response).etag()).isEqualTo(body.etag());
+  }
+
+  @Test
+  void shouldEvictOldestEntry_WhenFull() {
+    PaymentResponseCache cache = cache(2);
+    PaymentResponse oldest = response(PaymentStatus.DECLINED);
+    PaymentResponse middle = response(PaymentStatus.AUTHORIZED);
+    PaymentResponse newest = response(PaymentStatus.REJECTED);
+
+    cache.cache(oldest, View.RETRIEVED);
+    cache.cache(middle, View.RETRIEVED);
+    cache.cache(newest, View.RETRIEVED);
+
+    assertThat(cache.find(oldest.getId(), View.RETRIEVED)).isEmpty();
+    assertThat(cache.find(middle.getId(), View.RETRIEVED)).isPresent();
+    assertThat(cache.find(newest.getId(), View.RETRIEVED)).isPresent();
+  }
+}